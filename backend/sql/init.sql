@@ -91,6 +91,30 @@ CREATE TABLE IF NOT EXISTS `character_skills` (
     FOREIGN KEY (`character_id`) REFERENCES `characters`(`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='角色技能表';
 
+-- 创建媒体对象表（内容寻址存储，相同内容只存一份）
+CREATE TABLE IF NOT EXISTS `media_objects` (
+    `hash` char(64) NOT NULL COMMENT '内容SHA-256',
+    `extension` varchar(16) NOT NULL DEFAULT '' COMMENT '扩展名（含点）',
+    `size` bigint(20) NOT NULL COMMENT '文件大小(字节)',
+    `ref_count` int(11) NOT NULL DEFAULT 0 COMMENT '引用计数',
+    `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `updated_at` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`hash`),
+    KEY `idx_ref_count_updated_at` (`ref_count`, `updated_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='媒体对象表';
+
+-- 创建媒体引用表（消息的 audio_url、角色开场白对媒体对象的引用）
+CREATE TABLE IF NOT EXISTS `media_references` (
+    `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '引用ID',
+    `hash` char(64) NOT NULL COMMENT '被引用对象的内容哈希',
+    `owner_type` varchar(20) NOT NULL COMMENT '引用方类型：message-消息，opening-角色开场白',
+    `owner_id` bigint(20) NOT NULL COMMENT '引用方ID',
+    `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_owner` (`owner_type`, `owner_id`),
+    KEY `idx_hash` (`hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='媒体引用表';
+
 -- 插入测试用户数据
 INSERT INTO `user` (`username`, `password_hash`) VALUES 
 ('admin', '$2a$10$WDeRpFxhnZpiT1AyIGI3UuXFbu8tz2QosOEO3HqaRXq4sjxVEK4Re'),
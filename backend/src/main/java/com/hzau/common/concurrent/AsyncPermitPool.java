@@ -0,0 +1,361 @@
+package com.hzau.common.concurrent;
+
+import com.hzau.common.exception.ServiceBusyException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: AsyncPermitPool
+ * @author: zhuyuchen
+ * @description: 非阻塞许可池。容量不足时请求进入有界等待队列，许可释放后按优先级类别依次唤醒，
+ *               同一类别内按用户做加权公平排队（WFQ），单个用户的大量请求不会挤占其他用户；
+ *               队列已满立即拒绝，等待超过截止时间则以超时失败。不会阻塞任何线程。
+ * @date: 2026/10/19 下午4:55
+ */
+@Slf4j
+public class AsyncPermitPool {
+
+    private final String name;
+
+    /**
+     * 等待者出队顺序：优先级类别 -> 虚拟完成时间 -> 入队顺序
+     */
+    private static final Comparator<Waiter> WAITER_ORDER = Comparator
+            .comparingInt((Waiter w) -> w.priority.ordinal())
+            .thenComparingDouble(w -> w.finishTag)
+            .thenComparingLong(w -> w.seq);
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    // 以下字段由 this 锁保护
+    private int limit;
+    private int maxQueueSize;
+    private int inUse;
+    private long nextSeq;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(WAITER_ORDER);
+    // 每个优先级类别的虚拟时间及各用户的最近虚拟完成时间
+    private final double[] virtualTime = new double[PRIORITIES.length];
+    private final List<Map<String, Double>> finishTags = new ArrayList<>(PRIORITIES.length);
+
+    // 统计信息
+    private final AtomicLong acquiredCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong timeoutCount = new AtomicLong(0);
+    private final AtomicLong queuedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitNanos = new AtomicLong(0);
+    // 按优先级类别统计的排队时延（立即获得许可的请求计为0）
+    private final AtomicLongArray classGranted = new AtomicLongArray(PRIORITIES.length);
+    private final AtomicLongArray classWaitNanos = new AtomicLongArray(PRIORITIES.length);
+    private final AtomicLongArray classMaxWaitNanos = new AtomicLongArray(PRIORITIES.length);
+
+    public AsyncPermitPool(String name, int limit, int maxQueueSize) {
+        this.name = name;
+        this.limit = Math.max(1, limit);
+        this.maxQueueSize = Math.max(0, maxQueueSize);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            finishTags.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * 以交互式优先级申请一个许可
+     * @see #acquire(Duration, RequestPriority, String)
+     */
+    public Mono<Lease> acquire(Duration maxWait) {
+        return acquire(maxWait, RequestPriority.INTERACTIVE, null);
+    }
+
+    /**
+     * 申请一个许可
+     * 有空闲容量时立即完成；否则进入等待队列，直到许可释放或超过 maxWait。
+     * 订阅被取消时自动退出队列，已分配但未被消费的许可会被自动归还。
+     * @param maxWait 最长排队时间，为0时不排队
+     * @param priority 优先级类别
+     * @param flow 公平排队的用户标识，为null时与其他无标识请求共享同一队列
+     * @return 许可租约
+     */
+    public Mono<Lease> acquire(Duration maxWait, RequestPriority priority, String flow) {
+        return Mono.<Lease>create(sink -> {
+            Waiter waiter = null;
+            boolean granted = false;
+            boolean rejected = false;
+
+            synchronized (this) {
+                if (waiters.isEmpty() && inUse < limit) {
+                    inUse++;
+                    granted = true;
+                } else if (maxWait.isZero() || waiters.size() >= maxQueueSize) {
+                    rejected = true;
+                } else {
+                    waiter = new Waiter(sink, priority, flow != null ? flow : "", nextSeq++);
+                    assignFairTagsLocked(waiter);
+                    waiters.add(waiter);
+                }
+            }
+
+            if (granted) {
+                acquiredCount.incrementAndGet();
+                recordClassWait(priority, 0);
+                sink.success(new Lease(this));
+                return;
+            }
+            if (rejected) {
+                rejectedCount.incrementAndGet();
+                sink.error(new ServiceBusyException(name, false));
+                return;
+            }
+
+            queuedCount.incrementAndGet();
+            Waiter queued = waiter;
+            queued.timer = Schedulers.parallel().schedule(() -> onTimeout(queued),
+                    maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            sink.onCancel(() -> onCancel(queued));
+        }).doOnDiscard(Lease.class, Lease::release);
+    }
+
+    /**
+     * 调整许可上限
+     * 扩容时立即唤醒排队请求；缩容时不打断进行中的请求，待其释放后自然收敛到新上限
+     */
+    public void resize(int newLimit) {
+        List<Waiter> granted;
+        synchronized (this) {
+            limit = Math.max(1, newLimit);
+            granted = drainLocked();
+        }
+        grant(granted);
+    }
+
+    /**
+     * 调整等待队列容量（只影响后续入队的请求）
+     */
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = Math.max(0, maxQueueSize);
+    }
+
+    private void release() {
+        List<Waiter> granted;
+        synchronized (this) {
+            inUse--;
+            granted = drainLocked();
+        }
+        grant(granted);
+    }
+
+    /**
+     * 计算等待者的虚拟开始/完成时间（每个请求代价为1）
+     * 同一用户的后续请求完成时间依次后移，因此同一类别内各用户轮流获得许可
+     */
+    private void assignFairTagsLocked(Waiter waiter) {
+        int cls = waiter.priority.ordinal();
+        Map<String, Double> tags = finishTags.get(cls);
+        double start = Math.max(virtualTime[cls], tags.getOrDefault(waiter.flow, 0.0));
+        waiter.startTag = start;
+        waiter.finishTag = start + 1.0;
+        tags.put(waiter.flow, waiter.finishTag);
+    }
+
+    /**
+     * 在持有锁的情况下为队首等待者分配许可，实际回调在锁外执行
+     */
+    private List<Waiter> drainLocked() {
+        List<Waiter> granted = null;
+        while (inUse < limit) {
+            Waiter waiter = waiters.poll();
+            if (waiter == null) {
+                break;
+            }
+            if (!waiter.done.compareAndSet(false, true)) {
+                continue; // 已超时或已取消
+            }
+            int cls = waiter.priority.ordinal();
+            virtualTime[cls] = Math.max(virtualTime[cls], waiter.startTag);
+            inUse++;
+            if (granted == null) {
+                granted = new ArrayList<>(2);
+            }
+            granted.add(waiter);
+        }
+        if (waiters.isEmpty()) {
+            // 队列清空后历史完成时间不再影响排序，清理以免用户标识无限累积
+            for (Map<String, Double> tags : finishTags) {
+                tags.clear();
+            }
+        }
+        return granted;
+    }
+
+    private void grant(List<Waiter> granted) {
+        if (granted == null) {
+            return;
+        }
+        for (Waiter waiter : granted) {
+            Disposable timer = waiter.timer;
+            if (timer != null) {
+                timer.dispose();
+            }
+            long waitNanos = System.nanoTime() - waiter.enqueuedAt;
+            acquiredCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            recordClassWait(waiter.priority, waitNanos);
+            waiter.sink.success(new Lease(this));
+        }
+    }
+
+    private void recordClassWait(RequestPriority priority, long waitNanos) {
+        int cls = priority.ordinal();
+        classGranted.incrementAndGet(cls);
+        classWaitNanos.addAndGet(cls, waitNanos);
+        classMaxWaitNanos.accumulateAndGet(cls, waitNanos, Math::max);
+    }
+
+    private void onTimeout(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        timeoutCount.incrementAndGet();
+        totalWaitNanos.addAndGet(System.nanoTime() - waiter.enqueuedAt);
+        log.warn("许可池 {} 排队等待超时", name);
+        waiter.sink.error(new ServiceBusyException(name, true));
+    }
+
+    private void onCancel(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return; // 已分配的许可由 doOnDiscard 负责归还
+        }
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        Disposable timer = waiter.timer;
+        if (timer != null) {
+            timer.dispose();
+        }
+    }
+
+    public String getName() { return name; }
+    public synchronized int getLimit() { return limit; }
+    public synchronized int getInUse() { return inUse; }
+    public synchronized int getAvailablePermits() { return Math.max(0, limit - inUse); }
+    public synchronized int getQueueSize() { return waiters.size(); }
+    public synchronized int getMaxQueueSize() { return maxQueueSize; }
+    public long getAcquiredCount() { return acquiredCount.get(); }
+    public long getRejectedCount() { return rejectedCount.get(); }
+    public long getTimeoutCount() { return timeoutCount.get(); }
+
+    /**
+     * 排队请求的平均等待时间（毫秒）
+     */
+    public double getAverageWaitMillis() {
+        long queued = queuedCount.get();
+        return queued > 0 ? totalWaitNanos.get() / 1_000_000.0 / queued : 0.0;
+    }
+
+    /**
+     * 按优先级类别统计的排队情况
+     */
+    public Map<RequestPriority, ClassQueueStats> getClassQueueStats() {
+        int[] queued = new int[PRIORITIES.length];
+        synchronized (this) {
+            for (Waiter waiter : waiters) {
+                queued[waiter.priority.ordinal()]++;
+            }
+        }
+        Map<RequestPriority, ClassQueueStats> result = new EnumMap<>(RequestPriority.class);
+        for (RequestPriority priority : PRIORITIES) {
+            int cls = priority.ordinal();
+            long granted = classGranted.get(cls);
+            double averageWaitMs = granted > 0 ? classWaitNanos.get(cls) / 1_000_000.0 / granted : 0.0;
+            result.put(priority, new ClassQueueStats(queued[cls], granted, averageWaitMs,
+                    classMaxWaitNanos.get(cls) / 1_000_000.0));
+        }
+        return result;
+    }
+
+    /**
+     * 单个优先级类别的排队统计
+     */
+    public static final class ClassQueueStats {
+        private final int queued;
+        private final long granted;
+        private final double averageWaitMs;
+        private final double maxWaitMs;
+
+        public ClassQueueStats(int queued, long granted, double averageWaitMs, double maxWaitMs) {
+            this.queued = queued;
+            this.granted = granted;
+            this.averageWaitMs = averageWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        public int getQueued() { return queued; }
+        public long getGranted() { return granted; }
+        public double getAverageWaitMs() { return averageWaitMs; }
+        public double getMaxWaitMs() { return maxWaitMs; }
+    }
+
+    /**
+     * 排队等待者
+     */
+    private static final class Waiter {
+        private final MonoSink<Lease> sink;
+        private final RequestPriority priority;
+        private final String flow;
+        private final long seq;
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile Disposable timer;
+        // 由池的锁保护
+        private double startTag;
+        private double finishTag;
+
+        private Waiter(MonoSink<Lease> sink, RequestPriority priority, String flow, long seq) {
+            this.sink = sink;
+            this.priority = priority;
+            this.flow = flow;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * 许可租约，release() 幂等，重复调用不会多次归还
+     */
+    public static final class Lease {
+        private final AsyncPermitPool pool;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(AsyncPermitPool pool) {
+            this.pool = pool;
+        }
+
+        public AsyncPermitPool getPool() {
+            return pool;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                pool.release();
+            }
+        }
+    }
+}
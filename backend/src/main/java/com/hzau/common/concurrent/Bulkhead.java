@@ -0,0 +1,63 @@
+package com.hzau.common.concurrent;
+
+import java.time.Duration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: Bulkhead
+ * @author: zhuyuchen
+ * @description: 上游能力隔离舱。每个隔离舱拥有独立的许可池、等待队列与排队超时，
+ *               某一类流量（如语音）耗尽自身容量时不会占用其他隔离舱的许可
+ * @date: 2026/10/19 下午7:40
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final AsyncPermitPool pool;
+
+    /**
+     * 最大并发数，启用自适应时作为自适应上限的上界
+     */
+    private volatile int maxConcurrent;
+
+    /**
+     * 排队等待许可的最长时间（毫秒）
+     */
+    private volatile long timeoutMs;
+
+    /**
+     * 自适应并发上限，未启用时为null
+     */
+    private volatile GradientLimit adaptiveLimit;
+
+    public Bulkhead(String name, int maxConcurrent, int queueSize, long timeoutMs, GradientLimit adaptiveLimit) {
+        this.name = name;
+        this.pool = new AsyncPermitPool(name, maxConcurrent, queueSize);
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutMs = timeoutMs;
+        this.adaptiveLimit = adaptiveLimit;
+    }
+
+    /**
+     * 运行时调整隔离舱参数
+     * @param maxConcurrent 新的最大并发数
+     * @param queueSize 新的等待队列长度
+     * @param timeoutMs 新的排队超时
+     * @param adaptiveLimit 以新上界重建的自适应上限，未启用时为null
+     */
+    public synchronized void reconfigure(int maxConcurrent, int queueSize, long timeoutMs, GradientLimit adaptiveLimit) {
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutMs = timeoutMs;
+        this.adaptiveLimit = adaptiveLimit;
+        pool.setMaxQueueSize(queueSize);
+        pool.resize(adaptiveLimit != null ? adaptiveLimit.getLimit() : maxConcurrent);
+    }
+
+    public String getName() { return name; }
+    public AsyncPermitPool getPool() { return pool; }
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public long getTimeoutMs() { return timeoutMs; }
+    public Duration getTimeout() { return Duration.ofMillis(timeoutMs); }
+    public GradientLimit getAdaptiveLimit() { return adaptiveLimit; }
+}
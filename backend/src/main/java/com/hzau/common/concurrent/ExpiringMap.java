@@ -0,0 +1,303 @@
+package com.hzau.common.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: ExpiringMap
+ * @author: zhuyuchen
+ * @description: 带空闲过期与容量上限的并发Map，用于按用户/IP保存的限流与并发控制状态。
+ *               过期由哈希时间轮驱动：每个条目只挂在其预计过期时刻对应的槽位上，访问时仅更新访问时间，
+ *               时间轮转到该槽位时再检查，未过期的条目按新的过期时刻重新挂入（每个空闲周期最多移动一次），
+ *               因此清理只处理到期的槽位，无需全表扫描，也不获取条目的锁。
+ *               条目数达到上限时按溢出策略淘汰最早到期的条目或拒绝新键
+ * @date: 2026/10/19 下午9:45
+ */
+public class ExpiringMap<K, V> {
+
+    /**
+     * 溢出策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 淘汰最早到期的可淘汰条目，腾出空间后插入新键
+         */
+        EVICT_OLDEST,
+
+        /**
+         * 直接拒绝新键，已有条目不受影响
+         */
+        REJECT
+    }
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /**
+     * 单调时钟起点
+     */
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    private final String name;
+    private final long ttlMillis;
+    private final long tickMillis;
+    private final int maxSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Predicate<V> evictable;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K, V>>[] wheel;
+
+    /**
+     * 时间轮推进由单个线程完成，其他线程尝试失败时直接返回
+     */
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    private volatile long cursorTick;
+
+    // 统计信息
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param name 名称，用于日志与统计
+     * @param ttlMillis 空闲过期时间，最后一次访问后超过该时间的条目被移除
+     * @param maxSize 条目数上限
+     * @param overflowPolicy 达到上限时的溢出策略
+     * @param evictable 条目是否允许被移除（如仍有进行中的请求时不移除），不允许的条目过期时顺延一个周期
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringMap(String name, long ttlMillis, int maxSize, OverflowPolicy overflowPolicy, Predicate<V> evictable) {
+        if (ttlMillis < 1 || maxSize < 1) {
+            throw new IllegalArgumentException("过期时间与容量上限必须为正数: " + name);
+        }
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        // 一圈时间轮覆盖一个空闲周期，多数条目到期前只被检查一次
+        this.tickMillis = Math.max(1, (ttlMillis + WHEEL_SIZE - 1) / WHEEL_SIZE);
+        this.maxSize = maxSize;
+        this.overflowPolicy = overflowPolicy;
+        this.evictable = evictable;
+        this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.cursorTick = nowMillis() / tickMillis;
+    }
+
+    /**
+     * 获取并刷新访问时间，不存在时返回null
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        node.touch(nowMillis(), tickMillis);
+        return node.value;
+    }
+
+    /**
+     * 获取或创建条目并刷新访问时间
+     * @return 条目值；达到容量上限且无法腾出空间时返回null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> factory) {
+        long now = nowMillis();
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            // 命中路径只做一次volatile读写，不分配对象
+            node.touch(now, tickMillis);
+            return node.value;
+        }
+
+        advance(now);
+        if (map.size() >= maxSize && !makeRoom()) {
+            rejectedCount.increment();
+            return null;
+        }
+
+        node = map.computeIfAbsent(key, k -> {
+            // 新条目在创建时挂入时间轮，仅入队操作，不会重入本Map
+            Node<K, V> created = new Node<>(k, factory.apply(k), now);
+            schedule(created, (now + ttlMillis) / tickMillis);
+            return created;
+        });
+        node.touch(now, tickMillis);
+        return node.value;
+    }
+
+    /**
+     * 移除条目，时间轮中残留的节点在轮到时丢弃
+     */
+    public V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        return node != null ? node.value : null;
+    }
+
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        map.forEach((key, node) -> action.accept(key, node.value));
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 推进时间轮到当前时刻，移除已过期的条目
+     * @return 本次移除的条目数
+     */
+    public int cleanUp() {
+        return advance(nowMillis());
+    }
+
+    private int advance(long now) {
+        long nowTick = now / tickMillis;
+        if (cursorTick >= nowTick || !wheelLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int expired = 0;
+            long tick = cursorTick;
+            // 落后超过一圈时只需把每个槽位处理一遍
+            if (nowTick - tick > WHEEL_SIZE) {
+                tick = nowTick - WHEEL_SIZE;
+            }
+            while (tick < nowTick) {
+                tick++;
+                expired += expireSlot(tick, now);
+                cursorTick = tick;
+            }
+            cursorTick = nowTick;
+            return expired;
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * 处理一个槽位：丢弃已失效的节点，到期的可淘汰条目移除，其余按新的过期时刻重新挂入
+     */
+    private int expireSlot(long tick, long now) {
+        ConcurrentLinkedQueue<Node<K, V>> slot = wheel[(int) (tick & WHEEL_MASK)];
+        List<Node<K, V>> deferred = null;
+        int expired = 0;
+        Node<K, V> node;
+        while ((node = slot.poll()) != null) {
+            if (map.get(node.key) != node) {
+                continue;
+            }
+            long deadlineTick = (node.accessTime + ttlMillis) / tickMillis;
+            if (deadlineTick <= tick && evictable.test(node.value)) {
+                // 与并发访问之间存在极小的竞争窗口：刚拿到旧值的请求仍会使用被移除的条目
+                if (map.remove(node.key, node)) {
+                    expired++;
+                    expiredCount.increment();
+                }
+                continue;
+            }
+            if (deadlineTick <= tick) {
+                // 仍在使用中，顺延一个周期
+                deadlineTick = (now + ttlMillis) / tickMillis;
+            }
+            if (deferred == null) {
+                deferred = new ArrayList<>();
+            }
+            deferred.add(node);
+            node.deadlineTick = deadlineTick;
+        }
+        if (deferred != null) {
+            for (Node<K, V> n : deferred) {
+                schedule(n, n.deadlineTick);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 达到容量上限时按溢出策略腾出空间，从最早到期的槽位开始淘汰
+     */
+    private boolean makeRoom() {
+        if (overflowPolicy == OverflowPolicy.REJECT) {
+            return false;
+        }
+        wheelLock.lock();
+        try {
+            long tick = cursorTick;
+            for (int i = 1; i <= WHEEL_SIZE && map.size() >= maxSize; i++) {
+                ConcurrentLinkedQueue<Node<K, V>> slot = wheel[(int) ((tick + i) & WHEEL_MASK)];
+                List<Node<K, V>> kept = new ArrayList<>();
+                Node<K, V> node;
+                while (map.size() >= maxSize && (node = slot.poll()) != null) {
+                    if (map.get(node.key) != node) {
+                        continue;
+                    }
+                    long deadlineTick = (node.accessTime + ttlMillis) / tickMillis;
+                    if (deadlineTick > tick + i || !evictable.test(node.value)) {
+                        // 挂入后又被访问过的条目不是最早到期的，移到正确的槽位
+                        node.deadlineTick = Math.max(deadlineTick, tick + i + 1);
+                        kept.add(node);
+                        continue;
+                    }
+                    if (map.remove(node.key, node)) {
+                        evictedCount.increment();
+                    }
+                }
+                for (Node<K, V> n : kept) {
+                    schedule(n, n.deadlineTick);
+                }
+            }
+            return map.size() < maxSize;
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    private void schedule(Node<K, V> node, long deadlineTick) {
+        node.deadlineTick = deadlineTick;
+        // 已过期的节点挂到下一个槽位，由下一次推进处理
+        long tick = Math.max(deadlineTick, cursorTick + 1);
+        wheel[(int) (tick & WHEEL_MASK)].offer(node);
+    }
+
+    private static long nowMillis() {
+        return (System.nanoTime() - ORIGIN_NANOS) / 1_000_000;
+    }
+
+    public String getName() { return name; }
+    public int getMaxSize() { return maxSize; }
+    public long getTtlMillis() { return ttlMillis; }
+    public long getExpiredCount() { return expiredCount.sum(); }
+    public long getEvictedCount() { return evictedCount.sum(); }
+    public long getRejectedCount() { return rejectedCount.sum(); }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        volatile long accessTime;
+        long deadlineTick;
+
+        Node(K key, V value, long now) {
+            this.key = key;
+            this.value = value;
+            this.accessTime = now;
+        }
+
+        /**
+         * 访问时间精度为一个刻度，同一刻度内的重复访问不再写入
+         */
+        void touch(long now, long tickMillis) {
+            if (now - accessTime >= tickMillis) {
+                accessTime = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hzau.common.concurrent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: GcraLimiter
+ * @author: zhuyuchen
+ * @description: 无锁多层级 GCRA（通用信元速率算法）限流器。
+ *               每个限流键的状态压缩在一个 long 中，一次 CAS 同时更新全部层级（最多3层，如 秒/分钟/小时）：
+ *               低31位为基准时间（毫秒，循环计数），其上每11位为一个层级的理论到达时间（TAT）相对基准的偏移。
+ *               各层级的 TAT 对齐到各自的时间粒度，偏移为整数格数，不会因反复编码累积误差。
+ *               判定与更新都不分配对象；被拒绝的请求不消耗额度。
+ * @date: 2026/10/19 下午8:40
+ */
+public class GcraLimiter {
+
+    public static final int MAX_TIERS = 3;
+
+    private static final int BASE_BITS = 31;
+    private static final long BASE_MASK = (1L << BASE_BITS) - 1;
+    private static final int OFFSET_BITS = 11;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**
+     * 单调时钟起点，避免系统时间回拨导致误判
+     */
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    private final int tierCount;
+    private final String[] names;
+    private final int[] limits;
+    private final long[] periods;
+    // 时间粒度（毫秒）
+    private final long[] resolutions;
+    // 对齐到粒度后的发射间隔（毫秒）
+    private final long[] intervals;
+    // 允许的最大提前量：limit * interval，即一次可突发 limit 个请求
+    private final long[] capacities;
+    private final long maxCapacity;
+
+    /**
+     * @param tiers 限流层级，最多3层
+     */
+    public GcraLimiter(List<Tier> tiers) {
+        if (tiers.isEmpty() || tiers.size() > MAX_TIERS) {
+            throw new IllegalArgumentException("限流层级数量必须为1到" + MAX_TIERS);
+        }
+        this.tierCount = tiers.size();
+        this.names = new String[tierCount];
+        this.limits = new int[tierCount];
+        this.periods = new long[tierCount];
+        this.resolutions = new long[tierCount];
+        this.intervals = new long[tierCount];
+        this.capacities = new long[tierCount];
+
+        long max = 0;
+        for (int i = 0; i < tierCount; i++) {
+            Tier tier = tiers.get(i);
+            // 偏移以发射间隔为最小单位，11位最多表示 OFFSET_MASK 个请求的提前量
+            if (tier.limit() < 1 || tier.limit() > OFFSET_MASK || tier.periodMillis() < 1) {
+                throw new IllegalArgumentException("限流层级参数不合法（limit 应为1到" + OFFSET_MASK + "）: " + tier.name());
+            }
+            names[i] = tier.name();
+            limits[i] = tier.limit();
+            periods[i] = tier.periodMillis();
+
+            // 选取最小的粒度，使最大提前量可以用11位偏移表示
+            long resolution = Math.max(1, ceilDiv(tier.periodMillis(), OFFSET_MASK));
+            long interval;
+            while (true) {
+                interval = ceilDiv(ceilDiv(tier.periodMillis(), tier.limit()), resolution) * resolution;
+                if (interval * tier.limit() / resolution <= OFFSET_MASK) {
+                    break;
+                }
+                resolution++;
+            }
+            resolutions[i] = resolution;
+            intervals[i] = interval;
+            capacities[i] = interval * tier.limit();
+            max = Math.max(max, capacities[i]);
+        }
+        this.maxCapacity = max;
+    }
+
+    /**
+     * 新建限流单元的初始状态（所有层级均空闲）
+     */
+    public static AtomicLong newCell() {
+        return new AtomicLong(0L);
+    }
+
+    /**
+     * 尝试放行一个请求
+     * @param cell 限流键对应的状态
+     * @return -1 表示放行；否则为拒绝请求的层级下标
+     */
+    public int tryAcquire(AtomicLong cell) {
+        return tryAcquire(cell, nowMillis());
+    }
+
+    /**
+     * 按给定时间尝试放行一个请求，供测试控制时间
+     * @param now 当前时间（毫秒），不小于一个基准周期
+     */
+    int tryAcquire(AtomicLong cell, long now) {
+        while (true) {
+            long state = cell.get();
+            long elapsed = elapsedSinceBase(state, now);
+            long baseAbs = now - elapsed;
+            boolean fresh = elapsed > maxCapacity;
+
+            long next = now & BASE_MASK;
+            for (int i = 0; i < tierCount; i++) {
+                long res = resolutions[i];
+                long nowGrid = now - Math.floorMod(now, res);
+                long tat = fresh ? nowGrid : tatOf(state, i, baseAbs);
+                long newTat = Math.max(tat, nowGrid) + intervals[i];
+                if (newTat - nowGrid > capacities[i]) {
+                    return i;
+                }
+                next |= ((newTat - nowGrid) / res) << (BASE_BITS + i * OFFSET_BITS);
+            }
+            if (cell.compareAndSet(state, next)) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * 指定层级当前剩余可突发的请求数
+     */
+    public int remaining(AtomicLong cell, int tier) {
+        return remaining(cell, tier, nowMillis());
+    }
+
+    int remaining(AtomicLong cell, int tier, long now) {
+        long state = cell.get();
+        long elapsed = elapsedSinceBase(state, now);
+        if (elapsed > maxCapacity) {
+            return limits[tier];
+        }
+        long nowGrid = now - Math.floorMod(now, resolutions[tier]);
+        long ahead = Math.max(0, tatOf(state, tier, now - elapsed) - nowGrid);
+        return (int) Math.max(0, (capacities[tier] - ahead) / intervals[tier]);
+    }
+
+    /**
+     * 限流单元在最后一次放行后经过该时间必然恢复空闲，可以安全删除
+     */
+    public long getIdleTimeoutMillis() {
+        return maxCapacity;
+    }
+
+    public int getTierCount() { return tierCount; }
+    public String getTierName(int tier) { return names[tier]; }
+    public int getTierLimit(int tier) { return limits[tier]; }
+    public long getTierPeriodMillis(int tier) { return periods[tier]; }
+
+    /**
+     * 状态中记录的基准时间距今的毫秒数（基准为31位循环计数）
+     */
+    private static long elapsedSinceBase(long state, long now) {
+        return ((now & BASE_MASK) - (state & BASE_MASK)) & BASE_MASK;
+    }
+
+    private long tatOf(long state, int tier, long baseAbs) {
+        long res = resolutions[tier];
+        long offset = (state >>> (BASE_BITS + tier * OFFSET_BITS)) & OFFSET_MASK;
+        return baseAbs - Math.floorMod(baseAbs, res) + offset * res;
+    }
+
+    private static long nowMillis() {
+        // 整体偏移一个基准周期，保证由循环基准还原出的绝对时间始终为正
+        return (System.nanoTime() - ORIGIN_NANOS) / 1_000_000 + BASE_MASK + 1;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * 限流层级
+     * @param name 层级名称
+     * @param limit 周期内允许的请求数（同时也是可突发的请求数）
+     * @param periodMillis 周期（毫秒）
+     */
+    public record Tier(String name, int limit, long periodMillis) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.hzau.common.concurrent;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: GradientLimit
+ * @author: zhuyuchen
+ * @description: 基于往返时延梯度的自适应并发上限估计。
+ *               以近期最小RTT作为无负载RTT估计，按 无负载RTT/当前RTT 的梯度收缩上限，
+ *               并预留 sqrt(limit) 的排队余量用于探测更高并发；上游超时或过载时按比例回退（AIMD）。
+ * @date: 2026/10/19 下午6:20
+ */
+public class GradientLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    /**
+     * 新上限的平滑系数（0-1），越小调整越平缓
+     */
+    private final double smoothing;
+
+    /**
+     * RTT容忍倍数：当前RTT不超过无负载RTT的该倍数时不收缩上限
+     */
+    private final double rttTolerance;
+
+    /**
+     * 上游过载（超时、429、5xx）时的回退比例
+     */
+    private final double backoffRatio;
+
+    /**
+     * 每采集该数量的样本重置一次无负载RTT，避免上游长期变慢后估计值失真
+     */
+    private final int probeSamples;
+
+    // 以下字段由 this 锁保护
+    private double estimatedLimit;
+    private long noLoadRttNanos = Long.MAX_VALUE;
+    private double shortRttNanos;
+    private long samplesSinceProbe;
+    private long sampleCount;
+    private long dropCount;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit,
+                         double smoothing, double rttTolerance, double backoffRatio, int probeSamples) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.smoothing = smoothing;
+        this.rttTolerance = Math.max(1.0, rttTolerance);
+        this.backoffRatio = backoffRatio;
+        this.probeSamples = Math.max(1, probeSamples);
+        this.estimatedLimit = clamp(initialLimit);
+    }
+
+    /**
+     * 记录一次上游调用样本
+     * @param rttNanos 调用耗时（纳秒），流式调用为首个数据块的到达时间，非流式调用为按输出长度归一化后的耗时
+     * @param inflight 采样时正在进行的调用数
+     * @param dropped 是否为上游过载导致的失败
+     * @return 新的并发上限
+     */
+    public synchronized int onSample(long rttNanos, int inflight, boolean dropped) {
+        sampleCount++;
+
+        if (dropped) {
+            dropCount++;
+            estimatedLimit = clamp(estimatedLimit * backoffRatio);
+            return getLimitLocked();
+        }
+        if (rttNanos <= 0) {
+            return getLimitLocked();
+        }
+
+        // 定期重置无负载RTT，让估计值跟随上游的长期变化
+        if (++samplesSinceProbe >= probeSamples) {
+            samplesSinceProbe = 0;
+            noLoadRttNanos = Long.MAX_VALUE;
+        }
+        noLoadRttNanos = Math.min(noLoadRttNanos, rttNanos);
+        shortRttNanos = shortRttNanos == 0 ? rttNanos : shortRttNanos * 0.9 + rttNanos * 0.1;
+
+        // 并发远未用满时样本不能说明上限是否合适，只收缩不扩张
+        boolean appLimited = inflight < estimatedLimit / 2;
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * noLoadRttNanos / shortRttNanos));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        if (appLimited && newLimit > estimatedLimit) {
+            return getLimitLocked();
+        }
+
+        estimatedLimit = clamp(estimatedLimit * (1 - smoothing) + newLimit * smoothing);
+        return getLimitLocked();
+    }
+
+    public synchronized int getLimit() {
+        return getLimitLocked();
+    }
+
+    /**
+     * 无负载RTT估计（毫秒），尚无样本时为0
+     */
+    public synchronized double getNoLoadRttMillis() {
+        return noLoadRttNanos == Long.MAX_VALUE ? 0.0 : noLoadRttNanos / 1_000_000.0;
+    }
+
+    /**
+     * 近期RTT的指数移动平均（毫秒）
+     */
+    public synchronized double getShortRttMillis() {
+        return shortRttNanos / 1_000_000.0;
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized long getDropCount() {
+        return dropCount;
+    }
+
+    private int getLimitLocked() {
+        return (int) estimatedLimit;
+    }
+
+    private double clamp(double limit) {
+        return Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+}
@@ -0,0 +1,67 @@
+package com.hzau.common.concurrent;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.function.Function;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: RequestPriority
+ * @author: zhuyuchen
+ * @description: 上游调用的优先级类别，数值越小越优先。
+ *               通过 Reactor Context 从业务入口传递到许可池，同时携带用于公平排队的用户标识
+ * @date: 2026/10/19 下午8:10
+ */
+public enum RequestPriority {
+
+    /**
+     * 交互式流式对话，用户正在等待首字
+     */
+    INTERACTIVE_STREAM,
+
+    /**
+     * 交互式非流式对话
+     */
+    INTERACTIVE,
+
+    /**
+     * 语音对话（ASR/TTS 流水线）
+     */
+    VOICE,
+
+    /**
+     * 后台任务，如开场白预热与重新生成
+     */
+    BACKGROUND;
+
+    private static final String PRIORITY_KEY = RequestPriority.class.getName();
+    private static final String USER_KEY = RequestPriority.class.getName() + ".user";
+
+    /**
+     * 写入优先级与用户标识的 Context 变换，用于 contextWrite
+     * @param priority 优先级类别
+     * @param userId 用户标识，为null时不参与按用户的公平排队
+     */
+    public static Function<Context, Context> with(RequestPriority priority, String userId) {
+        return context -> {
+            Context result = context.put(PRIORITY_KEY, priority);
+            return userId != null ? result.put(USER_KEY, userId) : result;
+        };
+    }
+
+    /**
+     * 读取当前优先级，未设置时视为交互式非流式请求
+     */
+    public static RequestPriority from(ContextView context) {
+        return context.getOrDefault(PRIORITY_KEY, INTERACTIVE);
+    }
+
+    /**
+     * 读取当前用户标识，未设置时返回null
+     */
+    public static String userFrom(ContextView context) {
+        return context.getOrDefault(USER_KEY, null);
+    }
+}
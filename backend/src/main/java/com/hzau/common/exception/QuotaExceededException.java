@@ -0,0 +1,37 @@
+package com.hzau.common.exception;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.exception
+ * @className: QuotaExceededException
+ * @author: zhuyuchen
+ * @description: Token额度不足（调用上游之前预估用量超出每分钟或每天的预算）时抛出的异常
+ * @date: 2026/10/19 下午9:12
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    /**
+     * 超限的额度主体，如 user:1、character:2
+     */
+    private final String subject;
+
+    /**
+     * 超限的时间窗口：minute 或 day
+     */
+    private final String window;
+
+    public QuotaExceededException(String subject, String window) {
+        // 超限时可能被频繁抛出，不填充堆栈以降低开销
+        super("minute".equals(window) ? "Token用量过快，请稍后重试" : "今日Token额度已用尽", null, false, false);
+        this.subject = subject;
+        this.window = window;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getWindow() {
+        return window;
+    }
+}
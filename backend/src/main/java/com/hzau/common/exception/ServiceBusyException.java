@@ -0,0 +1,37 @@
+package com.hzau.common.exception;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.exception
+ * @className: ServiceBusyException
+ * @author: zhuyuchen
+ * @description: 并发许可获取失败（排队已满或等待超时）时抛出的异常
+ * @date: 2026/10/19 下午4:50
+ */
+public class ServiceBusyException extends RuntimeException {
+
+    /**
+     * 拒绝发生的许可池名称
+     */
+    private final String poolName;
+
+    /**
+     * 是否因等待超时被拒绝（false表示排队已满被立即拒绝）
+     */
+    private final boolean timeout;
+
+    public ServiceBusyException(String poolName, boolean timeout) {
+        // 过载时会被大量抛出，不填充堆栈以降低开销
+        super("系统繁忙，请稍后重试", null, false, false);
+        this.poolName = poolName;
+        this.timeout = timeout;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
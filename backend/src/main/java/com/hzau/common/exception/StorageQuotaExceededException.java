@@ -0,0 +1,37 @@
+package com.hzau.common.exception;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.exception
+ * @className: StorageQuotaExceededException
+ * @author: zhuyuchen
+ * @description: 媒体存储占用达到磁盘配额、无法写入新文件时抛出的异常
+ * @date: 2026/10/20 上午5:30
+ */
+public class StorageQuotaExceededException extends RuntimeException {
+
+    /**
+     * 当前占用字节数
+     */
+    private final long usedBytes;
+
+    /**
+     * 配额字节数
+     */
+    private final long quotaBytes;
+
+    public StorageQuotaExceededException(long usedBytes, long quotaBytes) {
+        // 配额用尽时每次写入都会被拒绝，不填充堆栈以降低开销
+        super("存储空间不足，请稍后重试", null, false, false);
+        this.usedBytes = usedBytes;
+        this.quotaBytes = quotaBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+}
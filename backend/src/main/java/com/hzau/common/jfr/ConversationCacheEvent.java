@@ -0,0 +1,38 @@
+package com.hzau.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.jfr
+ * @className: ConversationCacheEvent
+ * @author: zhuyuchen
+ * @description: 对话消息缓存的读取与加载JFR事件
+ * @date: 2026/10/20 上午1:30
+ */
+@Name("com.hzau.ConversationCache")
+@Label("Conversation Cache")
+@Description("对话消息缓存的读取与从数据库加载")
+@Category({"AI-roleplay", "Cache"})
+@StackTrace(false)
+public class ConversationCacheEvent extends Event {
+
+    @Label("Operation")
+    @Description("get：读取Redis缓存；load：从数据库加载并写入缓存")
+    public String operation;
+
+    @Label("Conversation Id")
+    public long conversationId;
+
+    @Label("Result")
+    @Description("hit、miss、loaded、error")
+    public String result;
+
+    @Label("Messages")
+    public int messages;
+}
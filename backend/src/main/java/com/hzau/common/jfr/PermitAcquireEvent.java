@@ -0,0 +1,42 @@
+package com.hzau.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.jfr
+ * @className: PermitAcquireEvent
+ * @author: zhuyuchen
+ * @description: 并发许可的准入决策JFR事件，持续时间为从申请到获得许可或被拒绝的排队时间
+ * @date: 2026/10/20 上午1:30
+ */
+@Name("com.hzau.PermitAcquire")
+@Label("Permit Acquire")
+@Description("并发许可申请的准入结果与排队时间")
+@Category({"AI-roleplay", "Admission"})
+@StackTrace(false)
+public class PermitAcquireEvent extends Event {
+
+    @Label("Request Type")
+    @Description("隔离舱名称或别名，用户级许可为 user")
+    public String requestType;
+
+    @Label("User Id")
+    public String userId;
+
+    @Label("Priority")
+    public String priority;
+
+    @Label("Outcome")
+    @Description("granted、rejected（排队已满）、timeout（排队超时）、cancelled、error")
+    public String outcome;
+
+    @Label("Pool")
+    @Description("拒绝请求的许可池名称")
+    public String pool;
+}
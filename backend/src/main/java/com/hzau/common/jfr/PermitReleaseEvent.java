@@ -0,0 +1,30 @@
+package com.hzau.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.jfr
+ * @className: PermitReleaseEvent
+ * @author: zhuyuchen
+ * @description: 并发许可归还的JFR事件，持续时间为许可的持有时间
+ * @date: 2026/10/20 上午1:30
+ */
+@Name("com.hzau.PermitRelease")
+@Label("Permit Release")
+@Description("并发许可的持有时间")
+@Category({"AI-roleplay", "Admission"})
+@StackTrace(false)
+public class PermitReleaseEvent extends Event {
+
+    @Label("Request Type")
+    public String requestType;
+
+    @Label("User Id")
+    public String userId;
+}
@@ -0,0 +1,121 @@
+package com.hzau.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.function.Function;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.jfr
+ * @className: UpstreamCallEvent
+ * @author: zhuyuchen
+ * @description: 七牛云上游调用（对话、流式对话、ASR、TTS）的JFR事件，持续时间为订阅到终止，
+ *               包含超时与重试，不包含排队等待许可的时间（见 {@link PermitAcquireEvent}）
+ * @date: 2026/10/20 上午1:30
+ */
+@Name("com.hzau.UpstreamCall")
+@Label("Upstream Call")
+@Description("七牛云上游调用")
+@Category({"AI-roleplay", "Upstream"})
+@StackTrace(false)
+public class UpstreamCallEvent extends Event {
+
+    @Label("Operation")
+    @Description("调用类型：chat、stream、asr、tts")
+    String operation;
+
+    @Label("Model")
+    @Description("模型名称，TTS为音色")
+    String model;
+
+    @Label("Outcome")
+    @Description("success、error、cancelled")
+    String outcome;
+
+    @Label("Error")
+    String error;
+
+    @Label("Prompt Tokens")
+    int promptTokens;
+
+    @Label("Completion Tokens")
+    int completionTokens;
+
+    @Label("Chunks")
+    @Description("流式调用收到的非空内容块数")
+    long chunks;
+
+    @Label("Time To First Chunk")
+    @Timespan(Timespan.NANOSECONDS)
+    long timeToFirstChunk;
+
+    @Label("Response Size")
+    @Description("响应内容长度（字符数）：ASR为识别文本，TTS为Base64音频")
+    long responseSize;
+
+    /**
+     * 以一次事件包裹上游调用，调用链可通过传入的事件补充Token、响应长度等属性
+     */
+    public static <T> Mono<T> trace(String operation, String model, Function<UpstreamCallEvent, Mono<T>> call) {
+        return Mono.defer(() -> {
+            UpstreamCallEvent event = begin(operation, model);
+            return call.apply(event)
+                    .doOnError(event::onError)
+                    .doFinally(event::end);
+        });
+    }
+
+    /**
+     * 以一次事件包裹流式上游调用，额外记录内容块数与首个内容块的到达时间
+     */
+    public static <T> Flux<T> traceMany(String operation, String model, Function<UpstreamCallEvent, Flux<T>> call) {
+        return Flux.defer(() -> {
+            UpstreamCallEvent event = begin(operation, model);
+            long startNanos = System.nanoTime();
+            return call.apply(event)
+                    .doOnNext(item -> {
+                        if (event.chunks++ == 0) {
+                            event.timeToFirstChunk = System.nanoTime() - startNanos;
+                        }
+                    })
+                    .doOnError(event::onError)
+                    .doFinally(event::end);
+        });
+    }
+
+    private static UpstreamCallEvent begin(String operation, String model) {
+        UpstreamCallEvent event = new UpstreamCallEvent();
+        event.operation = operation;
+        event.model = model;
+        event.begin();
+        return event;
+    }
+
+    public void setTokens(Integer promptTokens, Integer completionTokens) {
+        this.promptTokens = promptTokens != null ? promptTokens : 0;
+        this.completionTokens = completionTokens != null ? completionTokens : 0;
+    }
+
+    public void setResponseSize(long responseSize) {
+        this.responseSize = responseSize;
+    }
+
+    private void onError(Throwable error) {
+        this.error = error.getClass().getSimpleName();
+    }
+
+    private void end(SignalType signal) {
+        outcome = signal == SignalType.ON_ERROR ? "error"
+                : signal == SignalType.CANCEL ? "cancelled" : "success";
+        commit();
+    }
+}
@@ -0,0 +1,201 @@
+package com.hzau.common.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.metrics
+ * @className: MappedMetricsFile
+ * @author: zhuyuchen
+ * @description: 定长记录的内存映射时间序列文件。记录按时间顺序追加写入环形区域，写满后覆盖最早的记录，
+ *               文件大小在创建时确定；按时间范围查询时先二分定位起点再顺序扫描。
+ *               先写记录再更新文件头中的写入总数，进程崩溃最多丢失最后一条记录。调用方负责同步
+ * @date: 2026/10/20 上午2:10
+ */
+public class MappedMetricsFile implements Closeable {
+
+    private static final int MAGIC = 0x524D5453; // "RMTS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+
+    // 文件头字段偏移
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int WRITTEN_OFFSET = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private long written;
+
+    private MappedMetricsFile(FileChannel channel, MappedByteBuffer buffer, long capacity, long written) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.written = written;
+    }
+
+    /**
+     * 打开或创建文件。已有文件的格式或容量与参数不一致时重建（原有数据丢弃）
+     * @param capacity 最多保留的记录数
+     */
+    public static MappedMetricsFile open(Path path, long capacity) throws IOException {
+        long fileSize = HEADER_SIZE + capacity * RECORD_SIZE;
+        if (capacity <= 0 || fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("时间序列文件容量超出范围: " + capacity);
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        boolean existing = Files.exists(path) && Files.size(path) == fileSize;
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!existing) {
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            long written = 0;
+            if (existing && buffer.getInt(MAGIC_OFFSET) == MAGIC && buffer.getInt(VERSION_OFFSET) == VERSION
+                    && buffer.getInt(RECORD_SIZE_OFFSET) == RECORD_SIZE && buffer.getLong(CAPACITY_OFFSET) == capacity) {
+                written = Math.max(0, buffer.getLong(WRITTEN_OFFSET));
+            } else {
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                buffer.putLong(CAPACITY_OFFSET, capacity);
+                buffer.putLong(WRITTEN_OFFSET, 0);
+            }
+            return new MappedMetricsFile(channel, buffer, capacity, written);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 追加一条记录，时间戳应不早于最后一条记录
+     */
+    public void append(MetricPoint point) {
+        int offset = offset(written);
+        buffer.putLong(offset, point.getTimestamp());
+        buffer.putInt(offset + 8, point.getSeriesId());
+        buffer.putInt(offset + 12, point.getErrors());
+        buffer.putLong(offset + 16, point.getCount());
+        buffer.putDouble(offset + 24, point.getSum());
+        buffer.putDouble(offset + 32, point.getMin());
+        buffer.putDouble(offset + 40, point.getMax());
+        buffer.putDouble(offset + 48, point.getP95());
+        buffer.putDouble(offset + 56, point.getP99());
+        written++;
+        buffer.putLong(WRITTEN_OFFSET, written);
+    }
+
+    /**
+     * 将已写入的记录刷到磁盘
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * 查询时间范围内的记录
+     * @param from 起始时间（含）
+     * @param to 结束时间（含）
+     * @param series 序列过滤条件
+     */
+    public List<MetricPoint> range(long from, long to, IntPredicate series) {
+        List<MetricPoint> points = new ArrayList<>();
+        scan(from, to, series, points::add);
+        return points;
+    }
+
+    /**
+     * 按时间顺序遍历时间范围内的记录
+     */
+    public void scan(long from, long to, IntPredicate series, Consumer<MetricPoint> consumer) {
+        for (long i = firstAtOrAfter(from); i < written; i++) {
+            int offset = offset(i);
+            if (buffer.getLong(offset) > to) {
+                break;
+            }
+            if (series.test(buffer.getInt(offset + 8))) {
+                consumer.accept(read(offset));
+            }
+        }
+    }
+
+    /**
+     * 最后一条记录的时间戳，没有记录时返回 -1
+     */
+    public long lastTimestamp() {
+        return written > 0 ? buffer.getLong(offset(written - 1)) : -1;
+    }
+
+    /**
+     * 当前保留的记录数
+     */
+    public long size() {
+        return written - oldest();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private long oldest() {
+        return Math.max(0, written - capacity);
+    }
+
+    /**
+     * 二分查找第一条时间戳不早于 from 的记录的逻辑序号
+     */
+    private long firstAtOrAfter(long from) {
+        long low = oldest();
+        long high = written;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (buffer.getLong(offset(mid)) < from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int offset(long index) {
+        return HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+    }
+
+    private MetricPoint read(int offset) {
+        MetricPoint point = new MetricPoint();
+        point.setTimestamp(buffer.getLong(offset));
+        point.setSeriesId(buffer.getInt(offset + 8));
+        point.setErrors(buffer.getInt(offset + 12));
+        point.setCount(buffer.getLong(offset + 16));
+        point.setSum(buffer.getDouble(offset + 24));
+        point.setMin(buffer.getDouble(offset + 32));
+        point.setMax(buffer.getDouble(offset + 40));
+        point.setP95(buffer.getDouble(offset + 48));
+        point.setP99(buffer.getDouble(offset + 56));
+        return point;
+    }
+}
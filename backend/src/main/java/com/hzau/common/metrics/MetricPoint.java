@@ -0,0 +1,98 @@
+package com.hzau.common.metrics;
+
+import lombok.Data;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.metrics
+ * @className: MetricPoint
+ * @author: zhuyuchen
+ * @description: 时间序列中一个区间的聚合值。耗时序列为区间内的请求数、耗时总和与分布，
+ *               瞬时值序列每次采样计为一个样本；降采样时次数、总和、错误数相加，最小值、最大值取极值，
+ *               分位数无法精确合并，取各子区间的最大值作为上界
+ * @date: 2026/10/20 上午2:10
+ */
+@Data
+public class MetricPoint {
+
+    /**
+     * 区间起始时间（毫秒）
+     */
+    private long timestamp;
+    private int seriesId;
+    /**
+     * 区间内的错误数，仅接口耗时序列使用
+     */
+    private int errors;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    private double p95;
+    private double p99;
+
+    /**
+     * 瞬时值的一次采样
+     */
+    public static MetricPoint gauge(double value) {
+        MetricPoint point = new MetricPoint();
+        point.count = 1;
+        point.sum = value;
+        point.min = value;
+        point.max = value;
+        return point;
+    }
+
+    /**
+     * 一个区间内的耗时分布（毫秒）
+     * @param errors 区间内的错误数
+     */
+    public static MetricPoint latency(SlidingLatencyHistogram.LatencySnapshot snapshot, int errors) {
+        MetricPoint point = new MetricPoint();
+        point.errors = errors;
+        point.count = snapshot.getCount();
+        point.sum = snapshot.getMean() * snapshot.getCount();
+        point.min = snapshot.getMin();
+        point.max = snapshot.getMax();
+        point.p95 = snapshot.getP95();
+        point.p99 = snapshot.getP99();
+        return point;
+    }
+
+    /**
+     * 以本点为起点的降采样区间，本点的值作为第一个子区间
+     */
+    public MetricPoint rollup(long bucketTimestamp) {
+        MetricPoint point = new MetricPoint();
+        point.timestamp = bucketTimestamp;
+        point.seriesId = seriesId;
+        point.errors = errors;
+        point.count = count;
+        point.sum = sum;
+        point.min = min;
+        point.max = max;
+        point.p95 = p95;
+        point.p99 = p99;
+        return point;
+    }
+
+    /**
+     * 合并同一序列的一个子区间
+     */
+    public void merge(MetricPoint other) {
+        errors += other.errors;
+        if (other.count == 0) {
+            return;
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        sum += other.sum;
+        p95 = Math.max(p95, other.p95);
+        p99 = Math.max(p99, other.p99);
+    }
+
+    public double getAvg() {
+        return count > 0 ? sum / count : 0.0;
+    }
+}
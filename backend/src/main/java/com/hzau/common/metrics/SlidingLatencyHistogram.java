@@ -0,0 +1,158 @@
+package com.hzau.common.metrics;
+
+import lombok.Data;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedHistogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.metrics
+ * @className: SlidingLatencyHistogram
+ * @author: zhuyuchen
+ * @description: 基于 HdrHistogram 的滑动窗口延迟直方图。
+ *               每个记录线程写入自己的单写者 Recorder，记录路径没有跨线程争用、不加锁、不分配对象；
+ *               定期轮转时汇总各线程的区间直方图放入环形缓冲区，按需合并最近若干区间得到滑动窗口内的分位数，
+ *               同时累加一份全量直方图用于总体统计
+ * @date: 2026/10/19 下午10:20
+ */
+public class SlidingLatencyHistogram {
+
+    /**
+     * 有效数字位数，3位即千分之一的相对误差
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    // 各记录线程的单写者 Recorder，首次记录时注册，线程结束后在下一次轮转时移除
+    private final List<Writer> writers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Writer> localWriter = ThreadLocal.withInitial(this::registerWriter);
+
+    // 区间直方图使用自动扩展量程的紧凑（稀疏）格式，延迟分布集中时占用内存很小
+    private final Histogram[] intervals;
+    private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+    private final long intervalMillis;
+
+    private Histogram recycled;
+    private int cursor;
+    private int filled;
+
+    /**
+     * @param intervalMillis 区间长度（毫秒），与 {@link #rotate()} 的调用周期一致
+     * @param intervalCount 保留的区间数量，决定最长滑动窗口
+     */
+    public SlidingLatencyHistogram(long intervalMillis, int intervalCount) {
+        this.intervalMillis = intervalMillis;
+        this.intervals = new Histogram[intervalCount];
+    }
+
+    /**
+     * 记录一次耗时，负值按0记录
+     * @param millis 耗时（毫秒）
+     */
+    public void record(long millis) {
+        localWriter.get().recorder.recordValue(Math.max(0, millis));
+    }
+
+    private Writer registerWriter() {
+        Writer writer = new Writer(Thread.currentThread());
+        writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * 结束当前区间：汇总各线程的区间直方图放入环形缓冲区并累加到全量直方图，被挤出的旧区间留作下次复用
+     */
+    public synchronized void rotate() {
+        Histogram interval = recycled != null ? recycled : new PackedHistogram(SIGNIFICANT_DIGITS);
+        interval.reset();
+        for (Writer writer : writers) {
+            writer.recycled = writer.recorder.getIntervalHistogram(writer.recycled);
+            interval.add(writer.recycled);
+            Thread thread = writer.thread.get();
+            if (thread == null || !thread.isAlive()) {
+                // 线程已结束，其最后一个区间已汇总，不会再有新的记录
+                writers.remove(writer);
+            }
+        }
+        total.add(interval);
+        recycled = intervals[cursor];
+        intervals[cursor] = interval;
+        cursor = (cursor + 1) % intervals.length;
+        filled = Math.min(filled + 1, intervals.length);
+    }
+
+    /**
+     * 最近一段时间的延迟分布（不含尚未轮转的当前区间）
+     * @param windowMillis 窗口长度，超过保留的区间总长时按全部区间计算
+     */
+    public synchronized LatencySnapshot snapshot(long windowMillis) {
+        int count = (int) Math.min(filled, Math.max(1, windowMillis / intervalMillis));
+        Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+        for (int i = 1; i <= count; i++) {
+            merged.add(intervals[Math.floorMod(cursor - i, intervals.length)]);
+        }
+        return LatencySnapshot.of(merged);
+    }
+
+    /**
+     * 启动以来的全量延迟分布（不含尚未轮转的当前区间）
+     */
+    public synchronized LatencySnapshot snapshotTotal() {
+        return LatencySnapshot.of(total);
+    }
+
+    public int getWriterCount() {
+        return writers.size();
+    }
+
+    /**
+     * 单个记录线程的 Recorder
+     */
+    private static final class Writer {
+        final WeakReference<Thread> thread;
+        final SingleWriterRecorder recorder = new SingleWriterRecorder(SIGNIFICANT_DIGITS, true);
+        Histogram recycled;
+
+        Writer(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+        }
+    }
+
+    /**
+     * 延迟分布快照
+     */
+    @Data
+    public static class LatencySnapshot {
+        private long count;
+        private double mean;
+        private long min;
+        private long p50;
+        private long p90;
+        private long p95;
+        private long p99;
+        private long p999;
+        private long max;
+
+        static LatencySnapshot of(Histogram histogram) {
+            LatencySnapshot snapshot = new LatencySnapshot();
+            long count = histogram.getTotalCount();
+            snapshot.setCount(count);
+            if (count == 0) {
+                return snapshot;
+            }
+            snapshot.setMean(histogram.getMean());
+            snapshot.setMin(histogram.getMinValue());
+            snapshot.setP50(histogram.getValueAtPercentile(50));
+            snapshot.setP90(histogram.getValueAtPercentile(90));
+            snapshot.setP95(histogram.getValueAtPercentile(95));
+            snapshot.setP99(histogram.getValueAtPercentile(99));
+            snapshot.setP999(histogram.getValueAtPercentile(99.9));
+            snapshot.setMax(histogram.getMaxValue());
+            return snapshot;
+        }
+    }
+}
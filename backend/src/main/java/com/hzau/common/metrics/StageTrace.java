@@ -0,0 +1,131 @@
+package com.hzau.common.metrics;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.metrics
+ * @className: StageTrace
+ * @author: zhuyuchen
+ * @description: 单个请求的分阶段耗时记录，通过 Reactor Context 从业务入口传递到各服务。
+ *               每个阶段的耗时都写入分阶段直方图；被采样的请求额外保留完整的阶段明细，
+ *               用于生成 Server-Timing 响应头。未写入 Context 的调用链取到的是空实现，不产生任何开销
+ * @date: 2026/10/19 下午11:40
+ */
+public class StageTrace {
+
+    private static final String KEY = StageTrace.class.getName();
+
+    /**
+     * 不记录任何数据的空实现
+     */
+    private static final StageTrace NOOP = new StageTrace(null, false);
+
+    private final ObjLongConsumer<String> stageRecorder;
+    private final boolean sampled;
+    private final long startNanos = System.nanoTime();
+    // 仅被采样的请求保存阶段明细；同一请求的阶段按顺序执行，但可能跨线程，访问时加锁
+    private final List<Span> spans;
+
+    /**
+     * @param stageRecorder 阶段耗时（纳秒）的记录器，通常写入按阶段打标签的直方图
+     * @param sampled 是否保留阶段明细
+     */
+    public StageTrace(ObjLongConsumer<String> stageRecorder, boolean sampled) {
+        this.stageRecorder = stageRecorder;
+        this.sampled = sampled;
+        this.spans = sampled ? new ArrayList<>() : null;
+    }
+
+    /**
+     * 写入 Context 的变换，用于 contextWrite
+     */
+    public static Function<Context, Context> with(StageTrace trace) {
+        return context -> context.put(KEY, trace);
+    }
+
+    /**
+     * 从 Context 读取当前请求的记录，不存在时返回空实现
+     */
+    public static StageTrace from(ContextView context) {
+        return context.getOrDefault(KEY, NOOP);
+    }
+
+    /**
+     * 记录同步代码块的耗时：调用前取 {@code System.nanoTime()}，结束后传入
+     */
+    public void stop(String stage, long stageStartNanos) {
+        record(stage, System.nanoTime() - stageStartNanos);
+    }
+
+    /**
+     * 从订阅到终止（完成、出错或取消）的耗时记为一个阶段，在结果传给下游之前记录，保证阶段顺序与执行顺序一致
+     */
+    public <T> Mono<T> span(String stage, Mono<T> mono) {
+        if (this == NOOP) {
+            return mono;
+        }
+        return Mono.defer(() -> {
+            long stageStart = System.nanoTime();
+            AtomicBoolean stopped = new AtomicBoolean(false);
+            Runnable stopOnce = () -> {
+                if (stopped.compareAndSet(false, true)) {
+                    stop(stage, stageStart);
+                }
+            };
+            return mono.doOnTerminate(stopOnce).doOnCancel(stopOnce);
+        });
+    }
+
+    private void record(String stage, long nanos) {
+        if (stageRecorder == null) {
+            return;
+        }
+        stageRecorder.accept(stage, nanos);
+        if (sampled) {
+            synchronized (spans) {
+                spans.add(new Span(stage, nanos));
+            }
+        }
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * 生成 Server-Timing 响应头的值，最后附加从创建到当前的总耗时，例如
+     * {@code asr;dur=812.4, llm;dur=1530.0, total;dur=2790.2}
+     */
+    public String toServerTiming() {
+        StringBuilder sb = new StringBuilder();
+        if (spans != null) {
+            synchronized (spans) {
+                for (Span span : spans) {
+                    appendMetric(sb, span.stage(), span.nanos());
+                }
+            }
+        }
+        appendMetric(sb, "total", System.nanoTime() - startNanos);
+        return sb.toString();
+    }
+
+    private static void appendMetric(StringBuilder sb, String name, long nanos) {
+        if (!sb.isEmpty()) {
+            sb.append(", ");
+        }
+        sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0));
+    }
+
+    private record Span(String stage, long nanos) {
+    }
+}
@@ -0,0 +1,178 @@
+package com.hzau.common.metrics;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.metrics
+ * @className: StreamProbe
+ * @author: zhuyuchen
+ * @description: 单次流式对话的时间点探针，通过 Reactor Context 在控制器、业务服务与上游调用之间共享。
+ *               记录首个上游数据、首个内容Token的到达时间、首个内容帧写出的时间与Token间隔，流结束时统计吞吐量；
+ *               模型、角色分类等标签在业务服务中确定后通过 {@link #bind} 绑定记录器，绑定前的时间点先暂存
+ * @date: 2026/10/20 上午12:20
+ */
+public class StreamProbe {
+
+    private static final String KEY = StreamProbe.class.getName();
+
+    /**
+     * 请求属性名，响应包装据此在帧写出后回调 {@link #onFrameWritten}
+     */
+    public static final String EXCHANGE_ATTRIBUTE = KEY;
+
+    /**
+     * 不记录任何数据的空实现，未写入 Context 的调用链使用
+     */
+    private static final StreamProbe NOOP = new StreamProbe();
+
+    /**
+     * 流结束方式
+     */
+    public enum Outcome {
+        COMPLETED, ERROR, CANCELLED
+    }
+
+    /**
+     * 时间点的记录器，由监控服务按标签提供
+     */
+    public interface Recorder {
+        void firstByte(long nanos);
+        void firstToken(long nanos);
+        void firstFrame(long nanos);
+        void tokenGap(long nanos);
+        void finished(Outcome outcome, long tokens, long generationNanos);
+    }
+
+    private final long startNanos = System.nanoTime();
+    private volatile Recorder recorder;
+
+    // 各时间点（相对起点的纳秒数），0 表示尚未发生
+    private volatile long firstByteNanos;
+    private volatile long firstTokenNanos;
+    private volatile long firstFrameNanos;
+    private volatile long lastTokenNanos;
+    private volatile long tokenChunks;
+    private volatile long usageTokens;
+    private volatile boolean contentFrameEmitted;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    /**
+     * 写入 Context 的变换，用于 contextWrite
+     */
+    public static Function<Context, Context> with(StreamProbe probe) {
+        return context -> context.put(KEY, probe);
+    }
+
+    /**
+     * 从 Context 读取当前流的探针，不存在时返回空实现
+     */
+    public static StreamProbe from(ContextView context) {
+        return context.getOrDefault(KEY, NOOP);
+    }
+
+    /**
+     * 绑定带标签的记录器，并补记绑定前已经发生的时间点
+     */
+    public void bind(Recorder recorder) {
+        if (this == NOOP || this.recorder != null) {
+            return;
+        }
+        this.recorder = recorder;
+        if (firstByteNanos > 0) {
+            recorder.firstByte(firstByteNanos);
+        }
+        if (firstTokenNanos > 0) {
+            recorder.firstToken(firstTokenNanos);
+        }
+        if (firstFrameNanos > 0) {
+            recorder.firstFrame(firstFrameNanos);
+        }
+    }
+
+    /**
+     * 收到上游的一行数据，只记录第一次
+     */
+    public void onUpstreamData() {
+        if (firstByteNanos == 0 && this != NOOP) {
+            firstByteNanos = elapsed();
+            Recorder r = recorder;
+            if (r != null) {
+                r.firstByte(firstByteNanos);
+            }
+        }
+    }
+
+    /**
+     * 收到一个非空内容块。同一流的内容块按顺序到达，不会并发调用
+     */
+    public void onContentToken() {
+        if (this == NOOP) {
+            return;
+        }
+        long now = elapsed();
+        Recorder r = recorder;
+        if (firstTokenNanos == 0) {
+            firstTokenNanos = now;
+            if (r != null) {
+                r.firstToken(now);
+            }
+        } else if (r != null) {
+            r.tokenGap(now - lastTokenNanos);
+        }
+        lastTokenNanos = now;
+        tokenChunks++;
+    }
+
+    /**
+     * 一个内容帧交给响应写出。错误帧与结束标记不调用
+     */
+    public void onContentFrame() {
+        contentFrameEmitted = true;
+    }
+
+    /**
+     * 一个SSE帧已写出并刷新，只记录第一个内容帧。
+     * 内容帧总是排在错误帧与结束标记之前，已有内容帧交出时最先写完的就是内容帧；只有错误帧的流不记录首帧
+     */
+    public void onFrameWritten() {
+        if (firstFrameNanos == 0 && contentFrameEmitted && this != NOOP) {
+            firstFrameNanos = elapsed();
+            Recorder r = recorder;
+            if (r != null) {
+                r.firstFrame(firstFrameNanos);
+            }
+        }
+    }
+
+    /**
+     * 上游返回的实际生成Token数，优先于内容块数用于计算吞吐量
+     */
+    public void onUsage(Integer completionTokens) {
+        if (completionTokens != null && completionTokens > 0) {
+            usageTokens = completionTokens;
+        }
+    }
+
+    /**
+     * 流结束，只记录第一次
+     */
+    public void finish(Outcome outcome) {
+        if (this == NOOP || !finished.compareAndSet(false, true)) {
+            return;
+        }
+        Recorder r = recorder;
+        if (r != null) {
+            long tokens = usageTokens > 0 ? usageTokens : tokenChunks;
+            r.finished(outcome, tokens, firstTokenNanos > 0 ? lastTokenNanos - firstTokenNanos : 0);
+        }
+    }
+
+    private long elapsed() {
+        return Math.max(1, System.nanoTime() - startNanos);
+    }
+}
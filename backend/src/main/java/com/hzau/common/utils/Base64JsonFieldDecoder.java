@@ -0,0 +1,189 @@
+package com.hzau.common.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.utils
+ * @className: Base64JsonFieldDecoder
+ * @author: zhuyuchen
+ * @description: 从分块到达的JSON响应中流式解码一个顶层base64字符串字段，如 TTS 响应的 data 字段。
+ *               逐字节扫描JSON结构，遇到目标字段后边读边解码，内存占用与响应大小无关；
+ *               其他字段的值直接跳过。非线程安全，每个响应使用一个实例，按到达顺序调用 feed
+ * @date: 2026/10/20 上午4:30
+ */
+public class Base64JsonFieldDecoder {
+
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final int STAGING_SIZE = 8192;
+
+    private final byte[] fieldName;
+    private final Base64.Decoder decoder = Base64.getDecoder();
+
+    // JSON扫描状态
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;
+    private boolean readingKey;
+    private final byte[] key = new byte[MAX_KEY_LENGTH];
+    private int keyLength;
+    private boolean keyMatched;
+
+    // 目标字段状态
+    private boolean inField;
+    private boolean fieldFound;
+    private boolean fieldComplete;
+
+    // 待解码的base64字符，凑满4的倍数后解码
+    private final byte[] staging = new byte[STAGING_SIZE];
+    private int stagingLength;
+    private long decodedBytes;
+
+    public Base64JsonFieldDecoder(String fieldName) {
+        this.fieldName = fieldName.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 输入一块响应数据，返回本块中解码出的字节，可能为空
+     */
+    public ByteBuffer feed(ByteBuffer input) {
+        // 解码结果不超过输入的3/4，按输入大小一次分配
+        ByteBuffer output = ByteBuffer.allocate(input.remaining() * 3 / 4 + 3);
+        while (input.hasRemaining()) {
+            byte b = input.get();
+            if (!inField) {
+                scan(b);
+            } else if (escape) {
+                escape = false;
+                // 部分JSON编码器会把 / 转义为 \/，换行转义直接跳过
+                if (b == '/') {
+                    stage(b, output);
+                } else if (b != 'n' && b != 'r') {
+                    throw new IllegalStateException("base64字段中出现非法的转义字符: \\" + (char) b);
+                }
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                inField = false;
+                inString = false;
+                fieldComplete = true;
+            } else {
+                stage(b, output);
+            }
+        }
+        decode(false, output);
+        return output.flip();
+    }
+
+    /**
+     * 响应结束时调用，解码剩余字符
+     * @return 剩余的解码字节
+     * @throws IllegalStateException 未找到目标字段、字段为空或不完整
+     */
+    public ByteBuffer finish() {
+        if (!fieldFound) {
+            throw new IllegalStateException("响应中缺少字段: " + new String(fieldName, StandardCharsets.UTF_8));
+        }
+        if (!fieldComplete) {
+            throw new IllegalStateException("响应不完整，字段未结束: " + new String(fieldName, StandardCharsets.UTF_8));
+        }
+        ByteBuffer output = ByteBuffer.allocate(3);
+        decode(true, output);
+        if (decodedBytes == 0) {
+            throw new IllegalStateException("字段内容为空: " + new String(fieldName, StandardCharsets.UTF_8));
+        }
+        return output.flip();
+    }
+
+    /**
+     * 已解码的字节数
+     */
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * 在目标字段之外扫描JSON结构，记录顶层对象的键，遇到目标字段的字符串值时进入解码状态
+     */
+    private void scan(byte b) {
+        if (inString) {
+            if (escape) {
+                escape = false;
+                appendKey(b);
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                inString = false;
+                if (readingKey) {
+                    readingKey = false;
+                    keyMatched = keyLength == fieldName.length && Arrays.equals(key, 0, keyLength, fieldName, 0, keyLength);
+                }
+            } else {
+                appendKey(b);
+            }
+            return;
+        }
+        switch (b) {
+            case '{' -> {
+                depth++;
+                expectKey = depth == 1;
+            }
+            case '[' -> depth++;
+            case '}', ']' -> depth--;
+            case ',' -> expectKey = depth == 1;
+            case ':' -> expectKey = false;
+            case '"' -> {
+                inString = true;
+                if (depth == 1 && expectKey) {
+                    readingKey = true;
+                    keyLength = 0;
+                } else if (depth == 1 && keyMatched && !fieldFound) {
+                    inField = true;
+                    fieldFound = true;
+                }
+            }
+            default -> {
+                // 目标字段的值不是字符串（如 null）时，在 finish 中报告缺少字段
+            }
+        }
+        if (b != '"' && b != ' ' && b != '\n' && b != '\r' && b != '\t' && b != ':') {
+            keyMatched = false;
+        }
+    }
+
+    private void appendKey(byte b) {
+        if (readingKey && keyLength < MAX_KEY_LENGTH) {
+            key[keyLength++] = b;
+        }
+    }
+
+    private void stage(byte b, ByteBuffer output) {
+        staging[stagingLength++] = b;
+        if (stagingLength == STAGING_SIZE) {
+            decode(false, output);
+        }
+    }
+
+    /**
+     * 解码暂存区中完整的4字符组写入输出，不完整的部分保留到下次；最后一次解码包含末尾的填充
+     */
+    private void decode(boolean last, ByteBuffer output) {
+        int usable = last ? stagingLength : stagingLength - stagingLength % 4;
+        if (usable == 0) {
+            return;
+        }
+        try {
+            ByteBuffer decoded = decoder.decode(ByteBuffer.wrap(staging, 0, usable));
+            decodedBytes += decoded.remaining();
+            output.put(decoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("base64数据格式错误", e);
+        }
+        System.arraycopy(staging, usable, staging, 0, stagingLength - usable);
+        stagingLength -= usable;
+    }
+}
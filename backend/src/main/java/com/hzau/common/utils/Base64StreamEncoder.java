@@ -0,0 +1,53 @@
+package com.hzau.common.utils;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.utils
+ * @className: Base64StreamEncoder
+ * @author: zhuyuchen
+ * @description: 分块base64编码，用于把文件内容边读边写入JSON字符串字段，如内联音频的ASR请求。
+ *               每块只编码3字节整数倍的部分，余下的1~2字节留到下一块，拼接后的结果与一次性编码相同。
+ *               非线程安全，每个请求体使用一个实例，按读取顺序调用 encode，最后调用 finish
+ * @date: 2026/10/20 上午7:00
+ */
+public class Base64StreamEncoder {
+
+    private final Base64.Encoder encoder = Base64.getEncoder();
+    private final byte[] carry = new byte[2];
+    private int carryLength;
+
+    /**
+     * 编码一块数据
+     * @param data 数据
+     * @param length data 中的有效字节数
+     * @return 编码结果，可能为空数组
+     */
+    public byte[] encode(byte[] data, int length) {
+        int total = carryLength + length;
+        int whole = total - total % 3;
+        if (whole == 0) {
+            System.arraycopy(data, 0, carry, carryLength, length);
+            carryLength = total;
+            return new byte[0];
+        }
+        byte[] chunk = new byte[whole];
+        System.arraycopy(carry, 0, chunk, 0, carryLength);
+        int consumed = whole - carryLength;
+        System.arraycopy(data, 0, chunk, carryLength, consumed);
+        carryLength = length - consumed;
+        System.arraycopy(data, consumed, carry, 0, carryLength);
+        return encoder.encode(chunk);
+    }
+
+    /**
+     * 编码剩余的字节并补齐填充
+     */
+    public byte[] finish() {
+        byte[] tail = encoder.encode(Arrays.copyOf(carry, carryLength));
+        carryLength = 0;
+        return tail;
+    }
+}
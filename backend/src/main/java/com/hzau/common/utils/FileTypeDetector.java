@@ -0,0 +1,175 @@
+package com.hzau.common.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.utils
+ * @className: FileTypeDetector
+ * @author: zhuyuchen
+ * @description: 根据文件开头的魔数识别文件类型，不信任客户端提供的扩展名。
+ *               同一容器格式对应多个扩展名时（如 zip 与 docx、mp4 与 m4a），声明的扩展名属于该格式则沿用，否则取该格式的默认扩展名
+ * @date: 2026/10/20 上午6:00
+ */
+public final class FileTypeDetector {
+
+    /**
+     * 识别所需的文件头长度，tar 的标识位于第257字节
+     */
+    public static final int HEADER_SIZE = 512;
+
+    private static final Set<String> JPEG = Set.of("jpg", "jpeg");
+    private static final Set<String> ISO_MEDIA = Set.of("mp4", "m4a", "mov");
+    private static final Set<String> MATROSKA = Set.of("webm", "mkv");
+    private static final Set<String> ASF = Set.of("wmv", "wma");
+    private static final Set<String> ZIP = Set.of("zip", "docx", "xlsx", "pptx");
+    private static final Set<String> OLE = Set.of("doc", "xls", "ppt");
+
+    private FileTypeDetector() {
+    }
+
+    /**
+     * 识别文件类型
+     * @param header 文件开头的字节
+     * @param length header 中的有效字节数
+     * @param declaredExtension 客户端声明的扩展名（小写，不含点），可为空
+     * @return 识别出的扩展名（小写，不含点），无法识别时返回 null
+     */
+    public static String detect(byte[] header, int length, String declaredExtension) {
+        String declared = declaredExtension != null ? declaredExtension : "";
+
+        // 图片
+        if (startsWith(header, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "png";
+        }
+        if (startsWith(header, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return JPEG.contains(declared) ? declared : "jpg";
+        }
+        if (startsWith(header, length, 0, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (startsWith(header, length, 0, 'R', 'I', 'F', 'F')) {
+            if (startsWith(header, length, 8, 'W', 'E', 'B', 'P')) {
+                return "webp";
+            }
+            if (startsWith(header, length, 8, 'W', 'A', 'V', 'E')) {
+                return "wav";
+            }
+            if (startsWith(header, length, 8, 'A', 'V', 'I', ' ')) {
+                return "avi";
+            }
+            return null;
+        }
+        if (startsWith(header, length, 0, 'B', 'M')) {
+            return "bmp";
+        }
+
+        // 音频
+        if (startsWith(header, length, 0, 'I', 'D', '3')) {
+            return "mp3";
+        }
+        if (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0) {
+            // MPEG 帧同步：layer 位为 00 的是 AAC 的 ADTS 帧，其余为 MP3
+            return (header[1] & 0x06) == 0 ? "aac" : "mp3";
+        }
+        if (startsWith(header, length, 0, 'O', 'g', 'g', 'S')) {
+            return "ogg";
+        }
+        if (startsWith(header, length, 0, 'f', 'L', 'a', 'C')) {
+            return "flac";
+        }
+
+        // 视频与容器
+        if (startsWith(header, length, 4, 'f', 't', 'y', 'p')) {
+            if (ISO_MEDIA.contains(declared)) {
+                return declared;
+            }
+            if (startsWith(header, length, 8, 'M', '4', 'A', ' ')) {
+                return "m4a";
+            }
+            if (startsWith(header, length, 8, 'q', 't', ' ', ' ')) {
+                return "mov";
+            }
+            return "mp4";
+        }
+        if (startsWith(header, length, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            if (MATROSKA.contains(declared)) {
+                return declared;
+            }
+            return contains(header, length, "webm") ? "webm" : "mkv";
+        }
+        if (startsWith(header, length, 0, 0x30, 0x26, 0xB2, 0x75, 0x8E, 0x66, 0xCF, 0x11)) {
+            return ASF.contains(declared) ? declared : "wmv";
+        }
+        if (startsWith(header, length, 0, 'F', 'L', 'V')) {
+            return "flv";
+        }
+
+        // 文档与压缩包
+        if (startsWith(header, length, 0, '%', 'P', 'D', 'F')) {
+            return "pdf";
+        }
+        if (startsWith(header, length, 0, 'P', 'K', 0x03, 0x04)) {
+            return ZIP.contains(declared) ? declared : "zip";
+        }
+        if (startsWith(header, length, 0, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) {
+            return OLE.contains(declared) ? declared : "doc";
+        }
+        if (startsWith(header, length, 0, 'R', 'a', 'r', '!', 0x1A, 0x07)) {
+            return "rar";
+        }
+        if (startsWith(header, length, 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C)) {
+            return "7z";
+        }
+        if (startsWith(header, length, 0, 0x1F, 0x8B)) {
+            return "gz";
+        }
+        if (startsWith(header, length, 257, 'u', 's', 't', 'a', 'r')) {
+            return "tar";
+        }
+
+        // 没有魔数的文本格式
+        if (isText(header, length)) {
+            if (contains(header, length, "<svg")) {
+                return "svg";
+            }
+            if ("txt".equals(declared)) {
+                return "txt";
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(byte[] header, int length, String text) {
+        return new String(header, 0, length, StandardCharsets.ISO_8859_1).contains(text);
+    }
+
+    /**
+     * 不含 NUL 与除制表、换行外的控制字符时视为文本（UTF-8 多字节字符的字节均不小于0x80）
+     */
+    private static boolean isText(byte[] header, int length) {
+        for (int i = 0; i < length; i++) {
+            int b = header[i] & 0xFF;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                return false;
+            }
+            if (b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: AdminConfig
+ * @author: zhuyuchen
+ * @description: 管理员配置。/api/admin/** 下的运维接口（隔离舱调整、JFR记录等）只允许列表中的用户访问，
+ *               列表为空时所有用户都无权访问
+ * @date: 2026/10/20 上午8:00
+ */
+@Configuration
+@ConfigurationProperties(prefix = "admin")
+@Data
+public class AdminConfig {
+
+    /**
+     * 管理员用户名，登录后额外获得 ROLE_ADMIN 权限
+     */
+    private List<String> usernames = new ArrayList<>();
+
+    public boolean isAdmin(String username) {
+        return username != null && usernames.contains(username);
+    }
+}
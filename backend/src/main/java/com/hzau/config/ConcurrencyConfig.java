@@ -0,0 +1,198 @@
+package com.hzau.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: ConcurrencyConfig
+ * @author: zhuyuchen
+ * @description: 并发控制配置（全局/用户许可池、各上游能力隔离舱、自适应上限与集群模式）
+ * @date: 2026/10/19 下午5:02
+ */
+@Configuration
+@ConfigurationProperties(prefix = "concurrency")
+@Data
+public class ConcurrencyConfig {
+
+    /**
+     * 全局最大并发数
+     */
+    private int maxGlobal = 100;
+
+    /**
+     * 单用户最大并发数
+     */
+    private int maxUser = 5;
+
+    /**
+     * 全局许可池的等待队列长度
+     */
+    private int queueSize = 200;
+
+    /**
+     * 单用户等待队列长度
+     */
+    private int userQueueSize = 10;
+
+    /**
+     * 排队等待全局及用户许可的最长时间（毫秒）
+     */
+    private long acquireTimeoutMs = 10000;
+
+    /**
+     * 用户级许可池的空闲过期时间（毫秒），无进行中和排队请求且超过该时间未访问的用户被移除
+     */
+    private long userIdleTtlMs = 30 * 60 * 1000L;
+
+    /**
+     * 同时保存的用户级许可池数量上限，达到上限时淘汰最久未访问的空闲用户
+     */
+    private int maxTrackedUsers = 100000;
+
+    /**
+     * 各上游能力的隔离舱配置，key为隔离舱名称（chat、stream、asr、tts、opening-warmup）
+     */
+    private Map<String, BulkheadConfig> bulkheads = defaultBulkheads();
+
+    /**
+     * 上游调用自适应并发上限配置
+     */
+    private AdaptiveConfig adaptive = new AdaptiveConfig();
+
+    /**
+     * 集群级并发与配额控制（基于Redis）配置
+     */
+    private DistributedConfig distributed = new DistributedConfig();
+
+    private static Map<String, BulkheadConfig> defaultBulkheads() {
+        Map<String, BulkheadConfig> bulkheads = new LinkedHashMap<>();
+        bulkheads.put("chat", new BulkheadConfig(50, 200, 10000, true, new ArrayList<>(List.of("llm"))));
+        bulkheads.put("stream", new BulkheadConfig(30, 200, 10000, true, new ArrayList<>(List.of("streaming"))));
+        bulkheads.put("asr", new BulkheadConfig(20, 100, 10000, true, new ArrayList<>()));
+        bulkheads.put("tts", new BulkheadConfig(20, 100, 10000, true, new ArrayList<>()));
+        bulkheads.put("opening-warmup", new BulkheadConfig(4, 100, 60000, false, new ArrayList<>()));
+        return bulkheads;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkheadConfig {
+        /**
+         * 最大并发数，启用自适应时作为自适应上限的上界
+         */
+        private int maxConcurrent = 10;
+
+        /**
+         * 等待队列长度，队列满时立即拒绝
+         */
+        private int queueSize = 100;
+
+        /**
+         * 排队等待许可的最长时间（毫秒）
+         */
+        private long timeoutMs = 10000;
+
+        /**
+         * 是否根据上游往返时延自动调整并发上限
+         */
+        private boolean adaptive = true;
+
+        /**
+         * 请求类型别名，如 chat 隔离舱同时响应 "llm" 类型的请求
+         */
+        private List<String> aliases = new ArrayList<>();
+    }
+
+    @Data
+    public static class AdaptiveConfig {
+        /**
+         * 是否根据上游往返时延自动调整隔离舱上限（总开关，各隔离舱还可单独关闭）
+         */
+        private boolean enabled = true;
+
+        /**
+         * 自适应上限下界
+         */
+        private int minLimit = 2;
+
+        /**
+         * 新上限的平滑系数（0-1）
+         */
+        private double smoothing = 0.2;
+
+        /**
+         * RTT容忍倍数，当前RTT不超过无负载RTT的该倍数时不收缩上限
+         */
+        private double rttTolerance = 2.0;
+
+        /**
+         * 上游超时或过载时的回退比例
+         */
+        private double backoffRatio = 0.9;
+
+        /**
+         * 每隔多少个样本重置一次无负载RTT
+         */
+        private int probeSamples = 500;
+    }
+
+    @Data
+    public static class DistributedConfig {
+        /**
+         * 是否启用集群模式。启用后 max-global、max-user 与各隔离舱的 max-concurrent
+         * 同时作为所有实例共享的集群总上限，限流配额也在集群范围内统计
+         */
+        private boolean enabled = false;
+
+        /**
+         * Redis键前缀
+         */
+        private String keyPrefix = "ai-roleplay:concurrency:";
+
+        /**
+         * 节点ID，为空时自动生成
+         */
+        private String nodeId;
+
+        /**
+         * 节点租约有效期（毫秒），节点宕机超过该时间后其持有的许可会被其他节点回收
+         */
+        private long leaseTtlMs = 15000;
+
+        /**
+         * 心跳间隔（毫秒），用于续约并归还空闲许可
+         */
+        private long heartbeatIntervalMs = 5000;
+
+        /**
+         * 上游许可池每次向Redis批量租用的许可数，本地缓存未用完的许可以减少Redis访问
+         */
+        private int batchSize = 4;
+
+        /**
+         * 限流配额每次批量租用的最大数量
+         */
+        private int quotaBatchSize = 5;
+
+        /**
+         * 集群许可不足时的轮询间隔（毫秒）
+         */
+        private long pollIntervalMs = 50;
+
+        /**
+         * 单次Redis调用超时时间（毫秒），超时视为Redis不可用并退化为本地控制
+         */
+        private long redisTimeoutMs = 300;
+    }
+}
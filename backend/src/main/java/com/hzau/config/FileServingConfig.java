@@ -0,0 +1,48 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: FileServingConfig
+ * @author: zhuyuchen
+ * @description: /files/** 静态文件访问配置。文件名为内容哈希的文件内容不会变化，长期缓存；
+ *               其他文件每次使用前向服务端校验 ETag，未变化时返回304
+ * @date: 2026/10/20 上午5:00
+ */
+@Configuration
+@ConfigurationProperties(prefix = "file-serving")
+@Data
+public class FileServingConfig {
+
+    /**
+     * 文件所在的根目录，按顺序查找，与原静态资源处理器的 file:uploads/、file:data/ 一致
+     */
+    private List<String> locations = new ArrayList<>(List.of("uploads", "data"));
+
+    /**
+     * 内容寻址文件的缓存时间（秒），默认一年
+     */
+    private long immutableMaxAgeSeconds = 365L * 24 * 3600;
+
+    /**
+     * 不超过该大小（MB）的文件计算内容哈希作为 ETag，更大的文件使用大小与修改时间
+     */
+    private int maxHashSizeMb = 64;
+
+    /**
+     * 缓存的 ETag 数量上限，超出后清空重新计算
+     */
+    private int etagCacheSize = 10000;
+
+    /**
+     * 响应不支持零拷贝时读取文件的缓冲区大小（KB）
+     */
+    private int bufferSizeKb = 64;
+}
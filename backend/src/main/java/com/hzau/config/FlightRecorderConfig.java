@@ -0,0 +1,54 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: FlightRecorderConfig
+ * @author: zhuyuchen
+ * @description: JDK Flight Recorder 配置。常驻记录按时间与大小滚动，排查故障时通过管理接口转储到本地磁盘
+ * @date: 2026/10/20 上午1:30
+ */
+@Configuration
+@ConfigurationProperties(prefix = "flight-recorder")
+@Data
+public class FlightRecorderConfig {
+
+    /**
+     * 是否在启动时开启常驻记录
+     */
+    private boolean continuous = true;
+
+    /**
+     * JFR预置配置名称：default（开销约1%）或 profile（包含更多采样，开销约2%）
+     */
+    private String settings = "default";
+
+    /**
+     * 常驻记录保留的最长时间（分钟）
+     */
+    private int maxAgeMinutes = 30;
+
+    /**
+     * 常驻记录与单次记录占用磁盘的上限（MB）
+     */
+    private int maxSizeMb = 200;
+
+    /**
+     * 转储文件目录
+     */
+    private String dumpDir = "jfr";
+
+    /**
+     * 转储目录最多保留的文件数，超出时删除最早的文件
+     */
+    private int maxDumpFiles = 10;
+
+    /**
+     * 单次记录的最长时间（秒）
+     */
+    private int maxRecordingSeconds = 600;
+}
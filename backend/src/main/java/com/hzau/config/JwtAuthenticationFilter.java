@@ -15,6 +15,7 @@ import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * @projectName: AI-roleplay
@@ -31,6 +32,9 @@ public class JwtAuthenticationFilter implements WebFilter {
     @Autowired
     private JwtUtils jwtUtils;
 
+    @Autowired
+    private AdminConfig adminConfig;
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
@@ -59,12 +63,15 @@ public class JwtAuthenticationFilter implements WebFilter {
                     log.info("从token中解析出用户: {}, ID: {}", username, userId);
 
                     if (username != null) {
-                        // 创建认证对象，给用户基本的USER权限
+                        // 创建认证对象，给用户基本的USER权限，管理员列表中的用户额外获得ADMIN权限
+                        List<SimpleGrantedAuthority> authorities = adminConfig.isAdmin(username)
+                                ? Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))
+                                : Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"));
                         UsernamePasswordAuthenticationToken authentication =
                                 new UsernamePasswordAuthenticationToken(
                                     username, 
                                     null, 
-                                    Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"))
+                                    authorities
                                 );
 
                         // 将用户ID和用户名存储到exchange的attributes中，方便后续使用
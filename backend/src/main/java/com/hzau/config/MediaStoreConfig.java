@@ -0,0 +1,55 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: MediaStoreConfig
+ * @author: zhuyuchen
+ * @description: 内容寻址媒体存储配置。文件按内容 SHA-256 命名并按哈希前缀分目录存放，相同内容只存一份；
+ *               引用计数归零超过宽限期的文件由后台任务回收，总占用受磁盘配额限制
+ * @date: 2026/10/20 上午5:30
+ */
+@Configuration
+@ConfigurationProperties(prefix = "media-store")
+@Data
+public class MediaStoreConfig {
+
+    /**
+     * 存储目录，需位于 file-serving.locations 之一下，以便经 /files/** 访问
+     */
+    private String dir = "data/media";
+
+    /**
+     * 存储目录对应的访问路径
+     */
+    private String urlPath = "/files/media";
+
+    /**
+     * 磁盘配额（MB），占用达到配额后拒绝写入新文件
+     */
+    private long quotaMb = 10240;
+
+    /**
+     * 占用达到配额的该比例时提前触发一次回收
+     */
+    private double gcTriggerRatio = 0.9;
+
+    /**
+     * 引用计数归零后保留的时间（分钟），期间客户端仍可访问，重新引用后不会被回收
+     */
+    private long orphanGraceMinutes = 60;
+
+    /**
+     * 后台回收的执行间隔（毫秒）
+     */
+    private long gcIntervalMs = 600000;
+
+    /**
+     * 每批回收的对象数
+     */
+    private int gcBatchSize = 500;
+}
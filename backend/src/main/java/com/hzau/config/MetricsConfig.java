@@ -0,0 +1,39 @@
+package com.hzau.config;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: MetricsConfig
+ * @author: zhuyuchen
+ * @description: Micrometer 指标配置。所有内部指标注册到同一个 MeterRegistry，由 /actuator/prometheus 导出，
+ *               监控接口的响应也从同一份计量读取；这里统一限制标签基数，避免按用户等无界维度打标签
+ * @date: 2026/10/19 下午11:05
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * 业务接口指标允许的 route 标签取值数量上限，与 PerformanceMonitoringService 的统计上限一致
+     */
+    public static final int MAX_API_TAG_VALUES = 256;
+
+    /**
+     * 禁止使用的高基数标签，误加时直接去掉该标签而不是为每个用户生成一条时间序列
+     */
+    @Bean
+    public MeterFilter highCardinalityTagFilter() {
+        return MeterFilter.ignoreTags("userId", "user", "conversationId", "characterId", "ip");
+    }
+
+    /**
+     * 业务接口指标的 route 标签超出上限后，新取值的指标不再注册
+     */
+    @Bean
+    public MeterFilter apiTagLimitFilter() {
+        return MeterFilter.maximumAllowableTags("roleplay.api", "route", MAX_API_TAG_VALUES, MeterFilter.deny());
+    }
+}
@@ -0,0 +1,55 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: MetricsHistoryConfig
+ * @author: zhuyuchen
+ * @description: 监控历史存储配置。每分钟的数据写入本地内存映射文件，并降采样为15分钟、1小时粒度，
+ *               各粒度的文件大小 = 保留区间数 × 每区间记录数 × 64字节，创建后固定
+ * @date: 2026/10/20 上午2:10
+ */
+@Configuration
+@ConfigurationProperties(prefix = "metrics-history")
+@Data
+public class MetricsHistoryConfig {
+
+    /**
+     * 是否启用持久化的监控历史
+     */
+    private boolean enabled = true;
+
+    /**
+     * 数据文件目录，不能位于 /files/** 对外提供的目录（file-serving.locations）下
+     */
+    private String dir = "metrics";
+
+    /**
+     * 1分钟粒度的保留时间（小时）
+     */
+    private int minuteRetentionHours = 24;
+
+    /**
+     * 15分钟粒度的保留时间（天）
+     */
+    private int quarterRetentionDays = 7;
+
+    /**
+     * 1小时粒度的保留时间（天）
+     */
+    private int hourRetentionDays = 30;
+
+    /**
+     * 每个区间预留的记录数，即同时写入的序列数上限的估计值；实际序列更多时保留时间相应缩短
+     */
+    private int recordsPerInterval = 128;
+
+    /**
+     * 序列数量上限，超出后新序列不再记录
+     */
+    private int maxSeries = 1024;
+}
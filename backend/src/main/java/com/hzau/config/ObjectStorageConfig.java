@@ -0,0 +1,85 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: ObjectStorageConfig
+ * @author: zhuyuchen
+ * @description: 对象存储上传配置。七牛云的账号与空间仍在 qiniu.kodo 下配置，这里配置上传并发、分片与重试，
+ *               provider 为 local 时上传到本地目录代替七牛云，用于开发与测试
+ * @date: 2026/10/20 上午4:00
+ */
+@Configuration
+@ConfigurationProperties(prefix = "object-storage")
+@Data
+public class ObjectStorageConfig {
+
+    /**
+     * 存储实现：qiniu 或 local
+     */
+    private String provider = "qiniu";
+
+    /**
+     * 同时进行的上传数上限
+     */
+    private int maxConcurrentUploads = 8;
+
+    /**
+     * 每个上传线程上等待执行的任务数上限，超出后立即拒绝
+     */
+    private int maxQueuedUploads = 256;
+
+    /**
+     * 文件达到该大小（MB）时使用分片上传，否则使用表单上传
+     */
+    private int chunkedThresholdMb = 4;
+
+    /**
+     * 分片大小（MB），七牛云分片上传V2要求1~1024MB
+     */
+    private int chunkSizeMb = 4;
+
+    /**
+     * 单个文件并行上传的分片数
+     */
+    private int chunkConcurrency = 3;
+
+    /**
+     * 分片上传进度记录目录，文件上传中断后重试时跳过已上传的分片；不能位于 /files/** 对外提供的目录下
+     */
+    private String resumeRecordDir = "oss-resume";
+
+    /**
+     * 上传失败（网络错误或服务端5xx）后的重试次数
+     */
+    private int maxRetries = 2;
+
+    /**
+     * 首次重试的等待时间（毫秒），之后指数增长
+     */
+    private long retryBackoffMs = 200;
+
+    /**
+     * 上传凭证有效期（秒）
+     */
+    private long tokenExpireSeconds = 3600;
+
+    /**
+     * 上传凭证在过期前多少秒重新生成
+     */
+    private long tokenRefreshMarginSeconds = 300;
+
+    /**
+     * provider 为 local 时的存储目录，位于 /files/** 的静态资源目录下
+     */
+    private String localDir = "data/oss";
+
+    /**
+     * provider 为 local 时生成访问URL的前缀
+     */
+    private String localBaseUrl = "http://localhost:8080/files/oss";
+}
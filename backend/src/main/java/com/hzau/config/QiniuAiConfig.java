@@ -73,6 +73,22 @@ public class QiniuAiConfig {
          * ASR请求超时时间（秒）
          */
         private int timeout = 60;
+
+        /**
+         * 音频传递方式：url 先上传对象存储再把公网URL交给ASR；
+         * inline 将音频以base64流式写入ASR请求体，对象存储上传改为后台归档，需上游支持内联音频
+         */
+        private String mode = "url";
+
+        /**
+         * inline 模式下请求体中音频数据的字段名，位于 audio 对象内
+         */
+        private String inlineField = "data";
+
+        /**
+         * inline 模式允许内联的音频大小上限（MB），超过时仍走URL方式
+         */
+        private int inlineMaxSizeMb = 1;
     }
 
     @Data
@@ -1,83 +1,73 @@
 package com.hzau.config;
 
-import org.springframework.context.annotation.Bean;
+import com.hzau.common.concurrent.ExpiringMap;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @projectName: AI-roleplay
  * @package: com.hzau.config
  * @className: RateLimitConfig
  * @author: zhuyuchen
- * @description: TODO
+ * @description: 限流配置，按用户/IP 同时执行最多3个层级（如 秒/分钟/小时）的 GCRA 限流
  * @date: 2025/9/23 下午3:13
  */
 @Configuration
+@ConfigurationProperties(prefix = "rate-limit")
+@Data
 public class RateLimitConfig {
 
     /**
-     * 内存限流器，用于简单的限流控制
-     * Key: 用户ID或IP地址
-     * Value: 限流信息
+     * 限流层级，一次判定中全部检查，任一层级超限即拒绝
      */
-    @Bean
-    public ConcurrentMap<String, RateLimitInfo> rateLimitMap() {
-        return new ConcurrentHashMap<>();
-    }
+    private List<TierConfig> tiers = new ArrayList<>(List.of(
+            new TierConfig("second", 3, 1000L),
+            new TierConfig("minute", 30, 60 * 1000L),
+            new TierConfig("hour", 300, 60 * 60 * 1000L)));
 
     /**
-     * 限流信息类
+     * 推进过期时间轮、清理空闲限流记录的间隔（毫秒），新键插入时也会顺带推进
      */
-    public static class RateLimitInfo {
-        private long lastRequestTime;
-        private int requestCount;
-        private long windowStartTime;
-
-        public RateLimitInfo() {
-            long currentTime = System.currentTimeMillis();
-            // 将lastRequestTime初始化为足够早的时间，避免第一次请求被误判为间隔过短
-            this.lastRequestTime = currentTime - 10000; // 10秒前
-            this.requestCount = 0; // 初始计数为0，在incrementCount中会增加到1
-            this.windowStartTime = currentTime;
-        }
-
-        public long getLastRequestTime() {
-            return lastRequestTime;
-        }
+    private long cleanupIntervalMs = 60 * 1000L;
 
-        public void setLastRequestTime(long lastRequestTime) {
-            this.lastRequestTime = lastRequestTime;
-        }
-
-        public int getRequestCount() {
-            return requestCount;
-        }
+    /**
+     * 按用户、按IP分别保存的限流记录数上限
+     */
+    private int maxEntries = 200000;
 
-        public void setRequestCount(int requestCount) {
-            this.requestCount = requestCount;
-        }
+    /**
+     * 限流记录数达到上限时的溢出策略：EVICT_OLDEST 淘汰最久未访问的记录（该键的限流状态被重置），
+     * REJECT 拒绝新键的请求
+     */
+    private ExpiringMap.OverflowPolicy overflowPolicy = ExpiringMap.OverflowPolicy.EVICT_OLDEST;
 
-        public long getWindowStartTime() {
-            return windowStartTime;
-        }
+    /**
+     * 限流层级配置
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TierConfig {
 
-        public void setWindowStartTime(long windowStartTime) {
-            this.windowStartTime = windowStartTime;
-        }
+        /**
+         * 层级名称
+         */
+        private String name;
 
-        public void incrementCount() {
-            this.requestCount++;
-            this.lastRequestTime = System.currentTimeMillis();
-        }
+        /**
+         * 周期内允许的请求数，同时也是允许的突发请求数
+         */
+        private int limit;
 
-        public void resetWindow() {
-            long currentTime = System.currentTimeMillis();
-            this.requestCount = 0; // 重置为0，在incrementCount中会增加到1
-            this.windowStartTime = currentTime;
-            // 重置lastRequestTime为足够早的时间，避免重置后立即请求被误判为间隔过短
-            this.lastRequestTime = currentTime - 10000; // 10秒前
-        }
+        /**
+         * 周期（毫秒）
+         */
+        private long periodMs;
     }
 }
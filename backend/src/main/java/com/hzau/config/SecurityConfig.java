@@ -69,6 +69,8 @@ public class SecurityConfig {
                         .pathMatchers("/actuator/**").permitAll()
                         .pathMatchers("/error").permitAll()
                         .pathMatchers("/files/**").permitAll()  // 静态文件访问
+                        // 运维管理接口只允许管理员访问
+                        .pathMatchers("/api/admin/**").hasRole("ADMIN")
                         // API接口需要认证
                         .pathMatchers("/api/files/**").authenticated()
                         // 其他所有请求都需要认证
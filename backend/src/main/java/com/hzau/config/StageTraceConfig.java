@@ -0,0 +1,30 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: StageTraceConfig
+ * @author: zhuyuchen
+ * @description: 请求分阶段耗时记录配置。所有请求的阶段耗时都计入直方图，
+ *               只有被采样的请求在响应中返回 Server-Timing 明细
+ * @date: 2026/10/19 下午11:40
+ */
+@Configuration
+@ConfigurationProperties(prefix = "stage-trace")
+@Data
+public class StageTraceConfig {
+
+    /**
+     * 采样比例（0~1），被采样的请求返回 Server-Timing 响应头
+     */
+    private double sampleRate = 0.01;
+
+    /**
+     * 携带该请求头的请求总是被采样，便于排查单个请求
+     */
+    private String forceHeader = "X-Server-Timing";
+}
@@ -0,0 +1,59 @@
+package com.hzau.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.config
+ * @className: TokenQuotaConfig
+ * @author: zhuyuchen
+ * @description: 大模型Token额度配置，按用户和按角色分别限制每分钟、每天的Token用量，小于等于0表示不限制
+ * @date: 2026/10/19 下午9:10
+ */
+@Configuration
+@ConfigurationProperties(prefix = "token-quota")
+@Data
+public class TokenQuotaConfig {
+
+    /**
+     * 是否启用Token额度控制，关闭时仍然统计用量
+     */
+    private boolean enabled = true;
+
+    /**
+     * 单用户每分钟Token上限
+     */
+    private long userPerMinute = 20000;
+
+    /**
+     * 单用户每天Token上限
+     */
+    private long userPerDay = 500000;
+
+    /**
+     * 单角色每分钟Token上限（所有用户合计）
+     */
+    private long characterPerMinute = 200000;
+
+    /**
+     * 单角色每天Token上限（所有用户合计）
+     */
+    private long characterPerDay = 5000000;
+
+    /**
+     * 调用前为回复预留的Token数，实际用量返回后多退少补；不超过请求的 max_tokens
+     */
+    private int completionReserveTokens = 500;
+
+    /**
+     * 本地计数刷写到Redis的间隔（毫秒）
+     */
+    private long flushIntervalMs = 5000;
+
+    /**
+     * Redis键前缀
+     */
+    private String keyPrefix = "ai-roleplay:token-quota:";
+}
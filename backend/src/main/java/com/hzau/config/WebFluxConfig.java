@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.http.codec.multipart.DefaultPartHttpMessageReader;
 import org.springframework.http.codec.multipart.MultipartHttpMessageReader;
+import org.springframework.http.codec.multipart.PartEventHttpMessageReader;
 import org.springframework.web.reactive.config.EnableWebFlux;
 import org.springframework.web.reactive.config.ResourceHandlerRegistry;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
@@ -32,11 +33,8 @@ public class WebFluxConfig implements WebFluxConfigurer {
         registry.addResourceHandler("/webjars/**")
                 .addResourceLocations("classpath:/META-INF/resources/webjars/")
                 .resourceChain(false);
-        
-        // 配置文件访问静态资源处理器
-        registry.addResourceHandler("/files/**")
-                .addResourceLocations("file:uploads/", "file:data/")
-                .resourceChain(false);
+
+        // /files/** 由 FileServingController 处理（零拷贝、Range、ETag）
     }
 
     @Override
@@ -50,6 +48,11 @@ public class WebFluxConfig implements WebFluxConfigurer {
         MultipartHttpMessageReader multipartReader = new MultipartHttpMessageReader(partReader);
 
         configurer.defaultCodecs().multipartReader(multipartReader);
+
+        // 批量上传以 PartEvent 流式读取各文件；自定义 multipartReader 后默认的 PartEvent 读取器不再注册，需单独添加
+        PartEventHttpMessageReader partEventReader = new PartEventHttpMessageReader();
+        partEventReader.setMaxParts(1024);
+        configurer.customCodecs().register(partEventReader);
         configurer.defaultCodecs().maxInMemorySize(100 * 1024 * 1024); // 100MB
         
         // 启用multipart支持
@@ -0,0 +1,71 @@
+package com.hzau.controller;
+
+import com.hzau.common.Result;
+import com.hzau.common.constants.ErrorCode;
+import com.hzau.service.ConcurrentControlService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.controller
+ * @className: ConcurrencyAdminController
+ * @author: zhuyuchen
+ * @description: 并发控制管理接口，用于查看和运行时调整各上游能力隔离舱，仅管理员可访问（admin.usernames）
+ * @date: 2026/10/19 下午7:55
+ */
+@RestController
+@RequestMapping("/api/admin/concurrency")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "并发控制管理", description = "隔离舱查看与运行时调整接口")
+public class ConcurrencyAdminController {
+
+    private final ConcurrentControlService concurrentControlService;
+
+    /**
+     * 获取所有隔离舱状态
+     */
+    @GetMapping("/bulkheads")
+    @Operation(summary = "获取隔离舱状态", description = "获取chat、stream、asr、tts、opening-warmup等隔离舱的容量、排队与拒绝统计")
+    public Result<Map<String, ConcurrentControlService.BulkheadStats>> getBulkheads() {
+        try {
+            return Result.success(concurrentControlService.getBulkheadStats());
+        } catch (Exception e) {
+            log.error("获取隔离舱状态失败", e);
+            return Result.fail(ErrorCode.ERROR500.getCode(), "获取隔离舱状态失败");
+        }
+    }
+
+    /**
+     * 调整隔离舱参数
+     */
+    @PutMapping("/bulkheads/{name}")
+    @Operation(summary = "调整隔离舱参数", description = "运行时调整隔离舱的最大并发数、等待队列长度和排队超时，未传的参数保持不变")
+    public Result<ConcurrentControlService.BulkheadStats> updateBulkhead(
+            @Parameter(description = "隔离舱名称或别名", required = true)
+            @PathVariable String name,
+            @Parameter(description = "最大并发数")
+            @RequestParam(required = false) Integer maxConcurrent,
+            @Parameter(description = "等待队列长度")
+            @RequestParam(required = false) Integer queueSize,
+            @Parameter(description = "排队超时（毫秒）")
+            @RequestParam(required = false) Long timeoutMs) {
+        try {
+            log.info("调整隔离舱参数, name: {}, maxConcurrent: {}, queueSize: {}, timeoutMs: {}",
+                    name, maxConcurrent, queueSize, timeoutMs);
+            return Result.success(concurrentControlService.updateBulkhead(name, maxConcurrent, queueSize, timeoutMs));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(ErrorCode.ERROR400.getCode(), e.getMessage());
+        } catch (Exception e) {
+            log.error("调整隔离舱参数失败, name: {}", name, e);
+            return Result.fail(ErrorCode.ERROR500.getCode(), "调整隔离舱参数失败");
+        }
+    }
+}
@@ -2,14 +2,15 @@ package com.hzau.controller;
 
 import com.hzau.common.Result;
 import com.hzau.common.constants.ErrorCode;
+import com.hzau.common.metrics.StageTrace;
+import com.hzau.common.metrics.StreamProbe;
 import com.hzau.entity.Conversation;
 import com.hzau.entity.Message;
 import com.hzau.service.AiRoleplayService;
 import com.hzau.service.ConversationService;
 import com.hzau.service.ConversationCacheService;
-import com.hzau.service.FileStorageService;
 import com.hzau.service.PerformanceMonitoringService;
-import com.hzau.service.QiniuUploadService;
+import com.hzau.service.VoiceUploadService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -18,12 +19,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -46,8 +45,7 @@ public class ConversationController {
     private final ConversationService conversationService;
     private final ConversationCacheService conversationCacheService;
     private final PerformanceMonitoringService monitoringService;
-    private final FileStorageService fileStorageService;
-    private final QiniuUploadService qiniuUploadService;
+    private final VoiceUploadService voiceUploadService;
 
     /**
      * 获取所有角色的开场白语音URL
@@ -106,9 +104,6 @@ public class ConversationController {
             @Parameter(description = "对话标题")
             @RequestParam(required = true) String title) {
         
-        String callId = monitoringService.startApiCall("createConversation", userId.toString());
-        long startTime = System.currentTimeMillis();
-        
         try {
             log.info("创建新对话, userId: {}, characterId: {}, title: {}", userId, characterId, title);
             
@@ -124,10 +119,6 @@ public class ConversationController {
                         "opening", result.getOpening()
                 );
                 
-                // 记录成功的监控信息
-                long responseTime = System.currentTimeMillis() - startTime;
-                monitoringService.endApiCall("createConversation", callId, responseTime, true);
-                
                 return Result.success(response);
             });
             
@@ -136,17 +127,11 @@ public class ConversationController {
             return successHandler.onErrorResume(error -> {
                 log.error("创建对话服务调用失败", error);
 
-                // 记录失败的监控信息
-                long responseTime = System.currentTimeMillis() - startTime;
-                monitoringService.endApiCall("createConversation", callId, responseTime, false);
-
                 return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "创建对话失败"));
             });
             
         } catch (Exception e) {
             log.error("创建新对话失败, userId: {}, characterId: {}", userId, characterId, e);
-            long responseTime = System.currentTimeMillis() - startTime;
-            monitoringService.endApiCall("createConversation", callId, responseTime, false);
             return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "创建对话失败"));
         }
     }
@@ -172,10 +157,12 @@ public class ConversationController {
             @Parameter(description = "用户消息", required = true)
             @RequestParam String message,
             @Parameter(description = "技能触发标识", required = false)
-            @RequestParam(value = "skill", required = false) String skill) {
+            @RequestParam(value = "skill", required = false) String skill,
+            ServerWebExchange exchange) {
         
-        String callId = monitoringService.startApiCall("sendTextMessage", userId.toString());
-        long startTime = System.currentTimeMillis();
+        // 首字节、首Token、首帧等时间点经 Reactor Context 在各层之间共享；首帧在响应包装中于写出后记录
+        StreamProbe probe = new StreamProbe();
+        exchange.getAttributes().put(StreamProbe.EXCHANGE_ATTRIBUTE, probe);
         
         try {
             log.info("发送文本消息, conversationId: {}, userId: {}, message: {}, skill: {}",
@@ -190,34 +177,32 @@ public class ConversationController {
             Flux<String> messageStreamFlux = aiRoleplayService.sendMessageStream(userId, conversationId, message, skill);
             
             // 格式化流式数据
-            Flux<String> formattedStreamFlux = messageStreamFlux.map(chunk -> "data: " + chunk + "\n\n");
+            Flux<String> formattedStreamFlux = messageStreamFlux.map(chunk -> "data: " + chunk + "\n\n")
+                    .doOnNext(frame -> probe.onContentFrame());
             
             // 添加结束标记
             Flux<String> streamWithEndMarker = formattedStreamFlux.concatWith(Flux.just("data: [DONE]\n\n"));
             
             // 处理流式响应完成事件
             Flux<String> streamWithCompleteHandler = streamWithEndMarker.doOnComplete(() -> {
-                // 记录成功的监控信息
-                long responseTime = System.currentTimeMillis() - startTime;
-                monitoringService.endApiCall("sendTextMessage", callId, responseTime, true);
+                probe.finish(StreamProbe.Outcome.COMPLETED);
             });
             
             // 处理流式响应错误事件
-            return streamWithCompleteHandler.onErrorResume(error -> {
+            Flux<String> streamWithErrorHandler = streamWithCompleteHandler.onErrorResume(error -> {
                 log.error("流式文本消息发送失败", error);
-                
-                // 记录失败的监控信息
-                long responseTime = System.currentTimeMillis() - startTime;
-                monitoringService.endApiCall("sendTextMessage", callId, responseTime, false);
+                probe.finish(StreamProbe.Outcome.ERROR);
                 
                 return Flux.just("data: " + "{\"error\":\"发送消息失败\"}\n\n");
             });
             
+            // 客户端断开时记为取消
+            return streamWithErrorHandler
+                    .doOnCancel(() -> probe.finish(StreamProbe.Outcome.CANCELLED))
+                    .contextWrite(StreamProbe.with(probe));
+            
         } catch (Exception e) {
             log.error("发送文本消息失败, conversationId: {}", conversationId, e);
-            long responseTime = System.currentTimeMillis() - startTime;
-            monitoringService.endApiCall("sendTextMessage", callId, responseTime, false);
-            
             return Flux.just("data: " + "{\"error\":\"发送消息失败\"}\n\n");
         }
     }
@@ -246,10 +231,11 @@ public class ConversationController {
             @Parameter(description = "音频格式", required = false)
             @RequestPart(value = "audioFormat", required = false) String audioFormat,
             @Parameter(description = "技能触发标识", required = false)
-            @RequestPart(value = "skill", required = false) String skill) {
+            @RequestPart(value = "skill", required = false) String skill,
+            ServerWebExchange exchange) {
         
-        String callId = monitoringService.startApiCall("sendVoiceMessage", userId.toString());
-        long startTime = System.currentTimeMillis();
+        // 各阶段耗时经 Reactor Context 传递到业务服务，被采样的请求在响应头中返回明细
+        StageTrace trace = monitoringService.newStageTrace("voice", exchange.getRequest());
 
         return audioFileMono.flatMap(audioFile -> {
             try {
@@ -261,78 +247,52 @@ public class ConversationController {
                     return Mono.just(Result.fail(ErrorCode.ERROR400.getCode(), "语音文件不能为空"));
                 }
                 
-                // 创建临时文件来保存上传的文件内容
-                Path tempFile = Files.createTempFile("audio_", "_" + audioFile.filename());
-                
-                // 将FilePart内容写入临时文件并获取字节数组
-                return audioFile.transferTo(tempFile)
-                    .then(Mono.fromCallable(() -> {
-                        byte[] audioBytes = Files.readAllBytes(tempFile);
-                        String originalFilename = audioFile.filename();
-                        
-                        // 清理临时文件
-                        Files.deleteIfExists(tempFile);
-                        
-                        return new Object[]{audioBytes, originalFilename};
-                    }))
-                    .flatMap(fileData -> {
-                        byte[] audioBytes = (byte[]) ((Object[]) fileData)[0];
-                        String originalFilename = (String) ((Object[]) fileData)[1];
-                        
-                        try {
-                            // 1. 上传到七牛云OSS，获取url2（用于语音转文本API调用）
-                            String ossAudioUrl = qiniuUploadService.uploadBytes(audioBytes, originalFilename);
-                            log.info("语音文件上传到OSS成功, ossUrl: {}", ossAudioUrl);
-                            
-                            // 2. 保存到本地服务器，获取url1（用于数据库存储）
-                            String localAudioUrl = fileStorageService.saveAudioBytes(audioBytes, originalFilename);
-                            log.info("语音文件保存到本地成功, localUrl: {}", localAudioUrl);
-                            
-                            // 3. 调用语音消息服务，传入本地URL和OSS URL
-                            Integer userIdInt = Integer.parseInt(userId);
-                            Mono<AiRoleplayService.VoiceChatResponse> voiceMessageMono = 
-                                aiRoleplayService.sendVoiceMessage(userIdInt, conversationId, localAudioUrl, ossAudioUrl, audioFormat, skill);
-                            
-                            // 处理语音消息成功响应
-                            Mono<Result<Object>> voiceSuccessHandler = voiceMessageMono.map(response -> {
-                                // 记录成功的监控信息
-                                long responseTime = System.currentTimeMillis() - startTime;
-                                monitoringService.endApiCall("sendVoiceMessage", callId, responseTime, true);
-                                
-                                return Result.success(response);
-                            });
-                            
-                            // 处理语音消息错误响应
-                            return voiceSuccessHandler.onErrorResume(error -> {
-                                log.error("语音消息处理失败", error);
-                                
-                                // 记录失败的监控信息
-                                long responseTime = System.currentTimeMillis() - startTime;
-                                monitoringService.endApiCall("sendVoiceMessage", callId, responseTime, false);
-                                
-                                return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音消息处理失败"));
-                            });
-                            
-                        } catch (Exception e) {
-                            log.error("语音文件处理失败", e);
-                            long responseTime = System.currentTimeMillis() - startTime;
-                            monitoringService.endApiCall("sendVoiceMessage", callId, responseTime, false);
-                            return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音文件处理失败: " + e.getMessage()));
-                        }
+                // 1. 上传的数据块写入本地文件后上传到七牛云OSS，得到url1（用于数据库存储）与url2（用于语音转文本API调用）
+                //    ASR使用内联音频时只等待本地保存，url2为空，OSS上传在后台归档
+                return trace.span("store_upload", voiceUploadService.storeForAsr(audioFile))
+                    .flatMap(upload -> {
+                        log.info("语音文件保存成功, localUrl: {}, ossUrl: {}",
+                                upload.getLocalUrl(), upload.getOssUrl());
+
+                        // 2. 调用语音消息服务，传入本地URL和OSS URL
+                        Integer userIdInt = Integer.parseInt(userId);
+                        Mono<AiRoleplayService.VoiceChatResponse> voiceMessageMono =
+                            aiRoleplayService.sendVoiceMessage(userIdInt, conversationId, upload.getLocalUrl(),
+                                    upload.getOssUrl(), audioFormat, skill);
+
+                        // 处理语音消息成功响应
+                        Mono<Result<Object>> voiceSuccessHandler = voiceMessageMono.map(Result::success);
+
+                        // 处理语音消息错误响应
+                        return voiceSuccessHandler.onErrorResume(error -> {
+                            log.error("语音消息处理失败", error);
+
+                            return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音消息处理失败"));
+                        });
+                    })
+                    .onErrorResume(error -> {
+                        log.error("语音文件处理失败", error);
+                        return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音文件处理失败: " + error.getMessage()));
                     });
-                    
-            } catch (IOException e) {
-                log.error("创建临时文件失败", e);
-                long responseTime = System.currentTimeMillis() - startTime;
-                monitoringService.endApiCall("sendVoiceMessage", callId, responseTime, false);
-                return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "文件处理失败: " + e.getMessage()));
+
+            } catch (Exception e) {
+                log.error("语音文件处理失败", e);
+                return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音文件处理失败: " + e.getMessage()));
             }
         }).onErrorResume(error -> {
             log.error("语音文件上传处理失败", error);
-            long responseTime = System.currentTimeMillis() - startTime;
-            monitoringService.endApiCall("sendVoiceMessage", callId, responseTime, false);
             return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "语音文件上传失败"));
-        });
+        }).doOnNext(result -> writeServerTiming(exchange, trace))
+          .contextWrite(StageTrace.with(trace));
+    }
+
+    /**
+     * 被采样的请求在响应头中返回各阶段耗时，响应体写出前调用
+     */
+    private void writeServerTiming(ServerWebExchange exchange, StageTrace trace) {
+        if (trace.isSampled() && !exchange.getResponse().isCommitted()) {
+            exchange.getResponse().getHeaders().add("Server-Timing", trace.toServerTiming());
+        }
     }
 
     /**
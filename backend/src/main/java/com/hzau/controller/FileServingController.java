@@ -0,0 +1,319 @@
+package com.hzau.controller;
+
+import com.hzau.config.FileServingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.controller
+ * @className: FileServingController
+ * @author: zhuyuchen
+ * @description: /files/** 静态文件访问，替代原来的静态资源处理器。文件内容直接从文件区间发送到连接（零拷贝），
+ *               支持 Range 请求（206）用于音频拖动播放，以内容 SHA-256 作为强 ETag 并处理条件请求（304）；
+ *               文件名即内容哈希的文件长期缓存，其他文件每次使用前校验
+ * @date: 2026/10/20 上午5:00
+ */
+@RestController
+@Slf4j
+@Tag(name = "文件访问接口", description = "本地存储文件的下载与播放")
+public class FileServingController {
+
+    private static final String FILES_PREFIX = "/files/";
+
+    /**
+     * 内容寻址文件名：64位小写十六进制的 SHA-256，可带扩展名
+     */
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("^[0-9a-f]{64}(\\.[A-Za-z0-9]+)?$");
+
+    private final FileServingConfig config;
+    private final MeterRegistry meterRegistry;
+    private final List<Path> roots;
+    private final long maxHashSize;
+    private final int bufferSize;
+    private final CacheControl immutableCacheControl;
+    private final Map<Path, FileTag> etagCache = new ConcurrentHashMap<>();
+
+    public FileServingController(FileServingConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        this.roots = config.getLocations().stream()
+                .map(location -> Paths.get(location).toAbsolutePath().normalize())
+                .toList();
+        this.maxHashSize = (long) config.getMaxHashSizeMb() * 1024 * 1024;
+        this.bufferSize = config.getBufferSizeKb() * 1024;
+        this.immutableCacheControl = CacheControl.maxAge(Duration.ofSeconds(config.getImmutableMaxAgeSeconds()))
+                .cachePublic()
+                .immutable();
+    }
+
+    @GetMapping(FILES_PREFIX + "**")
+    @Operation(summary = "访问文件", description = "支持 Range、If-None-Match、If-Modified-Since 与 If-Range 请求头")
+    public Mono<Void> serveFile(ServerWebExchange exchange) {
+        String relativePath = extractRelativePath(exchange.getRequest());
+        if (relativePath == null) {
+            return complete(exchange, HttpStatus.NOT_FOUND);
+        }
+        // 查找文件与计算哈希涉及阻塞的文件读取
+        return Mono.fromCallable(() -> Optional.ofNullable(resolve(relativePath)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(file -> file.isPresent()
+                        ? write(exchange, file.get())
+                        : complete(exchange, HttpStatus.NOT_FOUND));
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, ServedFile file) {
+        ServerHttpRequest request = exchange.getRequest();
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setContentType(MediaTypeFactory.getMediaType(file.path().getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM));
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 设置了 Cache-Control 后，Spring Security 不再写入默认的 no-store
+        headers.setCacheControl(file.immutable() ? immutableCacheControl : CacheControl.noCache().cachePublic());
+
+        // 同时写入 ETag 与 Last-Modified；命中 If-None-Match / If-Modified-Since 时状态码为304
+        if (exchange.checkNotModified(file.etag(), file.lastModified())) {
+            return complete(exchange, response.getStatusCode());
+        }
+
+        long position = 0;
+        long count = file.size();
+        HttpRange range = selectRange(request, file);
+        if (range != null) {
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(file.size());
+                end = range.getRangeEnd(file.size());
+            } catch (IllegalArgumentException e) {
+                start = file.size();
+                end = -1;
+            }
+            if (start >= file.size() || end < start) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size());
+                return complete(exchange, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            position = start;
+            count = end - start + 1;
+            response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + file.size());
+        }
+        headers.setContentLength(count);
+
+        HttpStatusCode status = response.getStatusCode() != null ? response.getStatusCode() : HttpStatus.OK;
+        if (request.getMethod() == HttpMethod.HEAD || count == 0) {
+            return complete(exchange, status);
+        }
+        served(status);
+        if (response instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+            transferred("zero_copy", count);
+            return zeroCopy.writeWith(file.path(), position, count);
+        }
+        // 响应被包装为不支持零拷贝的类型时，分块读取文件区间
+        transferred("buffered", count);
+        Path path = file.path();
+        return response.writeWith(DataBufferUtils.takeUntilByteCount(
+                DataBufferUtils.readAsynchronousFileChannel(
+                        () -> AsynchronousFileChannel.open(path, StandardOpenOption.READ),
+                        position, response.bufferFactory(), bufferSize),
+                count));
+    }
+
+    /**
+     * 选择要返回的区间，返回 null 表示返回完整文件。多区间请求与 If-Range 不匹配时返回完整文件，
+     * Range 格式错误时按规范忽略
+     */
+    private HttpRange selectRange(ServerHttpRequest request, ServedFile file) {
+        if (request.getHeaders().getFirst(HttpHeaders.RANGE) == null) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = request.getHeaders().getRange();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+        String ifRange = request.getHeaders().getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRangeMatches(ifRange, file)) {
+            return null;
+        }
+        return ranges.get(0);
+    }
+
+    private boolean ifRangeMatches(String ifRange, ServedFile file) {
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(file.etag());
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == file.lastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 取出 /files/ 之后的相对路径并解码，拒绝空路径、反斜杠与隐藏文件（如媒体存储的 .staging 暂存目录）
+     */
+    private String extractRelativePath(ServerHttpRequest request) {
+        String path = request.getPath().pathWithinApplication().value();
+        if (!path.startsWith(FILES_PREFIX)) {
+            return null;
+        }
+        String relativePath = UriUtils.decode(path.substring(FILES_PREFIX.length()), StandardCharsets.UTF_8);
+        if (relativePath.isEmpty() || relativePath.indexOf('\\') >= 0 || relativePath.indexOf('\0') >= 0) {
+            return null;
+        }
+        for (String segment : relativePath.split("/")) {
+            if (segment.startsWith(".")) {
+                return null;
+            }
+        }
+        return relativePath;
+    }
+
+    /**
+     * 在各根目录中按顺序查找文件，规范化后的路径必须仍位于根目录下
+     */
+    private ServedFile resolve(String relativePath) throws IOException {
+        for (Path root : roots) {
+            Path candidate = root.resolve(relativePath).normalize();
+            if (!candidate.startsWith(root) || !Files.isRegularFile(candidate)) {
+                continue;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(candidate, BasicFileAttributes.class);
+            long size = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String fileName = candidate.getFileName().toString();
+            if (CONTENT_ADDRESSED_NAME.matcher(fileName).matches()) {
+                // 文件名就是内容哈希，无需读取文件
+                String hash = fileName.substring(0, 64);
+                return new ServedFile(candidate, size, Instant.ofEpochMilli(lastModified), "\"" + hash + "\"", true);
+            }
+            return new ServedFile(candidate, size, Instant.ofEpochMilli(lastModified),
+                    etagFor(candidate, size, lastModified), false);
+        }
+        return null;
+    }
+
+    /**
+     * 按内容计算强 ETag，结果按 路径+大小+修改时间 缓存，文件被覆盖后重新计算
+     */
+    private String etagFor(Path path, long size, long lastModified) throws IOException {
+        FileTag cached = etagCache.get(path);
+        if (cached != null && cached.size() == size && cached.lastModified() == lastModified) {
+            return cached.etag();
+        }
+        String etag = size <= maxHashSize
+                ? "\"" + sha256(path) + "\""
+                : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+        if (etagCache.size() >= config.getEtagCacheSize()) {
+            etagCache.clear();
+        }
+        etagCache.put(path, new FileTag(size, lastModified, etag));
+        return etag;
+    }
+
+    private String sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[bufferSize];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Mono<Void> complete(ServerWebExchange exchange, HttpStatusCode status) {
+        exchange.getResponse().setStatusCode(status);
+        served(status);
+        return exchange.getResponse().setComplete();
+    }
+
+    private void served(HttpStatusCode status) {
+        Counter.builder("roleplay.files.served")
+                .description("/files/** 按状态码统计的响应数")
+                .tag("status", String.valueOf(status.value()))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private void transferred(String transfer, long bytes) {
+        Counter.builder("roleplay.files.bytes")
+                .description("/files/** 发送的文件字节数，按是否零拷贝区分")
+                .baseUnit("bytes")
+                .tag("transfer", transfer)
+                .register(meterRegistry)
+                .increment(bytes);
+    }
+
+    /**
+     * 本次请求的文件及其校验信息
+     */
+    private record ServedFile(Path path, long size, Instant lastModified, String etag, boolean immutable) {
+    }
+
+    /**
+     * 缓存的 ETag 及计算时的文件大小与修改时间
+     */
+    private record FileTag(long size, long lastModified, String etag) {
+    }
+}
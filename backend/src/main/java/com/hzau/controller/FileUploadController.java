@@ -1,17 +1,24 @@
 package com.hzau.controller;
 
 import com.hzau.common.Result;
+import com.hzau.common.utils.FileTypeDetector;
 import com.hzau.service.FileStorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -19,9 +26,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * @projectName: AI-roleplay
@@ -66,6 +79,12 @@ public class FileUploadController {
         MAX_FILE_SIZES.put("archive", 200 * 1024 * 1024L); // 200MB
     }
 
+    // 批量上传单次最多的文件数
+    private static final int MAX_BATCH_FILES = 10;
+
+    // 批量上传同时写入磁盘的文件数
+    private static final int MAX_PARALLEL_WRITES = 4;
+
     /**
      * 通用文件上传接口
      * @param fileMono
@@ -178,103 +197,180 @@ public class FileUploadController {
     }
 
     /**
-     * 批量文件上传接口
+     * 批量文件上传接口。各文件按到达顺序边接收边写入磁盘，最多同时写入 MAX_PARALLEL_WRITES 个文件；
+     * 文件类型由文件开头的魔数识别，不依据扩展名；每个文件单独返回成功或失败
      */
     @PostMapping(value = "/upload/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    @Operation(summary = "批量文件上传", description = "支持一次上传多个文件")
-    public Result<Map<String, Object>> uploadFiles(
-            @Parameter(description = "上传的文件列表", required = true)
-            @RequestPart("files") MultipartFile[] files,
-            @Parameter(description = "文件类型分类")
-            @RequestPart(value = "category", required = false) String category) {
-
-        log.info("收到批量文件上传请求，文件数量: {}, 分类: {}", files.length, category);
-
-        try {
-            if (files.length == 0) {
-                return Result.<Map<String, Object>>fail(400, "请选择要上传的文件");
-            }
-
-            if (files.length > 10) {
-                return Result.<Map<String, Object>>fail(400, "单次最多上传10个文件");
-            }
-
-            List<Map<String, Object>> successList = new java.util.ArrayList<>();
-            List<Map<String, Object>> failList = new java.util.ArrayList<>();
-
-            for (int i = 0; i < files.length; i++) {
-                MultipartFile file = files[i];
-                try {
-                    String originalFilename = file.getOriginalFilename();
-                    if (originalFilename == null || file.isEmpty()) {
-                        Map<String, Object> failInfo = new HashMap<>();
-                        failInfo.put("index", i);
-                        failInfo.put("fileName", originalFilename);
-                        failInfo.put("error", "文件为空或文件名无效");
-                        failList.add(failInfo);
-                        continue;
+    @Operation(summary = "批量文件上传", description = "支持一次上传多个文件，按文件内容识别类型，逐个返回结果")
+    public Mono<Result<Map<String, Object>>> uploadFiles(
+            @Parameter(description = "multipart 请求体：多个文件字段，可选的 category 表单字段需位于文件之前", required = true)
+            @RequestBody Flux<PartEvent> parts,
+            @Parameter(description = "文件类型分类，指定后只接受该分类的文件")
+            @RequestParam(value = "category", required = false) String category) {
+
+        long startTime = System.currentTimeMillis();
+        AtomicReference<String> categoryRef = new AtomicReference<>(category);
+        AtomicInteger fileCount = new AtomicInteger();
+
+        // 每个 part 的事件流以 isLast 结束，按 part 切分后分别处理
+        return parts.windowUntil(PartEvent::isLast)
+                .flatMap(partEvents -> partEvents.<Map<String, Object>>switchOnFirst((signal, events) -> {
+                    PartEvent first = signal.get();
+                    if (first instanceof FilePartEvent filePart) {
+                        return uploadBatchFile(fileCount.getAndIncrement(), filePart, events, categoryRef.get()).flux();
                     }
-
-                    String fileExtension = getFileExtension(originalFilename).toLowerCase();
-                    String fileCategory = category;
-                    if (fileCategory == null || fileCategory.trim().isEmpty()) {
-                        fileCategory = detectFileCategory(fileExtension);
+                    if (first instanceof FormPartEvent formPart && "category".equals(formPart.name())) {
+                        categoryRef.set(formPart.value());
                     }
-
-                    if (fileCategory == null) {
-                        Map<String, Object> failInfo = new HashMap<>();
-                        failInfo.put("index", i);
-                        failInfo.put("fileName", originalFilename);
-                        failInfo.put("error", "不支持的文件类型: " + fileExtension);
-                        failList.add(failInfo);
-                        continue;
+                    return this.<Map<String, Object>>drain(events).flux();
+                }), MAX_PARALLEL_WRITES)
+                .collectList()
+                .map(results -> {
+                    if (results.isEmpty()) {
+                        return Result.<Map<String, Object>>fail(400, "请选择要上传的文件");
                     }
+                    List<Map<String, Object>> successList = new java.util.ArrayList<>();
+                    List<Map<String, Object>> failList = new java.util.ArrayList<>();
+                    results.stream()
+                            .sorted(Comparator.comparingInt(info -> (Integer) info.get("index")))
+                            .forEach(info -> (info.containsKey("error") ? failList : successList).add(info));
+
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("totalCount", results.size());
+                    result.put("successCount", successList.size());
+                    result.put("failCount", failList.size());
+                    result.put("successList", successList);
+                    result.put("failList", failList);
+                    result.put("uploadTime", System.currentTimeMillis());
+
+                    log.info("批量文件上传完成，成功: {}, 失败: {}, 耗时: {} ms",
+                            successList.size(), failList.size(), System.currentTimeMillis() - startTime);
+                    return Result.success(result);
+                })
+                .onErrorResume(error -> {
+                    log.error("批量文件上传失败", error);
+                    return Mono.just(Result.<Map<String, Object>>fail(500, "批量文件上传失败: " + error.getMessage()));
+                });
+    }
 
-                    Result<String> validationResult = validateFile(file, fileExtension, fileCategory);
-                    if (validationResult.getCode() != 0) {
-                        Map<String, Object> failInfo = new HashMap<>();
-                        failInfo.put("index", i);
-                        failInfo.put("fileName", originalFilename);
-                        failInfo.put("error", validationResult.getMessage());
-                        failList.add(failInfo);
-                        continue;
-                    }
+    /**
+     * 上传批量请求中的一个文件，返回该文件的结果。被拒绝的文件仍需读完其数据，后续的 part 才能到达
+     */
+    private Mono<Map<String, Object>> uploadBatchFile(int index, FilePartEvent first, Flux<PartEvent> events,
+                                                      String category) {
+        String originalFilename = first.filename();
+        if (index >= MAX_BATCH_FILES) {
+            return drain(events).thenReturn(failInfo(index, originalFilename, "单次最多上传" + MAX_BATCH_FILES + "个文件"));
+        }
+        if (originalFilename == null || originalFilename.trim().isEmpty()) {
+            return drain(events).thenReturn(failInfo(index, originalFilename, "文件名无效"));
+        }
 
-                    String fileUrl = fileStorageService.uploadFile(file, fileCategory);
+        // 类型识别需要文件开头的 HEADER_SIZE 个字节，而第一个数据块可能只有几个字节（网络缓冲区恰好在 part 头之后结束），
+        // 先累积到足够的字节数或 part 结束再识别；累积的数据块随后照常写入磁盘
+        AtomicLong buffered = new AtomicLong();
+        return events.map(PartEvent::content)
+                .bufferUntil(buffer -> buffered.addAndGet(buffer.readableByteCount()) >= FileTypeDetector.HEADER_SIZE)
+                .<Map<String, Object>>switchOnFirst((signal, chunks) -> {
+                    List<DataBuffer> head = signal.hasValue() ? signal.get() : List.of();
+                    Flux<DataBuffer> content = chunks.concatMapIterable(Function.identity());
+                    return storeBatchFile(index, originalFilename, peekHeader(head), content, category).flux();
+                })
+                .next();
+    }
 
+    /**
+     * 按文件头识别类型后写入磁盘，content 包含文件的全部数据块
+     */
+    private Mono<Map<String, Object>> storeBatchFile(int index, String originalFilename, byte[] header,
+                                                     Flux<DataBuffer> content, String category) {
+        if (header.length == 0) {
+            return drainContent(content).thenReturn(failInfo(index, originalFilename, "文件为空"));
+        }
+        String fileType = FileTypeDetector.detect(header, header.length, getFileExtension(originalFilename).toLowerCase());
+        String fileCategory = fileType != null ? detectFileCategory(fileType) : null;
+        if (fileCategory == null) {
+            return drainContent(content).thenReturn(failInfo(index, originalFilename, "无法识别或不支持的文件类型"));
+        }
+        if (category != null && !category.trim().isEmpty() && !category.equals(fileCategory)) {
+            return drainContent(content).thenReturn(failInfo(index, originalFilename,
+                    String.format("文件类型 %s 不属于分类 %s", fileType, category)));
+        }
+
+        // 超过大小限制后丢弃剩余数据而不是取消读取，写完后删除已写入的部分
+        long maxSize = MAX_FILE_SIZES.get(fileCategory);
+        AtomicLong fileSize = new AtomicLong();
+        AtomicBoolean tooLarge = new AtomicBoolean();
+        Flux<DataBuffer> limited = content
+                .filter(buffer -> {
+                    if (tooLarge.get() || fileSize.addAndGet(buffer.readableByteCount()) > maxSize) {
+                        tooLarge.set(true);
+                        DataBufferUtils.release(buffer);
+                        return false;
+                    }
+                    return true;
+                });
+
+        return fileStorageService.saveFileContent(limited, fileType, fileCategory)
+                .flatMap(fileUrl -> {
+                    if (tooLarge.get()) {
+                        return Mono.fromCallable(() -> fileStorageService.deleteFile(fileUrl))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .thenReturn(failInfo(index, originalFilename,
+                                        "文件大小超出限制，最大允许: " + formatFileSize(maxSize)));
+                    }
                     Map<String, Object> successInfo = new HashMap<>();
-                    successInfo.put("index", i);
+                    successInfo.put("index", index);
                     successInfo.put("fileUrl", fileUrl);
                     successInfo.put("fileName", originalFilename);
-                    successInfo.put("fileSize", file.getSize());
-                    successInfo.put("fileType", fileExtension);
+                    successInfo.put("fileSize", fileSize.get());
+                    successInfo.put("fileType", fileType);
                     successInfo.put("category", fileCategory);
-                    successList.add(successInfo);
-
-                } catch (Exception e) {
-                    Map<String, Object> failInfo = new HashMap<>();
-                    failInfo.put("index", i);
-                    failInfo.put("fileName", file.getOriginalFilename());
-                    failInfo.put("error", "上传失败: " + e.getMessage());
-                    failList.add(failInfo);
-                }
-            }
+                    return Mono.just(successInfo);
+                })
+                .onErrorResume(error -> {
+                    log.error("文件上传失败: {}", originalFilename, error);
+                    return Mono.just(failInfo(index, originalFilename, "上传失败: " + error.getMessage()));
+                });
+    }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("totalCount", files.length);
-            result.put("successCount", successList.size());
-            result.put("failCount", failList.size());
-            result.put("successList", successList);
-            result.put("failList", failList);
-            result.put("uploadTime", System.currentTimeMillis());
+    /**
+     * 读完并释放一个 part 的剩余数据
+     */
+    private <T> Mono<T> drain(Flux<PartEvent> events) {
+        return events.doOnNext(event -> DataBufferUtils.release(event.content())).then(Mono.empty());
+    }
 
-            log.info("批量文件上传完成，成功: {}, 失败: {}", successList.size(), failList.size());
-            return Result.success(result);
+    private <T> Mono<T> drainContent(Flux<DataBuffer> content) {
+        return content.doOnNext(DataBufferUtils::release).then(Mono.empty());
+    }
 
-        } catch (Exception e) {
-            log.error("批量文件上传失败", e);
-            return Result.<Map<String, Object>>fail(500, "批量文件上传失败: " + e.getMessage());
+    /**
+     * 复制数据块开头最多 HEADER_SIZE 个字节，不移动各数据块的读位置
+     */
+    private static byte[] peekHeader(List<DataBuffer> buffers) {
+        int available = buffers.stream().mapToInt(DataBuffer::readableByteCount).sum();
+        byte[] header = new byte[Math.min(FileTypeDetector.HEADER_SIZE, available)];
+        int length = 0;
+        for (DataBuffer buffer : buffers) {
+            int count = Math.min(header.length - length, buffer.readableByteCount());
+            int readPosition = buffer.readPosition();
+            buffer.read(header, length, count);
+            buffer.readPosition(readPosition);
+            length += count;
+            if (length == header.length) {
+                break;
+            }
         }
+        return header;
+    }
+
+    private Map<String, Object> failInfo(int index, String fileName, String error) {
+        Map<String, Object> failInfo = new HashMap<>();
+        failInfo.put("index", index);
+        failInfo.put("fileName", fileName);
+        failInfo.put("error", error);
+        return failInfo;
     }
 
     /**
@@ -380,26 +476,6 @@ public class FileUploadController {
         return null;
     }
 
-    /**
-     * 验证文件
-     */
-    private Result<String> validateFile(MultipartFile file, String fileExtension, String category) {
-        // 检查文件类型
-        List<String> allowedExtensions = SUPPORTED_FILE_TYPES.get(category);
-        if (allowedExtensions == null || !allowedExtensions.contains(fileExtension)) {
-            return Result.<String>fail(400, "不支持的文件类型: " + fileExtension + "，分类: " + category);
-        }
-
-        // 检查文件大小
-        Long maxSize = MAX_FILE_SIZES.get(category);
-        if (maxSize != null && file.getSize() > maxSize) {
-            return Result.<String>fail(400, "文件大小超出限制，最大允许: " + formatFileSize(maxSize) +
-                    "，当前文件: " + formatFileSize(file.getSize()));
-        }
-
-        return Result.success("验证通过");
-    }
-
     /**
      * 格式化文件大小
      */
@@ -0,0 +1,89 @@
+package com.hzau.controller;
+
+import com.hzau.common.Result;
+import com.hzau.common.constants.ErrorCode;
+import com.hzau.service.FlightRecorderService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.controller
+ * @className: FlightRecorderAdminController
+ * @author: zhuyuchen
+ * @description: JFR记录管理接口，用于排查线上问题时开启单次记录或转储常驻记录，文件写入服务器本地磁盘；
+ *               位于 /api/admin/** 下，仅 admin.usernames 中的管理员可访问
+ * @date: 2026/10/20 上午1:30
+ */
+@RestController
+@RequestMapping("/api/admin/jfr")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "JFR记录管理", description = "Flight Recorder 记录开启与转储接口")
+public class FlightRecorderAdminController {
+
+    private final FlightRecorderService flightRecorderService;
+
+    /**
+     * 获取记录状态
+     */
+    @GetMapping("/recordings")
+    @Operation(summary = "获取JFR记录状态", description = "获取常驻记录与单次记录的状态、大小和输出文件")
+    public Result<List<FlightRecorderService.RecordingInfo>> getRecordings() {
+        try {
+            return Result.success(flightRecorderService.getRecordings());
+        } catch (Exception e) {
+            log.error("获取JFR记录状态失败", e);
+            return Result.fail(ErrorCode.ERROR500.getCode(), "获取JFR记录状态失败");
+        }
+    }
+
+    /**
+     * 开启单次记录
+     */
+    @PostMapping("/recordings")
+    @Operation(summary = "开启JFR单次记录", description = "开启一次限定时长的记录，到时自动停止并写入转储目录")
+    public Mono<Result<FlightRecorderService.RecordingInfo>> startRecording(
+            @Parameter(description = "记录时长（秒）")
+            @RequestParam(defaultValue = "60") int durationSeconds,
+            @Parameter(description = "JFR预置配置：default 或 profile")
+            @RequestParam(required = false) String settings) {
+        // 创建记录与清理转储目录涉及文件操作，不在事件循环线程上执行
+        return Mono.fromCallable(() -> flightRecorderService.startRecording(durationSeconds, settings))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(Result::success)
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(Result.fail(ErrorCode.ERROR400.getCode(), e.getMessage())))
+                .onErrorResume(IllegalStateException.class,
+                        e -> Mono.just(Result.fail(ErrorCode.ERROR400.getCode(), e.getMessage())))
+                .onErrorResume(e -> {
+                    log.error("开启JFR单次记录失败", e);
+                    return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "开启JFR单次记录失败"));
+                });
+    }
+
+    /**
+     * 转储常驻记录
+     */
+    @PostMapping("/dump")
+    @Operation(summary = "转储JFR常驻记录", description = "将常驻记录当前保留的数据写入转储目录，返回文件路径与大小")
+    public Mono<Result<FlightRecorderService.RecordingInfo>> dump() {
+        return Mono.fromCallable(flightRecorderService::dumpContinuous)
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(Result::success)
+                .onErrorResume(IllegalStateException.class,
+                        e -> Mono.just(Result.fail(ErrorCode.ERROR400.getCode(), e.getMessage())))
+                .onErrorResume(e -> {
+                    log.error("转储JFR常驻记录失败", e);
+                    return Mono.just(Result.fail(ErrorCode.ERROR500.getCode(), "转储JFR常驻记录失败"));
+                });
+    }
+}
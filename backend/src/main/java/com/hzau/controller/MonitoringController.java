@@ -2,16 +2,24 @@ package com.hzau.controller;
 
 import com.hzau.common.Result;
 import com.hzau.service.ConcurrentControlService;
+import com.hzau.service.MetricsHistoryStore;
+import com.hzau.service.MonitoringStreamService;
 import com.hzau.service.PerformanceMonitoringService;
+import com.hzau.service.SystemMetricsSampler;
+import com.hzau.service.TokenQuotaService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.Map;
@@ -33,6 +41,9 @@ public class MonitoringController {
 
     private final PerformanceMonitoringService monitoringService;
     private final ConcurrentControlService concurrencyControlService;
+    private final TokenQuotaService tokenQuotaService;
+    private final MetricsHistoryStore historyStore;
+    private final MonitoringStreamService monitoringStreamService;
 
     /**
      * 获取完整的监控报告
@@ -83,10 +94,10 @@ public class MonitoringController {
      * 获取系统资源使用率
      */
     @GetMapping("/system-metrics")
-    @Operation(summary = "获取系统资源指标", description = "获取内存使用率、线程数、CPU核心数等系统资源指标")
-    public Result<PerformanceMonitoringService.SystemMetrics> getSystemMetrics() {
+    @Operation(summary = "获取系统资源指标", description = "获取CPU、内存、GC、分配速率、直接内存、事件循环积压与线程池状态等系统资源指标，每5秒采样一次")
+    public Result<SystemMetricsSampler.SystemMetrics> getSystemMetrics() {
         try {
-            PerformanceMonitoringService.SystemMetrics metrics = monitoringService.getSystemMetrics();
+            SystemMetricsSampler.SystemMetrics metrics = monitoringService.getSystemMetrics();
             return Result.success(metrics);
         } catch (Exception e) {
             log.error("获取系统指标失败", e);
@@ -113,7 +124,7 @@ public class MonitoringController {
      * 获取历史监控数据
      */
     @GetMapping("/history")
-    @Operation(summary = "获取历史监控数据", description = "获取最近1小时的监控数据历史记录")
+    @Operation(summary = "获取历史监控数据", description = "获取最近1小时的监控快照，包含各API最近1分钟的延迟分布")
     public Result<List<PerformanceMonitoringService.MetricsSnapshot>> getMetricsHistory() {
         try {
             List<PerformanceMonitoringService.MetricsSnapshot> history = monitoringService.getMetricsHistory();
@@ -124,13 +135,86 @@ public class MonitoringController {
         }
     }
 
+    /**
+     * 获取已持久化的监控序列
+     */
+    @GetMapping("/history/series")
+    @Operation(summary = "获取监控历史序列", description = "获取已持久化的序列名称，如 api:GET /api/characters、users.active、jvm.heap.used_percent")
+    public Result<List<String>> getHistorySeries() {
+        try {
+            return Result.success(historyStore.getSeriesNames());
+        } catch (Exception e) {
+            log.error("获取监控历史序列失败", e);
+            return Result.fail(500, "获取监控历史序列失败");
+        }
+    }
+
+    /**
+     * 获取监控历史存储状态
+     */
+    @GetMapping("/history/storage")
+    @Operation(summary = "获取监控历史存储状态", description = "获取1m、15m、1h各粒度的保留时间、记录数与容量")
+    public Result<Map<String, MetricsHistoryStore.LevelStats>> getHistoryStorage() {
+        try {
+            return Result.success(historyStore.getLevelStats());
+        } catch (Exception e) {
+            log.error("获取监控历史存储状态失败", e);
+            return Result.fail(500, "获取监控历史存储状态失败");
+        }
+    }
+
+    /**
+     * 按时间范围查询监控历史
+     */
+    @GetMapping("/history/range")
+    @Operation(summary = "按时间范围查询监控历史",
+            description = "查询单个序列在时间范围内的聚合值（次数、平均、最小、最大、P95、P99、错误数）；未指定粒度时按起始时间选择仍在保留期内的最细粒度")
+    public Result<MetricsHistoryStore.HistoryRange> getHistoryRange(
+            @Parameter(description = "序列名称", required = true)
+            @RequestParam String series,
+            @Parameter(description = "起始时间（毫秒时间戳），默认1小时前")
+            @RequestParam(required = false) Long from,
+            @Parameter(description = "结束时间（毫秒时间戳），默认当前时间")
+            @RequestParam(required = false) Long to,
+            @Parameter(description = "粒度：1m、15m、1h")
+            @RequestParam(required = false) String resolution) {
+        try {
+            long end = to != null ? to : System.currentTimeMillis();
+            long start = from != null ? from : end - 60 * 60_000L;
+            if (start > end) {
+                return Result.fail(400, "起始时间不能晚于结束时间");
+            }
+            MetricsHistoryStore.Resolution level = resolution != null ? MetricsHistoryStore.Resolution.of(resolution) : null;
+            return Result.success(historyStore.query(series, level, start, end));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(400, e.getMessage());
+        } catch (Exception e) {
+            log.error("查询监控历史失败: {}", series, e);
+            return Result.fail(500, "查询监控历史失败");
+        }
+    }
+
+    /**
+     * 实时监控推送
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "实时监控推送",
+            description = "以SSE每秒推送一帧增量快照：各API本秒的调用数、错误数与最近1分钟P95/P99，以及并发用户、活跃请求、CPU、堆内存、GC等当前值；所有订阅者共享同一份计算结果，消费慢时丢弃旧帧")
+    public Flux<ServerSentEvent<MonitoringStreamService.LiveFrame>> streamMetrics() {
+        return monitoringStreamService.stream()
+                .map(frame -> ServerSentEvent.<MonitoringStreamService.LiveFrame>builder(frame)
+                        .id(String.valueOf(frame.getSequence()))
+                        .event("metrics")
+                        .build());
+    }
+
     /**
      * 获取特定API的详细指标
      */
     @GetMapping("/api-metrics/{apiName}")
     @Operation(summary = "获取特定API指标", description = "获取指定API的详细性能指标")
     public Result<PerformanceMonitoringService.ApiMetrics> getApiMetrics(
-            @Parameter(description = "API名称", required = true)
+            @Parameter(description = "API名称，格式为 请求方法+空格+路由模板，如 GET /api/conversations/{id}，需URL编码", required = true)
             @PathVariable String apiName) {
         try {
             Map<String, PerformanceMonitoringService.ApiMetrics> allMetrics = monitoringService.getApiMetrics();
@@ -178,7 +262,7 @@ public class MonitoringController {
             summary.setConcurrentUsers(monitoringService.getCurrentConcurrentUsers());
 
             // 系统资源
-            PerformanceMonitoringService.SystemMetrics systemMetrics = monitoringService.getSystemMetrics();
+            SystemMetricsSampler.SystemMetrics systemMetrics = monitoringService.getSystemMetrics();
             summary.setMemoryUsagePercent(systemMetrics.getMemoryUsagePercent());
             summary.setThreadCount(systemMetrics.getThreadCount());
 
@@ -195,6 +279,9 @@ public class MonitoringController {
                     .average()
                     .orElse(0.0));
 
+            // 缓存命中率
+            summary.setCacheHitRate(monitoringService.getCacheHitRate());
+
             // 并发控制统计
             ConcurrentControlService.ConcurrencyStats concurrencyStats = concurrencyControlService.getConcurrencyStats();
             summary.setActiveRequests(concurrencyStats.getCurrentActiveRequests());
@@ -223,6 +310,34 @@ public class MonitoringController {
         }
     }
 
+    /**
+     * 获取上游调用自适应并发上限
+     */
+    @GetMapping("/adaptive-limits")
+    @Operation(summary = "获取自适应并发上限", description = "获取LLM、流式、ASR、TTS调用当前的并发上限、进行中请求数与无负载RTT估计")
+    public Result<Map<String, ConcurrentControlService.AdaptiveLimitStats>> getAdaptiveLimits() {
+        try {
+            return Result.success(concurrencyControlService.getAdaptiveLimitStats());
+        } catch (Exception e) {
+            log.error("获取自适应并发上限失败", e);
+            return Result.fail(500, "获取自适应并发上限失败");
+        }
+    }
+
+    /**
+     * 获取Token额度统计
+     */
+    @GetMapping("/token-quota")
+    @Operation(summary = "获取Token额度统计", description = "获取大模型Token额度的预留、拒绝次数与实际用量，以及提示词预估用量用于校准")
+    public Result<TokenQuotaService.TokenQuotaStats> getTokenQuotaStats() {
+        try {
+            return Result.success(tokenQuotaService.getTokenQuotaStats());
+        } catch (Exception e) {
+            log.error("获取Token额度统计失败", e);
+            return Result.fail(500, "获取Token额度统计失败");
+        }
+    }
+
     /**
      * 监控摘要数据类
      */
@@ -235,6 +350,7 @@ public class MonitoringController {
         private int activeRequests;
         private long rejectedRequests;
         private int availablePermits;
+        private double cacheHitRate;
 
         // Getters and Setters
         public int getConcurrentUsers() {
@@ -300,5 +416,13 @@ public class MonitoringController {
         public void setAvailablePermits(int availablePermits) {
             this.availablePermits = availablePermits;
         }
+
+        public double getCacheHitRate() {
+            return cacheHitRate;
+        }
+
+        public void setCacheHitRate(double cacheHitRate) {
+            this.cacheHitRate = cacheHitRate;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.hzau.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -53,4 +54,25 @@ public class LlmChatReq {
      */
     @JsonProperty("top_p")
     private Double topP;
+
+    /**
+     * 流式输出选项，仅流式请求设置
+     */
+    @JsonProperty("stream_options")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private StreamOptions streamOptions;
+
+    /**
+     * 流式输出选项
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StreamOptions {
+        /**
+         * 是否在最后一个块中返回Token用量
+         */
+        @JsonProperty("include_usage")
+        private Boolean includeUsage;
+    }
 }
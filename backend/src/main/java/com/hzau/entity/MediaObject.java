@@ -0,0 +1,47 @@
+package com.hzau.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.entity
+ * @className: MediaObject
+ * @author: zhuyuchen
+ * @description: 内容寻址存储的媒体对象，以内容哈希为主键，记录大小与引用计数
+ * @date: 2026/10/20 上午5:30
+ */
+@Schema(description = "媒体对象实体")
+@Data
+@EqualsAndHashCode(callSuper = false)
+@TableName("media_objects")
+public class MediaObject {
+
+    @Schema(description = "内容SHA-256", example = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")
+    @TableId(value = "hash", type = IdType.INPUT)
+    private String hash;
+
+    @Schema(description = "扩展名（含点）", example = ".mp3")
+    @TableField("extension")
+    private String extension;
+
+    @Schema(description = "文件大小(字节)", example = "102400")
+    @TableField("size")
+    private Long size;
+
+    @Schema(description = "引用计数", example = "1")
+    @TableField("ref_count")
+    private Integer refCount;
+
+    @Schema(description = "创建时间", example = "2025-01-23T10:30:00")
+    @TableField(value = "created_at", fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+
+    @Schema(description = "更新时间，引用计数变化时更新", example = "2025-01-23T10:30:00")
+    @TableField(value = "updated_at", fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updatedAt;
+}
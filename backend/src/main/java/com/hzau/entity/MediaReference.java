@@ -0,0 +1,43 @@
+package com.hzau.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.entity
+ * @className: MediaReference
+ * @author: zhuyuchen
+ * @description: 媒体对象的引用，每个引用方（消息、角色开场白）至多引用一个对象
+ * @date: 2026/10/20 上午5:30
+ */
+@Schema(description = "媒体引用实体")
+@Data
+@EqualsAndHashCode(callSuper = false)
+@TableName("media_references")
+public class MediaReference {
+
+    @Schema(description = "引用ID", example = "1")
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    @Schema(description = "被引用对象的内容哈希")
+    @TableField("hash")
+    private String hash;
+
+    @Schema(description = "引用方类型：message-消息，opening-角色开场白", example = "message")
+    @TableField("owner_type")
+    private String ownerType;
+
+    @Schema(description = "引用方ID（消息ID或角色ID）", example = "1")
+    @TableField("owner_id")
+    private Long ownerId;
+
+    @Schema(description = "创建时间", example = "2025-01-23T10:30:00")
+    @TableField(value = "created_at", fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+}
@@ -51,29 +51,24 @@ public class RateLimitInterceptor implements WebFilter {
         Integer userId = getUserIdFromRequest(request, exchange);
         String clientIp = getClientIpAddress(request);
 
-        boolean allowed = false;
-        String limitType = "";
-
-        // 优先使用用户ID进行限流
-        if (userId != null) {
-            allowed = rateLimitService.isAllowed(userId);
-            limitType = "用户";
-        } else {
-            // 如果没有用户ID，使用IP地址限流
-            allowed = rateLimitService.isAllowedByIp(clientIp);
-            limitType = "IP";
-        }
-
-        if (!allowed) {
-            log.warn("请求被限流拦截, {}限流, URI: {}, userId: {}, IP: {}",
-                    limitType, requestURI, userId, clientIp);
-
-            // 返回限流错误响应
-            return writeRateLimitResponse(exchange.getResponse());
-        }
+        // 优先使用用户ID进行限流，如果没有用户ID，使用IP地址限流
+        String limitType = userId != null ? "用户" : "IP";
+        Mono<Boolean> allowedMono = userId != null
+                ? rateLimitService.checkAllowed(userId)
+                : rateLimitService.checkAllowedByIp(clientIp);
+
+        return allowedMono.flatMap(allowed -> {
+            if (!allowed) {
+                log.warn("请求被限流拦截, {}限流, URI: {}, userId: {}, IP: {}",
+                        limitType, requestURI, userId, clientIp);
+
+                // 返回限流错误响应
+                return writeRateLimitResponse(exchange.getResponse());
+            }
 
-        log.debug("请求通过限流检查, URI: {}, userId: {}, IP: {}", requestURI, userId, clientIp);
-        return chain.filter(exchange);
+            log.debug("请求通过限流检查, URI: {}, userId: {}, IP: {}", requestURI, userId, clientIp);
+            return chain.filter(exchange);
+        });
     }
 
     /**
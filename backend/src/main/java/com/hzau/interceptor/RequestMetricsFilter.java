@@ -0,0 +1,148 @@
+package com.hzau.interceptor;
+
+import com.hzau.common.metrics.StreamProbe;
+import com.hzau.service.PerformanceMonitoringService;
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.interceptor
+ * @className: RequestMetricsFilter
+ * @author: zhuyuchen
+ * @description: 请求计时过滤器，位于过滤器链最外层，对每个请求按 请求方法+路由模板 记录耗时、状态码类别与响应字节数。
+ *               过滤器链在响应体全部写出后才完成，流式响应（SSE）计到最后一帧写出为止；客户端中途断开记为 cancelled。
+ *               流式对话的首帧时间也在这里的响应包装中记录
+ * @date: 2026/10/20 上午1:00
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class RequestMetricsFilter implements WebFilter {
+
+    /**
+     * 未匹配到处理器的请求（如被认证、限流过滤器提前拒绝）使用的路由名称，避免以原始路径作为标签
+     */
+    private static final String UNMATCHED_ROUTE = "UNMATCHED";
+    private static final String NOT_FOUND_ROUTE = "NOT_FOUND";
+
+    /**
+     * JwtAuthenticationFilter 写入的用户ID属性
+     */
+    private static final String USER_ID_ATTRIBUTE = "userId";
+
+    private final PerformanceMonitoringService monitoringService;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long startNanos = System.nanoTime();
+        CountingResponse response = new CountingResponse(exchange.getResponse(), exchange.getAttributes());
+        ServerWebExchange counted = exchange.mutate().response(response).build();
+        return chain.filter(counted)
+                .doFinally(signal -> record(counted, response, startNanos, signal));
+    }
+
+    private void record(ServerWebExchange exchange, CountingResponse response, long startNanos, SignalType signal) {
+        long nanos = System.nanoTime() - startNanos;
+        int statusCode;
+        if (signal == SignalType.CANCEL) {
+            statusCode = 0;
+        } else if (signal == SignalType.ON_ERROR && !response.isCommitted()) {
+            // 异常由过滤器链外层的异常处理器转换为错误响应，此时状态码尚未写入
+            statusCode = 500;
+        } else {
+            HttpStatusCode status = response.getStatusCode();
+            statusCode = status != null ? status.value() : 200;
+        }
+
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern != null ? pattern.getPatternString()
+                : statusCode == 404 ? NOT_FOUND_ROUTE : UNMATCHED_ROUTE;
+        monitoringService.recordHttpRequest(exchange.getRequest().getMethod().name(), route,
+                statusCode, nanos, response.bytes);
+
+        Object userId = exchange.getAttribute(USER_ID_ATTRIBUTE);
+        if (userId != null) {
+            monitoringService.recordUserActivity(userId);
+        }
+    }
+
+    /**
+     * 统计写出字节数的响应包装。同一响应的写出按顺序发生，计数无需同步；
+     * 保留底层响应的零拷贝能力，否则静态文件只能经缓冲区复制发送。
+     * 逐帧刷新的响应中每个分组对应一帧，分组写完后通知控制器放入请求属性的 {@link StreamProbe}
+     */
+    private static final class CountingResponse extends ServerHttpResponseDecorator implements ZeroCopyHttpOutputMessage {
+
+        private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+        private final Map<String, Object> attributes;
+        private long bytes;
+
+        CountingResponse(ServerHttpResponse delegate, Map<String, Object> attributes) {
+            super(delegate);
+            this.attributes = attributes;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            // 单个缓冲区的响应保持 Mono 形式，底层据此直接设置 Content-Length
+            if (body instanceof Mono<? extends DataBuffer> mono) {
+                return super.writeWith(mono.doOnNext(this::count));
+            }
+            return super.writeWith(Flux.from(body).doOnNext(this::count));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(chunk -> Flux.from(chunk)
+                    .doOnNext(this::count)
+                    .doOnComplete(this::frameWritten)));
+        }
+
+        @Override
+        public Mono<Void> writeWith(Path file, long position, long count) {
+            bytes += count;
+            if (getDelegate() instanceof ZeroCopyHttpOutputMessage zeroCopy) {
+                return zeroCopy.writeWith(file, position, count);
+            }
+            return super.writeWith(DataBufferUtils.takeUntilByteCount(
+                    DataBufferUtils.readAsynchronousFileChannel(
+                            () -> AsynchronousFileChannel.open(file, StandardOpenOption.READ),
+                            position, bufferFactory(), FILE_BUFFER_SIZE),
+                    count));
+        }
+
+        private void count(DataBuffer buffer) {
+            bytes += buffer.readableByteCount();
+        }
+
+        private void frameWritten() {
+            if (attributes.get(StreamProbe.EXCHANGE_ATTRIBUTE) instanceof StreamProbe probe) {
+                probe.onFrameWritten();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.hzau.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hzau.entity.MediaObject;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.mapper
+ * @className: MediaObjectMapper
+ * @author: zhuyuchen
+ * @description: 媒体对象的引用计数以原子的 UPDATE 增减，回收时按条件删除，避免与并发的引用互相覆盖
+ * @date: 2026/10/20 上午5:30
+ */
+@Mapper
+public interface MediaObjectMapper extends BaseMapper<MediaObject> {
+
+    /**
+     * 增减引用计数，同时刷新更新时间，计数归零时从此刻开始计算宽限期
+     */
+    @Update("UPDATE media_objects SET ref_count = ref_count + #{delta}, updated_at = NOW() WHERE hash = #{hash}")
+    int addRefCount(@Param("hash") String hash, @Param("delta") int delta);
+
+    /**
+     * 以引用表为准修正引用计数
+     */
+    @Update("UPDATE media_objects SET ref_count = #{refCount} WHERE hash = #{hash}")
+    int setRefCount(@Param("hash") String hash, @Param("refCount") int refCount);
+
+    /**
+     * 刷新更新时间，重复写入相同内容时重新开始宽限期
+     */
+    @Update("UPDATE media_objects SET updated_at = NOW() WHERE hash = #{hash}")
+    int touch(@Param("hash") String hash);
+
+    /**
+     * 查询引用计数为零且已超过宽限期的对象
+     */
+    @Select("SELECT * FROM media_objects WHERE ref_count <= 0 AND updated_at < #{cutoff} ORDER BY updated_at LIMIT #{limit}")
+    List<MediaObject> selectOrphans(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * 删除仍满足回收条件的对象，返回0表示期间已被重新引用或刷新
+     */
+    @Delete("DELETE FROM media_objects WHERE hash = #{hash} AND ref_count <= 0 AND updated_at < #{cutoff}")
+    int deleteOrphan(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 对象总数与总字节数
+     */
+    @Select("SELECT COUNT(*) AS objects, COALESCE(SUM(size), 0) AS bytes FROM media_objects")
+    Map<String, Object> selectUsage();
+}
@@ -0,0 +1,17 @@
+package com.hzau.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hzau.entity.MediaReference;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.mapper
+ * @className: MediaReferenceMapper
+ * @author: zhuyuchen
+ * @description: 媒体引用Mapper
+ * @date: 2026/10/20 上午5:30
+ */
+@Mapper
+public interface MediaReferenceMapper extends BaseMapper<MediaReference> {
+}
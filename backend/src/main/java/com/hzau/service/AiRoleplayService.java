@@ -1,5 +1,9 @@
 package com.hzau.service;
 
+import com.hzau.common.concurrent.RequestPriority;
+import com.hzau.common.metrics.StageTrace;
+import com.hzau.common.metrics.StreamProbe;
+import com.hzau.config.QiniuAiConfig;
 import com.hzau.entity.AiCharacter;
 import com.hzau.entity.CharacterSkill;
 import com.hzau.entity.Conversation;
@@ -9,6 +13,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
 import java.util.List;
@@ -55,12 +60,19 @@ public class AiRoleplayService {
     private QiniuAudioService qiniuAudioService;
 
     @Autowired
-    private FileStorageService fileStorageService;
+    private MediaStoreService mediaStoreService;
 
     @Autowired
     private CharacterSkillService characterSkillService;
 
+    @Autowired
+    private QiniuAiConfig qiniuAiConfig;
+
+    @Autowired
+    private PerformanceMonitoringService monitoringService;
+
     private static final String OPENING_CACHE_KEY = "ai:opening:";
+    private static final String OPENING_BULKHEAD = "opening-warmup";
     private static final String CONTEXT_CACHE_KEY = "ai:context:";
     private static final int OPENING_CACHE_EXPIRE = 24 * 60 * 60; // 24小时
     private static final int CONTEXT_CACHE_EXPIRE = 30 * 60; // 30分钟
@@ -145,30 +157,31 @@ public class AiRoleplayService {
     private Mono<CharacterOpeningResponse> generateCharacterOpeningWithAudio(Long characterId) {
         log.info("生成角色开场白（包含语音）, characterId: {}", characterId);
 
-        return concurrentControlService.acquirePermit("system", "llm")
-                .flatMap(permit -> {
-                    AiCharacter character = characterService.getCharacterById(characterId);
-                    if (character == null) {
-                        return Mono.error(new RuntimeException("角色不存在或已被禁用"));
-                    }
-                    
-                    String prompt = buildOpeningPrompt(character);
-                    return qiniuAiService.singleChat(prompt)
-                            .flatMap(openingText -> {
-                                // 生成语音
-                                return qiniuAudioService.textToSpeechWithCharacter(openingText, character)
-                                        .flatMap(audioData -> {
-                                            // 保存音频文件
-                                            try {
-                                                String audioUrl = fileStorageService.saveBase64AudioFile(audioData, "character_opening");
-                                                return Mono.just(new CharacterOpeningResponse(openingText, audioUrl));
-                                            } catch (IOException e) {
-                                                return Mono.error(new RuntimeException("保存音频文件失败", e));
-                                            }
-                                        });
-                            })
-                            .doFinally(signalType -> concurrentControlService.releasePermit("system", "llm"));
-                });
+        AiCharacter character = characterService.getCharacterById(characterId);
+        if (character == null) {
+            return Mono.error(new RuntimeException("角色不存在或已被禁用"));
+        }
+
+        // 上游调用的并发许可由 singleChat / textToSpeechToFile 各自获取，这里不再嵌套持有许可，避免排队时互相等待
+        // 开场白生成使用独立的 opening-warmup 隔离舱，批量预热时不挤占交互对话与语音的容量
+        String prompt = buildOpeningPrompt(character);
+        return qiniuAiService.singleChat(prompt, qiniuAiConfig.getDefaultModel(), OPENING_BULKHEAD)
+                .flatMap(openingText -> {
+                    // 生成语音，响应边接收边解码写入文件，按内容存入媒体存储
+                    String extension = "." + qiniuAiConfig.getTts().getDefaultEncoding();
+                    return mediaStoreService.store(extension, path -> qiniuAudioService.textToSpeechToFile(
+                                    openingText, character, OPENING_BULKHEAD, path))
+                            // 角色只保留最新一份开场白的引用，旧的开场白音频在宽限期后回收
+                            .flatMap(stored -> Mono.fromCallable(() -> {
+                                        mediaStoreService.reference(MediaStoreService.OWNER_OPENING, characterId, stored.url());
+                                        return new CharacterOpeningResponse(openingText, stored.url());
+                                    })
+                                    .subscribeOn(Schedulers.boundedElastic()))
+                            .onErrorMap(IOException.class, e -> new RuntimeException("保存音频文件失败", e));
+                })
+                // Token用量计入角色额度；开场白生成属于后台任务，排队时让位于交互请求
+                .contextWrite(TokenQuotaService.withCharacter(characterId))
+                .contextWrite(RequestPriority.with(RequestPriority.BACKGROUND, null));
     }
 
     // /**
@@ -282,28 +295,21 @@ public class AiRoleplayService {
         // 构建对话上下文
         Mono<String> contextMono = buildConversationContext(conversationId, character, userMessage, null);
         Mono<String> chatMono = contextMono.flatMap(context -> {
-            // 获取并发控制许可
-            Mono<Boolean> permitMono = concurrentControlService.acquirePermit(userId.toString(), "llm");
-            return permitMono.flatMap(permit -> {
-                // 调用AI API获取回复
-                String contextKey = CONTEXT_CACHE_KEY + conversationId;
-                return qiniuAiService.multiTurnChat(contextKey, context);
-            });
+            // 在用户级并发许可保护下调用AI API获取回复
+            String contextKey = CONTEXT_CACHE_KEY + conversationId;
+            return concurrentControlService.withUserPermit(userId.toString(),
+                    () -> qiniuAiService.multiTurnChat(contextKey, context));
         });
         Mono<String> resultMono = chatMono
                 .doOnSuccess(aiReply -> {
                     // 保存AI回复
                     messageService.saveCharacterMessage(conversationId, aiReply);
                     log.info("消息发送成功, conversationId: {}", conversationId);
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
                 })
-                .doOnError(error -> {
-                    log.error("消息发送失败, conversationId: {}", conversationId, error);
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
-                });
-        return resultMono;
+                .doOnError(error -> log.error("消息发送失败, conversationId: {}", conversationId, error));
+        return resultMono
+                .contextWrite(TokenQuotaService.withCharacter(character.getId()))
+                .contextWrite(RequestPriority.with(RequestPriority.INTERACTIVE, userId.toString()));
     }
 
     /**
@@ -342,11 +348,8 @@ public class AiRoleplayService {
         
         // 处理上下文并获取流式回复
         Flux<String> contextProcessingFlux = contextMono.flatMapMany(context -> {
-            // 获取并发控制许可
-            Mono<Boolean> permitMono = concurrentControlService.acquirePermit(userId.toString(), "llm");
-            
-            // 处理许可获取后的流式对话
-            return permitMono.flatMapMany(permit -> {
+            // 在用户级并发许可保护下进行流式对话，许可在流结束、出错或客户端断开时释放
+            return concurrentControlService.withUserPermitMany(userId.toString(), () -> {
                 // 调用AI API获取流式回复
                 String contextKey = CONTEXT_CACHE_KEY + conversationId;
                 StringBuilder responseBuilder = new StringBuilder();
@@ -366,16 +369,11 @@ public class AiRoleplayService {
                         messageService.saveCharacterMessage(conversationId, fullResponse);
                         log.info("流式消息发送成功, conversationId: {}", conversationId);
                     }
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
                 });
                 
                 // 处理错误事件
-                return completionHandlerFlux.doOnError(error -> {
-                    log.error("流式消息发送失败, conversationId: {}", conversationId, error);
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
-                });
+                return completionHandlerFlux.doOnError(error ->
+                        log.error("流式消息发送失败, conversationId: {}", conversationId, error));
             });
         });
         
@@ -384,7 +382,15 @@ public class AiRoleplayService {
             log.error("流式消息处理失败, conversationId: {}", conversationId, error);
             return Flux.error(error);
         });
-        return finalFlux;
+
+        // 流式指标按模型与角色分类区分，标签在此确定后绑定到调用方传入的探针
+        String model = qiniuAiConfig.getDefaultModel();
+        return Flux.deferContextual(ctx -> {
+                    StreamProbe.from(ctx).bind(monitoringService.streamRecorder(model, character.getCategory()));
+                    return finalFlux;
+                })
+                .contextWrite(TokenQuotaService.withCharacter(character.getId()))
+                .contextWrite(RequestPriority.with(RequestPriority.INTERACTIVE_STREAM, userId.toString()));
     }
 
     /**
@@ -446,7 +452,7 @@ public class AiRoleplayService {
      * @param userId 用户ID
      * @param conversationId 对话ID
      * @param localAudioUrl 本地音频文件URL（用于数据库存储）
-     * @param ossAudioUrl OSS音频文件URL（用于语音转文本API调用）
+     * @param ossAudioUrl OSS音频文件URL（用于语音转文本API调用），为空时音频内联到ASR请求中
      * @param audioFormat 音频格式
      * @param skill 技能触发标识
      * @return AI回复（包含文本和语音URL）
@@ -472,59 +478,57 @@ public class AiRoleplayService {
             return Mono.error(new RuntimeException("角色不存在"));
         }
 
-        // 获取并发控制许可
-        Mono<VoiceChatResponse> resultMono = concurrentControlService.acquirePermit(userId.toString(), "llm")
-                .flatMap(permit -> {
-                    // 1. 语音转文本 - 使用OSS URL进行语音转文本
-                    Mono<String> asrMono = qiniuAudioService.speechToTextFromOssUrl(ossAudioUrl, audioFormat);
-                    return asrMono.flatMap(asrText -> {
-                        // 2. 保存用户消息（使用本地URL存储到数据库）
-                        messageService.saveUserVoiceMessage(conversationId, asrText, localAudioUrl, null);
-
-                        // 3. 构建对话上下文并获取AI回复
-                        Mono<String> contextMono = buildConversationContext(conversationId, character, asrText, skill);
-                        Mono<String> aiReplyMono = contextMono.flatMap(context -> {
-                            String contextKey = CONTEXT_CACHE_KEY + conversationId;
-                            return qiniuAiService.multiTurnChat(contextKey, context);
-                        });
-
-                        Mono<VoiceChatResponse> responseMono = aiReplyMono.flatMap(aiReplyText -> {
-                            // 4. 文本转语音 - 使用角色配置的音色
-                            Mono<String> ttsMono = qiniuAudioService.textToSpeechWithCharacter(aiReplyText, character);
-                            return ttsMono.flatMap(ttsBase64Data -> {
-                                try {
-                                    // 5. 保存语音文件
-                                    String audioFileUrl = fileStorageService.saveBase64AudioFile(
-                                            ttsBase64Data, "mp3");
+        // 获取并发控制许可，各阶段耗时记录到调用方通过 Context 传入的 StageTrace
+        Mono<VoiceChatResponse> resultMono = concurrentControlService.withUserPermit(userId.toString(), () -> Mono.deferContextual(ctx -> {
+            StageTrace trace = StageTrace.from(ctx);
+            // 1. 语音转文本 - 有OSS URL时交给ASR下载，否则将本地文件内联到ASR请求中
+            Mono<String> asrMono = trace.span("asr", ossAudioUrl != null
+                    ? qiniuAudioService.speechToTextFromOssUrl(ossAudioUrl, audioFormat)
+                    : qiniuAudioService.speechToTextInline(mediaStoreService.pathOf(localAudioUrl), audioFormat));
+            return asrMono.flatMap(asrText -> {
+                // 2. 保存用户消息（使用本地URL存储到数据库）
+                long dbStart = System.nanoTime();
+                messageService.saveUserVoiceMessage(conversationId, asrText, localAudioUrl, null);
+                trace.stop("db_save", dbStart);
+
+                // 3. 构建对话上下文并获取AI回复
+                Mono<String> contextMono = trace.span("context_build",
+                        buildConversationContext(conversationId, character, asrText, skill));
+                Mono<String> aiReplyMono = contextMono.flatMap(context -> {
+                    String contextKey = CONTEXT_CACHE_KEY + conversationId;
+                    return trace.span("llm", qiniuAiService.multiTurnChat(contextKey, context));
+                });
 
-                                    // 6. 保存AI回复消息（包含文本和语音URL）
+                Mono<VoiceChatResponse> responseMono = aiReplyMono.flatMap(aiReplyText -> {
+                    // 4. 文本转语音 - 使用角色配置的音色，响应边接收边解码写入文件，按内容存入媒体存储
+                    return trace.span("tts", mediaStoreService.store(".mp3", path ->
+                                    qiniuAudioService.textToSpeechToFile(aiReplyText, character, "tts", path)))
+                            .flatMap(stored -> {
+                                try {
+                                    // 5. 保存AI回复消息（包含文本和语音URL），消息持有音频的引用
+                                    long replySaveStart = System.nanoTime();
                                     messageService.saveCharacterVoiceMessage(conversationId,
-                                            aiReplyText, audioFileUrl, null);
+                                            aiReplyText, stored.url(), null);
+                                    trace.stop("db_save_reply", replySaveStart);
 
-                                    // 7. 返回响应
+                                    // 6. 返回响应
                                     return Mono.just(new VoiceChatResponse(
-                                            asrText, aiReplyText, audioFileUrl));
+                                            asrText, aiReplyText, stored.url()));
                                 } catch (Exception e) {
-                                    log.error("保存语音文件失败", e);
-                                    return Mono.error(new RuntimeException("保存语音文件失败", e));
+                                    log.error("保存语音消息失败", e);
+                                    return Mono.error(new RuntimeException("保存语音消息失败", e));
                                 }
                             });
-                        });
-
-                        return responseMono;
-                    });
-                })
-                .doOnSuccess(response -> {
-                    log.info("语音消息处理成功, conversationId: {}", conversationId);
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
-                })
-                .doOnError(error -> {
-                    log.error("语音消息处理失败, conversationId: {}", conversationId, error);
-                    // 释放并发控制许可
-                    concurrentControlService.releasePermit(userId.toString(), "llm");
                 });
-        return resultMono;
+
+                return responseMono;
+            });
+        }));
+        return resultMono
+                .doOnSuccess(response -> log.info("语音消息处理成功, conversationId: {}", conversationId))
+                .doOnError(error -> log.error("语音消息处理失败, conversationId: {}", conversationId, error))
+                .contextWrite(TokenQuotaService.withCharacter(character.getId()))
+                .contextWrite(RequestPriority.with(RequestPriority.VOICE, userId.toString()));
     }
 
     /**
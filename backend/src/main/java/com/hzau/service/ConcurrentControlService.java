@@ -1,24 +1,47 @@
 package com.hzau.service;
 
+import com.hzau.common.concurrent.AsyncPermitPool;
+import com.hzau.common.concurrent.Bulkhead;
+import com.hzau.common.concurrent.ExpiringMap;
+import com.hzau.common.concurrent.GradientLimit;
+import com.hzau.common.concurrent.RequestPriority;
+import com.hzau.common.exception.ServiceBusyException;
+import com.hzau.common.jfr.PermitAcquireEvent;
+import com.hzau.common.jfr.PermitReleaseEvent;
+import com.hzau.config.ConcurrencyConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 
 /**
  * @projectName: AI-roleplay
  * @package: com.hzau.service
  * @className: ConcurrentControlService
  * @author: zhuyuchen
- * @description: TODO
+ * @description: 并发控制服务。许可以 Mono 形式发放：容量不足时排队等待，队列满或超时则拒绝；
+ *               通过 withXxxPermit 系列方法借助 usingWhen 保证许可在完成、出错、取消时都恰好释放一次
  * @date: 2025/9/23 下午7:12
  */
 @Service
@@ -26,36 +49,72 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ConcurrentControlService {
 
     private final PerformanceMonitoringService monitoringService;
-    private final Executor monitoringExecutor;
+    private final ConcurrencyConfig config;
+    private final DistributedPermitService distributedPermitService;
 
     // 全局并发控制
-    private final Semaphore globalConcurrencyLimit;
-    private final Semaphore llmRequestLimit;
-    private final Semaphore streamingRequestLimit;
+    private final AsyncPermitPool globalConcurrencyLimit;
 
-    // 用户级别并发控制
-    private final ConcurrentMap<String, UserConcurrencyControl> userConcurrencyMap = new ConcurrentHashMap<>();
+    // 上游能力隔离舱，key为隔离舱名称；别名表同时包含名称本身，均为小写
+    private final Map<String, Bulkhead> bulkheads;
+    private final Map<String, Bulkhead> bulkheadAliases;
 
-    // 动态限流参数
-    private volatile int maxGlobalConcurrency = 100;
-    private volatile int maxLlmConcurrency = 50;
-    private volatile int maxStreamingConcurrency = 30;
-    private volatile int maxUserConcurrency = 5;
+    // 用户级别并发控制，空闲用户由时间轮过期移除，总数受 max-tracked-users 限制
+    private final ExpiringMap<String, UserConcurrencyControl> userConcurrencyMap;
 
-    // 系统负载监控
+    // 单用户并发上限（对新用户生效）
+    private volatile int maxUserConcurrency;
+
+    // 系统负载监控。总请求数与活跃请求数只按入口的用户级许可计数，同一请求内的上游调用许可不重复计入
     private final AtomicLong totalRequests = new AtomicLong(0);
     private final AtomicLong rejectedRequests = new AtomicLong(0);
+    private final AtomicLong timeoutRequests = new AtomicLong(0);
     private final AtomicInteger currentActiveRequests = new AtomicInteger(0);
 
+    /**
+     * 未匹配隔离舱的上游调用在指标中的名称
+     */
+    private static final String OTHER_UPSTREAM = "other";
+
+    // 上游调用耗时计时器，key为隔离舱名称
+    private final Map<String, UpstreamTimers> upstreamTimers;
+
     public ConcurrentControlService(PerformanceMonitoringService monitoringService,
-                                    @Qualifier("monitoringExecutor") Executor monitoringExecutor) {
+                                    ConcurrencyConfig config,
+                                    DistributedPermitService distributedPermitService,
+                                    MeterRegistry meterRegistry) {
         this.monitoringService = monitoringService;
-        this.monitoringExecutor = monitoringExecutor;
-
-        // 初始化信号量
-        this.globalConcurrencyLimit = new Semaphore(maxGlobalConcurrency, true);
-        this.llmRequestLimit = new Semaphore(maxLlmConcurrency, true);
-        this.streamingRequestLimit = new Semaphore(maxStreamingConcurrency, true);
+        this.config = config;
+        this.distributedPermitService = distributedPermitService;
+
+        this.maxUserConcurrency = config.getMaxUser();
+        // 仍有进行中或排队请求的用户不会被移除
+        this.userConcurrencyMap = new ExpiringMap<>("user-concurrency", config.getUserIdleTtlMs(),
+                config.getMaxTrackedUsers(), ExpiringMap.OverflowPolicy.EVICT_OLDEST,
+                control -> control.getUserLimit().getInUse() == 0 && control.getUserLimit().getQueueSize() == 0);
+
+        // 初始化全局许可池，全局上限按配置固定
+        this.globalConcurrencyLimit = new AsyncPermitPool("global", config.getMaxGlobal(), config.getQueueSize());
+
+        // 初始化各上游能力的隔离舱
+        Map<String, Bulkhead> bulkheadMap = new LinkedHashMap<>();
+        Map<String, Bulkhead> aliasMap = new HashMap<>();
+        config.getBulkheads().forEach((name, bulkheadConfig) -> {
+            String key = name.toLowerCase();
+            Bulkhead bulkhead = new Bulkhead(key, bulkheadConfig.getMaxConcurrent(), bulkheadConfig.getQueueSize(),
+                    bulkheadConfig.getTimeoutMs(), newAdaptiveLimit(bulkheadConfig.isAdaptive(), bulkheadConfig.getMaxConcurrent()));
+            bulkheadMap.put(key, bulkhead);
+            aliasMap.put(key, bulkhead);
+            for (String alias : bulkheadConfig.getAliases()) {
+                aliasMap.put(alias.toLowerCase(), bulkhead);
+            }
+            log.info("隔离舱初始化完成 - {}: 最大并发 {}, 队列 {}, 排队超时 {}ms, 自适应 {}",
+                    key, bulkheadConfig.getMaxConcurrent(), bulkheadConfig.getQueueSize(),
+                    bulkheadConfig.getTimeoutMs(), bulkhead.getAdaptiveLimit() != null);
+        });
+        this.bulkheads = Collections.unmodifiableMap(bulkheadMap);
+        this.bulkheadAliases = Collections.unmodifiableMap(aliasMap);
+        this.upstreamTimers = registerMeters(meterRegistry);
 
         // 启动动态调整任务
         startDynamicAdjustmentTask();
@@ -65,138 +124,427 @@ public class ConcurrentControlService {
      * 用户并发控制数据结构
      */
     private static class UserConcurrencyControl {
-        private final Semaphore userLimit;
-        private final AtomicInteger activeRequests;
-        private final AtomicLong lastRequestTime;
+        private final AsyncPermitPool userLimit;
         private final AtomicLong totalUserRequests;
 
-        public UserConcurrencyControl(int maxConcurrency) {
-            this.userLimit = new Semaphore(maxConcurrency, true);
-            this.activeRequests = new AtomicInteger(0);
-            this.lastRequestTime = new AtomicLong(System.currentTimeMillis());
+        public UserConcurrencyControl(String userId, int maxConcurrency, int maxQueueSize) {
+            this.userLimit = new AsyncPermitPool("user:" + userId, maxConcurrency, maxQueueSize);
             this.totalUserRequests = new AtomicLong(0);
         }
 
-        public Semaphore getUserLimit() { return userLimit; }
-        public AtomicInteger getActiveRequests() { return activeRequests; }
-        public AtomicLong getLastRequestTime() { return lastRequestTime; }
+        public AsyncPermitPool getUserLimit() { return userLimit; }
         public AtomicLong getTotalUserRequests() { return totalUserRequests; }
     }
 
     /**
-     * 请求许可证（全局 + 用户级别）
-     * @param userId 用户ID
-     * @param requestType 请求类型（llm, streaming, normal）
-     * @return 是否获得许可
-     */
-    public Mono<Boolean> acquirePermit(String userId, String requestType) {
-        return Mono.fromCallable(() -> {
-            totalRequests.incrementAndGet();
-
-            // 1. 检查全局并发限制
-            if (!globalConcurrencyLimit.tryAcquire()) {
-                rejectedRequests.incrementAndGet();
-                log.warn("全局并发限制达到上限，拒绝请求 - 用户: {}, 类型: {}", userId, requestType);
-                return false;
+     * 并发许可，由一个或多个许可池租约（集群模式下还包括集群租约）组成
+     * release() 幂等：无论完成、出错还是取消路径重复调用，都只归还一次
+     */
+    public final class Permit {
+        private final String userId;
+        private final String requestType;
+        // 是否为请求入口的用户级许可，只有入口许可计入活跃请求数
+        private final boolean entry;
+        private final List<Runnable> leases = new ArrayList<>(6);
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile boolean granted;
+        private volatile PermitReleaseEvent holdEvent;
+
+        private Permit(String userId, String requestType, boolean entry) {
+            this.userId = userId;
+            this.requestType = requestType;
+            this.entry = entry;
+        }
+
+        private void addLease(AsyncPermitPool.Lease lease) {
+            addRelease(lease::release);
+        }
+
+        private void addClusterLease(DistributedPermitService.ClusterLease lease) {
+            addRelease(lease::release);
+        }
+
+        private void addRelease(Runnable release) {
+            synchronized (leases) {
+                if (!released.get()) {
+                    leases.add(release);
+                    return;
+                }
             }
+            release.run();
+        }
 
-            // 2. 检查特定类型的并发限制
-            Semaphore typeLimit = getTypeLimitSemaphore(requestType);
-            if (typeLimit != null && !typeLimit.tryAcquire()) {
-                globalConcurrencyLimit.release();
-                rejectedRequests.incrementAndGet();
-                log.warn("{}请求并发限制达到上限，拒绝请求 - 用户: {}", requestType, userId);
-                return false;
+        private Permit markGranted() {
+            PermitReleaseEvent event = new PermitReleaseEvent();
+            event.requestType = requestType;
+            event.userId = userId;
+            event.begin();
+            holdEvent = event;
+            granted = true;
+            if (entry) {
+                currentActiveRequests.incrementAndGet();
             }
+            log.debug("成功获取请求许可 - 用户: {}, 类型: {}, 当前活跃请求: {}",
+                    userId, requestType, currentActiveRequests.get());
+            return this;
+        }
+
+        public boolean isGranted() {
+            return granted;
+        }
 
-            // 3. 检查用户级别并发限制
-            UserConcurrencyControl userControl = getUserConcurrencyControl(userId);
-            if (!userControl.getUserLimit().tryAcquire()) {
-                if (typeLimit != null) typeLimit.release();
-                globalConcurrencyLimit.release();
-                rejectedRequests.incrementAndGet();
-                log.warn("用户并发限制达到上限，拒绝请求 - 用户: {}, 类型: {}", userId, requestType);
-                return false;
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            List<Runnable> toRelease;
+            synchronized (leases) {
+                toRelease = new ArrayList<>(leases);
+                leases.clear();
+            }
+            // 按与获取相反的顺序归还
+            for (int i = toRelease.size() - 1; i >= 0; i--) {
+                toRelease.get(i).run();
             }
+            if (granted) {
+                holdEvent.commit();
+                if (entry) {
+                    currentActiveRequests.decrementAndGet();
+                }
+                log.debug("释放请求许可 - 用户: {}, 类型: {}, 当前活跃请求: {}",
+                        userId, requestType, currentActiveRequests.get());
+            }
+        }
 
-            // 4. 更新统计信息
-            currentActiveRequests.incrementAndGet();
-            userControl.getActiveRequests().incrementAndGet();
-            userControl.getLastRequestTime().set(System.currentTimeMillis());
-            userControl.getTotalUserRequests().incrementAndGet();
+        private Mono<Void> releaseAsync() {
+            return Mono.fromRunnable(this::release);
+        }
+    }
 
-            log.debug("成功获取请求许可 - 用户: {}, 类型: {}, 当前活跃请求: {}",
-                    userId, requestType, currentActiveRequests.get());
-            return true;
-        });
+    /**
+     * 请求许可证（全局 + 隔离舱 + 用户级别）
+     * @param userId 用户ID
+     * @param requestType 请求类型，即隔离舱名称或别名（chat/llm, stream/streaming, asr, tts, opening-warmup），其他类型只受全局限制
+     * @return 许可，容量不足时排队等待；排队已满或超时以 ServiceBusyException 失败
+     */
+    public Mono<Permit> acquirePermit(String userId, String requestType) {
+        return acquire(userId, requestType, true, true);
     }
 
     /**
-     * 释放许可证
+     * 请求上游调用许可（全局 + 隔离舱），用于对七牛云等上游服务的调用
+     * @param requestType 隔离舱名称或别名
+     */
+    public Mono<Permit> acquireUpstreamPermit(String requestType) {
+        return acquire(null, requestType, true, false);
+    }
+
+    /**
+     * 请求用户级别许可，用于限制单个用户同时进行的会话请求数
      * @param userId 用户ID
-     * @param requestType 请求类型
      */
-    public void releasePermit(String userId, String requestType) {
-        try {
-            // 1. 释放用户级别许可
-            UserConcurrencyControl userControl = userConcurrencyMap.get(userId);
-            if (userControl != null) {
-                // 检查用户活跃请求数，避免重复释放导致负数
-                int currentUserRequests = userControl.getActiveRequests().get();
-                if (currentUserRequests > 0) {
-                    userControl.getUserLimit().release();
-                    userControl.getActiveRequests().decrementAndGet();
-                } else {
-                    log.warn("用户 {} 的活跃请求数已为 {}，跳过释放用户许可", userId, currentUserRequests);
-                }
-            }
+    public Mono<Permit> acquireUserPermit(String userId) {
+        return acquire(userId, "user", false, true);
+    }
 
-            // 2. 释放类型级别许可
-            Semaphore typeLimit = getTypeLimitSemaphore(requestType);
-            if (typeLimit != null) {
-                typeLimit.release();
+    /**
+     * 在上游调用许可保护下执行调用，许可在调用完成、出错或被取消时释放
+     * 非流式调用的耗时随输出长度（Token数、音频时长）增长，除以本次调用的工作量后作为RTT样本，
+     * 避免长回复被误判为上游变慢而持续收缩并发上限
+     * @param workload 根据调用结果计算工作量，以一次最短调用为1，小于1时按1计
+     */
+    public <T> Mono<T> withUpstreamPermit(String requestType, Supplier<? extends Mono<T>> call,
+                                          ToDoubleFunction<? super T> workload) {
+        return Mono.usingWhen(acquireUpstreamPermit(requestType), permit -> {
+            long startNanos = System.nanoTime();
+            return call.get()
+                    .doOnSuccess(result -> recordUpstreamSample(requestType, startNanos,
+                            result != null ? workload.applyAsDouble(result) : 1.0, null))
+                    .doOnError(error -> recordUpstreamSample(requestType, startNanos, 1.0, error))
+                    .doFinally(signal -> recordUpstreamTiming(requestType, startNanos, signal));
+        }, Permit::releaseAsync);
+    }
+
+    /**
+     * 在上游调用许可保护下执行流式调用，许可在流结束、出错或被取消时释放
+     * 流式调用以首个数据块的到达时间作为RTT样本
+     */
+    public <T> Flux<T> withUpstreamPermitMany(String requestType, Supplier<? extends Flux<T>> call) {
+        return Flux.usingWhen(acquireUpstreamPermit(requestType), permit -> {
+            long startNanos = System.nanoTime();
+            AtomicBoolean sampled = new AtomicBoolean(false);
+            return call.get()
+                    .doOnNext(item -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            recordUpstreamSample(requestType, startNanos, 1.0, null);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (sampled.compareAndSet(false, true)) {
+                            recordUpstreamSample(requestType, startNanos, 1.0, null);
+                        }
+                    })
+                    .doOnError(error -> recordUpstreamSample(requestType, startNanos, 1.0, error))
+                    .doFinally(signal -> recordUpstreamTiming(requestType, startNanos, signal));
+        }, Permit::releaseAsync);
+    }
+
+    /**
+     * 在用户级别许可保护下执行调用
+     */
+    public <T> Mono<T> withUserPermit(String userId, Supplier<? extends Mono<T>> call) {
+        return Mono.usingWhen(acquireUserPermit(userId), permit -> call.get(), Permit::releaseAsync);
+    }
+
+    /**
+     * 在用户级别许可保护下执行流式调用
+     */
+    public <T> Flux<T> withUserPermitMany(String userId, Supplier<? extends Flux<T>> call) {
+        return Flux.usingWhen(acquireUserPermit(userId), permit -> call.get(), Permit::releaseAsync);
+    }
+
+    /**
+     * 依次申请类型（隔离舱）、全局、用户许可池
+     * 任一环节失败或订阅被取消时，已获得的租约全部归还
+     */
+    private Mono<Permit> acquire(String userId, String requestType, boolean upstream, boolean userLevel) {
+        return Mono.deferContextual(context -> {
+            if (userLevel) {
+                totalRequests.incrementAndGet();
             }
 
-            // 3. 释放全局许可
-            globalConcurrencyLimit.release();
+            Permit permit = new Permit(userId, requestType, userLevel);
+            Duration maxWait = Duration.ofMillis(config.getAcquireTimeoutMs());
+
+            // 优先级类别与公平排队的用户标识由业务入口通过 Reactor Context 传入
+            RequestPriority priority = RequestPriority.from(context);
+            String flow = userId != null ? userId : RequestPriority.userFrom(context);
+
+            PermitAcquireEvent acquireEvent = new PermitAcquireEvent();
+            acquireEvent.requestType = requestType;
+            acquireEvent.userId = flow;
+            acquireEvent.priority = priority.name();
+            acquireEvent.begin();
+
+            // 许可池及其排队超时，隔离舱使用各自配置的超时
+            // 先申请隔离舱再申请全局许可：在隔离舱中排队的请求不占用全局许可，某一类型的突发流量不会耗尽全局许可而饿死其他类型
+            Map<AsyncPermitPool, Duration> pools = new LinkedHashMap<>();
+            if (upstream) {
+                Bulkhead bulkhead = getBulkhead(requestType);
+                if (bulkhead != null) {
+                    pools.put(bulkhead.getPool(), bulkhead.getTimeout());
+                }
+                pools.put(globalConcurrencyLimit, maxWait);
+            }
+            if (userLevel) {
+                UserConcurrencyControl userControl = getUserConcurrencyControl(userId);
+                if (userControl == null) {
+                    rejectedRequests.incrementAndGet();
+                    commitAcquireEvent(acquireEvent, "rejected", "user");
+                    log.warn("用户级许可池数量已达上限，拒绝请求 - 用户: {}", userId);
+                    return Mono.error(new ServiceBusyException("user", false));
+                }
+                userControl.getTotalUserRequests().incrementAndGet();
+                pools.put(userControl.getUserLimit(), maxWait);
+            }
 
-            // 4. 更新统计 - 检查全局活跃请求数，避免负数
-            int currentGlobalRequests = currentActiveRequests.get();
-            if (currentGlobalRequests > 0) {
-                currentActiveRequests.decrementAndGet();
-            } else {
-                log.warn("全局活跃请求数已为 {}，跳过递减操作", currentGlobalRequests);
+            Mono<Void> chain = Mono.empty();
+            for (Map.Entry<AsyncPermitPool, Duration> entry : pools.entrySet()) {
+                AsyncPermitPool pool = entry.getKey();
+                chain = chain.then(pool.acquire(entry.getValue(), priority, flow).doOnNext(permit::addLease).then());
+                if (distributedPermitService.isEnabled()) {
+                    // 集群模式下在本地许可之外再申请集群许可，保证多实例合计不超过配置上限
+                    boolean userPool = pool.getName().startsWith("user:");
+                    chain = chain.then(distributedPermitService.acquire(pool.getName(), getClusterLimit(pool),
+                                    userPool ? 1 : config.getDistributed().getBatchSize(), entry.getValue())
+                            .doOnNext(permit::addClusterLease)
+                            .then());
+                }
             }
 
-            log.debug("释放请求许可 - 用户: {}, 类型: {}, 当前活跃请求: {}",
-                    userId, requestType, currentActiveRequests.get());
-        } catch (Exception e) {
-            log.error("释放许可证时发生错误 - 用户: {}, 类型: {}", userId, requestType, e);
-        }
+            return chain.then(Mono.fromCallable(permit::markGranted))
+                    .doOnNext(granted -> commitAcquireEvent(acquireEvent, "granted", null))
+                    .doOnError(ServiceBusyException.class, e -> {
+                        rejectedRequests.incrementAndGet();
+                        if (e.isTimeout()) {
+                            timeoutRequests.incrementAndGet();
+                        }
+                        log.warn("{}许可池{}，拒绝请求 - 用户: {}, 类型: {}",
+                                e.getPoolName(), e.isTimeout() ? "排队超时" : "排队已满", userId, requestType);
+                    })
+                    .doOnError(e -> {
+                        if (e instanceof ServiceBusyException busy) {
+                            commitAcquireEvent(acquireEvent, busy.isTimeout() ? "timeout" : "rejected", busy.getPoolName());
+                        } else {
+                            commitAcquireEvent(acquireEvent, "error", null);
+                        }
+                        permit.release();
+                    })
+                    .doOnCancel(() -> {
+                        if (!permit.isGranted()) {
+                            commitAcquireEvent(acquireEvent, "cancelled", null);
+                            permit.release();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 提交准入决策的JFR事件，未开启记录时 commit 不做任何事
+     * @param pool 拒绝请求的许可池，获得许可时为null
+     */
+    private static void commitAcquireEvent(PermitAcquireEvent event, String outcome, String pool) {
+        event.outcome = outcome;
+        event.pool = pool;
+        event.commit();
     }
 
     /**
-     * 获取用户并发控制对象
+     * 获取用户并发控制对象，同时刷新其访问时间
+     * @return 用户数已达上限且没有可淘汰的空闲用户时返回null
      */
     private UserConcurrencyControl getUserConcurrencyControl(String userId) {
         return userConcurrencyMap.computeIfAbsent(userId,
-                k -> new UserConcurrencyControl(maxUserConcurrency));
+                k -> new UserConcurrencyControl(k, maxUserConcurrency, config.getUserQueueSize()));
     }
 
     /**
-     * 根据请求类型获取对应的信号量
+     * 集群模式下各许可池的集群总上限，取配置值（不随单节点自适应上限变化）
      */
-    private Semaphore getTypeLimitSemaphore(String requestType) {
-        switch (requestType.toLowerCase()) {
-            case "llm":
-            case "chat":
-                return llmRequestLimit;
-            case "streaming":
-            case "stream":
-                return streamingRequestLimit;
-            default:
-                return null; // 普通请求不需要特殊限制
+    private int getClusterLimit(AsyncPermitPool pool) {
+        if ("global".equals(pool.getName())) {
+            return config.getMaxGlobal();
         }
+        Bulkhead bulkhead = bulkheads.get(pool.getName());
+        return bulkhead != null ? bulkhead.getMaxConcurrent() : config.getMaxUser();
+    }
+
+    /**
+     * 根据请求类型获取对应的隔离舱
+     * @return 隔离舱，普通请求返回null（只受全局限制）
+     */
+    private Bulkhead getBulkhead(String requestType) {
+        return requestType == null ? null : bulkheadAliases.get(requestType.toLowerCase());
+    }
+
+    /**
+     * 创建自适应并发上限，以隔离舱最大并发数为初始值和上界
+     * @return 未启用自适应时返回null
+     */
+    private GradientLimit newAdaptiveLimit(boolean enabled, int maxConcurrent) {
+        ConcurrencyConfig.AdaptiveConfig adaptive = config.getAdaptive();
+        if (!adaptive.isEnabled() || !enabled) {
+            return null;
+        }
+        return new GradientLimit(maxConcurrent, adaptive.getMinLimit(), maxConcurrent,
+                adaptive.getSmoothing(), adaptive.getRttTolerance(), adaptive.getBackoffRatio(),
+                adaptive.getProbeSamples());
+    }
+
+    /**
+     * 记录一次上游调用的RTT样本，并将估计出的并发上限同步到对应许可池
+     * @param workload 调用的工作量，耗时除以该值后作为样本
+     * @param error 调用异常；非过载类异常（如参数错误）不作为样本
+     */
+    private void recordUpstreamSample(String requestType, long startNanos, double workload, Throwable error) {
+        Bulkhead bulkhead = getBulkhead(requestType);
+        if (bulkhead == null) {
+            return;
+        }
+        GradientLimit limit = bulkhead.getAdaptiveLimit();
+        if (limit == null) {
+            return;
+        }
+        AsyncPermitPool pool = bulkhead.getPool();
+
+        boolean dropped = error != null && isUpstreamOverload(error);
+        if (error != null && !dropped) {
+            return;
+        }
+
+        int oldLimit = pool.getLimit();
+        long rttNanos = (long) ((System.nanoTime() - startNanos) / Math.max(1.0, workload));
+        int newLimit = limit.onSample(rttNanos, pool.getInUse(), dropped);
+        if (newLimit != oldLimit) {
+            pool.resize(newLimit);
+            log.debug("自适应调整{}并发上限: {} -> {}, 无负载RTT: {}ms, 近期RTT: {}ms",
+                    pool.getName(), oldLimit, newLimit,
+                    String.format("%.1f", limit.getNoLoadRttMillis()), String.format("%.1f", limit.getShortRttMillis()));
+        }
+    }
+
+    /**
+     * 记录上游调用的完整耗时（流式调用为整个流的持续时间），按结果分为成功、失败、取消
+     */
+    private void recordUpstreamTiming(String requestType, long startNanos, SignalType signal) {
+        Bulkhead bulkhead = getBulkhead(requestType);
+        UpstreamTimers timers = upstreamTimers.get(bulkhead != null ? bulkhead.getName() : OTHER_UPSTREAM);
+        timers.of(signal).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 注册许可池与上游调用指标。标签只使用许可池/隔离舱名称，用户级许可池只导出汇总数量
+     */
+    private Map<String, UpstreamTimers> registerMeters(MeterRegistry registry) {
+        registerPoolMeters(registry, globalConcurrencyLimit);
+        Map<String, UpstreamTimers> timers = new HashMap<>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            registerPoolMeters(registry, bulkhead.getPool());
+            Gauge.builder("roleplay.permits.rtt.noload", bulkhead, b -> b.getAdaptiveLimit() != null
+                            ? b.getAdaptiveLimit().getNoLoadRttMillis() : Double.NaN)
+                    .description("自适应并发上限估计的无负载RTT")
+                    .baseUnit("milliseconds")
+                    .tag("pool", bulkhead.getName())
+                    .register(registry);
+            timers.put(bulkhead.getName(), new UpstreamTimers(bulkhead.getName(), registry));
+        }
+        timers.put(OTHER_UPSTREAM, new UpstreamTimers(OTHER_UPSTREAM, registry));
+
+        Gauge.builder("roleplay.permits.users", userConcurrencyMap, ExpiringMap::size)
+                .description("当前保存的用户级许可池数量")
+                .register(registry);
+        Gauge.builder("roleplay.requests.active", currentActiveRequests, AtomicInteger::get)
+                .description("已获得用户级许可、正在执行的业务请求数，不含其中的上游调用许可")
+                .register(registry);
+        FunctionCounter.builder("roleplay.requests.rejected", rejectedRequests, AtomicLong::get)
+                .description("因排队已满、排队超时或用户数超限被拒绝的请求数")
+                .register(registry);
+        FunctionCounter.builder("roleplay.requests.timeouts", timeoutRequests, AtomicLong::get)
+                .description("排队超时被拒绝的请求数")
+                .register(registry);
+        return Collections.unmodifiableMap(timers);
+    }
+
+    private static void registerPoolMeters(MeterRegistry registry, AsyncPermitPool pool) {
+        String name = pool.getName();
+        Gauge.builder("roleplay.permits.limit", pool, AsyncPermitPool::getLimit)
+                .description("许可池当前并发上限").tag("pool", name).register(registry);
+        Gauge.builder("roleplay.permits.in_use", pool, AsyncPermitPool::getInUse)
+                .description("许可池已发放的许可数").tag("pool", name).register(registry);
+        Gauge.builder("roleplay.permits.queued", pool, AsyncPermitPool::getQueueSize)
+                .description("许可池排队等待的请求数").tag("pool", name).register(registry);
+        FunctionCounter.builder("roleplay.permits.acquired", pool, AsyncPermitPool::getAcquiredCount)
+                .description("许可池累计发放的许可数").tag("pool", name).register(registry);
+        FunctionCounter.builder("roleplay.permits.rejected", pool, AsyncPermitPool::getRejectedCount)
+                .description("许可池因队列已满拒绝的请求数").tag("pool", name).register(registry);
+        FunctionCounter.builder("roleplay.permits.timeouts", pool, AsyncPermitPool::getTimeoutCount)
+                .description("许可池排队超时的请求数").tag("pool", name).register(registry);
+    }
+
+    /**
+     * 判断异常是否表示上游过载：超时、429 或 5xx
+     */
+    private boolean isUpstreamOverload(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof TimeoutException) {
+                return true;
+            }
+            if (t instanceof WebClientResponseException responseException) {
+                int status = responseException.getStatusCode().value();
+                return status == 429 || status >= 500;
+            }
+        }
+        return false;
     }
 
     /**
@@ -211,140 +559,207 @@ public class ConcurrentControlService {
     }
 
     /**
-     * 动态调整并发限制
+     * 定期输出系统负载与自适应并发上限，并清理长时间未活跃的用户控制对象
+     * 上游许可池的上限由 recordUpstreamSample 根据实时RTT调整，这里不再依据堆内存使用率增减
      */
     private void adjustConcurrencyLimits() {
         try {
             // 获取系统指标
-            PerformanceMonitoringService.SystemMetrics systemMetrics = monitoringService.getSystemMetrics();
-            double memoryUsage = systemMetrics.getMemoryUsagePercent();
-            int threadCount = systemMetrics.getThreadCount();
+            SystemMetricsSampler.SystemMetrics systemMetrics = monitoringService.getSystemMetrics();
 
             // 计算拒绝率
             long total = totalRequests.get();
             long rejected = rejectedRequests.get();
             double rejectionRate = total > 0 ? (double) rejected / total : 0.0;
 
-            log.info("系统负载监控 - 内存使用率: {}%, 线程数: {}, 拒绝率: {}%, 活跃请求: {}",
-                    String.format("%.2f", memoryUsage), threadCount, String.format("%.2f", rejectionRate * 100), currentActiveRequests.get());
+            log.info("系统负载监控 - 进程CPU: {}%, 内存使用率: {}%, GC耗时占比: {}%, 线程数: {}, 拒绝率: {}%, 活跃请求: {}",
+                    String.format("%.2f", systemMetrics.getProcessCpuPercent()),
+                    String.format("%.2f", systemMetrics.getMemoryUsagePercent()),
+                    String.format("%.2f", systemMetrics.getGcTimePercent()), systemMetrics.getThreadCount(),
+                    String.format("%.2f", rejectionRate * 100), currentActiveRequests.get());
 
-            // 根据系统负载动态调整
-            if (memoryUsage > 85.0 || rejectionRate > 0.1) {
-                // 系统负载过高，降低并发限制
-                reducesConcurrencyLimits();
-            } else if (memoryUsage < 60.0 && rejectionRate < 0.02) {
-                // 系统负载较低，可以适当提高并发限制
-                increaseConcurrencyLimits();
-            }
+            getAdaptiveLimitStats().forEach((name, stats) ->
+                    log.info("自适应并发上限 - {}: 上限 {}, 进行中 {}, 排队 {}, 无负载RTT {}ms, 近期RTT {}ms",
+                            name, stats.getLimit(), stats.getInflight(), stats.getQueued(),
+                            String.format("%.1f", stats.getNoLoadRttMs()), String.format("%.1f", stats.getShortRttMs())));
 
             // 清理长时间未活跃的用户控制对象
             cleanupInactiveUsers();
-
         } catch (Exception e) {
             log.error("动态调整并发限制时发生错误", e);
         }
     }
 
     /**
-     * 降低并发限制
+     * 推进用户许可池的过期时间轮，移除长时间未活跃的用户控制对象
      */
-    private void reducesConcurrencyLimits() {
-        int newGlobalLimit = Math.max(50, (int) (maxGlobalConcurrency * 0.8));
-        int newLlmLimit = Math.max(25, (int) (maxLlmConcurrency * 0.8));
-        int newStreamingLimit = Math.max(15, (int) (maxStreamingConcurrency * 0.8));
-        int newUserLimit = Math.max(3, (int) (maxUserConcurrency * 0.8));
+    private void cleanupInactiveUsers() {
+        int cleaned = userConcurrencyMap.cleanUp();
+        if (cleaned > 0) {
+            log.debug("清理非活跃用户控制对象: {}个", cleaned);
+        }
+    }
 
-        updateConcurrencyLimits(newGlobalLimit, newLlmLimit, newStreamingLimit, newUserLimit);
-        log.info("系统负载过高，降低并发限制 - 全局: {}, LLM: {}, 流式: {}, 用户: {}",
-                newGlobalLimit, newLlmLimit, newStreamingLimit, newUserLimit);
+    /**
+     * 获取当前持有用户级许可的请求数
+     */
+    public int getCurrentActiveRequests() {
+        return currentActiveRequests.get();
     }
 
     /**
-     * 提高并发限制
+     * 获取并发控制统计信息
      */
-    private void increaseConcurrencyLimits() {
-        int newGlobalLimit = Math.min(200, (int) (maxGlobalConcurrency * 1.1));
-        int newLlmLimit = Math.min(100, (int) (maxLlmConcurrency * 1.1));
-        int newStreamingLimit = Math.min(60, (int) (maxStreamingConcurrency * 1.1));
-        int newUserLimit = Math.min(10, (int) (maxUserConcurrency * 1.1));
+    public ConcurrencyStats getConcurrencyStats() {
+        AsyncPermitPool llmPool = poolOf("chat");
+        AsyncPermitPool streamingPool = poolOf("stream");
 
-        updateConcurrencyLimits(newGlobalLimit, newLlmLimit, newStreamingLimit, newUserLimit);
-        log.info("系统负载较低，提高并发限制 - 全局: {}, LLM: {}, 流式: {}, 用户: {}",
-                newGlobalLimit, newLlmLimit, newStreamingLimit, newUserLimit);
+        ConcurrencyStats stats = new ConcurrencyStats();
+        stats.setMaxGlobalConcurrency(globalConcurrencyLimit.getLimit());
+        stats.setMaxLlmConcurrency(llmPool != null ? llmPool.getLimit() : 0);
+        stats.setMaxStreamingConcurrency(streamingPool != null ? streamingPool.getLimit() : 0);
+        stats.setMaxUserConcurrency(maxUserConcurrency);
+        stats.setCurrentActiveRequests(currentActiveRequests.get());
+        stats.setTotalRequests(totalRequests.get());
+        stats.setRejectedRequests(rejectedRequests.get());
+        stats.setTimeoutRequests(timeoutRequests.get());
+        stats.setActiveUsers(userConcurrencyMap.size());
+        stats.setAvailableGlobalPermits(globalConcurrencyLimit.getAvailablePermits());
+        stats.setAvailableLlmPermits(llmPool != null ? llmPool.getAvailablePermits() : 0);
+        stats.setAvailableStreamingPermits(streamingPool != null ? streamingPool.getAvailablePermits() : 0);
+        stats.setQueuedGlobalRequests(globalConcurrencyLimit.getQueueSize());
+        stats.setQueuedLlmRequests(llmPool != null ? llmPool.getQueueSize() : 0);
+        stats.setQueuedStreamingRequests(streamingPool != null ? streamingPool.getQueueSize() : 0);
+        stats.setAdaptiveLimits(getAdaptiveLimitStats());
+        stats.setBulkheads(getBulkheadStats());
+        stats.setGlobalQueueByPriority(globalConcurrencyLimit.getClassQueueStats());
+
+        return stats;
+    }
+
+    private AsyncPermitPool poolOf(String requestType) {
+        Bulkhead bulkhead = getBulkhead(requestType);
+        return bulkhead != null ? bulkhead.getPool() : null;
     }
 
     /**
-     * 更新并发限制
+     * 获取各隔离舱的自适应并发上限状态
      */
-    private void updateConcurrencyLimits(int globalLimit, int llmLimit, int streamingLimit, int userLimit) {
-        // 更新全局限制
-        int globalDiff = globalLimit - maxGlobalConcurrency;
-        if (globalDiff > 0) {
-            globalConcurrencyLimit.release(globalDiff);
-        } else if (globalDiff < 0) {
-            globalConcurrencyLimit.tryAcquire(-globalDiff);
-        }
-        maxGlobalConcurrency = globalLimit;
-
-        // 更新LLM限制
-        int llmDiff = llmLimit - maxLlmConcurrency;
-        if (llmDiff > 0) {
-            llmRequestLimit.release(llmDiff);
-        } else if (llmDiff < 0) {
-            llmRequestLimit.tryAcquire(-llmDiff);
-        }
-        maxLlmConcurrency = llmLimit;
-
-        // 更新流式限制
-        int streamingDiff = streamingLimit - maxStreamingConcurrency;
-        if (streamingDiff > 0) {
-            streamingRequestLimit.release(streamingDiff);
-        } else if (streamingDiff < 0) {
-            streamingRequestLimit.tryAcquire(-streamingDiff);
+    public Map<String, AdaptiveLimitStats> getAdaptiveLimitStats() {
+        Map<String, AdaptiveLimitStats> result = new LinkedHashMap<>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            AsyncPermitPool pool = bulkhead.getPool();
+            GradientLimit limit = bulkhead.getAdaptiveLimit();
+            AdaptiveLimitStats stats = new AdaptiveLimitStats();
+            stats.setLimit(pool.getLimit());
+            stats.setInflight(pool.getInUse());
+            stats.setQueued(pool.getQueueSize());
+            if (limit != null) {
+                stats.setNoLoadRttMs(limit.getNoLoadRttMillis());
+                stats.setShortRttMs(limit.getShortRttMillis());
+                stats.setSamples(limit.getSampleCount());
+                stats.setDrops(limit.getDropCount());
+            }
+            result.put(bulkhead.getName(), stats);
         }
-        maxStreamingConcurrency = streamingLimit;
+        return result;
+    }
 
-        // 更新用户限制（对新用户生效）
-        maxUserConcurrency = userLimit;
+    /**
+     * 获取各隔离舱的容量、排队与拒绝统计
+     */
+    public Map<String, BulkheadStats> getBulkheadStats() {
+        Map<String, BulkheadStats> result = new LinkedHashMap<>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            result.put(bulkhead.getName(), toBulkheadStats(bulkhead));
+        }
+        return result;
     }
 
     /**
-     * 清理长时间未活跃的用户控制对象
+     * 运行时调整隔离舱参数，未传的参数保持不变
+     * @param name 隔离舱名称或别名
+     * @param maxConcurrent 最大并发数
+     * @param queueSize 等待队列长度
+     * @param timeoutMs 排队超时（毫秒）
+     * @return 调整后的隔离舱统计
      */
-    private void cleanupInactiveUsers() {
-        long currentTime = System.currentTimeMillis();
-        long inactiveThreshold = 30 * 60 * 1000; // 30分钟
+    public BulkheadStats updateBulkhead(String name, Integer maxConcurrent, Integer queueSize, Long timeoutMs) {
+        Bulkhead bulkhead = getBulkhead(name);
+        if (bulkhead == null) {
+            throw new IllegalArgumentException("隔离舱不存在: " + name);
+        }
+        if ((maxConcurrent != null && maxConcurrent < 1) || (queueSize != null && queueSize < 0)
+                || (timeoutMs != null && timeoutMs < 0)) {
+            throw new IllegalArgumentException("隔离舱参数不合法");
+        }
 
-        userConcurrencyMap.entrySet().removeIf(entry -> {
-            UserConcurrencyControl control = entry.getValue();
-            boolean isInactive = (currentTime - control.getLastRequestTime().get()) > inactiveThreshold
-                    && control.getActiveRequests().get() == 0;
+        int newMaxConcurrent = maxConcurrent != null ? maxConcurrent : bulkhead.getMaxConcurrent();
+        int newQueueSize = queueSize != null ? queueSize : bulkhead.getPool().getMaxQueueSize();
+        long newTimeoutMs = timeoutMs != null ? timeoutMs : bulkhead.getTimeoutMs();
 
-            if (isInactive) {
-                log.debug("清理非活跃用户控制对象: {}", entry.getKey());
-            }
-            return isInactive;
-        });
+        // 上界变化时重建自适应上限，从新上界重新开始学习
+        GradientLimit adaptiveLimit = bulkhead.getAdaptiveLimit();
+        if (adaptiveLimit != null && newMaxConcurrent != bulkhead.getMaxConcurrent()) {
+            adaptiveLimit = newAdaptiveLimit(true, newMaxConcurrent);
+        }
+        bulkhead.reconfigure(newMaxConcurrent, newQueueSize, newTimeoutMs, adaptiveLimit);
+
+        log.info("隔离舱参数已调整 - {}: 最大并发 {}, 队列 {}, 排队超时 {}ms",
+                bulkhead.getName(), newMaxConcurrent, newQueueSize, newTimeoutMs);
+        return toBulkheadStats(bulkhead);
+    }
+
+    private BulkheadStats toBulkheadStats(Bulkhead bulkhead) {
+        AsyncPermitPool pool = bulkhead.getPool();
+        BulkheadStats stats = new BulkheadStats();
+        stats.setMaxConcurrent(bulkhead.getMaxConcurrent());
+        stats.setCurrentLimit(pool.getLimit());
+        stats.setAdaptive(bulkhead.getAdaptiveLimit() != null);
+        stats.setInUse(pool.getInUse());
+        stats.setQueued(pool.getQueueSize());
+        stats.setMaxQueueSize(pool.getMaxQueueSize());
+        stats.setTimeoutMs(bulkhead.getTimeoutMs());
+        stats.setAcquired(pool.getAcquiredCount());
+        stats.setRejected(pool.getRejectedCount());
+        stats.setTimeouts(pool.getTimeoutCount());
+        stats.setAverageWaitMs(pool.getAverageWaitMillis());
+        stats.setQueueByPriority(pool.getClassQueueStats());
+        return stats;
     }
 
     /**
-     * 获取并发控制统计信息
+     * 单个上游能力按调用结果划分的耗时计时器
      */
-    public ConcurrencyStats getConcurrencyStats() {
-        ConcurrencyStats stats = new ConcurrencyStats();
-        stats.setMaxGlobalConcurrency(maxGlobalConcurrency);
-        stats.setMaxLlmConcurrency(maxLlmConcurrency);
-        stats.setMaxStreamingConcurrency(maxStreamingConcurrency);
-        stats.setMaxUserConcurrency(maxUserConcurrency);
-        stats.setCurrentActiveRequests(currentActiveRequests.get());
-        stats.setTotalRequests(totalRequests.get());
-        stats.setRejectedRequests(rejectedRequests.get());
-        stats.setActiveUsers(userConcurrencyMap.size());
-        stats.setAvailableGlobalPermits(globalConcurrencyLimit.availablePermits());
-        stats.setAvailableLlmPermits(llmRequestLimit.availablePermits());
-        stats.setAvailableStreamingPermits(streamingRequestLimit.availablePermits());
+    private static final class UpstreamTimers {
+        private final Timer success;
+        private final Timer error;
+        private final Timer cancelled;
+
+        UpstreamTimers(String upstream, MeterRegistry registry) {
+            this.success = upstreamTimer(upstream, "success", registry);
+            this.error = upstreamTimer(upstream, "error", registry);
+            this.cancelled = upstreamTimer(upstream, "cancelled", registry);
+        }
 
-        return stats;
+        private static Timer upstreamTimer(String upstream, String outcome, MeterRegistry registry) {
+            return Timer.builder("roleplay.upstream.requests")
+                    .description("上游LLM/ASR/TTS调用耗时，流式调用为整个流的持续时间")
+                    .tag("upstream", upstream)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(10))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(registry);
+        }
+
+        Timer of(SignalType signal) {
+            return switch (signal) {
+                case ON_ERROR -> error;
+                case CANCEL -> cancelled;
+                default -> success;
+            };
+        }
     }
 
     /**
@@ -358,10 +773,17 @@ public class ConcurrentControlService {
         private int currentActiveRequests;
         private long totalRequests;
         private long rejectedRequests;
+        private long timeoutRequests;
         private int activeUsers;
         private int availableGlobalPermits;
         private int availableLlmPermits;
         private int availableStreamingPermits;
+        private int queuedGlobalRequests;
+        private int queuedLlmRequests;
+        private int queuedStreamingRequests;
+        private Map<String, AdaptiveLimitStats> adaptiveLimits;
+        private Map<String, BulkheadStats> bulkheads;
+        private Map<RequestPriority, AsyncPermitPool.ClassQueueStats> globalQueueByPriority;
 
         // Getters and Setters
         public int getMaxGlobalConcurrency() { return maxGlobalConcurrency; }
@@ -385,6 +807,9 @@ public class ConcurrentControlService {
         public long getRejectedRequests() { return rejectedRequests; }
         public void setRejectedRequests(long rejectedRequests) { this.rejectedRequests = rejectedRequests; }
 
+        public long getTimeoutRequests() { return timeoutRequests; }
+        public void setTimeoutRequests(long timeoutRequests) { this.timeoutRequests = timeoutRequests; }
+
         public int getActiveUsers() { return activeUsers; }
         public void setActiveUsers(int activeUsers) { this.activeUsers = activeUsers; }
 
@@ -396,5 +821,113 @@ public class ConcurrentControlService {
 
         public int getAvailableStreamingPermits() { return availableStreamingPermits; }
         public void setAvailableStreamingPermits(int availableStreamingPermits) { this.availableStreamingPermits = availableStreamingPermits; }
+
+        public int getQueuedGlobalRequests() { return queuedGlobalRequests; }
+        public void setQueuedGlobalRequests(int queuedGlobalRequests) { this.queuedGlobalRequests = queuedGlobalRequests; }
+
+        public int getQueuedLlmRequests() { return queuedLlmRequests; }
+        public void setQueuedLlmRequests(int queuedLlmRequests) { this.queuedLlmRequests = queuedLlmRequests; }
+
+        public int getQueuedStreamingRequests() { return queuedStreamingRequests; }
+        public void setQueuedStreamingRequests(int queuedStreamingRequests) { this.queuedStreamingRequests = queuedStreamingRequests; }
+
+        public Map<String, AdaptiveLimitStats> getAdaptiveLimits() { return adaptiveLimits; }
+        public void setAdaptiveLimits(Map<String, AdaptiveLimitStats> adaptiveLimits) { this.adaptiveLimits = adaptiveLimits; }
+
+        public Map<String, BulkheadStats> getBulkheads() { return bulkheads; }
+        public void setBulkheads(Map<String, BulkheadStats> bulkheads) { this.bulkheads = bulkheads; }
+
+        public Map<RequestPriority, AsyncPermitPool.ClassQueueStats> getGlobalQueueByPriority() { return globalQueueByPriority; }
+        public void setGlobalQueueByPriority(Map<RequestPriority, AsyncPermitPool.ClassQueueStats> globalQueueByPriority) { this.globalQueueByPriority = globalQueueByPriority; }
+    }
+
+    /**
+     * 隔离舱统计数据类
+     */
+    public static class BulkheadStats {
+        private int maxConcurrent;
+        private int currentLimit;
+        private boolean adaptive;
+        private int inUse;
+        private int queued;
+        private int maxQueueSize;
+        private long timeoutMs;
+        private long acquired;
+        private long rejected;
+        private long timeouts;
+        private double averageWaitMs;
+        private Map<RequestPriority, AsyncPermitPool.ClassQueueStats> queueByPriority;
+
+        // Getters and Setters
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+
+        public int getCurrentLimit() { return currentLimit; }
+        public void setCurrentLimit(int currentLimit) { this.currentLimit = currentLimit; }
+
+        public boolean isAdaptive() { return adaptive; }
+        public void setAdaptive(boolean adaptive) { this.adaptive = adaptive; }
+
+        public int getInUse() { return inUse; }
+        public void setInUse(int inUse) { this.inUse = inUse; }
+
+        public int getQueued() { return queued; }
+        public void setQueued(int queued) { this.queued = queued; }
+
+        public int getMaxQueueSize() { return maxQueueSize; }
+        public void setMaxQueueSize(int maxQueueSize) { this.maxQueueSize = maxQueueSize; }
+
+        public long getTimeoutMs() { return timeoutMs; }
+        public void setTimeoutMs(long timeoutMs) { this.timeoutMs = timeoutMs; }
+
+        public long getAcquired() { return acquired; }
+        public void setAcquired(long acquired) { this.acquired = acquired; }
+
+        public long getRejected() { return rejected; }
+        public void setRejected(long rejected) { this.rejected = rejected; }
+
+        public long getTimeouts() { return timeouts; }
+        public void setTimeouts(long timeouts) { this.timeouts = timeouts; }
+
+        public double getAverageWaitMs() { return averageWaitMs; }
+        public void setAverageWaitMs(double averageWaitMs) { this.averageWaitMs = averageWaitMs; }
+
+        public Map<RequestPriority, AsyncPermitPool.ClassQueueStats> getQueueByPriority() { return queueByPriority; }
+        public void setQueueByPriority(Map<RequestPriority, AsyncPermitPool.ClassQueueStats> queueByPriority) { this.queueByPriority = queueByPriority; }
+    }
+
+    /**
+     * 自适应并发上限统计数据类
+     */
+    public static class AdaptiveLimitStats {
+        private int limit;
+        private int inflight;
+        private int queued;
+        private double noLoadRttMs;
+        private double shortRttMs;
+        private long samples;
+        private long drops;
+
+        // Getters and Setters
+        public int getLimit() { return limit; }
+        public void setLimit(int limit) { this.limit = limit; }
+
+        public int getInflight() { return inflight; }
+        public void setInflight(int inflight) { this.inflight = inflight; }
+
+        public int getQueued() { return queued; }
+        public void setQueued(int queued) { this.queued = queued; }
+
+        public double getNoLoadRttMs() { return noLoadRttMs; }
+        public void setNoLoadRttMs(double noLoadRttMs) { this.noLoadRttMs = noLoadRttMs; }
+
+        public double getShortRttMs() { return shortRttMs; }
+        public void setShortRttMs(double shortRttMs) { this.shortRttMs = shortRttMs; }
+
+        public long getSamples() { return samples; }
+        public void setSamples(long samples) { this.samples = samples; }
+
+        public long getDrops() { return drops; }
+        public void setDrops(long drops) { this.drops = drops; }
     }
 }
@@ -1,6 +1,10 @@
 package com.hzau.service;
 
+import com.hzau.common.jfr.ConversationCacheEvent;
 import com.hzau.entity.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -29,6 +33,14 @@ public class ConversationCacheService {
     @Autowired
     private ApplicationContext applicationContext;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 消息缓存命中统计
+    private Counter cacheHits;
+    private Counter cacheMisses;
+    private Counter cacheErrors;
+
     // Redis键前缀
     private static final String ACTIVE_CONVERSATIONS_KEY = "chat:active_conversations";
     private static final String CONVERSATION_MESSAGES_KEY = "chat:messages:";
@@ -39,6 +51,21 @@ public class ConversationCacheService {
     private static final int MESSAGE_CACHE_EXPIRE = 30 * 60; // 30分钟
     private static final int USER_ACTIVE_EXPIRE = 24 * 60 * 60; // 24小时
 
+    @PostConstruct
+    public void initMetrics() {
+        this.cacheHits = cacheCounter("hit");
+        this.cacheMisses = cacheCounter("miss");
+        this.cacheErrors = cacheCounter("error");
+    }
+
+    private Counter cacheCounter(String result) {
+        return Counter.builder("roleplay.cache.requests")
+                .description("对话消息缓存查询次数，按命中、未命中、出错划分")
+                .tag("cache", "conversation_messages")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
     /**
      * 激活对话 - 用户打开聊天窗口时调用
      * @param userId 用户ID
@@ -113,17 +140,25 @@ public class ConversationCacheService {
      */
     @SuppressWarnings("unchecked")
     public List<Message> getCachedMessages(Long conversationId) {
+        ConversationCacheEvent event = beginCacheEvent("get", conversationId);
         try {
             String conversationKey = CONVERSATION_MESSAGES_KEY + conversationId;
             Object cachedMessages = redisTemplate.opsForValue().get(conversationKey);
 
             if (cachedMessages != null) {
+                cacheHits.increment();
                 log.debug("从缓存获取对话消息, conversationId: {}", conversationId);
-                return (List<Message>) cachedMessages;
+                List<Message> messages = (List<Message>) cachedMessages;
+                commitCacheEvent(event, "hit", messages.size());
+                return messages;
             }
 
+            cacheMisses.increment();
+            commitCacheEvent(event, "miss", 0);
             return null;
         } catch (Exception e) {
+            cacheErrors.increment();
+            commitCacheEvent(event, "error", 0);
             log.error("获取缓存消息失败, conversationId: {}", conversationId, e);
             return null;
         }
@@ -193,6 +228,7 @@ public class ConversationCacheService {
      * @param conversationId 对话ID
      */
     private void loadConversationToCache(Long conversationId) {
+        ConversationCacheEvent event = beginCacheEvent("load", conversationId);
         try {
             log.info("从数据库加载对话消息到缓存, conversationId: {}", conversationId);
 
@@ -202,13 +238,29 @@ public class ConversationCacheService {
             String conversationKey = CONVERSATION_MESSAGES_KEY + conversationId;
 
             redisTemplate.opsForValue().set(conversationKey, messages, MESSAGE_CACHE_EXPIRE, TimeUnit.SECONDS);
+            commitCacheEvent(event, "loaded", messages.size());
             log.info("对话消息已缓存, conversationId: {}, 消息数量: {}", conversationId, messages.size());
 
         } catch (Exception e) {
+            commitCacheEvent(event, "error", 0);
             log.error("加载对话消息到缓存失败, conversationId: {}", conversationId, e);
         }
     }
 
+    private static ConversationCacheEvent beginCacheEvent(String operation, Long conversationId) {
+        ConversationCacheEvent event = new ConversationCacheEvent();
+        event.operation = operation;
+        event.conversationId = conversationId != null ? conversationId : 0L;
+        event.begin();
+        return event;
+    }
+
+    private static void commitCacheEvent(ConversationCacheEvent event, String result, int messages) {
+        event.result = result;
+        event.messages = messages;
+        event.commit();
+    }
+
     /**
      * 检查对话是否被其他用户激活
      * @param conversationId 对话ID
@@ -0,0 +1,438 @@
+package com.hzau.service;
+
+import com.hzau.common.exception.ServiceBusyException;
+import com.hzau.config.ConcurrencyConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: DistributedPermitService
+ * @author: zhuyuchen
+ * @description: 基于Redis的集群级许可与配额服务。
+ *               各节点通过Lua脚本按批次租用许可并记录在 holders 哈希中，节点租约由心跳续期，
+ *               节点宕机后租约过期，其持有的许可由后续的申请脚本回收；
+ *               未用完的许可缓存在本地，常见情况下申请与释放不访问Redis。Redis不可用时退化为仅本地控制。
+ * @date: 2026/10/19 下午7:05
+ */
+@Slf4j
+@Service
+public class DistributedPermitService {
+
+    /**
+     * 回收过期节点的许可后按剩余容量批量租用
+     * KEYS[1]: holders哈希（节点ID -> 持有许可数） KEYS[2]: 节点租约到期时间有序集合
+     * ARGV: 节点ID, 期望数量, 集群上限, 租约有效期(ms)
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local ttl = tonumber(ARGV[4])
+            local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', now)
+            for _, node in ipairs(expired) do
+                redis.call('HDEL', KEYS[1], node)
+                redis.call('ZREM', KEYS[2], node)
+            end
+            local used = 0
+            for _, v in ipairs(redis.call('HVALS', KEYS[1])) do
+                used = used + tonumber(v)
+            end
+            local grant = math.min(tonumber(ARGV[2]), tonumber(ARGV[3]) - used)
+            if grant <= 0 then
+                return 0
+            end
+            redis.call('HINCRBY', KEYS[1], ARGV[1], grant)
+            redis.call('ZADD', KEYS[2], now + ttl, ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ttl * 4)
+            redis.call('PEXPIRE', KEYS[2], ttl * 4)
+            return grant
+            """, Long.class);
+
+    /**
+     * 归还许可
+     * KEYS[1]: holders哈希 ARGV: 节点ID, 归还数量
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            local left = redis.call('HINCRBY', KEYS[1], ARGV[1], -tonumber(ARGV[2]))
+            if left <= 0 then
+                redis.call('HDEL', KEYS[1], ARGV[1])
+            end
+            return left
+            """, Long.class);
+
+    /**
+     * 心跳：以本地实际持有数覆盖Redis中的记录并续期租约，顺带修正取消请求等原因造成的计数偏差
+     * KEYS[1]: holders哈希 KEYS[2]: 租约有序集合 ARGV: 节点ID, 持有数量, 租约有效期(ms)
+     */
+    private static final RedisScript<Long> HEARTBEAT_SCRIPT = RedisScript.of("""
+            local count = tonumber(ARGV[2])
+            if count <= 0 then
+                redis.call('HDEL', KEYS[1], ARGV[1])
+                redis.call('ZREM', KEYS[2], ARGV[1])
+                return 0
+            end
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local ttl = tonumber(ARGV[3])
+            redis.call('HSET', KEYS[1], ARGV[1], count)
+            redis.call('ZADD', KEYS[2], now + ttl, ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ttl * 4)
+            redis.call('PEXPIRE', KEYS[2], ttl * 4)
+            return count
+            """, Long.class);
+
+    /**
+     * 固定窗口配额批量租用
+     * KEYS[1]: 窗口计数键 ARGV: 期望数量, 窗口上限, 键过期时间(ms)
+     */
+    private static final RedisScript<Long> QUOTA_SCRIPT = RedisScript.of("""
+            local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+            local grant = math.min(tonumber(ARGV[1]), tonumber(ARGV[2]) - used)
+            if grant <= 0 then
+                return 0
+            end
+            redis.call('INCRBY', KEYS[1], grant)
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return grant
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ConcurrencyConfig.DistributedConfig config;
+    private final String nodeId;
+
+    // 本地租约缓存，key为许可池名称
+    private final ConcurrentMap<String, LeaseCache> leaseCaches = new ConcurrentHashMap<>();
+    // 本地配额缓存，key为配额键
+    private final ConcurrentMap<String, QuotaCache> quotaCaches = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final AtomicLong localHits = new AtomicLong(0);
+    private final AtomicLong redisCalls = new AtomicLong(0);
+    private final AtomicLong redisErrors = new AtomicLong(0);
+    private final AtomicBoolean redisHealthy = new AtomicBoolean(true);
+
+    public DistributedPermitService(ReactiveStringRedisTemplate redisTemplate, ConcurrencyConfig concurrencyConfig) {
+        this.redisTemplate = redisTemplate;
+        this.config = concurrencyConfig.getDistributed();
+        this.nodeId = config.getNodeId() != null && !config.getNodeId().isBlank()
+                ? config.getNodeId()
+                : UUID.randomUUID().toString();
+        if (config.isEnabled()) {
+            log.info("集群并发控制已启用, nodeId: {}, 批量租用: {}, 租约有效期: {}ms",
+                    nodeId, config.getBatchSize(), config.getLeaseTtlMs());
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 申请一个集群许可，集群容量不足时按轮询间隔重试直到 maxWait
+     * @param name 许可池名称
+     * @param clusterLimit 集群总上限
+     * @param batch 每次向Redis租用的数量，为1时不在本地缓存空闲许可
+     * @param maxWait 最长等待时间
+     * @return 集群许可租约，超时以 ServiceBusyException 失败
+     */
+    public Mono<ClusterLease> acquire(String name, int clusterLimit, int batch, Duration maxWait) {
+        Duration pollInterval = Duration.ofMillis(config.getPollIntervalMs());
+        return Mono.defer(() -> tryAcquire(name, clusterLimit, batch))
+                .repeatWhenEmpty(attempts -> attempts.delayElements(pollInterval))
+                .timeout(maxWait, Mono.error(() -> new ServiceBusyException("cluster:" + name, true)))
+                .doOnDiscard(ClusterLease.class, ClusterLease::release);
+    }
+
+    /**
+     * 尝试申请一个集群许可，集群容量不足时返回空
+     */
+    private Mono<ClusterLease> tryAcquire(String name, int clusterLimit, int batch) {
+        LeaseCache cache = leaseCacheFor(name, batch);
+        if (cache == null) {
+            return tryAcquire(name, clusterLimit, batch);
+        }
+        synchronized (cache) {
+            if (cache.held > cache.inUse) {
+                cache.inUse++;
+                cache.touched = true;
+                localHits.incrementAndGet();
+                return Mono.just(new ClusterLease(this, cache, name));
+            }
+        }
+
+        redisCalls.incrementAndGet();
+        List<String> keys = List.of(holdersKey(name), expiryKey(name));
+        return redisTemplate.execute(ACQUIRE_SCRIPT, keys,
+                        List.of(nodeId, String.valueOf(Math.max(1, batch)), String.valueOf(clusterLimit),
+                                String.valueOf(config.getLeaseTtlMs())))
+                .next()
+                .timeout(Duration.ofMillis(config.getRedisTimeoutMs()))
+                .flatMap(granted -> {
+                    markRedisHealthy();
+                    if (granted <= 0) {
+                        return Mono.<ClusterLease>empty();
+                    }
+                    synchronized (cache) {
+                        if (!cache.retired) {
+                            cache.held += granted.intValue();
+                            cache.inUse++;
+                            cache.touched = true;
+                            return Mono.just(new ClusterLease(this, cache, name));
+                        }
+                    }
+                    // 请求途中缓存已被心跳清理，心跳同时把Redis中的持有数置为0，租到的许可不能再记在该缓存上，
+                    // 先归还Redis，再在新的缓存上重新申请
+                    return giveBack(name, granted.intValue())
+                            .then(Mono.defer(() -> tryAcquire(name, clusterLimit, batch)));
+                })
+                .onErrorResume(error -> {
+                    // Redis不可用时不阻断业务，仅依赖本地许可池
+                    markRedisFailure(error);
+                    return Mono.just(new ClusterLease(this, null, name));
+                });
+    }
+
+    /**
+     * 归还一个集群许可，本地缓存的空闲许可超过 batch-1 时将多余部分归还Redis
+     */
+    private void release(LeaseCache cache, String name) {
+        int surplus;
+        synchronized (cache) {
+            cache.inUse = Math.max(0, cache.inUse - 1);
+            surplus = cache.held - cache.inUse - (cache.batch - 1);
+            if (surplus > 0) {
+                cache.held -= surplus;
+            }
+        }
+        if (surplus > 0) {
+            returnToRedis(name, surplus);
+        }
+    }
+
+    private void returnToRedis(String name, int count) {
+        giveBack(name, count).subscribe();
+    }
+
+    /**
+     * 向Redis归还许可，失败时只记录，由下一次心跳按本地实际持有数修正
+     */
+    private Mono<Void> giveBack(String name, int count) {
+        return redisTemplate.execute(RELEASE_SCRIPT, List.of(holdersKey(name)), List.of(nodeId, String.valueOf(count)))
+                .next()
+                .timeout(Duration.ofMillis(config.getRedisTimeoutMs()))
+                .doOnNext(left -> markRedisHealthy())
+                .doOnError(this::markRedisFailure)
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * 在集群范围内消耗一个固定窗口配额，本地缓存批量租用的配额
+     * @param key 配额键
+     * @param limit 窗口内上限
+     * @param windowMillis 窗口长度（毫秒）
+     * @return true表示允许；Redis不可用时返回true，由本地限流兜底
+     */
+    public Mono<Boolean> tryConsumeQuota(String key, int limit, long windowMillis) {
+        long window = System.currentTimeMillis() / windowMillis;
+        QuotaCache cache = quotaCaches.computeIfAbsent(key, k -> new QuotaCache(windowMillis));
+        synchronized (cache) {
+            if (cache.window == window && cache.tokens > 0) {
+                cache.tokens--;
+                localHits.incrementAndGet();
+                return Mono.just(true);
+            }
+        }
+
+        // 批量大小不超过上限的1/10，避免单个节点囤积过多配额
+        int batch = Math.max(1, Math.min(config.getQuotaBatchSize(), limit / 10));
+        redisCalls.incrementAndGet();
+        return redisTemplate.execute(QUOTA_SCRIPT, List.of(config.getKeyPrefix() + "quota:{" + key + "}:" + window),
+                        List.of(String.valueOf(batch), String.valueOf(limit), String.valueOf(windowMillis * 2)))
+                .next()
+                .timeout(Duration.ofMillis(config.getRedisTimeoutMs()))
+                .map(granted -> {
+                    markRedisHealthy();
+                    if (granted <= 0) {
+                        return false;
+                    }
+                    synchronized (cache) {
+                        // 旧窗口剩余的配额直接作废
+                        cache.tokens = (cache.window == window ? cache.tokens : 0) + granted.intValue() - 1;
+                        cache.window = window;
+                    }
+                    return true;
+                })
+                .onErrorResume(error -> {
+                    markRedisFailure(error);
+                    return Mono.just(true);
+                });
+    }
+
+    /**
+     * 心跳：续期本节点租约，归还自上次心跳以来未被使用的空闲许可，清理过期的本地缓存
+     */
+    @Scheduled(fixedDelayString = "${concurrency.distributed.heartbeat-interval-ms:5000}")
+    public void heartbeat() {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        for (Map.Entry<String, LeaseCache> entry : leaseCaches.entrySet()) {
+            LeaseCache cache = entry.getValue();
+            int held;
+            synchronized (cache) {
+                if (!cache.touched) {
+                    cache.held = cache.inUse;
+                }
+                cache.touched = false;
+                held = cache.held;
+                if (held == 0) {
+                    // 仍在途中的Redis申请返回后会发现缓存已清理，自行归还租到的许可
+                    cache.retired = true;
+                    leaseCaches.remove(entry.getKey(), cache);
+                }
+            }
+            String name = entry.getKey();
+            redisTemplate.execute(HEARTBEAT_SCRIPT, List.of(holdersKey(name), expiryKey(name)),
+                            List.of(nodeId, String.valueOf(held), String.valueOf(config.getLeaseTtlMs())))
+                    .next()
+                    .timeout(Duration.ofMillis(config.getRedisTimeoutMs()))
+                    .subscribe(count -> markRedisHealthy(), this::markRedisFailure);
+        }
+
+        long now = System.currentTimeMillis();
+        quotaCaches.entrySet().removeIf(entry -> {
+            QuotaCache cache = entry.getValue();
+            synchronized (cache) {
+                return cache.window < now / cache.windowMillis;
+            }
+        });
+    }
+
+    /**
+     * 节点下线时归还全部许可，避免其他节点等待租约过期
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (!config.isEnabled() || leaseCaches.isEmpty()) {
+            return;
+        }
+        try {
+            Flux.fromIterable(leaseCaches.keySet())
+                    .flatMap(name -> redisTemplate.execute(HEARTBEAT_SCRIPT, List.of(holdersKey(name), expiryKey(name)),
+                            List.of(nodeId, "0", String.valueOf(config.getLeaseTtlMs()))))
+                    .then()
+                    .block(Duration.ofSeconds(2));
+            log.info("节点下线，已归还集群许可, nodeId: {}", nodeId);
+        } catch (Exception e) {
+            log.warn("节点下线归还集群许可失败，将等待租约过期后回收, nodeId: {}", nodeId);
+        }
+    }
+
+    private LeaseCache leaseCacheFor(String name, int batch) {
+        LeaseCache cache = leaseCaches.computeIfAbsent(name, k -> new LeaseCache(Math.max(1, batch)));
+        synchronized (cache) {
+            // 已被心跳清理的缓存对象不再使用，由调用方重新获取
+            return cache.retired ? null : cache;
+        }
+    }
+
+    private void markRedisHealthy() {
+        if (redisHealthy.compareAndSet(false, true)) {
+            log.info("Redis已恢复，集群并发控制恢复正常");
+        }
+    }
+
+    private void markRedisFailure(Throwable error) {
+        redisErrors.incrementAndGet();
+        if (redisHealthy.compareAndSet(true, false)) {
+            log.warn("Redis不可用，集群并发控制退化为本地控制: {}", error.getMessage());
+        }
+    }
+
+    private String holdersKey(String name) {
+        return config.getKeyPrefix() + "{" + name + "}:holders";
+    }
+
+    private String expiryKey(String name) {
+        return config.getKeyPrefix() + "{" + name + "}:expiry";
+    }
+
+    public String getNodeId() { return nodeId; }
+    public long getLocalHits() { return localHits.get(); }
+    public long getRedisCalls() { return redisCalls.get(); }
+    public long getRedisErrors() { return redisErrors.get(); }
+    public boolean isRedisHealthy() { return redisHealthy.get(); }
+
+    /**
+     * 本地租约缓存，由自身锁保护
+     */
+    private static final class LeaseCache {
+        private final int batch;
+        private int held;      // 从Redis租到的许可数（使用中 + 空闲）
+        private int inUse;     // 使用中的许可数
+        private boolean touched;
+        private boolean retired;
+
+        private LeaseCache(int batch) {
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * 本地配额缓存，由自身锁保护
+     */
+    private static final class QuotaCache {
+        private final long windowMillis;
+        private long window = -1;
+        private int tokens;
+
+        private QuotaCache(long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+    }
+
+    /**
+     * 集群许可租约，release() 幂等，归还到发放该租约的缓存对象，不按名称重新查找
+     * Redis不可用时发放的租约不占用集群容量（cache 为 null），释放时不做任何操作
+     */
+    public static final class ClusterLease {
+        private final DistributedPermitService owner;
+        private final LeaseCache cache;
+        private final String name;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private ClusterLease(DistributedPermitService owner, LeaseCache cache, String name) {
+            this.owner = owner;
+            this.cache = cache;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true) && cache != null) {
+                owner.release(cache, name);
+            }
+        }
+    }
+}
@@ -2,14 +2,20 @@ package com.hzau.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
@@ -83,35 +89,6 @@ public class FileStorageService {
         return fileUrl;
     }
 
-    /**
-     * 保存音频字节数组到本地
-     */
-    public String saveAudioBytes(byte[] audioBytes, String originalFilename) throws IOException {
-        if (audioBytes == null || audioBytes.length == 0) {
-            throw new RuntimeException("音频数据为空");
-        }
-        
-        if (originalFilename == null || originalFilename.trim().isEmpty()) {
-            throw new RuntimeException("文件名为空");
-        }
-
-        // 生成文件名和路径
-        String fileExtension = originalFilename.substring(originalFilename.lastIndexOf('.'));
-        String fileName = generateUniqueFileName() + fileExtension;
-        String uploadDir = createUploadDirectory("audio");
-        String filePath = uploadDir + File.separator + fileName;
-
-        // 保存文件
-        File targetFile = new File(filePath);
-        Files.write(targetFile.toPath(), audioBytes);
-
-        // 生成访问URL
-        String fileUrl = generateFileUrl("audio", fileName);
-
-        log.info("音频字节数组保存成功: {} -> {} (大小: {} bytes)", originalFilename, fileUrl, audioBytes.length);
-        return fileUrl;
-    }
-
     /**
      * 保存文件字节数组到本地（通用方法）
      */
@@ -143,6 +120,26 @@ public class FileStorageService {
     }
 
 
+    /**
+     * 将数据流写入本地文件（通用方法），数据块边到达边异步写入，不在内存中保留完整文件；写入失败时删除已写入的部分
+     * @param extension 扩展名（不含点）
+     * @return 访问URL
+     */
+    public Mono<String> saveFileContent(Flux<DataBuffer> content, String extension, String category) {
+        String fileName = generateUniqueFileName() + "." + extension;
+        return Mono.fromCallable(() -> createUploadDirectory(category))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(uploadDir -> {
+                    Path path = Paths.get(uploadDir, fileName);
+                    return DataBufferUtils.write(content, path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                            .then(Mono.fromSupplier(() -> generateFileUrl(category, fileName)))
+                            .onErrorResume(error -> Mono.fromCallable(() -> Files.deleteIfExists(path))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .then(Mono.error(error)));
+                })
+                .doOnNext(fileUrl -> log.info("文件流保存成功: {} (分类: {})", fileUrl, category));
+    }
+
     /**
      * 上传音频文件
      */
@@ -171,29 +168,6 @@ public class FileStorageService {
         return uploadFile(file, "document");
     }
 
-    /**
-     * 保存Base64编码的音频文件
-     */
-    public String saveBase64AudioFile(String base64Data, String format) throws IOException {
-        // 解码Base64数据
-        byte[] audioData = Base64.getDecoder().decode(base64Data);
-
-        // 生成文件名和路径
-        String fileName = generateUniqueFileName() + "." + format;
-        String uploadDir = createUploadDirectory("audio");
-        String filePath = uploadDir + File.separator + fileName;
-
-        // 保存文件
-        Path path = Paths.get(filePath);
-        Files.write(path, audioData);
-
-        // 生成访问URL
-        String fileUrl = generateFileUrl("audio", fileName);
-
-        log.info("Base64音频文件保存成功: {} (格式: {})", fileUrl, format);
-        return fileUrl;
-    }
-
     /**
      * 保存Base64编码的文件
      */
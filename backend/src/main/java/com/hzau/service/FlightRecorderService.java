@@ -0,0 +1,216 @@
+package com.hzau.service;
+
+import com.hzau.config.FlightRecorderConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: FlightRecorderService
+ * @author: zhuyuchen
+ * @description: JFR记录管理服务。启动时开启按时间与大小滚动的常驻记录，故障时转储最近一段数据；
+ *               也可开启一次限定时长的单次记录，结束后自动写入转储目录。转储目录只保留最近的若干个文件
+ * @date: 2026/10/20 上午1:30
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FlightRecorderService {
+
+    private static final String CONTINUOUS_NAME = "roleplay-continuous";
+    private static final String ON_DEMAND_NAME = "roleplay-on-demand";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final FlightRecorderConfig config;
+
+    private Recording continuous;
+    private Recording onDemand;
+
+    @PostConstruct
+    public void init() {
+        if (!config.isContinuous()) {
+            return;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            log.warn("当前JVM不支持Flight Recorder，跳过常驻记录");
+            return;
+        }
+        try {
+            Recording recording = newRecording(CONTINUOUS_NAME, config.getSettings());
+            recording.setMaxAge(Duration.ofMinutes(config.getMaxAgeMinutes()));
+            recording.start();
+            continuous = recording;
+            log.info("JFR常驻记录已开启, 配置: {}, 保留时间: {}分钟, 大小上限: {}MB",
+                    config.getSettings(), config.getMaxAgeMinutes(), config.getMaxSizeMb());
+        } catch (Exception e) {
+            log.error("开启JFR常驻记录失败", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (onDemand != null) {
+            onDemand.close();
+        }
+        if (continuous != null) {
+            continuous.close();
+        }
+    }
+
+    /**
+     * 开启一次单次记录，到时自动停止并写入转储目录；同一时间只允许一个单次记录
+     * @param durationSeconds 记录时长（秒），不超过配置的上限
+     * @param settings 预置配置名称，为空时使用默认配置
+     */
+    public synchronized RecordingInfo startRecording(int durationSeconds, String settings) throws IOException {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("当前JVM不支持Flight Recorder");
+        }
+        if (durationSeconds <= 0 || durationSeconds > config.getMaxRecordingSeconds()) {
+            throw new IllegalArgumentException("记录时长需在1~" + config.getMaxRecordingSeconds() + "秒之间");
+        }
+        if (onDemand != null && onDemand.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("已有单次记录正在进行");
+        }
+        if (onDemand != null) {
+            onDemand.close();
+        }
+
+        Path destination = prepareDumpFile(ON_DEMAND_NAME);
+        Recording recording;
+        try {
+            recording = newRecording(ON_DEMAND_NAME, settings != null && !settings.isBlank() ? settings : config.getSettings());
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("未知的JFR配置: " + settings);
+        }
+        recording.setDuration(Duration.ofSeconds(durationSeconds));
+        recording.setDestination(destination);
+        recording.start();
+        onDemand = recording;
+        log.info("JFR单次记录已开启, 时长: {}秒, 输出: {}", durationSeconds, destination);
+        return toInfo(recording, destination);
+    }
+
+    /**
+     * 将常驻记录当前保留的数据转储到磁盘
+     * @return 转储文件信息
+     */
+    public synchronized RecordingInfo dumpContinuous() throws IOException {
+        if (continuous == null || continuous.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("JFR常驻记录未开启");
+        }
+        Path destination = prepareDumpFile(CONTINUOUS_NAME);
+        continuous.dump(destination);
+        log.info("JFR常驻记录已转储: {}, 大小: {}字节", destination, Files.size(destination));
+        RecordingInfo info = toInfo(continuous, destination);
+        info.setSize(Files.size(destination));
+        return info;
+    }
+
+    /**
+     * 获取本服务管理的记录状态
+     */
+    public synchronized List<RecordingInfo> getRecordings() {
+        List<RecordingInfo> recordings = new ArrayList<>(2);
+        if (continuous != null) {
+            recordings.add(toInfo(continuous, null));
+        }
+        if (onDemand != null) {
+            recordings.add(toInfo(onDemand, onDemand.getDestination()));
+        }
+        return recordings;
+    }
+
+    private Recording newRecording(String name, String settings) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration(settings));
+        recording.setName(name);
+        recording.setToDisk(true);
+        recording.setMaxSize(config.getMaxSizeMb() * 1024L * 1024L);
+        return recording;
+    }
+
+    /**
+     * 生成转储文件路径，并删除超出保留数量的旧文件
+     */
+    private Path prepareDumpFile(String prefix) throws IOException {
+        Path dir = Paths.get(config.getDumpDir()).toAbsolutePath();
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> dumps = files.filter(path -> path.getFileName().toString().endsWith(".jfr"))
+                    .sorted(Comparator.comparing(path -> path.toFile().lastModified()))
+                    .toList();
+            // 为即将写入的文件预留一个名额
+            for (int i = 0; i <= dumps.size() - config.getMaxDumpFiles(); i++) {
+                Files.deleteIfExists(dumps.get(i));
+            }
+        }
+        return dir.resolve(prefix + "-" + LocalDateTime.now().format(FILE_TIME) + ".jfr");
+    }
+
+    private RecordingInfo toInfo(Recording recording, Path destination) {
+        RecordingInfo info = new RecordingInfo();
+        info.setId(recording.getId());
+        info.setName(recording.getName());
+        info.setState(recording.getState().name());
+        info.setStartTime(recording.getStartTime() != null ? recording.getStartTime().toString() : null);
+        info.setDurationSeconds(recording.getDuration() != null ? recording.getDuration().getSeconds() : null);
+        info.setSize(recording.getSize());
+        info.setDestination(destination != null ? destination.toString() : null);
+        return info;
+    }
+
+    /**
+     * 记录状态
+     */
+    public static class RecordingInfo {
+        private long id;
+        private String name;
+        private String state;
+        private String startTime;
+        private Long durationSeconds;
+        private long size;
+        private String destination;
+
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+
+        public String getState() { return state; }
+        public void setState(String state) { this.state = state; }
+
+        public String getStartTime() { return startTime; }
+        public void setStartTime(String startTime) { this.startTime = startTime; }
+
+        public Long getDurationSeconds() { return durationSeconds; }
+        public void setDurationSeconds(Long durationSeconds) { this.durationSeconds = durationSeconds; }
+
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+
+        public String getDestination() { return destination; }
+        public void setDestination(String destination) { this.destination = destination; }
+    }
+}
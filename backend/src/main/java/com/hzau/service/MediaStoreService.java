@@ -0,0 +1,480 @@
+package com.hzau.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hzau.common.exception.StorageQuotaExceededException;
+import com.hzau.config.MediaStoreConfig;
+import com.hzau.entity.MediaObject;
+import com.hzau.entity.MediaReference;
+import com.hzau.mapper.MediaObjectMapper;
+import com.hzau.mapper.MediaReferenceMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: MediaStoreService
+ * @author: zhuyuchen
+ * @description: 内容寻址的媒体存储。文件先写入暂存目录，写完后按内容 SHA-256 移动到 ab/cd/哈希.扩展名，
+ *               相同内容只保留一份；消息与角色开场白通过引用表持有对象，引用计数归零且超过宽限期的对象由后台任务回收，
+ *               总占用超过配额时拒绝写入
+ * @date: 2026/10/20 上午5:30
+ */
+@Slf4j
+@Service
+public class MediaStoreService {
+
+    public static final String OWNER_MESSAGE = "message";
+    public static final String OWNER_OPENING = "opening";
+
+    private static final String STAGING_DIR = ".staging";
+    private static final Pattern HASH_IN_URL = Pattern.compile("/([0-9a-f]{64})(\\.[A-Za-z0-9]+)?$");
+    private static final Pattern EXTENSION = Pattern.compile("^\\.[A-Za-z0-9]{1,10}$");
+    private static final int LOCK_STRIPES = 64;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final MediaStoreConfig config;
+    private final MediaObjectMapper objectMapper;
+    private final MediaReferenceMapper referenceMapper;
+    private final Path root;
+    private final Path staging;
+    private final String urlBase;
+    private final long quotaBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong objectCount = new AtomicLong();
+    private final AtomicBoolean gcRunning = new AtomicBoolean();
+    // 同一哈希的写入与回收互斥，避免回收删除刚被重复写入复用的文件
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Counter stored;
+    private final Counter deduplicated;
+    private final Counter rejected;
+    private final Counter gcDeleted;
+    private final Counter gcFreedBytes;
+
+    public MediaStoreService(MediaStoreConfig config, MediaObjectMapper objectMapper,
+                             MediaReferenceMapper referenceMapper, MeterRegistry meterRegistry,
+                             @Value("${file.upload.base-url:http://localhost}") String baseUrl,
+                             @Value("${server.port:8080}") String serverPort) throws IOException {
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.referenceMapper = referenceMapper;
+        this.root = Paths.get(config.getDir()).toAbsolutePath().normalize();
+        this.staging = root.resolve(STAGING_DIR);
+        this.urlBase = baseUrl + ":" + serverPort + config.getUrlPath();
+        this.quotaBytes = config.getQuotaMb() * 1024 * 1024;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        Files.createDirectories(staging);
+
+        this.stored = Counter.builder("roleplay.media.store.writes")
+                .description("媒体存储的写入次数，deduplicated 表示内容已存在、未占用新空间")
+                .tag("result", "stored")
+                .register(meterRegistry);
+        this.deduplicated = Counter.builder("roleplay.media.store.writes")
+                .description("媒体存储的写入次数，deduplicated 表示内容已存在、未占用新空间")
+                .tag("result", "deduplicated")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("roleplay.media.store.rejected")
+                .description("因超出磁盘配额被拒绝的写入次数")
+                .register(meterRegistry);
+        this.gcDeleted = Counter.builder("roleplay.media.gc.deleted")
+                .description("后台回收删除的媒体对象数")
+                .register(meterRegistry);
+        this.gcFreedBytes = Counter.builder("roleplay.media.gc.freed")
+                .description("后台回收释放的字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.media.store.used", usedBytes, AtomicLong::get)
+                .description("媒体存储占用的字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.media.store.objects", objectCount, AtomicLong::get)
+                .description("媒体存储中的对象数")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.media.store.quota", () -> quotaBytes)
+                .description("媒体存储的磁盘配额")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.media.store.disk.free", root, MediaStoreService::usableSpace)
+                .description("媒体存储所在磁盘的可用空间")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动后从数据库加载当前占用，数据库不可用时从零开始计数
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadUsage() {
+        try {
+            Map<String, Object> usage = objectMapper.selectUsage();
+            objectCount.set(((Number) usage.get("objects")).longValue());
+            usedBytes.set(((Number) usage.get("bytes")).longValue());
+            log.info("媒体存储: {} 个对象, 占用 {} MB / 配额 {} MB",
+                    objectCount.get(), usedBytes.get() / 1024 / 1024, config.getQuotaMb());
+        } catch (Exception e) {
+            log.warn("加载媒体存储占用失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将写入器产生的文件存入媒体存储：先写入暂存文件，写完后按内容哈希提交，失败或取消时删除暂存文件
+     * @param extension 扩展名（含点），如 .mp3
+     * @param writer 向给定路径写入文件内容，路径对应的文件尚不存在
+     * @return 访问URL与写入器的结果
+     */
+    public <T> Mono<Stored<T>> store(String extension, Function<Path, Mono<T>> writer) {
+        return Mono.fromCallable(() -> stage(extension))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(staged -> writer.apply(staged.getPath())
+                        .flatMap(result -> Mono.fromCallable(() -> new Stored<>(commit(staged), result))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .onErrorResume(error -> Mono.fromRunnable(() -> discard(staged))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .then(Mono.error(error)))
+                        .doOnCancel(() -> discard(staged)));
+    }
+
+    /**
+     * 分配暂存文件路径，占用达到配额时拒绝
+     */
+    public StagedFile stage(String extension) {
+        long used = usedBytes.get();
+        if (used >= quotaBytes) {
+            rejected.increment();
+            triggerGc();
+            throw new StorageQuotaExceededException(used, quotaBytes);
+        }
+        if (used >= quotaBytes * config.getGcTriggerRatio()) {
+            triggerGc();
+        }
+        String normalized = extension != null && EXTENSION.matcher(extension).matches()
+                ? extension.toLowerCase() : "";
+        return new StagedFile(staging.resolve(UUID.randomUUID().toString().replace("-", "") + ".part"), normalized);
+    }
+
+    /**
+     * 按内容哈希提交暂存文件。内容已存在时删除暂存文件并复用已有对象，新对象的引用计数为零，
+     * 在宽限期内被引用后才会长期保留
+     * @return 访问URL
+     */
+    public String commit(StagedFile staged) throws IOException {
+        Path temp = staged.getPath();
+        long size = Files.size(temp);
+        String hash = sha256(temp);
+        synchronized (lockFor(hash)) {
+            MediaObject existing = objectMapper.selectById(hash);
+            if (existing != null) {
+                objectMapper.touch(hash);
+                Path target = resolve(hash, existing.getExtension());
+                if (Files.exists(target)) {
+                    Files.deleteIfExists(temp);
+                    deduplicated.increment();
+                    log.debug("媒体内容已存在，复用: {}", hash);
+                } else {
+                    // 记录存在而文件缺失（如上次移动失败），用本次内容补上
+                    moveIntoPlace(temp, target);
+                    stored.increment();
+                }
+                return urlFor(hash, existing.getExtension());
+            }
+
+            // 先写记录再移动文件：移动失败时留下的记录会在下次写入相同内容时补上文件，或由回收删除
+            MediaObject object = new MediaObject();
+            object.setHash(hash);
+            object.setExtension(staged.getExtension());
+            object.setSize(size);
+            object.setRefCount(0);
+            try {
+                objectMapper.insert(object);
+                usedBytes.addAndGet(size);
+                objectCount.incrementAndGet();
+            } catch (DuplicateKeyException e) {
+                // 其他实例同时写入了相同内容
+                object = objectMapper.selectById(hash);
+            }
+            moveIntoPlace(temp, resolve(hash, object.getExtension()));
+            stored.increment();
+            log.info("媒体对象已存储: {}{} ({} bytes)", hash, object.getExtension(), size);
+            return urlFor(hash, object.getExtension());
+        }
+    }
+
+    /**
+     * 删除未提交的暂存文件
+     */
+    public void discard(StagedFile staged) {
+        try {
+            Files.deleteIfExists(staged.getPath());
+        } catch (IOException e) {
+            log.warn("删除暂存文件失败: {}", staged.getPath(), e);
+        }
+    }
+
+    /**
+     * 设置引用方引用的对象，引用方原来引用其他对象时先释放；URL不属于媒体存储时忽略
+     */
+    @Transactional
+    public void reference(String ownerType, Long ownerId, String url) {
+        String hash = extractHash(url);
+        if (hash == null || ownerId == null) {
+            return;
+        }
+        MediaReference existing = referenceMapper.selectOne(new QueryWrapper<MediaReference>()
+                .eq("owner_type", ownerType)
+                .eq("owner_id", ownerId));
+        if (existing != null) {
+            if (hash.equals(existing.getHash())) {
+                return;
+            }
+            objectMapper.addRefCount(existing.getHash(), -1);
+            existing.setHash(hash);
+            referenceMapper.updateById(existing);
+        } else {
+            MediaReference reference = new MediaReference();
+            reference.setHash(hash);
+            reference.setOwnerType(ownerType);
+            reference.setOwnerId(ownerId);
+            referenceMapper.insert(reference);
+        }
+        objectMapper.addRefCount(hash, 1);
+    }
+
+    /**
+     * 释放一组引用方持有的引用
+     */
+    @Transactional
+    public void release(String ownerType, Collection<Long> ownerIds) {
+        if (ownerIds == null || ownerIds.isEmpty()) {
+            return;
+        }
+        List<MediaReference> references = referenceMapper.selectList(new QueryWrapper<MediaReference>()
+                .eq("owner_type", ownerType)
+                .in("owner_id", ownerIds));
+        if (references.isEmpty()) {
+            return;
+        }
+        referenceMapper.deleteBatchIds(references.stream().map(MediaReference::getId).toList());
+        Map<String, Long> released = references.stream()
+                .collect(Collectors.groupingBy(MediaReference::getHash, Collectors.counting()));
+        released.forEach((hash, count) -> objectMapper.addRefCount(hash, -count.intValue()));
+        log.info("释放媒体引用: {} 个{}, 涉及 {} 个对象", references.size(), ownerType, released.size());
+    }
+
+    /**
+     * 判断URL是否指向媒体存储中的对象
+     */
+    public boolean isManaged(String url) {
+        return extractHash(url) != null;
+    }
+
+    /**
+     * 媒体存储中对象的本地路径
+     * @return 路径，URL不指向媒体存储时返回null
+     */
+    public Path pathOf(String url) {
+        String hash = extractHash(url);
+        if (hash == null) {
+            return null;
+        }
+        Matcher matcher = HASH_IN_URL.matcher(url);
+        String extension = matcher.find() && matcher.group(2) != null ? matcher.group(2) : "";
+        return resolve(hash, extension);
+    }
+
+    @Scheduled(fixedDelayString = "${media-store.gc-interval-ms:600000}",
+            initialDelayString = "${media-store.gc-interval-ms:600000}")
+    public void scheduledGc() {
+        collectGarbage();
+    }
+
+    /**
+     * 回收引用计数为零且超过宽限期的对象，并清理遗留的暂存文件；已有回收在执行时直接返回
+     * @return 删除的对象数
+     */
+    public int collectGarbage() {
+        if (!gcRunning.compareAndSet(false, true)) {
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        int deleted = 0;
+        long freed = 0;
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusMinutes(config.getOrphanGraceMinutes());
+            List<MediaObject> batch;
+            do {
+                batch = objectMapper.selectOrphans(cutoff, config.getGcBatchSize());
+                for (MediaObject object : batch) {
+                    long size = deleteOrphan(object, cutoff);
+                    if (size >= 0) {
+                        deleted++;
+                        freed += size;
+                    }
+                }
+            } while (batch.size() == config.getGcBatchSize());
+            sweepStaging();
+            if (deleted > 0) {
+                log.info("媒体回收完成: 删除 {} 个对象, 释放 {} KB, 耗时 {} ms",
+                        deleted, freed / 1024, (System.nanoTime() - startNanos) / 1_000_000);
+            }
+        } catch (Exception e) {
+            log.error("媒体回收失败", e);
+        } finally {
+            gcRunning.set(false);
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除一个待回收对象，返回释放的字节数；对象仍被引用或已被重新使用时返回-1
+     */
+    private long deleteOrphan(MediaObject object, LocalDateTime cutoff) throws IOException {
+        String hash = object.getHash();
+        synchronized (lockFor(hash)) {
+            // 以引用表为准复核，修正计数漂移后跳过
+            long references = referenceMapper.selectCount(new QueryWrapper<MediaReference>().eq("hash", hash));
+            if (references > 0) {
+                objectMapper.setRefCount(hash, (int) references);
+                log.warn("媒体对象引用计数与引用表不一致，已修正: {} -> {}", hash, references);
+                return -1;
+            }
+            if (objectMapper.deleteOrphan(hash, cutoff) == 0) {
+                return -1;
+            }
+            Files.deleteIfExists(resolve(hash, object.getExtension()));
+        }
+        usedBytes.addAndGet(-object.getSize());
+        objectCount.decrementAndGet();
+        gcDeleted.increment();
+        gcFreedBytes.increment(object.getSize());
+        return object.getSize();
+    }
+
+    /**
+     * 删除超过宽限期的暂存文件（写入中途进程退出等情况遗留）
+     */
+    private void sweepStaging() throws IOException {
+        Instant cutoff = Instant.now().minusSeconds(config.getOrphanGraceMinutes() * 60);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(staging)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                    log.info("删除遗留的暂存文件: {}", file.getFileName());
+                }
+            }
+        }
+    }
+
+    private void triggerGc() {
+        if (!gcRunning.get()) {
+            Schedulers.boundedElastic().schedule(this::collectGarbage);
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        // 目标已存在时内容必然相同，直接覆盖
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 按哈希前两级分目录，避免单个目录下文件过多
+     */
+    private Path resolve(String hash, String extension) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + extension);
+    }
+
+    private String urlFor(String hash, String extension) {
+        return urlBase + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + extension;
+    }
+
+    private String extractHash(String url) {
+        if (url == null || !url.contains(config.getUrlPath() + "/")) {
+            return null;
+        }
+        Matcher matcher = HASH_IN_URL.matcher(url);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private Object lockFor(String hash) {
+        return locks[Integer.parseInt(hash.substring(0, 2), 16) % LOCK_STRIPES];
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static double usableSpace(Path path) {
+        try {
+            return Files.getFileStore(path).getUsableSpace();
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * 待提交的暂存文件
+     */
+    @Data
+    @AllArgsConstructor
+    public static class StagedFile {
+        private Path path;
+        private String extension;
+    }
+
+    /**
+     * 已提交对象的访问URL与写入器的结果
+     */
+    public record Stored<T>(String url, T result) {
+    }
+}
@@ -25,6 +25,9 @@ public class MessageService extends ServiceImpl<MessageMapper, Message> {
     @Autowired
     private ConversationCacheService conversationCacheService;
 
+    @Autowired
+    private MediaStoreService mediaStoreService;
+
     /**
      * 保存用户消息
      * @param conversationId 对话ID
@@ -89,6 +92,7 @@ public class MessageService extends ServiceImpl<MessageMapper, Message> {
         message.setTextContent(textContent);
 
         this.save(message);
+        mediaStoreService.reference(MediaStoreService.OWNER_MESSAGE, message.getId(), audioUrl);
         log.info("音频消息保存成功, messageId: {}", message.getId());
         return message;
     }
@@ -111,6 +115,8 @@ public class MessageService extends ServiceImpl<MessageMapper, Message> {
         message.setAudioDuration(audioDuration);
 
         this.save(message);
+        // 消息持有音频的引用，对话删除后释放
+        mediaStoreService.reference(MediaStoreService.OWNER_MESSAGE, message.getId(), audioUrl);
         
         // 更新缓存
         conversationCacheService.addMessageToCache(conversationId, message);
@@ -137,6 +143,8 @@ public class MessageService extends ServiceImpl<MessageMapper, Message> {
         message.setAudioDuration(audioDuration);
 
         this.save(message);
+        // 消息持有音频的引用，对话删除后释放
+        mediaStoreService.reference(MediaStoreService.OWNER_MESSAGE, message.getId(), audioUrl);
         
         // 更新缓存
         conversationCacheService.addMessageToCache(conversationId, message);
@@ -194,9 +202,19 @@ public class MessageService extends ServiceImpl<MessageMapper, Message> {
      */
     public boolean deleteConversationMessages(Long conversationId) {
         log.info("删除对话所有消息, conversationId: {}", conversationId);
+        // 先取出带音频的消息，删除后释放它们对音频文件的引用
+        List<Long> audioMessageIds = this.list(new QueryWrapper<Message>()
+                        .select("id")
+                        .eq("conversation_id", conversationId)
+                        .isNotNull("audio_url"))
+                .stream()
+                .map(Message::getId)
+                .toList();
         QueryWrapper<Message> queryWrapper = new QueryWrapper<>();
         queryWrapper.eq("conversation_id", conversationId);
-        return this.remove(queryWrapper);
+        boolean removed = this.remove(queryWrapper);
+        mediaStoreService.release(MediaStoreService.OWNER_MESSAGE, audioMessageIds);
+        return removed;
     }
 }
 
@@ -0,0 +1,377 @@
+package com.hzau.service;
+
+import com.hzau.common.metrics.MappedMetricsFile;
+import com.hzau.common.metrics.MetricPoint;
+import com.hzau.config.MetricsHistoryConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: MetricsHistoryStore
+ * @author: zhuyuchen
+ * @description: 单机内嵌的监控历史存储。每分钟的聚合值追加写入1分钟粒度文件，同时累加到当前的15分钟、1小时区间，
+ *               区间结束时写入对应粒度的文件；各粒度文件为定长环形文件，按时间与容量双重限制保留。
+ *               序列名称到编号的映射保存在同目录的文本文件中。重启后从1分钟数据恢复尚未结束的降采样区间
+ * @date: 2026/10/20 上午2:10
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricsHistoryStore {
+
+    private static final String SERIES_FILE = "series.txt";
+
+    /**
+     * 存储粒度
+     */
+    public enum Resolution {
+        MINUTE("1m", 60_000L),
+        QUARTER("15m", 15 * 60_000L),
+        HOUR("1h", 60 * 60_000L);
+
+        private final String label;
+        private final long intervalMillis;
+
+        Resolution(String label, long intervalMillis) {
+            this.label = label;
+            this.intervalMillis = intervalMillis;
+        }
+
+        public String getLabel() { return label; }
+        public long getIntervalMillis() { return intervalMillis; }
+
+        /**
+         * 按名称（1m、15m、1h）查找粒度
+         */
+        public static Resolution of(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equalsIgnoreCase(label)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("不支持的粒度: " + label + "，可选 1m、15m、1h");
+        }
+    }
+
+    private final MetricsHistoryConfig config;
+
+    // 序列名称与编号，编号即在序列文件中的行号
+    private final Map<String, Integer> seriesIds = new ConcurrentHashMap<>();
+    private final List<String> seriesNames = new CopyOnWriteArrayList<>();
+    private final Map<Resolution, Level> levels = new EnumMap<>(Resolution.class);
+    private Path seriesFile;
+    private volatile boolean available;
+    private boolean seriesLimitWarned;
+
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(config.getDir()).toAbsolutePath();
+            Files.createDirectories(dir);
+            seriesFile = dir.resolve(SERIES_FILE);
+            if (Files.exists(seriesFile)) {
+                for (String name : Files.readAllLines(seriesFile, StandardCharsets.UTF_8)) {
+                    seriesIds.put(name, seriesNames.size());
+                    seriesNames.add(name);
+                }
+            }
+
+            long minuteRetention = config.getMinuteRetentionHours() * 60 * 60_000L;
+            long quarterRetention = config.getQuarterRetentionDays() * 24 * 60 * 60_000L;
+            long hourRetention = config.getHourRetentionDays() * 24 * 60 * 60_000L;
+            openLevel(dir, Resolution.MINUTE, minuteRetention);
+            openLevel(dir, Resolution.QUARTER, quarterRetention);
+            openLevel(dir, Resolution.HOUR, hourRetention);
+            recoverPending(levels.get(Resolution.QUARTER));
+            recoverPending(levels.get(Resolution.HOUR));
+            available = true;
+            log.info("监控历史存储已打开, 目录: {}, 序列数: {}, 1分钟粒度记录数: {}",
+                    dir, seriesNames.size(), levels.get(Resolution.MINUTE).file.size());
+        } catch (Exception e) {
+            log.error("打开监控历史存储失败，本次运行不记录监控历史", e);
+            closeFiles();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        // 未结束的降采样区间不写入，重启后从1分钟数据恢复
+        available = false;
+        closeFiles();
+    }
+
+    /**
+     * 写入一分钟的聚合值。时间不晚于已写入数据的批次被忽略（如时钟回拨或同一分钟重复采集）
+     * @param minuteTimestamp 所属分钟的起始时间（毫秒）
+     * @param points 各序列的聚合值，key为序列名称
+     */
+    public synchronized void append(long minuteTimestamp, Map<String, MetricPoint> points) {
+        if (!available) {
+            return;
+        }
+        Level minute = levels.get(Resolution.MINUTE);
+        if (minuteTimestamp <= minute.file.lastTimestamp()) {
+            log.debug("忽略过期的监控数据批次: {}", minuteTimestamp);
+            return;
+        }
+        Level quarter = levels.get(Resolution.QUARTER);
+        Level hour = levels.get(Resolution.HOUR);
+        // 先结束已过去的降采样区间再写入分钟数据，保证重启恢复时不会重复写入已结束的区间
+        quarter.advance(minuteTimestamp);
+        hour.advance(minuteTimestamp);
+
+        for (Map.Entry<String, MetricPoint> entry : points.entrySet()) {
+            int seriesId = seriesId(entry.getKey());
+            if (seriesId < 0) {
+                continue;
+            }
+            MetricPoint point = entry.getValue();
+            point.setTimestamp(minuteTimestamp);
+            point.setSeriesId(seriesId);
+            minute.file.append(point);
+            quarter.merge(point);
+            hour.merge(point);
+        }
+        for (Level level : levels.values()) {
+            level.file.force();
+        }
+    }
+
+    /**
+     * 查询一个序列在时间范围内的数据，降采样粒度包含尚未结束的当前区间
+     * @param series 序列名称
+     * @param resolution 粒度，为null时按起始时间选择仍在保留期内的最细粒度
+     * @param from 起始时间（毫秒，含）
+     * @param to 结束时间（毫秒，含）
+     */
+    public synchronized HistoryRange query(String series, Resolution resolution, long from, long to) {
+        if (resolution == null) {
+            resolution = chooseResolution(from);
+        }
+        HistoryRange range = new HistoryRange();
+        range.setSeries(series);
+        range.setResolution(resolution.getLabel());
+        range.setFrom(from);
+        range.setTo(to);
+
+        Integer seriesId = seriesIds.get(series);
+        if (!available || seriesId == null) {
+            range.setPoints(List.of());
+            return range;
+        }
+        Level level = levels.get(resolution);
+        long start = Math.max(from, System.currentTimeMillis() - level.retentionMillis);
+        List<MetricPoint> points = level.file.range(start, to, id -> id == seriesId);
+        MetricPoint pending = level.pending.get(seriesId);
+        if (pending != null && pending.getTimestamp() >= start && pending.getTimestamp() <= to) {
+            points.add(pending.rollup(pending.getTimestamp()));
+        }
+        range.setPoints(points);
+        return range;
+    }
+
+    /**
+     * 已记录的序列名称
+     */
+    public List<String> getSeriesNames() {
+        List<String> names = new ArrayList<>(seriesNames);
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * 各粒度的保留时间与当前记录数
+     */
+    public synchronized Map<String, LevelStats> getLevelStats() {
+        Map<String, LevelStats> stats = new LinkedHashMap<>();
+        levels.forEach((resolution, level) -> {
+            LevelStats levelStats = new LevelStats();
+            levelStats.setRetentionHours(level.retentionMillis / (60 * 60_000L));
+            levelStats.setRecords(level.file.size());
+            levelStats.setCapacity(level.file.getCapacity());
+            stats.put(resolution.getLabel(), levelStats);
+        });
+        return stats;
+    }
+
+    private Resolution chooseResolution(long from) {
+        long age = System.currentTimeMillis() - from;
+        if (age <= config.getMinuteRetentionHours() * 60 * 60_000L) {
+            return Resolution.MINUTE;
+        }
+        if (age <= config.getQuarterRetentionDays() * 24 * 60 * 60_000L) {
+            return Resolution.QUARTER;
+        }
+        return Resolution.HOUR;
+    }
+
+    private void openLevel(Path dir, Resolution resolution, long retentionMillis) throws IOException {
+        long capacity = retentionMillis / resolution.getIntervalMillis() * config.getRecordsPerInterval();
+        MappedMetricsFile file = MappedMetricsFile.open(dir.resolve("metrics-" + resolution.getLabel() + ".dat"), capacity);
+        levels.put(resolution, new Level(resolution, file, retentionMillis));
+    }
+
+    /**
+     * 从1分钟数据恢复尚未写入的最后一个降采样区间
+     */
+    private void recoverPending(Level level) {
+        long last = levels.get(Resolution.MINUTE).file.lastTimestamp();
+        if (last < 0) {
+            return;
+        }
+        long bucket = level.bucketOf(last);
+        if (level.file.lastTimestamp() >= bucket) {
+            return;
+        }
+        level.pendingBucket = bucket;
+        levels.get(Resolution.MINUTE).file.scan(bucket, last, id -> true, level::merge);
+    }
+
+    /**
+     * 获取序列编号，新序列追加到序列文件
+     * @return 序列数已达上限时返回 -1
+     */
+    private int seriesId(String name) {
+        Integer id = seriesIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (seriesNames.size() >= config.getMaxSeries()) {
+            if (!seriesLimitWarned) {
+                seriesLimitWarned = true;
+                log.warn("监控历史序列数已达上限{}，新序列不再记录: {}", config.getMaxSeries(), name);
+            }
+            return -1;
+        }
+        try {
+            Files.writeString(seriesFile, name + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.error("写入监控历史序列文件失败: {}", name, e);
+            return -1;
+        }
+        int newId = seriesNames.size();
+        seriesNames.add(name);
+        seriesIds.put(name, newId);
+        return newId;
+    }
+
+    private void closeFiles() {
+        for (Level level : levels.values()) {
+            try {
+                level.file.close();
+            } catch (IOException e) {
+                log.warn("关闭监控历史文件失败: {}", level.resolution.getLabel(), e);
+            }
+        }
+        levels.clear();
+    }
+
+    /**
+     * 一个粒度的数据文件与尚未结束的区间
+     */
+    private static final class Level {
+        final Resolution resolution;
+        final MappedMetricsFile file;
+        final long retentionMillis;
+        // 当前区间各序列的累加值，key为序列编号
+        final Map<Integer, MetricPoint> pending = new TreeMap<>();
+        long pendingBucket = -1;
+
+        Level(Resolution resolution, MappedMetricsFile file, long retentionMillis) {
+            this.resolution = resolution;
+            this.file = file;
+            this.retentionMillis = retentionMillis;
+        }
+
+        long bucketOf(long timestamp) {
+            return timestamp - Math.floorMod(timestamp, resolution.getIntervalMillis());
+        }
+
+        /**
+         * 时间进入新区间时，将上一个区间写入文件
+         */
+        void advance(long timestamp) {
+            long bucket = bucketOf(timestamp);
+            if (bucket == pendingBucket) {
+                return;
+            }
+            for (MetricPoint point : pending.values()) {
+                file.append(point);
+            }
+            pending.clear();
+            pendingBucket = bucket;
+        }
+
+        void merge(MetricPoint point) {
+            MetricPoint current = pending.get(point.getSeriesId());
+            if (current == null) {
+                pending.put(point.getSeriesId(), point.rollup(pendingBucket));
+            } else {
+                current.merge(point);
+            }
+        }
+    }
+
+    /**
+     * 范围查询结果
+     */
+    public static class HistoryRange {
+        private String series;
+        private String resolution;
+        private long from;
+        private long to;
+        private List<MetricPoint> points;
+
+        public String getSeries() { return series; }
+        public void setSeries(String series) { this.series = series; }
+
+        public String getResolution() { return resolution; }
+        public void setResolution(String resolution) { this.resolution = resolution; }
+
+        public long getFrom() { return from; }
+        public void setFrom(long from) { this.from = from; }
+
+        public long getTo() { return to; }
+        public void setTo(long to) { this.to = to; }
+
+        public List<MetricPoint> getPoints() { return points; }
+        public void setPoints(List<MetricPoint> points) { this.points = points; }
+    }
+
+    /**
+     * 单个粒度的存储统计
+     */
+    public static class LevelStats {
+        private long retentionHours;
+        private long records;
+        private long capacity;
+
+        public long getRetentionHours() { return retentionHours; }
+        public void setRetentionHours(long retentionHours) { this.retentionHours = retentionHours; }
+
+        public long getRecords() { return records; }
+        public void setRecords(long records) { this.records = records; }
+
+        public long getCapacity() { return capacity; }
+        public void setCapacity(long capacity) { this.capacity = capacity; }
+    }
+}
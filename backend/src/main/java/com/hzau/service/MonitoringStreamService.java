@@ -0,0 +1,172 @@
+package com.hzau.service;
+
+import com.hzau.common.metrics.SlidingLatencyHistogram;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: MonitoringStreamService
+ * @author: zhuyuchen
+ * @description: 实时监控推送。每秒计算一帧增量快照，所有订阅者共享同一个上游，
+ *               订阅者数量不影响计算开销；消费慢的订阅者只保留最新一帧，不拖慢上游和其他订阅者。
+ *               最后一个订阅者离开后延迟停止计算，有新订阅者时重新开始
+ * @date: 2026/10/20 上午3:20
+ */
+@Slf4j
+@Service
+public class MonitoringStreamService {
+
+    private static final Duration FRAME_INTERVAL = Duration.ofSeconds(1);
+    // 最后一个订阅者取消后保留上游的时间，避免刷新页面时重建
+    private static final Duration DISCONNECT_GRACE = Duration.ofSeconds(10);
+    // 帧内延迟分位数的统计窗口
+    private static final long LATENCY_WINDOW_MILLIS = 60_000L;
+
+    private final PerformanceMonitoringService monitoringService;
+    private final ConcurrentControlService concurrentControlService;
+
+    private final Flux<LiveFrame> frames;
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    public MonitoringStreamService(PerformanceMonitoringService monitoringService,
+                                   ConcurrentControlService concurrentControlService) {
+        this.monitoringService = monitoringService;
+        this.concurrentControlService = concurrentControlService;
+        // 每次连接上游创建新的差值状态，重新连接后第一帧不会累计断开期间的调用
+        this.frames = Flux.defer(() -> {
+                    FrameBuilder builder = new FrameBuilder();
+                    return Flux.interval(FRAME_INTERVAL, Schedulers.parallel())
+                            .onBackpressureDrop()
+                            .map(tick -> builder.next());
+                })
+                .onErrorContinue((error, value) -> log.warn("计算实时监控帧失败", error))
+                .publish()
+                .refCount(1, DISCONNECT_GRACE);
+    }
+
+    /**
+     * 订阅实时监控帧。每个订阅者各自缓存最新一帧，消费跟不上时丢弃旧帧
+     */
+    public Flux<LiveFrame> stream() {
+        return frames
+                .onBackpressureLatest()
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    /**
+     * 当前订阅者数量
+     */
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    /**
+     * 按秒计算增量，只在上游的定时线程上调用
+     */
+    private class FrameBuilder {
+        private Map<String, PerformanceMonitoringService.ApiCounter> previous = monitoringService.getApiCounters();
+        private long previousNanos = System.nanoTime();
+        private long sequence;
+
+        LiveFrame next() {
+            long now = System.nanoTime();
+            double seconds = Math.max(1e-3, (now - previousNanos) / 1e9);
+            previousNanos = now;
+
+            Map<String, PerformanceMonitoringService.ApiCounter> current = monitoringService.getApiCounters();
+            Map<String, ApiDelta> apis = new TreeMap<>();
+            long calls = 0;
+            long errors = 0;
+            for (Map.Entry<String, PerformanceMonitoringService.ApiCounter> entry : current.entrySet()) {
+                PerformanceMonitoringService.ApiCounter before = previous.get(entry.getKey());
+                long callDelta = entry.getValue().getTotalCalls() - (before != null ? before.getTotalCalls() : 0);
+                long errorDelta = entry.getValue().getErrorCount() - (before != null ? before.getErrorCount() : 0);
+                if (callDelta <= 0 && errorDelta <= 0) {
+                    continue;
+                }
+                // 只为本秒有调用的API计算延迟分位数
+                ApiDelta delta = new ApiDelta();
+                delta.setCalls(callDelta);
+                delta.setErrors(errorDelta);
+                SlidingLatencyHistogram.LatencySnapshot latency =
+                        monitoringService.getRecentLatency(entry.getKey(), LATENCY_WINDOW_MILLIS);
+                if (latency != null) {
+                    delta.setP95Ms(latency.getP95());
+                    delta.setP99Ms(latency.getP99());
+                }
+                apis.put(entry.getKey(), delta);
+                calls += callDelta;
+                errors += errorDelta;
+            }
+            previous = current;
+
+            LiveFrame frame = new LiveFrame();
+            frame.setSequence(++sequence);
+            frame.setTimestamp(System.currentTimeMillis());
+            frame.setRequestsPerSecond(calls / seconds);
+            frame.setErrorsPerSecond(errors / seconds);
+            frame.setApis(apis);
+            frame.setConcurrentUsers(monitoringService.getCurrentConcurrentUsers());
+            frame.setActiveRequests(concurrentControlService.getCurrentActiveRequests());
+            frame.setSubscribers(subscribers.get());
+
+            SystemMetricsSampler.SystemMetrics system = monitoringService.getSystemMetrics();
+            if (system != null) {
+                frame.setProcessCpuPercent(system.getProcessCpuPercent());
+                frame.setHeapUsedPercent(system.getMemoryUsagePercent());
+                frame.setGcTimePercent(system.getGcTimePercent());
+                frame.setAllocationRateMBps(system.getAllocationRateMBps());
+                frame.setEventLoopPendingTasks(system.getEventLoopPendingTasks());
+                frame.setThreadCount(system.getThreadCount());
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * 实时监控帧，调用次数与错误数为距上一帧的增量，其余为当前值
+     */
+    @Data
+    public static class LiveFrame {
+        private long sequence;
+        private long timestamp;
+        private double requestsPerSecond;
+        private double errorsPerSecond;
+        // 只包含距上一帧有调用的API
+        private Map<String, ApiDelta> apis = new HashMap<>();
+        private int concurrentUsers;
+        private int activeRequests;
+        private int subscribers;
+        // 以下来自系统资源采样，每5秒更新一次
+        private double processCpuPercent;
+        private double heapUsedPercent;
+        private double gcTimePercent;
+        private double allocationRateMBps;
+        private long eventLoopPendingTasks;
+        private int threadCount;
+    }
+
+    /**
+     * 单个API在一帧内的增量
+     */
+    @Data
+    public static class ApiDelta {
+        private long calls;
+        private long errors;
+        // 最近1分钟的延迟分位数（毫秒）
+        private long p95Ms;
+        private long p99Ms;
+    }
+}
@@ -1,93 +1,192 @@
 package com.hzau.service;
 
+import com.hzau.common.metrics.MetricPoint;
+import com.hzau.common.metrics.SlidingLatencyHistogram;
+import com.hzau.common.metrics.StageTrace;
+import com.hzau.common.metrics.StreamProbe;
+import com.hzau.config.MetricsConfig;
+import com.hzau.config.StageTraceConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.ThreadMXBean;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @projectName: AI-roleplay
  * @package: com.hzau.service
  * @className: PerformanceMonitoringService
  * @author: zhuyuchen
- * @description: TODO
+ * @description: 业务接口性能监控。调用次数、错误数与耗时直方图注册在 Micrometer 的 MeterRegistry 中
+ *               （由 /actuator/prometheus 导出），监控接口返回的统计同样从这些计量读取；
+ *               另用 HdrHistogram 保留最近15分钟的滑动窗口分位数
  * @date: 2025/9/23 下午7:06
  */
 @Service
 @Slf4j
 public class PerformanceMonitoringService {
 
-    private final Executor monitoringExecutor;
+    // API响应时间分布，每10秒轮转一个区间，保留最近15分钟
+    private static final long LATENCY_INTERVAL_MILLIS = 10_000L;
+    private static final int LATENCY_INTERVAL_COUNT = 90;
+    private static final Map<String, Long> LATENCY_WINDOWS = new LinkedHashMap<>();
+    static {
+        LATENCY_WINDOWS.put("1m", 60_000L);
+        LATENCY_WINDOWS.put("5m", 5 * 60_000L);
+        LATENCY_WINDOWS.put("15m", 15 * 60_000L);
+    }
 
-    // API响应时间统计
-    private final Map<String, List<Long>> apiResponseTimes = new ConcurrentHashMap<>();
-    private final Map<String, AtomicLong> apiCallCounts = new ConcurrentHashMap<>();
-    private final Map<String, AtomicLong> apiErrorCounts = new ConcurrentHashMap<>();
+    /**
+     * 统计的API名称数量上限，超出后新名称的样本被丢弃并计数，保证指标标签基数有界
+     */
+    private static final int MAX_TRACKED_APIS = MetricsConfig.MAX_API_TAG_VALUES;
+    private static final long USER_ACTIVE_WINDOW_MILLIS = 5 * 60 * 1000L;
 
-    // 并发用户统计
-    private final Set<String> activeUsers = ConcurrentHashMap.newKeySet();
-    private final Map<String, LocalDateTime> userLastActivity = new ConcurrentHashMap<>();
+    static final String API_METRIC = "roleplay.api.requests";
+    static final String STAGE_METRIC = "roleplay.pipeline.stage";
 
-    // 系统资源监控
-    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
-    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final MeterRegistry meterRegistry;
+    private final StageTraceConfig stageTraceConfig;
 
-    // 历史数据存储（最近1小时的数据）
-    private final Queue<MetricsSnapshot> metricsHistory = new LinkedList<>();
-    private final int MAX_HISTORY_SIZE = 60; // 保存60个快照（每分钟一个）
+    // 分阶段耗时计时器，key为 流水线:阶段，阶段名称为代码中的常量，数量有界
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
 
-    public PerformanceMonitoringService(@Qualifier("monitoringExecutor") Executor monitoringExecutor) {
-        this.monitoringExecutor = monitoringExecutor;
-    }
+    // 流式对话指标，key为 模型:角色分类
+    private final Map<String, StreamMeters> streamMeters = new ConcurrentHashMap<>();
 
     /**
-     * 记录API调用开始
+     * 作为标签的角色分类取值范围，超出的分类统一记为 other
      */
-    public String startApiCall(String apiName, String userId) {
-        String callId = UUID.randomUUID().toString();
+    private static final int MAX_CATEGORY_TAG = 32;
+
+    // API调用统计：次数、错误数与响应时间分布，key为 请求方法+空格+路由模板，记录在调用线程上直接完成
+    private final Map<String, ApiRecorder> apiRecorders = new ConcurrentHashMap<>();
+    // 同一批记录器按 路由模板 -> 请求方法 索引，记录时无需拼接字符串
+    private final Map<String, Map<String, ApiRecorder>> routeRecorders = new ConcurrentHashMap<>();
+
+    // 因API数量超限等原因被丢弃的样本数
+    private final LongAdder droppedSamples = new LongAdder();
+
+    // 并发用户统计，key为用户ID，值为最后活跃时间（毫秒）
+    private final Map<Object, AtomicLong> userLastActivity = new ConcurrentHashMap<>();
+
+    // 系统资源监控，由采样器定时采集
+    private final SystemMetricsSampler systemMetricsSampler;
+
+    // 最近1小时的快照（每分钟一个），更长时间的历史由 MetricsHistoryStore 持久化
+    private final Deque<MetricsSnapshot> metricsHistory = new ArrayDeque<>();
+    private static final int MAX_HISTORY_SIZE = 60;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 60_000L;
+
+    private final MetricsHistoryStore historyStore;
+
+    public PerformanceMonitoringService(MeterRegistry meterRegistry, StageTraceConfig stageTraceConfig,
+                                        MetricsHistoryStore historyStore, SystemMetricsSampler systemMetricsSampler) {
+        this.meterRegistry = meterRegistry;
+        this.stageTraceConfig = stageTraceConfig;
+        this.historyStore = historyStore;
+        this.systemMetricsSampler = systemMetricsSampler;
+        Gauge.builder("roleplay.users.active", this, PerformanceMonitoringService::getCurrentConcurrentUsers)
+                .description("最近5分钟内有请求的用户数")
+                .register(meterRegistry);
+        FunctionCounter.builder("roleplay.metrics.dropped", droppedSamples, LongAdder::sum)
+                .description("因API数量超限被丢弃的样本数")
+                .register(meterRegistry);
+    }
 
-        // 异步更新用户活跃状态
-        monitoringExecutor.execute(() -> {
-            activeUsers.add(userId);
-            userLastActivity.put(userId, LocalDateTime.now());
-        });
+    /**
+     * 记录一次HTTP请求，由请求计时过滤器在响应写完（含流式响应）后调用，命中已有路由时不分配对象
+     * @param method 请求方法
+     * @param route 路由模板，如 /api/conversations/{conversationId}/text-messages
+     * @param statusCode 响应状态码，0 表示客户端在响应完成前断开
+     * @param nanos 从收到请求到响应写完的耗时（纳秒）
+     * @param bytes 响应体字节数
+     */
+    public void recordHttpRequest(String method, String route, int statusCode, long nanos, long bytes) {
+        Map<String, ApiRecorder> byMethod = routeRecorders.get(route);
+        ApiRecorder recorder = byMethod != null ? byMethod.get(method) : null;
+        if (recorder == null) {
+            recorder = registerApi(method, route);
+            if (recorder == null) {
+                droppedSamples.increment();
+                return;
+            }
+        }
+        recorder.record(statusCode, nanos, bytes);
+    }
 
-        return callId;
+    private ApiRecorder registerApi(String method, String route) {
+        String apiName = method + " " + route;
+        if (apiRecorders.size() >= MAX_TRACKED_APIS) {
+            return apiRecorders.get(apiName);
+        }
+        ApiRecorder recorder = apiRecorders.computeIfAbsent(apiName, k -> new ApiRecorder(method, route, meterRegistry));
+        routeRecorders.computeIfAbsent(route, k -> new ConcurrentHashMap<>()).putIfAbsent(method, recorder);
+        return recorder;
     }
 
     /**
-     * 记录API调用结束
+     * 刷新用户活跃时间
+     * @param userId 已认证请求的用户ID
      */
-    public void endApiCall(String apiName, String callId, long responseTime, boolean success) {
-        monitoringExecutor.execute(() -> {
-            // 记录响应时间
-            apiResponseTimes.computeIfAbsent(apiName, k -> new ArrayList<>()).add(responseTime);
+    public void recordUserActivity(Object userId) {
+        long now = System.currentTimeMillis();
+        AtomicLong lastActivity = userLastActivity.get(userId);
+        if (lastActivity != null) {
+            lastActivity.set(now);
+        } else {
+            userLastActivity.put(userId, new AtomicLong(now));
+        }
+    }
 
-            // 记录调用次数
-            apiCallCounts.computeIfAbsent(apiName, k -> new AtomicLong(0)).incrementAndGet();
+    /**
+     * 为一次请求创建分阶段耗时记录，按配置比例采样，请求携带强制采样头时总是采样
+     * @param pipeline 流水线名称，如 voice
+     */
+    public StageTrace newStageTrace(String pipeline, ServerHttpRequest request) {
+        boolean sampled = request.getHeaders().containsKey(stageTraceConfig.getForceHeader())
+                || ThreadLocalRandom.current().nextDouble() < stageTraceConfig.getSampleRate();
+        return new StageTrace((stage, nanos) -> stageTimer(pipeline, stage).record(nanos, TimeUnit.NANOSECONDS), sampled);
+    }
 
-            // 记录错误次数
-            if (!success) {
-                apiErrorCounts.computeIfAbsent(apiName, k -> new AtomicLong(0)).incrementAndGet();
-            }
+    private Timer stageTimer(String pipeline, String stage) {
+        return stageTimers.computeIfAbsent(pipeline + ":" + stage, k -> Timer.builder(STAGE_METRIC)
+                .description("请求流水线各阶段耗时")
+                .tag("pipeline", pipeline)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(2))
+                .register(meterRegistry));
+    }
 
-            // 清理过期的响应时间数据（保留最近1000条）
-            List<Long> times = apiResponseTimes.get(apiName);
-            if (times != null && times.size() > 1000) {
-                times.subList(0, times.size() - 1000).clear();
-            }
-        });
+    /**
+     * 获取流式对话指标的记录器，按模型与角色分类区分
+     * @param category 角色分类，null 记为 none
+     */
+    public StreamProbe.Recorder streamRecorder(String model, Integer category) {
+        String categoryTag = category == null ? "none"
+                : category >= 0 && category < MAX_CATEGORY_TAG ? category.toString() : "other";
+        return streamMeters.computeIfAbsent(model + ":" + categoryTag,
+                k -> new StreamMeters(model, categoryTag, meterRegistry));
     }
 
     /**
@@ -96,48 +195,45 @@ public class PerformanceMonitoringService {
     public Map<String, ApiMetrics> getApiMetrics() {
         Map<String, ApiMetrics> result = new HashMap<>();
 
-        for (String apiName : apiResponseTimes.keySet()) {
-            List<Long> times = apiResponseTimes.get(apiName);
-            if (times != null && !times.isEmpty()) {
-                ApiMetrics metrics = calculateApiMetrics(apiName, times);
-                result.put(apiName, metrics);
-            }
-        }
+        apiRecorders.forEach((apiName, recorder) -> result.put(apiName, calculateApiMetrics(apiName, recorder)));
+
+        return result;
+    }
 
+    /**
+     * 获取各API启动以来的调用次数与错误数，不计算延迟分布，供实时推送按秒求差值
+     */
+    public Map<String, ApiCounter> getApiCounters() {
+        Map<String, ApiCounter> result = new HashMap<>();
+        apiRecorders.forEach((apiName, recorder) ->
+                result.put(apiName, new ApiCounter(recorder.getTotalCalls(), recorder.getErrorCount())));
         return result;
     }
 
+    /**
+     * 获取单个API最近一段时间的延迟分布，API不存在时返回null
+     */
+    public SlidingLatencyHistogram.LatencySnapshot getRecentLatency(String apiName, long windowMillis) {
+        ApiRecorder recorder = apiRecorders.get(apiName);
+        return recorder != null ? recorder.latency.snapshot(windowMillis) : null;
+    }
+
     /**
      * 获取当前并发用户数
      */
     public int getCurrentConcurrentUsers() {
         // 清理非活跃用户（5分钟内无活动）
-        LocalDateTime threshold = LocalDateTime.now().minusMinutes(5);
-        userLastActivity.entrySet().removeIf(entry -> entry.getValue().isBefore(threshold));
-        activeUsers.retainAll(userLastActivity.keySet());
+        long threshold = System.currentTimeMillis() - USER_ACTIVE_WINDOW_MILLIS;
+        userLastActivity.entrySet().removeIf(entry -> entry.getValue().get() < threshold);
 
-        return activeUsers.size();
+        return userLastActivity.size();
     }
 
     /**
-     * 获取系统资源使用率
+     * 获取系统资源使用率，返回最近一次定时采样的结果
      */
-    public SystemMetrics getSystemMetrics() {
-        SystemMetrics metrics = new SystemMetrics();
-
-        // 内存使用率
-        long usedMemory = memoryBean.getHeapMemoryUsage().getUsed();
-        long maxMemory = memoryBean.getHeapMemoryUsage().getMax();
-        metrics.setMemoryUsagePercent((double) usedMemory / maxMemory * 100);
-
-        // 线程数
-        metrics.setThreadCount(threadBean.getThreadCount());
-
-        // CPU使用率（简化版本，实际项目中可以使用更精确的方法）
-        Runtime runtime = Runtime.getRuntime();
-        metrics.setCpuCores(runtime.availableProcessors());
-
-        return metrics;
+    public SystemMetricsSampler.SystemMetrics getSystemMetrics() {
+        return systemMetricsSampler.getLatest();
     }
 
     /**
@@ -146,15 +242,15 @@ public class PerformanceMonitoringService {
     public Map<String, Double> getErrorRates() {
         Map<String, Double> errorRates = new HashMap<>();
 
-        for (String apiName : apiCallCounts.keySet()) {
-            long totalCalls = apiCallCounts.get(apiName).get();
-            long errorCalls = apiErrorCounts.getOrDefault(apiName, new AtomicLong(0)).get();
+        apiRecorders.forEach((apiName, recorder) -> {
+            long totalCalls = recorder.getTotalCalls();
+            long errorCalls = recorder.getErrorCount();
 
             if (totalCalls > 0) {
                 double errorRate = (double) errorCalls / totalCalls * 100;
                 errorRates.put(apiName, errorRate);
             }
-        }
+        });
 
         return errorRates;
     }
@@ -169,28 +265,66 @@ public class PerformanceMonitoringService {
         report.setConcurrentUsers(getCurrentConcurrentUsers());
         report.setSystemMetrics(getSystemMetrics());
         report.setErrorRates(getErrorRates());
+        report.setDroppedSamples(droppedSamples.sum());
         return report;
     }
 
+    /**
+     * 定时任务：轮转各API的延迟直方图区间
+     */
+    @Scheduled(fixedRate = LATENCY_INTERVAL_MILLIS)
+    @Async("monitoringExecutor")
+    public void rotateLatencyHistograms() {
+        apiRecorders.values().forEach(recorder -> recorder.latency.rotate());
+    }
+
     /**
      * 定时任务：每分钟收集一次监控数据快照
      */
-    @Scheduled(fixedRate = 60000) // 每分钟执行一次
+    @Scheduled(fixedRate = SNAPSHOT_INTERVAL_MILLIS)
     @Async("monitoringExecutor")
     public void collectMetricsSnapshot() {
         try {
+            long now = System.currentTimeMillis();
             MetricsSnapshot snapshot = new MetricsSnapshot();
             snapshot.setTimestamp(LocalDateTime.now());
             snapshot.setConcurrentUsers(getCurrentConcurrentUsers());
             snapshot.setSystemMetrics(getSystemMetrics());
             snapshot.setErrorRates(getErrorRates());
 
-            // 添加到历史记录
-            metricsHistory.offer(snapshot);
+            // 各API最近1分钟的延迟分布与新增错误数
+            Map<String, SlidingLatencyHistogram.LatencySnapshot> apiLatencies = new HashMap<>();
+            Map<String, MetricPoint> points = new LinkedHashMap<>();
+            apiRecorders.forEach((apiName, recorder) -> {
+                SlidingLatencyHistogram.LatencySnapshot latency = recorder.latency.snapshot(SNAPSHOT_INTERVAL_MILLIS);
+                long errorCount = recorder.getErrorCount();
+                int newErrors = (int) (errorCount - recorder.lastErrorCount);
+                recorder.lastErrorCount = errorCount;
+                apiLatencies.put(apiName, latency);
+                if (latency.getCount() > 0 || newErrors > 0) {
+                    points.put("api:" + apiName, MetricPoint.latency(latency, newErrors));
+                }
+            });
+            snapshot.setApiLatencies(apiLatencies);
+
+            points.put("users.active", MetricPoint.gauge(snapshot.getConcurrentUsers()));
+            points.put("jvm.heap.used_percent", MetricPoint.gauge(snapshot.getSystemMetrics().getMemoryUsagePercent()));
+            points.put("jvm.threads", MetricPoint.gauge(snapshot.getSystemMetrics().getThreadCount()));
+            points.put("process.cpu_percent", MetricPoint.gauge(snapshot.getSystemMetrics().getProcessCpuPercent()));
+            points.put("jvm.gc.time_percent", MetricPoint.gauge(snapshot.getSystemMetrics().getGcTimePercent()));
+            points.put("jvm.allocation.mb_per_sec", MetricPoint.gauge(snapshot.getSystemMetrics().getAllocationRateMBps()));
+            points.put("netty.eventloop.pending", MetricPoint.gauge(snapshot.getSystemMetrics().getEventLoopPendingTasks()));
+            Gauge activeRequests = meterRegistry.find("roleplay.requests.active").gauge();
+            if (activeRequests != null) {
+                points.put("requests.active", MetricPoint.gauge(activeRequests.value()));
+            }
+            historyStore.append(now - now % SNAPSHOT_INTERVAL_MILLIS, points);
 
-            // 保持历史记录大小
-            while (metricsHistory.size() > MAX_HISTORY_SIZE) {
-                metricsHistory.poll();
+            synchronized (metricsHistory) {
+                metricsHistory.addLast(snapshot);
+                while (metricsHistory.size() > MAX_HISTORY_SIZE) {
+                    metricsHistory.removeFirst();
+                }
             }
 
             log.debug("监控数据快照收集完成，当前并发用户数: {}", snapshot.getConcurrentUsers());
@@ -200,38 +334,204 @@ public class PerformanceMonitoringService {
     }
 
     /**
-     * 获取历史监控数据
+     * 获取最近1小时的监控快照
      */
     public List<MetricsSnapshot> getMetricsHistory() {
-        return new ArrayList<>(metricsHistory);
+        synchronized (metricsHistory) {
+            return new ArrayList<>(metricsHistory);
+        }
     }
 
     /**
-     * 计算API指标
+     * 计算API指标，总体指标来自启动以来的全量直方图，同时给出各滑动窗口的分布
      */
-    private ApiMetrics calculateApiMetrics(String apiName, List<Long> times) {
+    private ApiMetrics calculateApiMetrics(String apiName, ApiRecorder recorder) {
+        SlidingLatencyHistogram histogram = recorder.latency;
         ApiMetrics metrics = new ApiMetrics();
         metrics.setApiName(apiName);
-        metrics.setTotalCalls(apiCallCounts.getOrDefault(apiName, new AtomicLong(0)).get());
-        metrics.setErrorCount(apiErrorCounts.getOrDefault(apiName, new AtomicLong(0)).get());
-
-        if (!times.isEmpty()) {
-            // 计算平均响应时间
-            double avgTime = times.stream().mapToLong(Long::longValue).average().orElse(0.0);
-            metrics.setAverageResponseTime(avgTime);
-
-            // 计算最小和最大响应时间
-            metrics.setMinResponseTime(times.stream().mapToLong(Long::longValue).min().orElse(0));
-            metrics.setMaxResponseTime(times.stream().mapToLong(Long::longValue).max().orElse(0));
-
-            // 计算P95响应时间
-            List<Long> sortedTimes = new ArrayList<>(times);
-            sortedTimes.sort(Long::compareTo);
-            int p95Index = (int) Math.ceil(sortedTimes.size() * 0.95) - 1;
-            metrics.setP95ResponseTime(sortedTimes.get(Math.max(0, p95Index)));
+        metrics.setMethod(recorder.method);
+        metrics.setRoute(recorder.route);
+        metrics.setTotalCalls(recorder.getTotalCalls());
+        metrics.setErrorCount(recorder.getErrorCount());
+
+        SlidingLatencyHistogram.LatencySnapshot total = histogram.snapshotTotal();
+        metrics.setAverageResponseTime(total.getMean());
+        metrics.setMinResponseTime(total.getMin());
+        metrics.setMaxResponseTime(total.getMax());
+        metrics.setP50ResponseTime(total.getP50());
+        metrics.setP90ResponseTime(total.getP90());
+        metrics.setP95ResponseTime(total.getP95());
+        metrics.setP99ResponseTime(total.getP99());
+        metrics.setP999ResponseTime(total.getP999());
+
+        Map<String, SlidingLatencyHistogram.LatencySnapshot> windows = new LinkedHashMap<>();
+        LATENCY_WINDOWS.forEach((window, millis) -> windows.put(window, histogram.snapshot(millis)));
+        metrics.setWindows(windows);
+        return metrics;
+    }
+
+    /**
+     * 从指标注册表读取缓存命中率（百分比），尚无查询时返回0
+     */
+    public double getCacheHitRate() {
+        double hits = 0;
+        double total = 0;
+        for (Counter counter : meterRegistry.find("roleplay.cache.requests").counters()) {
+            total += counter.count();
+            if ("hit".equals(counter.getId().getTag("result"))) {
+                hits += counter.count();
+            }
         }
+        return total > 0 ? hits / total * 100 : 0.0;
+    }
 
-        return metrics;
+    /**
+     * 获取被丢弃的样本数
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.sum();
+    }
+
+    /**
+     * 单个API（请求方法+路由模板）的记录器，每个状态码类别一个计时器，首次出现时注册，
+     * 次数即各计时器的计数，5xx 计为错误
+     */
+    private static class ApiRecorder {
+        private static final String[] STATUS_CLASSES = {"cancelled", "1xx", "2xx", "3xx", "4xx", "5xx"};
+        private static final int SERVER_ERROR = 5;
+
+        private final String method;
+        private final String route;
+        private final MeterRegistry registry;
+        private final AtomicReferenceArray<Timer> timers = new AtomicReferenceArray<>(STATUS_CLASSES.length);
+        private final DistributionSummary responseBytes;
+        private final SlidingLatencyHistogram latency =
+                new SlidingLatencyHistogram(LATENCY_INTERVAL_MILLIS, LATENCY_INTERVAL_COUNT);
+        // 上次写入监控历史时的错误数，仅由快照任务读写
+        private long lastErrorCount;
+
+        ApiRecorder(String method, String route, MeterRegistry registry) {
+            this.method = method;
+            this.route = route;
+            this.registry = registry;
+            this.responseBytes = DistributionSummary.builder("roleplay.api.response.size")
+                    .description("业务接口响应体大小")
+                    .baseUnit("bytes")
+                    .tag("method", method)
+                    .tag("route", route)
+                    .register(registry);
+        }
+
+        void record(int statusCode, long nanos, long bytes) {
+            int index = statusCode <= 0 ? 0 : Math.min(SERVER_ERROR, Math.max(1, statusCode / 100));
+            Timer timer = timers.get(index);
+            if (timer == null) {
+                timer = registerTimer(index);
+            }
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+            responseBytes.record(bytes);
+            latency.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+
+        private Timer registerTimer(int index) {
+            // 重复注册返回同一个计时器，并发初始化无需额外同步
+            Timer timer = Timer.builder(API_METRIC)
+                    .description("业务接口调用耗时（流式响应计到最后一个字节写出）")
+                    .tag("method", method)
+                    .tag("route", route)
+                    .tag("status", STATUS_CLASSES[index])
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(2))
+                    .register(registry);
+            timers.set(index, timer);
+            return timer;
+        }
+
+        long getTotalCalls() {
+            long total = 0;
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                Timer timer = timers.get(i);
+                total += timer != null ? timer.count() : 0;
+            }
+            return total;
+        }
+
+        long getErrorCount() {
+            Timer timer = timers.get(SERVER_ERROR);
+            return timer != null ? timer.count() : 0;
+        }
+    }
+
+    /**
+     * 单个模型与角色分类组合的流式对话指标
+     */
+    private static class StreamMeters implements StreamProbe.Recorder {
+        private final Timer firstByte;
+        private final Timer firstToken;
+        private final Timer firstFrame;
+        private final Timer tokenGap;
+        private final DistributionSummary tokensPerSecond;
+        private final Map<StreamProbe.Outcome, Counter> outcomes = new EnumMap<>(StreamProbe.Outcome.class);
+
+        StreamMeters(String model, String category, MeterRegistry registry) {
+            this.firstByte = streamTimer("roleplay.stream.first_byte", "从发起请求到收到首个上游数据的耗时",
+                    model, category, Duration.ofSeconds(60), registry);
+            this.firstToken = streamTimer("roleplay.stream.first_token", "从发起请求到收到首个内容Token的耗时",
+                    model, category, Duration.ofSeconds(60), registry);
+            this.firstFrame = streamTimer("roleplay.stream.first_frame", "从发起请求到首个内容帧写出并刷新的耗时",
+                    model, category, Duration.ofSeconds(60), registry);
+            this.tokenGap = streamTimer("roleplay.stream.token_gap", "相邻内容Token之间的间隔",
+                    model, category, Duration.ofSeconds(10), registry);
+            this.tokensPerSecond = DistributionSummary.builder("roleplay.stream.tokens_per_second")
+                    .description("单次流式回复的生成速度（首个Token之后）")
+                    .tag("model", model)
+                    .tag("category", category)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(1.0)
+                    .maximumExpectedValue(1000.0)
+                    .register(registry);
+            for (StreamProbe.Outcome outcome : StreamProbe.Outcome.values()) {
+                outcomes.put(outcome, Counter.builder("roleplay.stream.requests")
+                        .description("流式对话次数，按完成、出错、客户端取消划分")
+                        .tag("model", model)
+                        .tag("category", category)
+                        .tag("outcome", outcome.name().toLowerCase())
+                        .register(registry));
+            }
+        }
+
+        private static Timer streamTimer(String name, String description, String model, String category,
+                                         Duration max, MeterRegistry registry) {
+            return Timer.builder(name)
+                    .description(description)
+                    .tag("model", model)
+                    .tag("category", category)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(max)
+                    .register(registry);
+        }
+
+        @Override
+        public void firstByte(long nanos) { firstByte.record(nanos, TimeUnit.NANOSECONDS); }
+
+        @Override
+        public void firstToken(long nanos) { firstToken.record(nanos, TimeUnit.NANOSECONDS); }
+
+        @Override
+        public void firstFrame(long nanos) { firstFrame.record(nanos, TimeUnit.NANOSECONDS); }
+
+        @Override
+        public void tokenGap(long nanos) { tokenGap.record(nanos, TimeUnit.NANOSECONDS); }
+
+        @Override
+        public void finished(StreamProbe.Outcome outcome, long tokens, long generationNanos) {
+            outcomes.get(outcome).increment();
+            if (tokens > 1 && generationNanos > 0) {
+                tokensPerSecond.record(tokens * 1_000_000_000.0 / generationNanos);
+            }
+        }
     }
 
     /**
@@ -240,12 +540,20 @@ public class PerformanceMonitoringService {
     @Data
     public static class ApiMetrics {
         private String apiName;
+        private String method;
+        private String route;
         private long totalCalls;
         private long errorCount;
         private double averageResponseTime;
         private long minResponseTime;
         private long maxResponseTime;
+        private long p50ResponseTime;
+        private long p90ResponseTime;
         private long p95ResponseTime;
+        private long p99ResponseTime;
+        private long p999ResponseTime;
+        // 滑动窗口内的延迟分布，key为窗口名称（1m、5m、15m）
+        private Map<String, SlidingLatencyHistogram.LatencySnapshot> windows;
 
         public double getSuccessRate() {
             return totalCalls > 0 ? (double) (totalCalls - errorCount) / totalCalls * 100 : 0.0;
@@ -253,23 +561,13 @@ public class PerformanceMonitoringService {
     }
 
     /**
-     * 系统指标数据类
+     * API累计调用次数与错误数
      */
     @Data
-    public static class SystemMetrics {
-        private double memoryUsagePercent;
-        private int threadCount;
-        private int cpuCores;
-        private long usedMemoryMB;
-        private long maxMemoryMB;
-
-        public void setMemoryUsagePercent(double memoryUsagePercent) {
-            this.memoryUsagePercent = memoryUsagePercent;
-            // 同时设置内存使用量（MB）
-            MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
-            this.usedMemoryMB = memoryBean.getHeapMemoryUsage().getUsed() / 1024 / 1024;
-            this.maxMemoryMB = memoryBean.getHeapMemoryUsage().getMax() / 1024 / 1024;
-        }
+    @AllArgsConstructor
+    public static class ApiCounter {
+        private long totalCalls;
+        private long errorCount;
     }
 
     /**
@@ -280,8 +578,9 @@ public class PerformanceMonitoringService {
         private LocalDateTime timestamp;
         private Map<String, ApiMetrics> apiMetrics;
         private int concurrentUsers;
-        private SystemMetrics systemMetrics;
+        private SystemMetricsSampler.SystemMetrics systemMetrics;
         private Map<String, Double> errorRates;
+        private long droppedSamples;
     }
 
     /**
@@ -291,8 +590,10 @@ public class PerformanceMonitoringService {
     public static class MetricsSnapshot {
         private LocalDateTime timestamp;
         private int concurrentUsers;
-        private SystemMetrics systemMetrics;
+        private SystemMetricsSampler.SystemMetrics systemMetrics;
         private Map<String, Double> errorRates;
+        // 各API最近1分钟的延迟分布
+        private Map<String, SlidingLatencyHistogram.LatencySnapshot> apiLatencies;
     }
 }
 
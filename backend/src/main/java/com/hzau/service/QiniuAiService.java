@@ -1,5 +1,10 @@
 package com.hzau.service;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hzau.common.jfr.UpstreamCallEvent;
+import com.hzau.common.metrics.StreamProbe;
 import com.hzau.config.QiniuAiConfig;
 import com.hzau.dto.LlmChatReq;
 import com.hzau.dto.LlmChatRes;
@@ -23,6 +28,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * @projectName: AI-roleplay
@@ -35,10 +41,20 @@ import java.util.concurrent.Executor;
 @Service
 @Slf4j
 public class QiniuAiService {
+
+    /**
+     * 仅用于解析流式响应最后一个块中的用量信息
+     */
+    private static final ObjectMapper USAGE_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     
+    // 非流式对话每单位工作量对应的输出Token数
+    private static final double CHAT_TOKENS_PER_WORKLOAD = 50.0;
+
     private final QiniuAiConfig config;
     private final WebClient webClient;
     private final ConcurrentControlService concurrentControlService;
+    private final TokenQuotaService tokenQuotaService;
     private final Executor llmRequestExecutor;
     private final Executor messageProcessingExecutor;
     private final Executor sessionManagementExecutor;
@@ -54,11 +70,13 @@ public class QiniuAiService {
      */
     public QiniuAiService(QiniuAiConfig config, 
                          ConcurrentControlService concurrentControlService,
+                         TokenQuotaService tokenQuotaService,
                          @Qualifier("llmRequestExecutor") Executor llmRequestExecutor,
                          @Qualifier("messageProcessingExecutor") Executor messageProcessingExecutor,
                          @Qualifier("sessionManagementExecutor") Executor sessionManagementExecutor) {
         this.config = config;
         this.concurrentControlService = concurrentControlService;
+        this.tokenQuotaService = tokenQuotaService;
         this.llmRequestExecutor = llmRequestExecutor;
         this.messageProcessingExecutor = messageProcessingExecutor;
         this.sessionManagementExecutor = sessionManagementExecutor;
@@ -85,8 +103,17 @@ public class QiniuAiService {
      * @return AI回复
      */
     public Mono<String> singleChat(String message, String model) {
-        Mono<Boolean> permitMono = concurrentControlService.acquirePermit("system", "llm");
+        return singleChat(message, model, "chat");
+    }
 
+    /**
+     * 单次对话（指定模型与隔离舱）
+     * @param message 用户消息
+     * @param model 模型名称
+     * @param bulkhead 隔离舱名称，如开场白预热使用 opening-warmup，避免占用交互对话的容量
+     * @return AI回复
+     */
+    public Mono<String> singleChat(String message, String model, String bulkhead) {
         List<MessageContent> messages = List.of(MessageContent.user(message));
         LlmChatReq request = LlmChatReq.builder()
                 .model(model)
@@ -96,22 +123,14 @@ public class QiniuAiService {
                 .maxTokens(2000)
                 .build();
 
-        Mono<String> resultMono = sendChatReq(request)
-                .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
-                .map(this::extractMessageContent)
-                .doOnSuccess(res -> concurrentControlService.releasePermit("system", "llm"))
-                .doOnError(error -> {
-                    log.error("单次对话失败", error);
-                    concurrentControlService.releasePermit("system", "llm");
-                });
-
-        Mono<String> finalMono = permitMono.flatMap(permit -> resultMono)
-                .onErrorResume(error -> {
-                    log.error("获取并发许可失败", error);
-                    return Mono.error(new RuntimeException("系统繁忙，请稍后重试"));
-                });
-
-        return finalMono;
+        // 先预留Token额度再排队获取许可，许可由 withUpstreamPermit 统一获取与释放，容量不足时排队等待
+        return tokenQuotaService.withQuota(request, reservation ->
+                        concurrentControlService.withUpstreamPermit(bulkhead, () -> sendChatReq(request)
+                                .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
+                                .doOnNext(response -> reservation.settle(response.getUsage())),
+                                QiniuAiService::chatWorkload)
+                                .map(this::extractMessageContent))
+                .doOnError(error -> log.error("单次对话失败", error));
     }
 
     /**
@@ -132,20 +151,15 @@ public class QiniuAiService {
      * @return AI回复
      */
     public Mono<String> multiTurnChat(String conversationId, String message, String model) {
-        // 获取并发控制许可
-        Mono<Boolean> permitMono = concurrentControlService.acquirePermit("system", "llm");
-        
         // 处理会话历史
-        Mono<List<MessageContent>> historyMono = permitMono.flatMap(permit -> {
-            return Mono.fromCallable(() -> {
-                // 在会话管理线程池中处理会话历史
-                List<MessageContent> history = conversationHistory.computeIfAbsent(conversationId, k -> new ArrayList<>());
-                history.add(MessageContent.user(message));
-                return new ArrayList<>(history); // 创建副本避免并发修改
-            }).subscribeOn(Schedulers.fromExecutor(sessionManagementExecutor));
-        });
-        
-        // 发送聊天请求并处理响应
+        Mono<List<MessageContent>> historyMono = Mono.fromCallable(() -> {
+            // 在会话管理线程池中处理会话历史
+            List<MessageContent> history = conversationHistory.computeIfAbsent(conversationId, k -> new ArrayList<>());
+            history.add(MessageContent.user(message));
+            return (List<MessageContent>) new ArrayList<>(history); // 创建副本避免并发修改
+        }).subscribeOn(Schedulers.fromExecutor(sessionManagementExecutor));
+
+        // 发送聊天请求并处理响应，仅在实际调用上游期间占用许可
         Mono<String> chatResponseMono = historyMono.flatMap(history -> {
             LlmChatReq request = LlmChatReq.builder()
                     .model(model)
@@ -155,11 +169,14 @@ public class QiniuAiService {
                     .maxTokens(2000)
                     .build();
 
-            return sendChatReq(request)
-                    .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
-                    .map(this::extractMessageContent);
+            return tokenQuotaService.withQuota(request, reservation ->
+                    concurrentControlService.withUpstreamPermit("chat", () -> sendChatReq(request)
+                            .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
+                            .doOnNext(response -> reservation.settle(response.getUsage())),
+                            QiniuAiService::chatWorkload)
+                            .map(this::extractMessageContent));
         });
-        
+
         // 处理成功响应
         Mono<String> successHandlerMono = chatResponseMono.doOnSuccess(response -> {
             // 在消息处理线程池中更新会话历史
@@ -177,23 +194,10 @@ public class QiniuAiService {
             })
             .subscribeOn(Schedulers.fromExecutor(messageProcessingExecutor))
             .subscribe();
-            
-            concurrentControlService.releasePermit("system", "llm");
         });
-        
+
         // 处理错误响应
-        Mono<String> errorHandlerMono = successHandlerMono.doOnError(error -> {
-            log.error("多轮对话失败", error);
-            concurrentControlService.releasePermit("system", "llm");
-        });
-        
-        // 处理许可获取失败
-        Mono<String> finalMono = errorHandlerMono.onErrorResume(error -> {
-            log.error("获取并发许可失败", error);
-            return Mono.error(new RuntimeException("系统繁忙，请稍后重试"));
-        });
-        
-        return finalMono;
+        return successHandlerMono.doOnError(error -> log.error("多轮对话失败", error));
     }
 
     /**
@@ -224,7 +228,7 @@ public class QiniuAiService {
      * @return 响应对象
      */
     private Mono<LlmChatRes> sendChatReq(LlmChatReq request) {
-        return webClient.post()
+        return UpstreamCallEvent.trace("chat", request.getModel(), event -> webClient.post()
                 .uri("/chat/completions")
                 .bodyValue(request)
                 .retrieve()
@@ -232,10 +236,26 @@ public class QiniuAiService {
                 .timeout(Duration.ofSeconds(config.getTimeout()))
                 .retryWhen(Retry.backoff(config.getMaxRetries(), Duration.ofSeconds(1))
                         .filter(throwable -> !(throwable instanceof WebClientResponseException.BadRequest)))
+                .doOnNext(response -> {
+                    if (response.getUsage() != null) {
+                        event.setTokens(response.getUsage().getPromptTokens(), response.getUsage().getCompletionTokens());
+                    }
+                }))
                 .doOnError(error -> log.error("调用七牛云AI API失败", error))
                 .onErrorMap(error -> new RuntimeException("AI服务调用失败: " + error.getMessage(), error));
     }
 
+    /**
+     * 非流式对话的工作量，用于把调用耗时换算为RTT样本：上游的固定开销约相当于生成
+     * CHAT_TOKENS_PER_WORKLOAD 个Token，输出越长工作量越大；响应不含用量时按1计
+     */
+    private static double chatWorkload(LlmChatRes response) {
+        if (response.getUsage() == null || response.getUsage().getCompletionTokens() == null) {
+            return 1.0;
+        }
+        return 1.0 + response.getUsage().getCompletionTokens() / CHAT_TOKENS_PER_WORKLOAD;
+    }
+
     /**
      * 从响应中提取消息内容
      * @param response 响应对象
@@ -301,34 +321,21 @@ public class QiniuAiService {
      * @return AI回复流
      */
     public Flux<String> singleChatStream(String message, String model) {
-        // 使用局部变量分步构建，避免在 return 中出现长链式调用
-        Mono<Boolean> permitMono = concurrentControlService.acquirePermit("system", "streaming");
-
         List<MessageContent> messages = List.of(MessageContent.user(message));
         LlmChatReq request = LlmChatReq.builder()
                 .model(model)
                 .messages(messages)
                 .stream(true) // 启用流式输出
+                .streamOptions(new LlmChatReq.StreamOptions(true))
                 .temperature(0.7)
                 .maxTokens(2000)
                 .build();
 
-        Flux<String> streamFlux = permitMono.flatMapMany(permit ->
-                sendChatStreamReq(request)
-                        .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
-                        .doOnComplete(() -> {
-                            concurrentControlService.releasePermit("system", "streaming");
-                        })
-                        .doOnError(error -> {
-                            log.error("流式单次对话失败", error);
-                            concurrentControlService.releasePermit("system", "streaming");
-                        })
-        ).onErrorResume(error -> {
-            log.error("获取流式并发许可失败", error);
-            return Flux.error(new RuntimeException("系统繁忙，请稍后重试"));
-        });
-
-        return streamFlux;
+        // 许可在流完成、出错或客户端断开时释放，Token额度按最后一个块返回的用量结算
+        return tokenQuotaService.withQuotaMany(request, reservation ->
+                        concurrentControlService.withUpstreamPermitMany("stream", () -> sendChatStreamReq(request, reservation::settle)
+                                .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))))
+                .doOnError(error -> log.error("流式单次对话失败", error));
     }
 
     /**
@@ -363,6 +370,7 @@ public class QiniuAiService {
                     .model(model)
                     .messages(history)
                     .stream(true) // 启用流式输出
+                    .streamOptions(new LlmChatReq.StreamOptions(true))
                     .temperature(0.7)
                     .maxTokens(2000)
                     .build();
@@ -370,8 +378,10 @@ public class QiniuAiService {
             StringBuilder responseBuilder = new StringBuilder();
             
             // 发送流式请求，现在直接返回内容
-            return sendChatStreamReq(request)
-                    .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
+            Flux<String> contentFlux = tokenQuotaService.withQuotaMany(request, reservation ->
+                    concurrentControlService.withUpstreamPermitMany("stream", () -> sendChatStreamReq(request, reservation::settle)
+                            .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))));
+            return contentFlux
                     .doOnNext(content -> {
                         // 累积响应内容用于保存到历史
                         responseBuilder.append(content);
@@ -405,15 +415,22 @@ public class QiniuAiService {
     /**
      * 发送流式聊天请求
      * @param request 请求对象
+     * @param usageConsumer 接收最后一个块中的Token用量
      * @return 响应流
      */
-    private Flux<String> sendChatStreamReq(LlmChatReq request) {
-        return webClient.post()
+    private Flux<String> sendChatStreamReq(LlmChatReq request, Consumer<LlmChatRes.Usage> usageConsumer) {
+        // 调用方通过 Context 传入的流式探针，记录首个上游数据与各内容Token的到达时间
+        return Flux.deferContextual(ctx -> sendChatStreamReq(request, usageConsumer, StreamProbe.from(ctx)));
+    }
+
+    private Flux<String> sendChatStreamReq(LlmChatReq request, Consumer<LlmChatRes.Usage> usageConsumer, StreamProbe probe) {
+        return UpstreamCallEvent.traceMany("stream", request.getModel(), event -> webClient.post()
                 .uri("/chat/completions")
                 .accept(MediaType.TEXT_EVENT_STREAM)
                 .bodyValue(request)
                 .retrieve()
                 .bodyToFlux(String.class)
+                .doOnNext(line -> probe.onUpstreamData())
                 .timeout(Duration.ofSeconds(config.getTimeout()))
                 .retryWhen(Retry.backoff(config.getMaxRetries(), Duration.ofSeconds(1))
                         .filter(throwable -> !(throwable instanceof WebClientResponseException.BadRequest)))
@@ -431,9 +448,18 @@ public class QiniuAiService {
                 })
                 .takeUntil(data -> "[DONE]".equals(data) || "data: [DONE]".equals(data))
                 .filter(data -> !"[DONE]".equals(data))
+                .doOnNext(data -> {
+                    LlmChatRes.Usage usage = extractUsageFromStreamChunk(data);
+                    if (usage != null) {
+                        usageConsumer.accept(usage);
+                        probe.onUsage(usage.getCompletionTokens());
+                        event.setTokens(usage.getPromptTokens(), usage.getCompletionTokens());
+                    }
+                })
                 // 提取每个chunk中的content内容
                 .map(this::extractContentFromStreamChunk)
                 .filter(content -> content != null && !content.isEmpty())
+                .doOnNext(content -> probe.onContentToken()))
                 .doOnError(error -> log.error("调用七牛云AI流式API失败", error))
                 .onErrorMap(error -> new RuntimeException("AI流式服务调用失败: " + error.getMessage(), error));
     }
@@ -468,6 +494,27 @@ public class QiniuAiService {
         return "";
     }
 
+    /**
+     * 从流式响应块中提取Token用量，仅请求了 include_usage 时最后一个块携带
+     * @param chunk 响应块
+     * @return 用量，不存在时返回null
+     */
+    private LlmChatRes.Usage extractUsageFromStreamChunk(String chunk) {
+        if (chunk == null || !chunk.contains("\"prompt_tokens\"")) {
+            return null;
+        }
+        try {
+            JsonNode usage = USAGE_MAPPER.readTree(chunk).get("usage");
+            if (usage == null || usage.isNull()) {
+                return null;
+            }
+            return USAGE_MAPPER.treeToValue(usage, LlmChatRes.Usage.class);
+        } catch (Exception e) {
+            log.warn("解析流式用量失败: {}", chunk, e);
+            return null;
+        }
+    }
+
     /**
      * 检查API配置是否有效
      * @return 是否有效
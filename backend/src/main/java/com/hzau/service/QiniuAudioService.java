@@ -1,5 +1,9 @@
 package com.hzau.service;
 
+import com.hzau.common.exception.ServiceBusyException;
+import com.hzau.common.jfr.UpstreamCallEvent;
+import com.hzau.common.utils.Base64JsonFieldDecoder;
+import com.hzau.common.utils.Base64StreamEncoder;
 import com.hzau.config.QiniuAiConfig;
 import com.hzau.config.VoiceConfig;
 import com.hzau.dto.*;
@@ -7,22 +11,36 @@ import com.hzau.entity.AiCharacter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 import reactor.util.retry.Retry;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Executor;
 
@@ -42,23 +60,30 @@ public class QiniuAudioService {
     private final WebClient webClient;
     private final ConcurrentControlService concurrentControlService;
     private final Executor llmRequestExecutor;
-    private final QiniuUploadService qiniuUploadService;
+
+    // ASR、TTS每单位工作量对应的音频秒数与文本字数，用于把调用耗时换算为RTT样本
+    private static final double ASR_SECONDS_PER_WORKLOAD = 5.0;
+    private static final double TTS_CHARS_PER_WORKLOAD = 30.0;
+
+    // 内联ASR读取本地音频的缓冲区大小
+    private static final int INLINE_READ_BUFFER_SIZE = 48 * 1024;
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    // 响应体整体解码到内存时的大小上限
+    private static final int MAX_IN_MEMORY_RESPONSE_SIZE = 1024 * 1024;
 
     /**
      * 构造函数，初始化WebClient
      */
     public QiniuAudioService(QiniuAiConfig config,
                              ConcurrentControlService concurrentControlService,
-                             @Qualifier("llmRequestExecutor") Executor llmRequestExecutor,
-                             QiniuUploadService qiniuUploadService) {
+                             @Qualifier("llmRequestExecutor") Executor llmRequestExecutor) {
         this.config = config;
         this.concurrentControlService = concurrentControlService;
         this.llmRequestExecutor = llmRequestExecutor;
-        this.qiniuUploadService = qiniuUploadService;
         
-        // 配置ExchangeStrategies以增加缓冲区大小限制
+        // 整体解码到内存的只有ASR识别结果与音色列表，TTS音频流式解码写入文件，不受该限制
         ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024)) // 10MB
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(MAX_IN_MEMORY_RESPONSE_SIZE))
                 .build();
         
         // 配置HttpClient
@@ -124,71 +149,116 @@ public class QiniuAudioService {
             return Mono.error(new RuntimeException("七牛云API配置无效"));
         }
 
-        // 获取并发控制许可
-        Mono<Boolean> permitMono = concurrentControlService.acquirePermit("system", "asr");
-        
-        // 构建ASR请求并发送
-        Mono<String> asrRequestMono = permitMono.flatMap(permit -> {
-            // 构建ASR请求
-            AudioAsrReq request = new AudioAsrReq();
-            request.setModel(config.getAsr().getModel());
-
-            AudioAsrReq.AudioParam audioParam = new AudioAsrReq.AudioParam();
-            audioParam.setFormat(audioFormat);
-            audioParam.setUrl(audioUrl);
-            request.setAudio(audioParam);
-
-            return sendAsrRequest(request)
-                    .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
-                    .map(this::extractAsrText);
-        });
-        
-        // 处理成功响应
-        Mono<String> successHandlerMono = asrRequestMono.doOnSuccess(result -> {
-            log.info("语音转文本成功: {}", result);
-            concurrentControlService.releasePermit("system", "asr");
-        });
-        
-        // 处理错误响应
-        Mono<String> errorHandlerMono = successHandlerMono.doOnError(error -> {
-            log.error("语音转文本失败", error);
-            concurrentControlService.releasePermit("system", "asr");
-        });
-        
-        // 处理许可获取失败
-        return errorHandlerMono.onErrorResume(error -> {
-            return Mono.error(new RuntimeException("语音识别服务繁忙，请稍后重试"));
-        });
+        // 构建ASR请求
+        AudioAsrReq request = new AudioAsrReq();
+        request.setModel(config.getAsr().getModel());
+
+        AudioAsrReq.AudioParam audioParam = new AudioAsrReq.AudioParam();
+        audioParam.setFormat(audioFormat);
+        audioParam.setUrl(audioUrl);
+        request.setAudio(audioParam);
+
+        // 在并发许可保护下发送请求，容量不足时排队等待
+        Mono<String> asrRequestMono = concurrentControlService.withUpstreamPermit("asr", () -> sendAsrRequest(request)
+                .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor)), QiniuAudioService::asrWorkload)
+                .map(this::extractAsrText);
+
+        return asrRequestMono
+                .doOnSuccess(result -> log.info("语音转文本成功: {}", result))
+                .doOnError(error -> log.error("语音转文本失败", error))
+                // 仅将排队已满/超时转换为业务提示，其余错误原样抛出
+                .onErrorMap(ServiceBusyException.class, error -> new RuntimeException("语音识别服务繁忙，请稍后重试", error));
     }
 
     /**
-     * 文本转语音 (TTS)
-     * @param text 需要合成的文本
-     * @return base64编码的音频数据
+     * 是否开启内联音频的ASR模式
      */
-    public Mono<String> textToSpeech(String text) {
-        return textToSpeech(text, config.getTts().getDefaultVoiceType(),
-                config.getTts().getDefaultEncoding(),
-                config.getTts().getDefaultSpeedRatio());
+    public boolean isInlineAsrEnabled() {
+        return "inline".equalsIgnoreCase(config.getAsr().getMode());
     }
 
     /**
-     * 文本转语音 (TTS) - 根据角色配置
-     * @param text 需要合成的文本
-     * @param character AI角色对象
-     * @return base64编码的音频数据
+     * 是否将给定大小的音频内联到ASR请求中，未开启 inline 模式或超过大小上限时返回false
      */
-    public Mono<String> textToSpeechWithCharacter(String text, AiCharacter character) {
-        log.info("开始文本转语音（角色配置）, text: {}, characterId: {}", text, character.getId());
+    public boolean isInlineAsr(long audioSize) {
+        return isInlineAsrEnabled() && audioSize <= config.getAsr().getInlineMaxSizeMb() * 1024L * 1024;
+    }
 
-        // 解析角色的音色配置
-        VoiceConfig voiceConfig = parseVoiceConfig(character.getVoiceConfig());
-        
-        // 使用角色配置的音色参数
-        return textToSpeech(text, 
-                voiceConfig.getVoiceType(), 
-                config.getTts().getDefaultEncoding(), 
-                voiceConfig.getSpeedRatio());
+    /**
+     * 语音转文本 (ASR) - 音频内联在请求体中，不经过对象存储
+     * 本地文件边读边做base64编码写入请求体，内存占用与文件大小无关
+     * @param audioFile 本地音频文件
+     * @param audioFormat 音频格式
+     * @return 识别出的文本
+     */
+    public Mono<String> speechToTextInline(Path audioFile, String audioFormat) {
+        log.info("开始语音转文本（内联音频）, file: {}, format: {}", audioFile, audioFormat);
+
+        // 验证输入参数
+        if (audioFile == null) {
+            return Mono.error(new RuntimeException("音频文件不能为空"));
+        }
+
+        if (audioFormat == null || audioFormat.trim().isEmpty()) {
+            return Mono.error(new RuntimeException("音频格式不能为空"));
+        }
+
+        // 检查API配置
+        if (!isConfigValid()) {
+            return Mono.error(new RuntimeException("七牛云API配置无效"));
+        }
+
+        String model = config.getAsr().getModel();
+        Flux<DataBuffer> body = Flux.defer(() -> inlineAsrBody(model, audioFormat, audioFile));
+
+        // 在并发许可保护下发送请求，容量不足时排队等待
+        Mono<String> asrRequestMono = concurrentControlService.withUpstreamPermit("asr", () -> sendAsrRequest(model, body)
+                .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor)), QiniuAudioService::asrWorkload)
+                .map(this::extractAsrText);
+
+        return asrRequestMono
+                .doOnSuccess(result -> log.info("语音转文本成功: {}", result))
+                .doOnError(error -> log.error("语音转文本失败", error))
+                // 仅将排队已满/超时转换为业务提示，其余错误原样抛出
+                .onErrorMap(ServiceBusyException.class, error -> new RuntimeException("语音识别服务繁忙，请稍后重试", error));
+    }
+
+    /**
+     * 生成内联音频的ASR请求体：{"model":..,"audio":{"format":..,"data":"<base64>"}}，
+     * 音频部分按读取的数据块逐块编码
+     */
+    private Flux<DataBuffer> inlineAsrBody(String model, String audioFormat, Path audioFile) {
+        String head;
+        try {
+            head = "{\"model\":" + JSON_MAPPER.writeValueAsString(model)
+                    + ",\"audio\":{\"format\":" + JSON_MAPPER.writeValueAsString(audioFormat)
+                    + "," + JSON_MAPPER.writeValueAsString(config.getAsr().getInlineField()) + ":\"";
+        } catch (IOException e) {
+            return Flux.error(e);
+        }
+        Base64StreamEncoder encoder = new Base64StreamEncoder();
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        Flux<DataBuffer> audio = DataBufferUtils.read(audioFile, factory, INLINE_READ_BUFFER_SIZE)
+                .map(buffer -> {
+                    try {
+                        int length = buffer.readableByteCount();
+                        byte[] bytes = new byte[length];
+                        buffer.read(bytes);
+                        return factory.wrap(encoder.encode(bytes, length));
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+        return Flux.concat(
+                Mono.fromSupplier(() -> factory.wrap(head.getBytes(StandardCharsets.UTF_8))),
+                audio,
+                Mono.fromSupplier(() -> {
+                    byte[] tail = encoder.finish();
+                    byte[] end = "\"}}".getBytes(StandardCharsets.UTF_8);
+                    byte[] bytes = Arrays.copyOf(tail, tail.length + end.length);
+                    System.arraycopy(end, 0, bytes, tail.length, end.length);
+                    return factory.wrap(bytes);
+                }));
     }
 
     /**
@@ -212,54 +282,70 @@ public class QiniuAudioService {
     }
 
     /**
-     * 文本转语音 (TTS) - 自定义参数
+     * 文本转语音 (TTS) - 根据角色配置，响应边接收边解码写入文件，不在内存中保留完整音频
      * @param text 需要合成的文本
-     * @param voiceType 音色类型
-     * @param encoding 音频编码
-     * @param speedRatio 语速
-     * @return base64编码的音频数据
+     * @param character AI角色对象
+     * @param bulkhead 隔离舱名称
+     * @param target 音频文件路径，已存在时覆盖
+     * @return 写入的音频字节数
      */
-    public Mono<String> textToSpeech(String text, String voiceType, String encoding, Float speedRatio) {
-        log.info("开始文本转语音, text: {}, voiceType: {}, encoding: {}, speedRatio: {}",
-                text, voiceType, encoding, speedRatio);
+    public Mono<Long> textToSpeechToFile(String text, AiCharacter character, String bulkhead, Path target) {
+        VoiceConfig voiceConfig = parseVoiceConfig(character.getVoiceConfig());
+        log.info("开始文本转语音（写入文件）, text: {}, characterId: {}, voiceType: {}",
+                text, character.getId(), voiceConfig.getVoiceType());
 
         // 检查文本长度
         if (text.length() > config.getTts().getMaxTextLength()) {
             return Mono.error(new RuntimeException("文本长度超过限制: " + config.getTts().getMaxTextLength()));
         }
 
-        // 获取并发控制许可
-        return concurrentControlService.acquirePermit("system", "tts")
-                .flatMap(permit -> {
-                    // 构建TTS请求
-                    AudioTtsReq request = new AudioTtsReq();
-
-                    AudioTtsReq.AudioParam audioParam = new AudioTtsReq.AudioParam();
-                    audioParam.setVoiceType(voiceType);
-                    audioParam.setEncoding(encoding);
-                    audioParam.setSpeedRatio(speedRatio);
-                    request.setAudio(audioParam);
-
-                    AudioTtsReq.RequestParam requestParam = new AudioTtsReq.RequestParam();
-                    requestParam.setText(text);
-                    request.setRequest(requestParam);
-
-                    return sendTtsRequest(request)
-                            .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor))
-                            .map(this::extractTtsAudioData)
-                            .doOnSuccess(result -> {
-                                log.info("文本转语音成功，音频数据长度: {}", result != null ? result.length() : 0);
-                                concurrentControlService.releasePermit("system", "tts");
-                            })
-                            .doOnError(error -> {
-                                log.error("文本转语音失败", error);
-                                concurrentControlService.releasePermit("system", "tts");
-                            });
-                })
-                .onErrorResume(error -> {
-                    log.error("获取TTS并发许可失败", error);
-                    return Mono.error(new RuntimeException("语音合成服务繁忙，请稍后重试"));
-                });
+        AudioTtsReq request = buildTtsRequest(text, voiceConfig.getVoiceType(),
+                config.getTts().getDefaultEncoding(), voiceConfig.getSpeedRatio());
+
+        // 在并发许可保护下发送请求，容量不足时排队等待
+        return concurrentControlService.withUpstreamPermit(bulkhead, () -> sendTtsRequestToFile(request, target)
+                        .subscribeOn(Schedulers.fromExecutor(llmRequestExecutor)), size -> ttsWorkload(text))
+                .doOnSuccess(size -> log.info("文本转语音成功，音频文件: {}, 大小: {} bytes", target, size))
+                .doOnError(error -> log.error("文本转语音失败", error))
+                // 仅将排队已满/超时转换为业务提示，其余错误原样抛出
+                .onErrorMap(ServiceBusyException.class, error -> new RuntimeException("语音合成服务繁忙，请稍后重试", error));
+    }
+
+    /**
+     * ASR调用的工作量，用于把调用耗时换算为RTT样本：识别耗时随音频时长增长，
+     * 上游的固定开销约相当于识别 ASR_SECONDS_PER_WORKLOAD 秒音频；响应不含音频时长时按1计
+     */
+    private static double asrWorkload(AudioAsrRes response) {
+        if (response.getData() == null || response.getData().getAudioInfo() == null
+                || response.getData().getAudioInfo().getDuration() == null) {
+            return 1.0;
+        }
+        return 1.0 + response.getData().getAudioInfo().getDuration() / 1000.0 / ASR_SECONDS_PER_WORKLOAD;
+    }
+
+    /**
+     * TTS调用的工作量：合成耗时随文本长度增长，上游的固定开销约相当于合成 TTS_CHARS_PER_WORKLOAD 个字
+     */
+    private static double ttsWorkload(String text) {
+        return 1.0 + text.length() / TTS_CHARS_PER_WORKLOAD;
+    }
+
+    /**
+     * 构建TTS请求
+     */
+    private AudioTtsReq buildTtsRequest(String text, String voiceType, String encoding, Float speedRatio) {
+        AudioTtsReq request = new AudioTtsReq();
+
+        AudioTtsReq.AudioParam audioParam = new AudioTtsReq.AudioParam();
+        audioParam.setVoiceType(voiceType);
+        audioParam.setEncoding(encoding);
+        audioParam.setSpeedRatio(speedRatio);
+        request.setAudio(audioParam);
+
+        AudioTtsReq.RequestParam requestParam = new AudioTtsReq.RequestParam();
+        requestParam.setText(text);
+        request.setRequest(requestParam);
+        return request;
     }
 
     /**
@@ -299,12 +385,25 @@ public class QiniuAudioService {
       * 发送ASR请求到七牛云API
       */
      private Mono<AudioAsrRes> sendAsrRequest(AudioAsrReq request) {
+         return UpstreamCallEvent.trace("asr", request.getModel(),
+                 event -> sendAsrRequest(BodyInserters.fromValue(request), event));
+     }
+
+     /**
+      * 发送请求体为流式数据的ASR请求，每次订阅（包括重试）重新生成请求体
+      */
+     private Mono<AudioAsrRes> sendAsrRequest(String model, Flux<DataBuffer> body) {
+         return UpstreamCallEvent.trace("asr", model,
+                 event -> sendAsrRequest(BodyInserters.fromDataBuffers(body), event));
+     }
+
+     private Mono<AudioAsrRes> sendAsrRequest(BodyInserter<?, ? super ClientHttpRequest> body, UpstreamCallEvent event) {
          String endpoint = config.getPrimaryEndpoint() + "/voice/asr";
      
          Mono<AudioAsrRes> requestMono = webClient.post()
                  .uri(endpoint)
                  .header("Authorization", "Bearer " + config.getApiKey())
-                 .bodyValue(request)
+                 .body(body)
                  .retrieve()
                  .bodyToMono(AudioAsrRes.class);
      
@@ -330,49 +429,89 @@ public class QiniuAudioService {
                          })
              );
      
-         return finalMono;
+         return finalMono.doOnNext(response -> {
+             if (response.getData() != null && response.getData().getResult() != null
+                     && response.getData().getResult().getText() != null) {
+                 event.setResponseSize(response.getData().getResult().getText().length());
+             }
+         });
      }
 
      /**
-      * 发送TTS请求
-      * @param request TTS请求
-      * @return TTS响应
+      * 发送TTS请求，响应体按到达的数据块流式解码 data 字段并写入文件，重试时从头覆盖文件
+      * @return 写入的音频字节数
       */
-     private Mono<AudioTtsRes> sendTtsRequest(AudioTtsReq request) {
-         String endpoint = config.getPrimaryEndpoint() + "/voice/tts";
-     
-         Mono<AudioTtsRes> requestMono = webClient.post()
-                 .uri(endpoint)
-                 .header("Authorization", "Bearer " + config.getApiKey())
-                 .bodyValue(request)
-                 .retrieve()
-                 .bodyToMono(AudioTtsRes.class);
-     
-         Mono<AudioTtsRes> timeoutMono = requestMono.timeout(Duration.ofSeconds(config.getTimeout()));
-     
-         Mono<AudioTtsRes> httpErrorLogMono = timeoutMono.doOnError(WebClientResponseException.class, ex -> {
-             log.error("TTS请求失败，HTTP状态码: {}, 响应体: {}",
-                     ex.getStatusCode(), ex.getResponseBodyAsString());
-         });
-     
-         Mono<AudioTtsRes> otherErrorLogMono = httpErrorLogMono.doOnError(error -> !(error instanceof WebClientResponseException), error -> {
-             log.error("TTS请求发生其他错误", error);
+     private Mono<Long> sendTtsRequestToFile(AudioTtsReq request, Path target) {
+         return UpstreamCallEvent.trace("tts", request.getAudio().getVoiceType(), event -> {
+             String endpoint = config.getPrimaryEndpoint() + "/voice/tts";
+
+             Mono<Long> attemptMono = Mono.using(
+                     () -> AsynchronousFileChannel.open(target, StandardOpenOption.CREATE,
+                             StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                     channel -> {
+                         Base64JsonFieldDecoder decoder = new Base64JsonFieldDecoder("data");
+                         Flux<DataBuffer> audioFlux = webClient.post()
+                                 .uri(endpoint)
+                                 .header("Authorization", "Bearer " + config.getApiKey())
+                                 .bodyValue(request)
+                                 .retrieve()
+                                 .bodyToFlux(DataBuffer.class)
+                                 .concatMapIterable(buffer -> decodeTtsChunk(decoder, buffer))
+                                 .concatWith(Mono.fromCallable(decoder::finish))
+                                 .filter(ByteBuffer::hasRemaining)
+                                 .map(DefaultDataBufferFactory.sharedInstance::wrap);
+                         return DataBufferUtils.write(audioFlux, channel)
+                                 .then(Mono.fromCallable(decoder::getDecodedBytes));
+                     },
+                     channel -> {
+                         try {
+                             channel.close();
+                         } catch (IOException e) {
+                             log.warn("关闭TTS音频文件失败: {}", target, e);
+                         }
+                     });
+
+             Mono<Long> timeoutMono = attemptMono.timeout(Duration.ofSeconds(config.getTimeout()));
+
+             Mono<Long> httpErrorLogMono = timeoutMono.doOnError(WebClientResponseException.class, ex -> {
+                 log.error("TTS请求失败，HTTP状态码: {}, 响应体: {}",
+                         ex.getStatusCode(), ex.getResponseBodyAsString());
+             });
+
+             Mono<Long> otherErrorLogMono = httpErrorLogMono.doOnError(error -> !(error instanceof WebClientResponseException), error -> {
+                 log.error("TTS请求发生其他错误", error);
+             });
+
+             Mono<Long> finalMono = otherErrorLogMono.retryWhen(
+                     Retry.backoff(config.getMaxRetries(), Duration.ofSeconds(2))
+                             .filter(throwable -> !(throwable instanceof WebClientResponseException &&
+                                     ((WebClientResponseException) throwable).getStatusCode().is4xxClientError()))
+                             .doBeforeRetry(retrySignal -> {
+                                 log.warn("TTS请求重试，第{}次，原因: {}",
+                                         retrySignal.totalRetries() + 1,
+                                         retrySignal.failure().getMessage());
+                             })
+                 );
+
+             return finalMono.doOnNext(event::setResponseSize);
          });
-     
-         Mono<AudioTtsRes> finalMono = otherErrorLogMono.retryWhen(
-                 Retry.backoff(config.getMaxRetries(), Duration.ofSeconds(2))
-                         .filter(throwable -> !(throwable instanceof WebClientResponseException &&
-                                 ((WebClientResponseException) throwable).getStatusCode().is4xxClientError()))
-                         .doBeforeRetry(retrySignal -> {
-                             log.warn("TTS请求重试，第{}次，原因: {}",
-                                     retrySignal.totalRetries() + 1,
-                                     retrySignal.failure().getMessage());
-                         })
-             );
-     
-         return finalMono;
      }
 
+    /**
+     * 解码一块TTS响应数据，解码结果为新分配的缓冲区，原数据块随即释放
+     */
+    private static List<ByteBuffer> decodeTtsChunk(Base64JsonFieldDecoder decoder, DataBuffer buffer) {
+        List<ByteBuffer> decoded = new ArrayList<>(1);
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                decoded.add(decoder.feed(iterator.next()));
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return decoded;
+    }
+
     /**
      * 从ASR响应中提取文本
      * @param response ASR响应
@@ -403,38 +542,6 @@ public class QiniuAudioService {
         return text.trim();
     }
 
-    /**
-     * 从TTS响应中提取音频数据
-     * @param response TTS响应
-     * @return base64编码的音频数据
-     */
-    private String extractTtsAudioData(AudioTtsRes response) {
-        if (response == null || response.getData() == null) {
-            throw new RuntimeException("TTS响应数据为空");
-        }
-
-        String audioData = response.getData();
-        if (audioData == null || audioData.trim().isEmpty()) {
-            throw new RuntimeException("语音合成结果为空");
-        }
-
-        return audioData;
-    }
-
-    /**
-     * 将base64音频数据转换为字节数组
-     * @param base64AudioData base64编码的音频数据
-     * @return 音频字节数组
-     */
-    public byte[] decodeAudioData(String base64AudioData) {
-        try {
-            return Base64.getDecoder().decode(base64AudioData);
-        } catch (Exception e) {
-            log.error("解码音频数据失败", e);
-            throw new RuntimeException("音频数据解码失败", e);
-        }
-    }
-
     /**
      * 检查API配置是否有效
      * @return 是否有效
@@ -1,18 +1,26 @@
 package com.hzau.service;
 
+import com.hzau.common.concurrent.ExpiringMap;
+import com.hzau.common.concurrent.GcraLimiter;
 import com.hzau.config.RateLimitConfig;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @projectName: AI-roleplay
  * @package: com.hzau.service
  * @className: RateLimitService
  * @author: zhuyuchen
- * @description: TODO
+ * @description: 用户/IP 限流服务。每个键的多层级限流状态保存在一个原子 long 中，
+ *               判定只需一次 CAS，不加锁、不分配对象；集群模式下再消耗集群范围的长周期配额
  * @date: 2025/9/23 下午3:14
  */
 @Slf4j
@@ -20,13 +28,40 @@ import java.util.concurrent.ConcurrentMap;
 public class RateLimitService {
 
     @Autowired
-    private ConcurrentMap<String, RateLimitConfig.RateLimitInfo> rateLimitMap;
+    private RateLimitConfig rateLimitConfig;
 
-    // 限流配置
-    private static final int MAX_REQUESTS_PER_MINUTE = 30; // 每分钟最大请求数
-    private static final int MAX_REQUESTS_PER_HOUR = 300;  // 每小时最大请求数
-    private static final long MINUTE_IN_MILLIS = 60 * 1000L;
-    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    @Autowired
+    private DistributedPermitService distributedPermitService;
+
+    /**
+     * 集群配额只同步分钟级及以上的层级，秒级层级由本地限流即可保证
+     */
+    private static final long CLUSTER_QUOTA_MIN_PERIOD_MILLIS = 60 * 1000L;
+
+    private GcraLimiter limiter;
+
+    /**
+     * 按用户ID与按IP的限流状态分开保存，查找时无需拼接字符串键
+     * 空闲超过最长限流周期的记录由时间轮移除，总数受 max-entries 限制
+     */
+    private ExpiringMap<Integer, AtomicLong> userCells;
+    private ExpiringMap<String, AtomicLong> ipCells;
+
+    @PostConstruct
+    public void init() {
+        List<GcraLimiter.Tier> tiers = new ArrayList<>();
+        for (RateLimitConfig.TierConfig tier : rateLimitConfig.getTiers()) {
+            tiers.add(new GcraLimiter.Tier(tier.getName(), tier.getLimit(), tier.getPeriodMs()));
+        }
+        this.limiter = new GcraLimiter(tiers);
+        // 超过空闲时间后限流状态必然已恢复，移除不影响判定
+        long idleTimeout = limiter.getIdleTimeoutMillis();
+        this.userCells = new ExpiringMap<>("rate-limit:user", idleTimeout, rateLimitConfig.getMaxEntries(),
+                rateLimitConfig.getOverflowPolicy(), cell -> true);
+        this.ipCells = new ExpiringMap<>("rate-limit:ip", idleTimeout, rateLimitConfig.getMaxEntries(),
+                rateLimitConfig.getOverflowPolicy(), cell -> true);
+        log.info("限流服务初始化完成, 层级: {}", describeTiers());
+    }
 
     /**
      * 检查用户是否被限流
@@ -34,7 +69,7 @@ public class RateLimitService {
      * @return true表示允许请求，false表示被限流
      */
     public boolean isAllowed(Integer userId) {
-        return isAllowed("user:" + userId);
+        return isAllowed(userCells.computeIfAbsent(userId, k -> GcraLimiter.newCell()), "user:", userId);
     }
 
     /**
@@ -43,51 +78,77 @@ public class RateLimitService {
      * @return true表示允许请求，false表示被限流
      */
     public boolean isAllowedByIp(String ipAddress) {
-        return isAllowed("ip:" + ipAddress);
+        return isAllowed(ipCells.computeIfAbsent(ipAddress, k -> GcraLimiter.newCell()), "ip:", ipAddress);
     }
 
     /**
-     * 通用限流检查方法
-     * @param key 限流键（用户ID或IP地址）
+     * 检查用户是否被限流（集群模式下同时检查集群范围内的配额）
+     * @param userId 用户ID
      * @return true表示允许请求，false表示被限流
      */
-    private boolean isAllowed(String key) {
-        long currentTime = System.currentTimeMillis();
-
-        RateLimitConfig.RateLimitInfo rateLimitInfo = rateLimitMap.computeIfAbsent(key,
-                k -> new RateLimitConfig.RateLimitInfo());
-
-        synchronized (rateLimitInfo) {
-            // 检查是否需要重置时间窗口（每分钟重置）
-            if (currentTime - rateLimitInfo.getWindowStartTime() >= MINUTE_IN_MILLIS) {
-                rateLimitInfo.resetWindow();
-                log.debug("重置限流窗口, key: {}", key);
-                // 重置后允许请求，并更新时间
-                rateLimitInfo.incrementCount();
-                return true;
-            }
+    public Mono<Boolean> checkAllowed(Integer userId) {
+        if (!isAllowed(userId)) {
+            return Mono.just(false);
+        }
+        return checkClusterQuota("user:" + userId);
+    }
 
-            // 检查当前分钟内的请求数
-            if (rateLimitInfo.getRequestCount() >= MAX_REQUESTS_PER_MINUTE) {
-                log.warn("用户请求过于频繁，触发分钟级限流, key: {}, count: {}",
-                        key, rateLimitInfo.getRequestCount());
-                return false;
-            }
+    /**
+     * 检查IP是否被限流（集群模式下同时检查集群范围内的配额）
+     * @param ipAddress IP地址
+     * @return true表示允许请求，false表示被限流
+     */
+    public Mono<Boolean> checkAllowedByIp(String ipAddress) {
+        if (!isAllowedByIp(ipAddress)) {
+            return Mono.just(false);
+        }
+        return checkClusterQuota("ip:" + ipAddress);
+    }
 
-            // 检查秒级限流（基于请求间隔）- 在更新时间戳之前检查
-            long timeSinceLastRequest = currentTime - rateLimitInfo.getLastRequestTime();
-            if (timeSinceLastRequest < 2000) { // 2秒内不能连续请求
-                log.warn("用户请求间隔过短，触发秒级限流, key: {}, interval: {}ms",
-                        key, timeSinceLastRequest);
-                return false;
+    /**
+     * 本地限流通过后，在集群模式下依次消耗集群范围内分钟级及以上层级的配额
+     * 请求可能落在任意实例上，仅靠本地计数时多实例会放大实际限额
+     */
+    private Mono<Boolean> checkClusterQuota(String key) {
+        if (!distributedPermitService.isEnabled()) {
+            return Mono.just(true);
+        }
+        Mono<Boolean> result = Mono.just(true);
+        for (int i = 0; i < limiter.getTierCount(); i++) {
+            long period = limiter.getTierPeriodMillis(i);
+            if (period < CLUSTER_QUOTA_MIN_PERIOD_MILLIS) {
+                continue;
+            }
+            String quotaKey = "rate:" + key + ":" + limiter.getTierName(i);
+            int limit = limiter.getTierLimit(i);
+            result = result.flatMap(allowed -> allowed
+                    ? distributedPermitService.tryConsumeQuota(quotaKey, limit, period)
+                    : Mono.just(false));
+        }
+        return result.doOnNext(allowed -> {
+            if (!allowed) {
+                log.warn("触发集群级限流, key: {}", key);
             }
+        });
+    }
 
-            // 允许请求，更新计数和时间
-            rateLimitInfo.incrementCount();
-            log.debug("允许请求, key: {}, count: {}, 上次请求间隔: {}ms", 
-                    key, rateLimitInfo.getRequestCount(), timeSinceLastRequest);
+    /**
+     * 通用限流检查方法，只有被拒绝时才拼接日志参数
+     * @param cell 限流状态
+     * @return true表示允许请求，false表示被限流
+     */
+    private boolean isAllowed(AtomicLong cell, String keyType, Object key) {
+        if (cell == null) {
+            log.warn("限流记录数已达上限，拒绝新键请求, key: {}{}", keyType, key);
+            return false;
+        }
+        int rejectedTier = limiter.tryAcquire(cell);
+        if (rejectedTier < 0) {
             return true;
         }
+        log.warn("请求过于频繁，触发{}级限流, key: {}{}, 限制: {}次/{}ms", limiter.getTierName(rejectedTier),
+                keyType, key, limiter.getTierLimit(rejectedTier), limiter.getTierPeriodMillis(rejectedTier));
+        return false;
     }
 
     /**
@@ -96,7 +157,7 @@ public class RateLimitService {
      * @return 剩余请求次数
      */
     public int getRemainingRequests(Integer userId) {
-        return getRemainingRequests("user:" + userId);
+        return getRemainingRequests(userCells.get(userId));
     }
 
     /**
@@ -105,54 +166,30 @@ public class RateLimitService {
      * @return 剩余请求次数
      */
     public int getRemainingRequestsByIp(String ipAddress) {
-        return getRemainingRequests("ip:" + ipAddress);
+        return getRemainingRequests(ipCells.get(ipAddress));
     }
 
     /**
-     * 通用获取剩余请求次数方法
-     * @param key 限流键
+     * 通用获取剩余请求次数方法，取各层级剩余次数的最小值
+     * @param cell 限流状态
      * @return 剩余请求次数
      */
-    private int getRemainingRequests(String key) {
-        RateLimitConfig.RateLimitInfo rateLimitInfo = rateLimitMap.get(key);
-        if (rateLimitInfo == null) {
-            return MAX_REQUESTS_PER_MINUTE;
-        }
-
-        long currentTime = System.currentTimeMillis();
-
-        synchronized (rateLimitInfo) {
-            // 如果时间窗口已过期，返回最大请求数
-            if (currentTime - rateLimitInfo.getWindowStartTime() >= MINUTE_IN_MILLIS) {
-                return MAX_REQUESTS_PER_MINUTE;
-            }
-
-            return Math.max(0, MAX_REQUESTS_PER_MINUTE - rateLimitInfo.getRequestCount());
+    private int getRemainingRequests(AtomicLong cell) {
+        int remaining = Integer.MAX_VALUE;
+        for (int i = 0; i < limiter.getTierCount(); i++) {
+            remaining = Math.min(remaining, cell == null ? limiter.getTierLimit(i) : limiter.remaining(cell, i));
         }
+        return remaining;
     }
 
     /**
-     * 清理过期的限流记录
+     * 推进过期时间轮，移除空闲的限流记录
      */
+    @Scheduled(fixedDelayString = "${rate-limit.cleanup-interval-ms:60000}")
     public void cleanupExpiredRecords() {
-        long currentTime = System.currentTimeMillis();
-        int cleanedCount = 0;
-
-        for (String key : rateLimitMap.keySet()) {
-            RateLimitConfig.RateLimitInfo rateLimitInfo = rateLimitMap.get(key);
-            if (rateLimitInfo != null) {
-                synchronized (rateLimitInfo) {
-                    // 清理1小时前的记录
-                    if (currentTime - rateLimitInfo.getLastRequestTime() > HOUR_IN_MILLIS) {
-                        rateLimitMap.remove(key);
-                        cleanedCount++;
-                    }
-                }
-            }
-        }
-
+        int cleanedCount = userCells.cleanUp() + ipCells.cleanUp();
         if (cleanedCount > 0) {
-            log.info("清理过期限流记录, 清理数量: {}", cleanedCount);
+            log.debug("清理过期限流记录, 清理数量: {}", cleanedCount);
         }
     }
 
@@ -161,7 +198,23 @@ public class RateLimitService {
      * @return 统计信息
      */
     public String getRateLimitStats() {
-        return String.format("当前限流记录数: %d, 每分钟限制: %d次, 每小时限制: %d次",
-                rateLimitMap.size(), MAX_REQUESTS_PER_MINUTE, MAX_REQUESTS_PER_HOUR);
+        return String.format("当前限流记录数: %d, 上限: %d/类, 已过期: %d, 已淘汰: %d, 已拒绝: %d, 限流层级: %s",
+                userCells.size() + ipCells.size(), rateLimitConfig.getMaxEntries(),
+                userCells.getExpiredCount() + ipCells.getExpiredCount(),
+                userCells.getEvictedCount() + ipCells.getEvictedCount(),
+                userCells.getRejectedCount() + ipCells.getRejectedCount(), describeTiers());
+    }
+
+    private String describeTiers() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < limiter.getTierCount(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(limiter.getTierName(i)).append(' ')
+                    .append(limiter.getTierLimit(i)).append("次/")
+                    .append(limiter.getTierPeriodMillis(i)).append("ms");
+        }
+        return sb.toString();
     }
 }
@@ -0,0 +1,178 @@
+package com.hzau.service;
+
+import com.hzau.common.exception.ServiceBusyException;
+import com.hzau.config.ObjectStorageConfig;
+import com.hzau.config.QiniuKodoConfig;
+import com.hzau.service.storage.ObjectStorageClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: ReactiveUploadService
+ * @author: zhuyuchen
+ * @description: 非阻塞的对象存储上传。阻塞的SDK调用在专用的有界线程上执行，并发与排队数有上限，
+ *               排队已满时以 ServiceBusyException 立即失败；网络错误与服务端错误按指数退避重试，
+ *               记录各上传方式的耗时、吞吐量与重试次数
+ * @date: 2026/10/20 上午4:00
+ */
+@Slf4j
+@Service
+public class ReactiveUploadService {
+
+    private static final String MODE_FORM = "form";
+    private static final String MODE_CHUNKED = "chunked";
+
+    private final ObjectStorageClient client;
+    private final ObjectStorageConfig config;
+    private final QiniuKodoConfig kodoConfig;
+    private final MeterRegistry meterRegistry;
+    private final Scheduler uploadScheduler;
+    private final Counter retries;
+    private final DistributionSummary throughput;
+    private final long chunkedThreshold;
+
+    public ReactiveUploadService(ObjectStorageClient client, ObjectStorageConfig config, QiniuKodoConfig kodoConfig,
+                                 MeterRegistry meterRegistry) {
+        this.client = client;
+        this.config = config;
+        this.kodoConfig = kodoConfig;
+        this.meterRegistry = meterRegistry;
+        this.chunkedThreshold = (long) config.getChunkedThresholdMb() * 1024 * 1024;
+        this.uploadScheduler = Schedulers.newBoundedElastic(config.getMaxConcurrentUploads(),
+                config.getMaxQueuedUploads(), "oss-upload");
+        this.retries = Counter.builder("roleplay.oss.upload.retries")
+                .description("对象存储上传的重试次数")
+                .tag("provider", client.getName())
+                .register(meterRegistry);
+        this.throughput = DistributionSummary.builder("roleplay.oss.upload.throughput")
+                .description("单次上传的吞吐量（字节/秒），只统计成功的上传")
+                .baseUnit("bytes")
+                .tag("provider", client.getName())
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadScheduler.dispose();
+    }
+
+    /**
+     * 上传内存中的数据
+     * @return 公网访问URL
+     */
+    public Mono<String> uploadBytes(byte[] data, String originalFileName, String mimeType) {
+        if (data == null || data.length == 0) {
+            return Mono.error(new IllegalArgumentException("文件数据为空"));
+        }
+        String key = generateKey(originalFileName);
+        String mode = data.length >= chunkedThreshold ? MODE_CHUNKED : MODE_FORM;
+        return execute(mode, key, originalFileName, () -> {
+            client.putBytes(key, data, mimeType);
+            return (long) data.length;
+        });
+    }
+
+    /**
+     * 上传本地文件，超过阈值时分片并行上传，重试时跳过已完成的分片
+     * @return 公网访问URL
+     */
+    public Mono<String> uploadFile(Path file, String originalFileName, String mimeType) {
+        String key = generateKey(originalFileName != null ? originalFileName : file.getFileName().toString());
+        return Mono.fromCallable(() -> Files.size(file))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(size -> execute(size >= chunkedThreshold ? MODE_CHUNKED : MODE_FORM, key, originalFileName,
+                        () -> {
+                            client.putFile(key, file, mimeType);
+                            return size;
+                        }));
+    }
+
+    public boolean isAvailable() {
+        return client.isAvailable();
+    }
+
+    /**
+     * 在上传线程上执行一次上传，按需重试，并记录耗时与吞吐量
+     * @param upload 执行上传，返回上传的字节数
+     */
+    private Mono<String> execute(String mode, String key, String originalFileName, Callable<Long> upload) {
+        if (!client.isAvailable()) {
+            return Mono.error(new IllegalStateException("对象存储配置无效，请检查配置信息"));
+        }
+        Mono<Long> attempt = Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    return Mono.fromCallable(upload)
+                            .doOnSuccess(bytes -> {
+                                long nanos = System.nanoTime() - start;
+                                timer(mode, "success").record(nanos, TimeUnit.NANOSECONDS);
+                                if (nanos > 0) {
+                                    throughput.record(bytes * 1e9 / nanos);
+                                }
+                            })
+                            .doOnError(error -> timer(mode, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+                })
+                .subscribeOn(uploadScheduler)
+                .onErrorMap(RejectedExecutionException.class, e -> new ServiceBusyException("oss-upload", false));
+        if (config.getMaxRetries() > 0) {
+            attempt = attempt.retryWhen(Retry.backoff(config.getMaxRetries(), Duration.ofMillis(config.getRetryBackoffMs()))
+                    .filter(client::isRetryable)
+                    .doBeforeRetry(signal -> {
+                        retries.increment();
+                        log.warn("上传失败，第{}次重试: {} -> {}, 原因: {}", signal.totalRetries() + 1,
+                                originalFileName, key, signal.failure().getMessage());
+                    })
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        }
+        return attempt
+                .map(bytes -> {
+                    String url = client.getPublicUrl(key);
+                    log.info("上传成功: {} -> {} ({} bytes, {})", originalFileName, url, bytes, mode);
+                    return url;
+                })
+                .doOnError(error -> log.error("上传失败: {} -> {}", originalFileName, key, error));
+    }
+
+    private Timer timer(String mode, String outcome) {
+        // 标签取值均为常量，重复注册返回同一个计时器
+        return Timer.builder("roleplay.oss.upload")
+                .description("对象存储单次上传尝试的耗时")
+                .tag("provider", client.getName())
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 生成唯一的对象名称：前缀 + 时间戳 + UUID + 扩展名
+     */
+    private String generateKey(String originalFileName) {
+        String extension = "";
+        if (originalFileName != null && originalFileName.contains(".")) {
+            extension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        }
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        String uuid = UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+        return kodoConfig.getUploadPrefix() + timestamp + "_" + uuid + extension;
+    }
+}
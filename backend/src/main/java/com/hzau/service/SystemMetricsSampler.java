@@ -0,0 +1,329 @@
+package com.hzau.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import jakarta.annotation.PostConstruct;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import reactor.netty.resources.LoopResources;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: SystemMetricsSampler
+ * @author: zhuyuchen
+ * @description: 进程资源指标采样。每5秒在调度线程上采样一次CPU、内存、GC、分配速率、直接内存、
+ *               Netty 缓冲区与事件循环积压、业务线程池状态，结果作为不可变快照缓存，读取方不再访问 MXBean；
+ *               GC次数/耗时与分配速率按相邻两次采样的差值计算
+ * @date: 2026/10/20 上午2:50
+ */
+@Slf4j
+@Service
+public class SystemMetricsSampler {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 5000L;
+    private static final long MB = 1024 * 1024;
+
+    private final MeterRegistry meterRegistry;
+    private final ApplicationContext applicationContext;
+    private final ObjectProvider<ReactorResourceFactory> reactorResourceFactory;
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final java.lang.management.OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<BufferPoolMXBean> bufferPools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+
+    // 业务线程池，应用启动完成后解析一次
+    private volatile Map<String, ThreadPoolTaskExecutor> executors = Map.of();
+
+    // 上一次采样的累计值，只在采样线程上读写
+    private final Map<String, long[]> previousGc = new HashMap<>();
+    private Map<Long, Long> previousThreadAllocated = Map.of();
+    private long previousSampleNanos;
+
+    private volatile SystemMetrics latest;
+
+    public SystemMetricsSampler(MeterRegistry meterRegistry, ApplicationContext applicationContext,
+                                ObjectProvider<ReactorResourceFactory> reactorResourceFactory) {
+        this.meterRegistry = meterRegistry;
+        this.applicationContext = applicationContext;
+        this.reactorResourceFactory = reactorResourceFactory;
+    }
+
+    @PostConstruct
+    public void init() {
+        sample();
+        // CPU、GC、直接内存与线程池已由 Spring Boot 自动绑定为 process/system/jvm/executor 指标，这里只补充其余部分
+        Gauge.builder("roleplay.jvm.allocation.rate", this, s -> s.latest.getAllocationRateMBps() * MB)
+                .description("堆内存分配速率")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.netty.allocator.used", this, s -> s.latest.getNettyDirectMemoryMB() * MB)
+                .description("Netty 池化分配器占用的内存")
+                .baseUnit("bytes")
+                .tag("area", "direct")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.netty.allocator.used", this, s -> s.latest.getNettyHeapMemoryMB() * MB)
+                .description("Netty 池化分配器占用的内存")
+                .baseUnit("bytes")
+                .tag("area", "heap")
+                .register(meterRegistry);
+        Gauge.builder("roleplay.netty.eventloop.pending", this, s -> s.latest.getEventLoopPendingTasks())
+                .description("Netty 事件循环中等待执行的任务总数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 应用启动完成后解析业务线程池，避免在初始化阶段提前创建其他Bean
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resolveExecutors() {
+        executors = new TreeMap<>(applicationContext.getBeansOfType(ThreadPoolTaskExecutor.class));
+    }
+
+    /**
+     * 最近一次采样的结果
+     */
+    public SystemMetrics getLatest() {
+        return latest;
+    }
+
+    @Scheduled(fixedRate = SAMPLE_INTERVAL_MILLIS)
+    public void sample() {
+        try {
+            latest = collect();
+        } catch (Exception e) {
+            log.warn("采样系统资源指标失败", e);
+        }
+    }
+
+    private SystemMetrics collect() {
+        long now = System.nanoTime();
+        double elapsedSeconds = previousSampleNanos > 0 ? (now - previousSampleNanos) / 1e9 : 0;
+        previousSampleNanos = now;
+
+        SystemMetrics metrics = new SystemMetrics();
+        metrics.setTimestamp(System.currentTimeMillis());
+
+        // CPU
+        metrics.setCpuCores(osBean.getAvailableProcessors());
+        metrics.setSystemLoadAverage(osBean.getSystemLoadAverage());
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean sunOsBean) {
+            metrics.setProcessCpuPercent(toPercent(sunOsBean.getProcessCpuLoad()));
+            metrics.setSystemCpuPercent(toPercent(sunOsBean.getCpuLoad()));
+        }
+
+        // 堆内存与线程
+        MemoryUsage heap = memoryBean.getHeapMemoryUsage();
+        long maxHeap = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        metrics.setUsedMemoryMB(heap.getUsed() / MB);
+        metrics.setMaxMemoryMB(maxHeap / MB);
+        metrics.setMemoryUsagePercent(maxHeap > 0 ? (double) heap.getUsed() / maxHeap * 100 : 0.0);
+        metrics.setNonHeapUsedMB(memoryBean.getNonHeapMemoryUsage().getUsed() / MB);
+        metrics.setThreadCount(threadBean.getThreadCount());
+        metrics.setDaemonThreadCount(threadBean.getDaemonThreadCount());
+        metrics.setPeakThreadCount(threadBean.getPeakThreadCount());
+
+        // 分配速率：按线程累加两次采样间的分配字节数，期间结束的线程不计入
+        if (threadBean instanceof com.sun.management.ThreadMXBean sunThreadBean
+                && sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+            long[] threadIds = sunThreadBean.getAllThreadIds();
+            long[] allocated = sunThreadBean.getThreadAllocatedBytes(threadIds);
+            Map<Long, Long> current = new HashMap<>(threadIds.length * 2);
+            long delta = 0;
+            for (int i = 0; i < threadIds.length; i++) {
+                if (allocated[i] < 0) {
+                    continue;
+                }
+                current.put(threadIds[i], allocated[i]);
+                delta += allocated[i] - previousThreadAllocated.getOrDefault(threadIds[i], 0L);
+            }
+            if (!previousThreadAllocated.isEmpty() && elapsedSeconds > 0) {
+                metrics.setAllocationRateMBps(delta / elapsedSeconds / MB);
+            }
+            previousThreadAllocated = current;
+        }
+
+        // GC：各收集器的累计值与本次采样区间内的增量
+        Map<String, GcStats> gc = new LinkedHashMap<>();
+        long recentGcMillis = 0;
+        for (GarbageCollectorMXBean gcBean : gcBeans) {
+            GcStats stats = new GcStats();
+            stats.setCount(gcBean.getCollectionCount());
+            stats.setTimeMs(gcBean.getCollectionTime());
+            long[] previous = previousGc.get(gcBean.getName());
+            if (previous != null) {
+                stats.setRecentCount(stats.getCount() - previous[0]);
+                stats.setRecentTimeMs(stats.getTimeMs() - previous[1]);
+                recentGcMillis += stats.getRecentTimeMs();
+            }
+            previousGc.put(gcBean.getName(), new long[]{stats.getCount(), stats.getTimeMs()});
+            gc.put(gcBean.getName(), stats);
+        }
+        metrics.setGc(gc);
+        if (elapsedSeconds > 0) {
+            metrics.setGcTimePercent(recentGcMillis / (elapsedSeconds * 1000) * 100);
+        }
+
+        // JDK 直接内存与内存映射文件
+        for (BufferPoolMXBean pool : bufferPools) {
+            if ("direct".equals(pool.getName())) {
+                metrics.setDirectMemoryUsedMB(pool.getMemoryUsed() / MB);
+                metrics.setDirectBufferCount(pool.getCount());
+            } else if ("mapped".equals(pool.getName())) {
+                metrics.setMappedMemoryUsedMB(pool.getMemoryUsed() / MB);
+            }
+        }
+
+        // Netty 池化分配器
+        if (ByteBufAllocator.DEFAULT instanceof ByteBufAllocatorMetricProvider provider) {
+            ByteBufAllocatorMetric allocatorMetric = provider.metric();
+            metrics.setNettyDirectMemoryMB(allocatorMetric.usedDirectMemory() / MB);
+            metrics.setNettyHeapMemoryMB(allocatorMetric.usedHeapMemory() / MB);
+        }
+
+        collectEventLoops(metrics);
+        collectExecutors(metrics);
+        return metrics;
+    }
+
+    /**
+     * 统计服务端事件循环的积压任务，与 HTTP 服务共用同一组事件循环
+     */
+    private void collectEventLoops(SystemMetrics metrics) {
+        ReactorResourceFactory factory = reactorResourceFactory.getIfAvailable();
+        if (factory == null || !factory.isRunning()) {
+            return;
+        }
+        EventLoopGroup group = factory.getLoopResources().onServer(LoopResources.DEFAULT_NATIVE);
+        int loops = 0;
+        long pending = 0;
+        int maxPending = 0;
+        for (EventExecutor executor : group) {
+            if (executor instanceof SingleThreadEventExecutor loop) {
+                int tasks = loop.pendingTasks();
+                loops++;
+                pending += tasks;
+                maxPending = Math.max(maxPending, tasks);
+            }
+        }
+        metrics.setEventLoopCount(loops);
+        metrics.setEventLoopPendingTasks(pending);
+        metrics.setMaxEventLoopPendingTasks(maxPending);
+    }
+
+    private void collectExecutors(SystemMetrics metrics) {
+        Map<String, ExecutorStats> stats = new LinkedHashMap<>();
+        executors.forEach((name, executor) -> {
+            ThreadPoolExecutor pool;
+            try {
+                pool = executor.getThreadPoolExecutor();
+            } catch (IllegalStateException e) {
+                // 线程池尚未初始化或已关闭
+                return;
+            }
+            ExecutorStats executorStats = new ExecutorStats();
+            executorStats.setPoolSize(pool.getPoolSize());
+            executorStats.setMaxPoolSize(pool.getMaximumPoolSize());
+            executorStats.setActiveCount(pool.getActiveCount());
+            executorStats.setQueuedCount(pool.getQueue().size());
+            executorStats.setQueueRemainingCapacity(pool.getQueue().remainingCapacity());
+            executorStats.setCompletedTasks(pool.getCompletedTaskCount());
+            stats.put(name, executorStats);
+        });
+        metrics.setExecutors(stats);
+    }
+
+    /**
+     * MXBean 返回 0~1 的比例，不可用时为负数
+     */
+    private static double toPercent(double load) {
+        return load >= 0 ? load * 100 : -1;
+    }
+
+    /**
+     * 系统资源指标快照
+     */
+    @Data
+    public static class SystemMetrics {
+        private long timestamp;
+        private int cpuCores;
+        // 本进程与整机的CPU使用率（百分比），不可用时为-1
+        private double processCpuPercent;
+        private double systemCpuPercent;
+        private double systemLoadAverage;
+        private double memoryUsagePercent;
+        private long usedMemoryMB;
+        private long maxMemoryMB;
+        private long nonHeapUsedMB;
+        private int threadCount;
+        private int daemonThreadCount;
+        private int peakThreadCount;
+        // 最近一个采样区间的堆分配速率（MB/秒）
+        private double allocationRateMBps;
+        // 最近一个采样区间内GC耗时占比（百分比），并发收集器的耗时包含并发阶段
+        private double gcTimePercent;
+        private Map<String, GcStats> gc;
+        private long directMemoryUsedMB;
+        private long directBufferCount;
+        private long mappedMemoryUsedMB;
+        private long nettyDirectMemoryMB;
+        private long nettyHeapMemoryMB;
+        private int eventLoopCount;
+        private long eventLoopPendingTasks;
+        private int maxEventLoopPendingTasks;
+        private Map<String, ExecutorStats> executors;
+    }
+
+    /**
+     * 单个垃圾收集器的统计
+     */
+    @Data
+    public static class GcStats {
+        private long count;
+        private long timeMs;
+        // 最近一个采样区间内的次数与耗时
+        private long recentCount;
+        private long recentTimeMs;
+    }
+
+    /**
+     * 单个线程池的状态
+     */
+    @Data
+    public static class ExecutorStats {
+        private int poolSize;
+        private int maxPoolSize;
+        private int activeCount;
+        private int queuedCount;
+        private int queueRemainingCapacity;
+        private long completedTasks;
+    }
+}
@@ -0,0 +1,469 @@
+package com.hzau.service;
+
+import com.hzau.common.concurrent.RequestPriority;
+import com.hzau.common.exception.QuotaExceededException;
+import com.hzau.config.TokenQuotaConfig;
+import com.hzau.dto.LlmChatReq;
+import com.hzau.dto.LlmChatRes;
+import com.hzau.dto.MessageContent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: TokenQuotaService
+ * @author: zhuyuchen
+ * @description: 大模型Token额度服务。调用上游前按提示词长度预估用量并预留额度，超出每分钟/每天预算时直接拒绝；
+ *               响应（包括流式响应的最后一个块）返回实际用量后多退少补。
+ *               计数使用分段累加的 LongAdder，高并发下不争用同一缓存行，并定期将增量刷写到Redis按天汇总，
+ *               同时取回其他实例的当日用量参与每日预算判断
+ * @date: 2026/10/19 下午9:15
+ */
+@Slf4j
+@Service
+public class TokenQuotaService {
+
+    private static final String CHARACTER_KEY = TokenQuotaService.class.getName() + ".character";
+    private static final long MINUTE_IN_MILLIS = 60 * 1000L;
+    private static final Duration DAY_KEY_TTL = Duration.ofDays(2);
+
+    /**
+     * 每条消息的格式开销（角色标记、分隔符等）
+     */
+    private static final int TOKENS_PER_MESSAGE = 4;
+
+    private final TokenQuotaConfig config;
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    /**
+     * 用量计数，key为额度主体（user:ID 或 character:ID）
+     */
+    private final ConcurrentMap<String, UsageCounter> counters = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final LongAdder reservations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder settledByUsage = new LongAdder();
+    private final LongAdder settledByEstimate = new LongAdder();
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final LongAdder estimatedPromptTokens = new LongAdder();
+    private final AtomicBoolean redisHealthy = new AtomicBoolean(true);
+
+    public TokenQuotaService(TokenQuotaConfig config, ReactiveStringRedisTemplate redisTemplate) {
+        this.config = config;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 写入角色标识的 Context 变换，与 {@link RequestPriority#with} 携带的用户标识一起用于额度归属
+     * @param characterId 角色ID
+     */
+    public static Function<Context, Context> withCharacter(Long characterId) {
+        return context -> characterId != null ? context.put(CHARACTER_KEY, characterId) : context;
+    }
+
+    /**
+     * 在Token额度保护下调用上游，额度不足时以 QuotaExceededException 失败
+     * @param request 上游请求，用于预估提示词用量
+     * @param call 上游调用，拿到实际用量后调用 {@link Reservation#settle}
+     */
+    public <T> Mono<T> withQuota(LlmChatReq request, Function<Reservation, Mono<T>> call) {
+        return Mono.usingWhen(reserve(request), call, Reservation::close);
+    }
+
+    /**
+     * 流式调用版本，流完成、出错或客户端断开时结算
+     */
+    public <T> Flux<T> withQuotaMany(LlmChatReq request, Function<Reservation, Flux<T>> call) {
+        return Flux.usingWhen(reserve(request), call, Reservation::close);
+    }
+
+    /**
+     * 预估提示词Token数：中日韩字符按每字1个Token，其余字符按每4个字符1个Token
+     */
+    public int estimatePromptTokens(List<MessageContent> messages) {
+        if (messages == null) {
+            return 0;
+        }
+        int tokens = 0;
+        for (MessageContent message : messages) {
+            tokens += TOKENS_PER_MESSAGE;
+            String content = message.getContent();
+            if (content == null) {
+                continue;
+            }
+            int cjk = 0;
+            int other = 0;
+            for (int i = 0; i < content.length(); i++) {
+                if (content.charAt(i) >= 0x2E80) {
+                    cjk++;
+                } else {
+                    other++;
+                }
+            }
+            tokens += cjk + (other + 3) / 4;
+        }
+        return tokens;
+    }
+
+    /**
+     * 按请求预估并预留额度
+     */
+    private Mono<Reservation> reserve(LlmChatReq request) {
+        return Mono.deferContextual(context -> {
+            String userId = RequestPriority.userFrom(context);
+            Long characterId = characterFrom(context);
+
+            int promptEstimate = estimatePromptTokens(request.getMessages());
+            int maxTokens = request.getMaxTokens() != null ? request.getMaxTokens() : config.getCompletionReserveTokens();
+            long reserved = promptEstimate + Math.min(maxTokens, config.getCompletionReserveTokens());
+
+            long minute = System.currentTimeMillis() / MINUTE_IN_MILLIS;
+            long day = LocalDate.now().toEpochDay();
+            UsageCounter user = userId != null ? counter("user:" + userId, minute, day) : null;
+            UsageCounter character = characterId != null ? counter("character:" + characterId, minute, day) : null;
+
+            if (config.isEnabled()) {
+                // 检查与累加之间不加锁，同一主体的并发请求最多超出其并发数个预留量
+                String window = exceededWindow(user, reserved, config.getUserPerMinute(), config.getUserPerDay());
+                if (window != null) {
+                    return reject(user.subject, window);
+                }
+                window = exceededWindow(character, reserved, config.getCharacterPerMinute(), config.getCharacterPerDay());
+                if (window != null) {
+                    return reject(character.subject, window);
+                }
+            }
+
+            Reservation reservation = new Reservation(user, character, promptEstimate, reserved, minute, day);
+            reservation.adjust(reserved);
+            reservations.increment();
+            return Mono.just(reservation);
+        });
+    }
+
+    private Mono<Reservation> reject(String subject, String window) {
+        rejections.increment();
+        log.warn("Token额度不足, subject: {}, window: {}", subject, window);
+        return Mono.error(new QuotaExceededException(subject, window));
+    }
+
+    private static String exceededWindow(UsageCounter counter, long reserved, long perMinute, long perDay) {
+        if (counter == null) {
+            return null;
+        }
+        if (perMinute > 0 && counter.minuteTotal() + reserved > perMinute) {
+            return "minute";
+        }
+        if (perDay > 0 && counter.dayTotal() + reserved > perDay) {
+            return "day";
+        }
+        return null;
+    }
+
+    private static Long characterFrom(ContextView context) {
+        return context.getOrDefault(CHARACTER_KEY, null);
+    }
+
+    private UsageCounter counter(String subject, long minute, long day) {
+        UsageCounter counter = counters.computeIfAbsent(subject, UsageCounter::new);
+        counter.roll(minute, day);
+        return counter;
+    }
+
+    /**
+     * 定期将各主体的用量增量按所属日期刷写到Redis当日汇总键，并取回集群当日总量
+     * 超过一天没有用量且没有待刷写增量的计数在此清理，跨天结算的预留仍能计入前一天
+     */
+    @Scheduled(fixedDelayString = "${token-quota.flush-interval-ms:5000}")
+    public void flush() {
+        long today = LocalDate.now().toEpochDay();
+        for (Map.Entry<String, UsageCounter> entry : counters.entrySet()) {
+            UsageCounter counter = entry.getValue();
+            boolean flushedToday = false;
+            for (Map.Entry<Long, LongAdder> pending : counter.unflushed.entrySet()) {
+                long pendingDay = pending.getKey();
+                long delta = pending.getValue().sumThenReset();
+                if (delta == 0) {
+                    if (pendingDay < today - 1) {
+                        counter.unflushed.remove(pendingDay, pending.getValue());
+                    }
+                    continue;
+                }
+                flushDay(counter, pendingDay, delta);
+                flushedToday |= pendingDay == today;
+            }
+            if (flushedToday) {
+                continue;
+            }
+
+            DayWindow dayWindow = counter.dayWindow;
+            if (dayWindow.id < today - 1 && counter.unflushed.isEmpty()) {
+                counters.remove(entry.getKey(), counter);
+            } else if (dayWindow.id == today && !dayWindow.synced) {
+                // 当天尚无增量时也取回一次集群总量
+                flushDay(counter, today, 0);
+            }
+        }
+    }
+
+    private void flushDay(UsageCounter counter, long day, long delta) {
+        String key = config.getKeyPrefix() + counter.subject + ":" + LocalDate.ofEpochDay(day);
+        redisTemplate.opsForValue().increment(key, delta)
+                .flatMap(total -> redisTemplate.expire(key, DAY_KEY_TTL).thenReturn(total))
+                .timeout(Duration.ofSeconds(2))
+                .subscribe(total -> {
+                    markRedisHealthy();
+                    counter.onFlushed(day, delta, total);
+                }, error -> {
+                    // 刷写失败时把增量放回，下次重试
+                    counter.pending(day).add(delta);
+                    markRedisFailure(error);
+                });
+    }
+
+    private void markRedisHealthy() {
+        if (redisHealthy.compareAndSet(false, true)) {
+            log.info("Token用量刷写Redis已恢复");
+        }
+    }
+
+    private void markRedisFailure(Throwable error) {
+        if (redisHealthy.compareAndSet(true, false)) {
+            log.warn("Token用量刷写Redis失败，暂时仅按本地用量控制: {}", error.getMessage());
+        }
+    }
+
+    /**
+     * 获取Token额度统计信息
+     */
+    public TokenQuotaStats getTokenQuotaStats() {
+        TokenQuotaStats stats = new TokenQuotaStats();
+        stats.setEnabled(config.isEnabled());
+        stats.setTrackedSubjects(counters.size());
+        stats.setReservations(reservations.sum());
+        stats.setRejections(rejections.sum());
+        stats.setSettledByUsage(settledByUsage.sum());
+        stats.setSettledByEstimate(settledByEstimate.sum());
+        stats.setPromptTokens(promptTokens.sum());
+        stats.setCompletionTokens(completionTokens.sum());
+        stats.setEstimatedPromptTokens(estimatedPromptTokens.sum());
+        stats.setRedisHealthy(redisHealthy.get());
+        return stats;
+    }
+
+    /**
+     * 一次上游调用预留的额度
+     */
+    public final class Reservation {
+
+        private final UsageCounter user;
+        private final UsageCounter character;
+        private final int promptEstimate;
+        private final long reserved;
+        // 预留时所在的分钟与日期窗口，结算只调整这两个窗口
+        private final long minute;
+        private final long day;
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+
+        private Reservation(UsageCounter user, UsageCounter character, int promptEstimate, long reserved,
+                            long minute, long day) {
+            this.user = user;
+            this.character = character;
+            this.promptEstimate = promptEstimate;
+            this.reserved = reserved;
+            this.minute = minute;
+            this.day = day;
+        }
+
+        /**
+         * 按上游返回的实际用量结算，用量为空时忽略，等待调用结束时按预估结算
+         * @param usage 上游返回的用量
+         */
+        public void settle(LlmChatRes.Usage usage) {
+            if (usage == null || usage.getPromptTokens() == null || !settled.compareAndSet(false, true)) {
+                return;
+            }
+            long prompt = usage.getPromptTokens();
+            long completion = usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0;
+            adjust(prompt + completion - reserved);
+            settledByUsage.increment();
+            promptTokens.add(prompt);
+            completionTokens.add(completion);
+            estimatedPromptTokens.add(promptEstimate);
+        }
+
+        /**
+         * 调用结束仍未拿到实际用量（出错、取消或上游未返回用量）时，退回为回复预留的部分，按预估的提示词用量计费
+         */
+        private Mono<Void> close() {
+            return Mono.fromRunnable(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    adjust(promptEstimate - reserved);
+                    settledByEstimate.increment();
+                }
+            });
+        }
+
+        private void adjust(long tokens) {
+            if (tokens == 0) {
+                return;
+            }
+            if (user != null) {
+                user.add(tokens, minute, day);
+            }
+            if (character != null) {
+                character.add(tokens, minute, day);
+            }
+        }
+    }
+
+    /**
+     * 单个主体的用量计数。分钟、日期窗口切换时整体替换，已过期窗口的结算增量不计入当前窗口，
+     * 待刷写的增量按所属日期分别累计
+     */
+    private static class UsageCounter {
+        final String subject;
+        volatile MinuteWindow minuteWindow = new MinuteWindow(-1);
+        volatile DayWindow dayWindow = new DayWindow(-1);
+        final ConcurrentMap<Long, LongAdder> unflushed = new ConcurrentHashMap<>();
+
+        UsageCounter(String subject) {
+            this.subject = subject;
+        }
+
+        void roll(long minute, long day) {
+            if (minuteWindow.id == minute && dayWindow.id == day) {
+                return;
+            }
+            synchronized (this) {
+                if (minuteWindow.id != minute) {
+                    minuteWindow = new MinuteWindow(minute);
+                }
+                if (dayWindow.id != day) {
+                    dayWindow = new DayWindow(day);
+                }
+            }
+        }
+
+        /**
+         * 计入用量，窗口已切换时只计入待刷写增量
+         * @param minute 预留时所在的分钟
+         * @param day 预留时所在的日期
+         */
+        void add(long tokens, long minute, long day) {
+            MinuteWindow currentMinute = minuteWindow;
+            if (currentMinute.id == minute) {
+                currentMinute.tokens.add(tokens);
+            }
+            DayWindow currentDay = dayWindow;
+            if (currentDay.id == day) {
+                currentDay.tokens.add(tokens);
+            }
+            pending(day).add(tokens);
+        }
+
+        LongAdder pending(long day) {
+            return unflushed.computeIfAbsent(day, k -> new LongAdder());
+        }
+
+        long minuteTotal() {
+            return minuteWindow.tokens.sum();
+        }
+
+        long dayTotal() {
+            DayWindow currentDay = dayWindow;
+            return currentDay.tokens.sum() + currentDay.remoteTokens;
+        }
+
+        synchronized void onFlushed(long flushedDay, long delta, long clusterTotal) {
+            DayWindow currentDay = dayWindow;
+            if (flushedDay != currentDay.id) {
+                return;
+            }
+            currentDay.flushedTokens += delta;
+            currentDay.remoteTokens = Math.max(0, clusterTotal - currentDay.flushedTokens);
+            currentDay.synced = true;
+        }
+    }
+
+    private static class MinuteWindow {
+        final long id;
+        final LongAdder tokens = new LongAdder();
+
+        MinuteWindow(long id) {
+            this.id = id;
+        }
+    }
+
+    private static class DayWindow {
+        final long id;
+        final LongAdder tokens = new LongAdder();
+        // 已刷写到Redis的本地当日用量，仅由刷写回调更新
+        volatile long flushedTokens;
+        // 其他实例的当日用量
+        volatile long remoteTokens;
+        // 是否已从Redis取回过当日总量
+        volatile boolean synced;
+
+        DayWindow(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Token额度统计信息
+     */
+    public static class TokenQuotaStats {
+        private boolean enabled;
+        private int trackedSubjects;
+        private long reservations;
+        private long rejections;
+        private long settledByUsage;
+        private long settledByEstimate;
+        private long promptTokens;
+        private long completionTokens;
+        private long estimatedPromptTokens;
+        private boolean redisHealthy;
+
+        // Getters and Setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getTrackedSubjects() { return trackedSubjects; }
+        public void setTrackedSubjects(int trackedSubjects) { this.trackedSubjects = trackedSubjects; }
+        public long getReservations() { return reservations; }
+        public void setReservations(long reservations) { this.reservations = reservations; }
+        public long getRejections() { return rejections; }
+        public void setRejections(long rejections) { this.rejections = rejections; }
+        public long getSettledByUsage() { return settledByUsage; }
+        public void setSettledByUsage(long settledByUsage) { this.settledByUsage = settledByUsage; }
+        public long getSettledByEstimate() { return settledByEstimate; }
+        public void setSettledByEstimate(long settledByEstimate) { this.settledByEstimate = settledByEstimate; }
+        public long getPromptTokens() { return promptTokens; }
+        public void setPromptTokens(long promptTokens) { this.promptTokens = promptTokens; }
+        public long getCompletionTokens() { return completionTokens; }
+        public void setCompletionTokens(long completionTokens) { this.completionTokens = completionTokens; }
+        public long getEstimatedPromptTokens() { return estimatedPromptTokens; }
+        public void setEstimatedPromptTokens(long estimatedPromptTokens) { this.estimatedPromptTokens = estimatedPromptTokens; }
+        public boolean isRedisHealthy() { return redisHealthy; }
+        public void setRedisHealthy(boolean redisHealthy) { this.redisHealthy = redisHealthy; }
+    }
+}
@@ -0,0 +1,161 @@
+package com.hzau.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: VoiceUploadService
+ * @author: zhuyuchen
+ * @description: 语音文件落盘与上传。上传的数据块按客户端的发送速度异步写入本地文件，不在内存中保留完整文件，
+ *               写完后再由上传线程从文件上传到对象存储，慢速客户端不会长时间占用上传线程；
+ *               本地文件存入内容寻址的媒体存储，写入失败时删除暂存文件。
+ *               ASR使用内联音频时不需要OSS URL，只在本地落盘，OSS上传改为后台归档，不阻塞语音对话
+ * @date: 2026/10/20 上午3:40
+ */
+@Slf4j
+@Service
+public class VoiceUploadService {
+
+    private final MediaStoreService mediaStoreService;
+    private final ReactiveUploadService reactiveUploadService;
+    private final QiniuAudioService qiniuAudioService;
+    private final DistributionSummary uploadSize;
+    private final Counter archiveSucceeded;
+    private final Counter archiveFailed;
+
+    public VoiceUploadService(MediaStoreService mediaStoreService, ReactiveUploadService reactiveUploadService,
+                              QiniuAudioService qiniuAudioService, MeterRegistry meterRegistry) {
+        this.mediaStoreService = mediaStoreService;
+        this.reactiveUploadService = reactiveUploadService;
+        this.qiniuAudioService = qiniuAudioService;
+        this.uploadSize = DistributionSummary.builder("roleplay.upload.size")
+                .description("上传的语音文件大小")
+                .baseUnit("bytes")
+                .tag("pipeline", "voice")
+                .register(meterRegistry);
+        this.archiveSucceeded = Counter.builder("roleplay.upload.archive")
+                .description("语音文件后台归档到对象存储的次数")
+                .tag("result", "success")
+                .register(meterRegistry);
+        this.archiveFailed = Counter.builder("roleplay.upload.archive")
+                .description("语音文件后台归档到对象存储的次数")
+                .tag("result", "failure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按ASR模式保存语音文件：URL模式下本地保存后等待OSS上传完成；
+     * 内联模式下只等待本地保存，OSS上传在后台进行，返回结果的OSS URL为空
+     * @return 本地访问URL与OSS URL（内联模式下为null）
+     */
+    public Mono<VoiceUpload> storeForAsr(FilePart audioFile) {
+        return qiniuAudioService.isInlineAsrEnabled() ? storeAndArchive(audioFile) : storeAndUpload(audioFile);
+    }
+
+    /**
+     * 将上传的语音文件保存到本地后上传到对象存储
+     * 先按客户端的发送速度写入本地文件，再由上传线程读取文件上传，上传线程的占用时间与客户端网速无关
+     * @return 本地访问URL（用于数据库存储）与OSS URL（用于语音转文本）
+     */
+    public Mono<VoiceUpload> storeAndUpload(FilePart audioFile) {
+        String originalFilename = audioFile.filename();
+        String mimeType = mimeTypeOf(audioFile);
+        return storeLocally(audioFile)
+                .flatMap(result -> reactiveUploadService.uploadFile(mediaStoreService.pathOf(result.getLocalUrl()),
+                                originalFilename, mimeType)
+                        .map(ossUrl -> {
+                            result.setOssUrl(ossUrl);
+                            log.info("语音文件保存并上传成功: {} -> 本地 {}, OSS {}, 大小 {} bytes",
+                                    originalFilename, result.getLocalUrl(), ossUrl, result.getSize());
+                            return result;
+                        }));
+    }
+
+    /**
+     * 将上传的语音文件保存到本地后返回，OSS上传从本地文件读取并在后台完成；
+     * 文件超过内联大小上限时ASR仍需要OSS URL，此时等待上传完成
+     */
+    private Mono<VoiceUpload> storeAndArchive(FilePart audioFile) {
+        String originalFilename = audioFile.filename();
+        String mimeType = mimeTypeOf(audioFile);
+        return storeLocally(audioFile).flatMap(result -> {
+            Path path = mediaStoreService.pathOf(result.getLocalUrl());
+            Mono<String> archiveMono = reactiveUploadService.uploadFile(path, originalFilename, mimeType)
+                    .doOnSuccess(ossUrl -> {
+                        archiveSucceeded.increment();
+                        log.info("语音文件归档到OSS成功: {} -> {}", result.getLocalUrl(), ossUrl);
+                    })
+                    .doOnError(error -> {
+                        archiveFailed.increment();
+                        log.warn("语音文件归档到OSS失败: {}", result.getLocalUrl(), error);
+                    });
+            if (qiniuAudioService.isInlineAsr(result.getSize())) {
+                // 归档不影响本次对话，失败只记录日志与指标
+                archiveMono.subscribe(ossUrl -> { }, error -> { });
+                log.info("语音文件保存成功，后台归档到OSS: {} -> 本地 {}, 大小 {} bytes",
+                        originalFilename, result.getLocalUrl(), result.getSize());
+                return Mono.just(result);
+            }
+            log.info("语音文件超过内联大小上限，等待OSS上传: {}, 大小 {} bytes", originalFilename, result.getSize());
+            return archiveMono.map(ossUrl -> {
+                result.setOssUrl(ossUrl);
+                return result;
+            });
+        });
+    }
+
+    /**
+     * 将上传的数据块异步写入媒体存储的暂存文件，写完后按内容哈希提交，失败时由媒体存储删除暂存文件
+     * @return 本地访问URL与文件大小
+     */
+    private Mono<VoiceUpload> storeLocally(FilePart audioFile) {
+        String originalFilename = audioFile.filename();
+        int dotIndex = originalFilename.lastIndexOf('.');
+        String extension = dotIndex >= 0 ? originalFilename.substring(dotIndex) : "";
+        AtomicLong written = new AtomicLong();
+        Flux<DataBuffer> content = audioFile.content()
+                .doOnNext(buffer -> written.addAndGet(buffer.readableByteCount()));
+        return mediaStoreService.store(extension, path -> DataBufferUtils.write(content, path,
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+                        .then(Mono.fromSupplier(written::get)))
+                .map(stored -> {
+                    VoiceUpload result = new VoiceUpload();
+                    result.setLocalUrl(stored.url());
+                    result.setSize(stored.result());
+                    uploadSize.record(stored.result());
+                    return result;
+                });
+    }
+
+    private static String mimeTypeOf(FilePart audioFile) {
+        return audioFile.headers().getContentType() != null
+                ? audioFile.headers().getContentType().toString()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    /**
+     * 语音文件的本地URL与OSS URL
+     */
+    @Data
+    public static class VoiceUpload {
+        private String localUrl;
+        private String ossUrl;
+        private long size;
+    }
+}
@@ -0,0 +1,98 @@
+package com.hzau.service.storage;
+
+import com.hzau.config.ObjectStorageConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service.storage
+ * @className: LocalObjectStorageClient
+ * @author: zhuyuchen
+ * @description: 本地目录实现的对象存储，object-storage.provider=local 时代替七牛云，用于开发与测试。
+ *               对象先写入临时文件再原子改名，读取方不会看到写了一半的对象，默认目录经 /files/oss/** 对外访问
+ * @date: 2026/10/20 上午4:00
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "object-storage", name = "provider", havingValue = "local")
+public class LocalObjectStorageClient implements ObjectStorageClient {
+
+    private final Path root;
+    private final String baseUrl;
+
+    public LocalObjectStorageClient(ObjectStorageConfig config) throws IOException {
+        this.root = Paths.get(config.getLocalDir()).toAbsolutePath().normalize();
+        this.baseUrl = config.getLocalBaseUrl().endsWith("/")
+                ? config.getLocalBaseUrl().substring(0, config.getLocalBaseUrl().length() - 1)
+                : config.getLocalBaseUrl();
+        Files.createDirectories(root);
+        log.info("使用本地对象存储: {}", root);
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void putBytes(String key, byte[] data, String mimeType) throws IOException {
+        store(key, temp -> Files.write(temp, data));
+    }
+
+    @Override
+    public void putFile(String key, Path file, String mimeType) throws IOException {
+        store(key, temp -> Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    @Override
+    public String getPublicUrl(String key) {
+        return baseUrl + "/" + key;
+    }
+
+    @Override
+    public boolean isRetryable(Throwable error) {
+        return false;
+    }
+
+    private Path resolve(String key) {
+        Path target = root.resolve(key).normalize();
+        if (!target.startsWith(root)) {
+            throw new IllegalArgumentException("非法的对象名称: " + key);
+        }
+        return target;
+    }
+
+    /**
+     * 写入同目录下的临时文件后改名为目标对象，失败时删除临时文件
+     */
+    private void store(String key, TempWriter writer) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            writer.write(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface TempWriter {
+        void write(Path temp) throws IOException;
+    }
+}
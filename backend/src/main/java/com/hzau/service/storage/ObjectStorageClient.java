@@ -0,0 +1,45 @@
+package com.hzau.service.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service.storage
+ * @className: ObjectStorageClient
+ * @author: zhuyuchen
+ * @description: 对象存储客户端。方法均为阻塞调用，由 ReactiveUploadService 在专用线程上执行并负责重试与指标
+ * @date: 2026/10/20 上午4:00
+ */
+public interface ObjectStorageClient {
+
+    /**
+     * 存储实现名称，用作指标标签
+     */
+    String getName();
+
+    /**
+     * 配置是否完整可用
+     */
+    boolean isAvailable();
+
+    /**
+     * 上传内存中的数据
+     */
+    void putBytes(String key, byte[] data, String mimeType) throws IOException;
+
+    /**
+     * 上传本地文件，较大的文件分片并行上传
+     */
+    void putFile(String key, Path file, String mimeType) throws IOException;
+
+    /**
+     * 对象的公网访问URL
+     */
+    String getPublicUrl(String key);
+
+    /**
+     * 上传失败是否可以重试
+     */
+    boolean isRetryable(Throwable error);
+}
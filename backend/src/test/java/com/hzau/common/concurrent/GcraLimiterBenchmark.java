@@ -0,0 +1,111 @@
+package com.hzau.common.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: GcraLimiterBenchmark
+ * @author: zhuyuchen
+ * @description: GcraLimiter 微基准。对比同一用户（热点key）与各线程独立用户两种竞争程度下，
+ *               单个CAS单元与加锁的三层固定窗口计数器的吞吐。不属于单元测试，surefire 不会执行，
+ *               需要时直接运行 main 方法
+ * @date: 2026/10/20 上午8:30
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class GcraLimiterBenchmark {
+
+    /**
+     * 与 application.yml 中默认的三层限流一致
+     */
+    private static final List<GcraLimiter.Tier> TIERS = List.of(
+            new GcraLimiter.Tier("second", 3, 1000),
+            new GcraLimiter.Tier("minute", 30, 60_000),
+            new GcraLimiter.Tier("hour", 300, 3_600_000));
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final GcraLimiter limiter = new GcraLimiter(TIERS);
+        final AtomicLong cell = GcraLimiter.newCell();
+        final FixedWindowCounter counter = new FixedWindowCounter();
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        final AtomicLong cell = GcraLimiter.newCell();
+        final FixedWindowCounter counter = new FixedWindowCounter();
+    }
+
+    @Benchmark
+    public int gcraHotKey(Shared shared) {
+        return shared.limiter.tryAcquire(shared.cell);
+    }
+
+    @Benchmark
+    public int gcraPerUser(Shared shared, PerThread user) {
+        return shared.limiter.tryAcquire(user.cell);
+    }
+
+    @Benchmark
+    public int fixedWindowHotKey(Shared shared) {
+        return shared.counter.tryAcquire();
+    }
+
+    @Benchmark
+    public int fixedWindowPerUser(PerThread user) {
+        return user.counter.tryAcquire();
+    }
+
+    /**
+     * 对照组：每层一个固定窗口计数，整体加锁
+     */
+    static class FixedWindowCounter {
+        private final long[] windowStart = new long[TIERS.size()];
+        private final int[] counts = new int[TIERS.size()];
+
+        synchronized int tryAcquire() {
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < counts.length; i++) {
+                GcraLimiter.Tier tier = TIERS.get(i);
+                if (now - windowStart[i] >= tier.periodMillis()) {
+                    windowStart[i] = now;
+                    counts[i] = 0;
+                }
+                if (counts[i] >= tier.limit()) {
+                    return i;
+                }
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i]++;
+            }
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GcraLimiterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,157 @@
+package com.hzau.common.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.concurrent
+ * @className: GcraLimiterTest
+ * @author: zhuyuchen
+ * @description: GcraLimiter 的层级边界、偏移位宽与31位循环基准测试，时间由测试直接传入
+ * @date: 2026/10/20 上午8:30
+ */
+class GcraLimiterTest {
+
+    /**
+     * 测试起始时间：大于一个基准周期（2^31毫秒），且是各测试层级粒度的整数倍
+     */
+    private static final long T0 = 3_600_000L * 1000;
+    private static final long BASE_PERIOD = 1L << 31;
+
+    private static final GcraLimiter.Tier SECOND = new GcraLimiter.Tier("second", 3, 1000);
+    private static final GcraLimiter.Tier MINUTE = new GcraLimiter.Tier("minute", 5, 60_000);
+    private static final GcraLimiter.Tier HOUR = new GcraLimiter.Tier("hour", 300, 3_600_000);
+
+    @Test
+    void burstUpToLimitThenRejects() {
+        GcraLimiter limiter = new GcraLimiter(List.of(SECOND));
+        AtomicLong cell = GcraLimiter.newCell();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, limiter.tryAcquire(cell, T0));
+        }
+        assertEquals(0, limiter.tryAcquire(cell, T0));
+        assertEquals(0, limiter.remaining(cell, 0, T0));
+
+        // 每个发射间隔（约 period/limit）恢复一个额度，一个周期后恢复全部突发量
+        assertEquals(0, limiter.tryAcquire(cell, T0 + 300));
+        assertEquals(-1, limiter.tryAcquire(cell, T0 + 334));
+        assertEquals(3, limiter.remaining(cell, 0, T0 + 334 + 1002));
+    }
+
+    @Test
+    void rejectionReportsTierAndDoesNotConsume() {
+        GcraLimiter limiter = new GcraLimiter(List.of(SECOND, MINUTE));
+        AtomicLong cell = GcraLimiter.newCell();
+
+        // 秒级层级先耗尽
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, limiter.tryAcquire(cell, T0));
+        }
+        assertEquals(0, limiter.tryAcquire(cell, T0));
+
+        // 秒级发射间隔对齐为334毫秒，1002毫秒后秒级层级恢复，分钟层级只剩2个
+        assertEquals(-1, limiter.tryAcquire(cell, T0 + 1002));
+        assertEquals(-1, limiter.tryAcquire(cell, T0 + 1002));
+        assertEquals(1, limiter.tryAcquire(cell, T0 + 1002));
+        assertEquals(1, limiter.remaining(cell, 0, T0 + 1002));
+        assertEquals(0, limiter.remaining(cell, 1, T0 + 1002));
+
+        // 被拒绝的请求不消耗额度：分钟层级在第一个发射间隔（12秒）后恢复一个
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, limiter.tryAcquire(cell, T0 + 2000 + i * 1000));
+        }
+        assertEquals(-1, limiter.tryAcquire(cell, T0 + 12_000));
+        assertEquals(1, limiter.tryAcquire(cell, T0 + 12_000));
+    }
+
+    @Test
+    void tiersDoNotOverflowIntoEachOther() {
+        // 三个层级同时打满，任一层级的偏移溢出都会改变相邻层级的剩余量
+        GcraLimiter limiter = new GcraLimiter(List.of(
+                new GcraLimiter.Tier("second", 5, 1000),
+                new GcraLimiter.Tier("minute", 5, 60_000),
+                new GcraLimiter.Tier("hour", 5, 3_600_000)));
+        AtomicLong cell = GcraLimiter.newCell();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(-1, limiter.tryAcquire(cell, T0));
+        }
+        for (int tier = 0; tier < 3; tier++) {
+            assertEquals(0, limiter.remaining(cell, tier, T0));
+        }
+        assertEquals(5, limiter.remaining(cell, 0, T0 + 1000));
+        assertEquals(0, limiter.remaining(cell, 1, T0 + 1000));
+        assertEquals(0, limiter.remaining(cell, 2, T0 + 1000));
+        assertEquals(1, limiter.tryAcquire(cell, T0 + 1000));
+        assertEquals(2, limiter.tryAcquire(cell, T0 + 60_000));
+    }
+
+    @Test
+    void offsetsFitElevenBitsForAnyTier() {
+        // 偏移只有11位，粒度需随 limit 与 period 放大；任意配置下都应恰好允许 limit 个突发请求
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            int limit = 1 + random.nextInt(round % 2 == 0 ? 100 : 2047);
+            long period = 1 + (long) (random.nextDouble() * 86_400_000L);
+            GcraLimiter limiter = new GcraLimiter(List.of(new GcraLimiter.Tier("t", limit, period)));
+            AtomicLong cell = GcraLimiter.newCell();
+            long now = T0 + random.nextInt(1_000_000);
+            for (int i = 0; i < limit; i++) {
+                assertEquals(-1, limiter.tryAcquire(cell, now), "limit=" + limit + ", period=" + period);
+            }
+            assertEquals(0, limiter.tryAcquire(cell, now), "limit=" + limit + ", period=" + period);
+            assertEquals(0, limiter.remaining(cell, 0, now));
+        }
+    }
+
+    @Test
+    void survivesBaseWrapAround() {
+        GcraLimiter limiter = new GcraLimiter(List.of(SECOND));
+        AtomicLong cell = GcraLimiter.newCell();
+        // 基准为31位循环计数，从回绕前5毫秒开始打满
+        long nearWrap = 2 * BASE_PERIOD - 5;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(-1, limiter.tryAcquire(cell, nearWrap));
+        }
+        assertEquals(0, limiter.tryAcquire(cell, nearWrap + 10));
+        assertEquals(0, limiter.remaining(cell, 0, nearWrap + 10));
+        assertEquals(-1, limiter.tryAcquire(cell, nearWrap + 334));
+        // 空闲超过最大提前量后视为全新状态
+        assertEquals(3, limiter.remaining(cell, 0, nearWrap + 334 + limiter.getIdleTimeoutMillis() + 1));
+    }
+
+    @Test
+    void steadyRateAcrossRebasing() {
+        // 每次放行都以当前时间为新基准重新编码偏移，长时间稳定流量下放行数应等于速率加一次突发
+        GcraLimiter limiter = new GcraLimiter(List.of(SECOND, HOUR));
+        AtomicLong cell = GcraLimiter.newCell();
+        long start = 2 * BASE_PERIOD - 50_000;
+        int allowed = 0;
+        for (long t = start; t < start + 100_000; t += 100) {
+            if (limiter.tryAcquire(cell, t) == -1) {
+                allowed++;
+            }
+        }
+        // 100秒内：初始突发3个 + 每334毫秒一个
+        assertEquals(3 + 100_000 / 334, allowed, 1);
+    }
+
+    @Test
+    void rejectsInvalidTiers() {
+        assertThrows(IllegalArgumentException.class, () -> new GcraLimiter(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new GcraLimiter(List.of(SECOND, MINUTE, HOUR, SECOND)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new GcraLimiter(List.of(new GcraLimiter.Tier("zero", 0, 1000))));
+        // 超过11位偏移可表示的突发量
+        assertThrows(IllegalArgumentException.class,
+                () -> new GcraLimiter(List.of(new GcraLimiter.Tier("huge", 2048, 1000))));
+        new GcraLimiter(List.of(new GcraLimiter.Tier("max", 2047, 1)));
+    }
+}
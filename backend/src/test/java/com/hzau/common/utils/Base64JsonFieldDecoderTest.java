@@ -0,0 +1,178 @@
+package com.hzau.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.common.utils
+ * @className: Base64JsonFieldDecoderTest
+ * @author: zhuyuchen
+ * @description: Base64JsonFieldDecoder 的分块边界、转义与异常响应测试。同一响应在每个字节位置切分后解码结果都应一致
+ * @date: 2026/10/20 上午10:00
+ */
+class Base64JsonFieldDecoderTest {
+
+    @Test
+    void decodesResponseSplitAtEveryOffset() {
+        // 长度不是3的倍数，base64末尾带填充；目标字段前后都有干扰字段
+        byte[] audio = randomBytes(301, 1);
+        byte[] response = ttsResponse(Base64.getEncoder().encodeToString(audio));
+        for (int split = 0; split <= response.length; split++) {
+            assertArrayEquals(audio, decode(response, split), "split=" + split);
+        }
+    }
+
+    @Test
+    void decodesResponseFedOneByteAtATime() {
+        byte[] audio = randomBytes(302, 2);
+        byte[] response = ttsResponse(Base64.getEncoder().encodeToString(audio));
+        Base64JsonFieldDecoder decoder = new Base64JsonFieldDecoder("data");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte b : response) {
+            write(out, decoder.feed(ByteBuffer.wrap(new byte[]{b})));
+        }
+        write(out, decoder.finish());
+        assertArrayEquals(audio, out.toByteArray());
+        assertEquals(audio.length, decoder.getDecodedBytes());
+    }
+
+    @Test
+    void decodesFieldLargerThanStagingBuffer() {
+        byte[] audio = randomBytes(50_000, 3);
+        byte[] response = ttsResponse(Base64.getEncoder().encodeToString(audio));
+        for (int split = 0; split <= response.length; split += 997) {
+            assertArrayEquals(audio, decode(response, split), "split=" + split);
+        }
+        assertArrayEquals(audio, decode(response, response.length - 3));
+    }
+
+    @Test
+    void decodesEscapedSlashesSplitAtEveryOffset() {
+        // 连续的0xFF编码为 "////"，部分JSON编码器输出为 "\/\/\/\/"
+        byte[] audio = new byte[60];
+        Arrays.fill(audio, (byte) 0xFF);
+        System.arraycopy(randomBytes(30, 4), 0, audio, 15, 30);
+        String encoded = Base64.getEncoder().encodeToString(audio);
+        assertTrue(encoded.contains("/"));
+        byte[] response = ttsResponse(encoded.replace("/", "\\/"));
+        for (int split = 0; split <= response.length; split++) {
+            assertArrayEquals(audio, decode(response, split), "split=" + split);
+        }
+    }
+
+    @Test
+    void skipsEscapedLineBreaksInField() {
+        byte[] audio = randomBytes(120, 5);
+        String encoded = Base64.getMimeEncoder(76, "\r\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(audio);
+        byte[] response = ttsResponse(encoded.replace("\r", "\\r").replace("\n", "\\n"));
+        for (int split = 0; split <= response.length; split++) {
+            assertArrayEquals(audio, decode(response, split), "split=" + split);
+        }
+    }
+
+    @Test
+    void rejectsMissingField() {
+        // 同名字段只出现在嵌套对象、数组或其他字段的值中
+        byte[] response = json("{\"reqid\":\"data\",\"nested\":{\"data\":\"AAAA\"},\"list\":[\"data\",{\"data\":\"AAAA\"}],"
+                + "\"\\\"data\\\"\":\"AAAA\"}");
+        assertFinishFails(response, "缺少字段");
+        assertFinishFails(json("{}"), "缺少字段");
+    }
+
+    @Test
+    void rejectsNonStringValue() {
+        assertFinishFails(json("{\"data\":null,\"x\":\"AAAA\"}"), "缺少字段");
+        assertFinishFails(json("{\"data\": 123, \"other\": \"AAAA\"}"), "缺少字段");
+        assertFinishFails(json("{\"data\":[\"AAAA\"]}"), "缺少字段");
+        assertFinishFails(json("{\"data\":{\"data\":\"AAAA\"}}"), "缺少字段");
+    }
+
+    @Test
+    void rejectsEmptyField() {
+        assertFinishFails(json("{\"data\":\"\"}"), "字段内容为空");
+    }
+
+    @Test
+    void rejectsTruncatedBody() {
+        byte[] audio = randomBytes(30, 6);
+        String encoded = Base64.getEncoder().encodeToString(audio);
+        byte[] response = ttsResponse(encoded);
+        String prefix = "\"data\" : \"";
+        int valueStart = indexOf(response, prefix) + prefix.length();
+        int valueEnd = valueStart + encoded.length();
+        for (int cut = 0; cut < valueStart; cut++) {
+            assertFinishFails(Arrays.copyOf(response, cut), "缺少字段");
+        }
+        for (int cut = valueStart; cut <= valueEnd; cut++) {
+            assertFinishFails(Arrays.copyOf(response, cut), "响应不完整");
+        }
+        // 字段结束后截断不影响已解码的数据
+        assertArrayEquals(audio, decode(Arrays.copyOf(response, valueEnd + 1), valueStart + 3));
+    }
+
+    @Test
+    void rejectsInvalidContent() {
+        assertThrows(IllegalStateException.class, () -> decode(json("{\"data\":\"AA\\tA\"}"), 3));
+        assertThrows(IllegalStateException.class, () -> decode(json("{\"data\":\"AA*A\"}"), 3));
+    }
+
+    /**
+     * 仿照TTS响应：目标字段前的字符串中含有转义引号、逗号与同名文本，字段后还有嵌套对象
+     */
+    private static byte[] ttsResponse(String dataValue) {
+        return json("{\"reqid\":\"r-\\\"data\\\":\\\"x\\\",\\\\\",\"operation\":\"query\",\"nested\":{\"data\":\"AAAA\"},"
+                + "\"list\":[\"data\",1,{\"k\":\"v\"}],\"sequence\":-1,\r\n \"data\" : \"" + dataValue
+                + "\",\"addition\":{\"duration\":\"1234\",\"data\":\"////\"}}");
+    }
+
+    /**
+     * 在 split 处把响应分成两块依次输入
+     */
+    private static byte[] decode(byte[] response, int split) {
+        Base64JsonFieldDecoder decoder = new Base64JsonFieldDecoder("data");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, decoder.feed(ByteBuffer.wrap(response, 0, split)));
+        write(out, decoder.feed(ByteBuffer.wrap(response, split, response.length - split)));
+        write(out, decoder.finish());
+        assertEquals(out.size(), decoder.getDecodedBytes());
+        return out.toByteArray();
+    }
+
+    private static void assertFinishFails(byte[] response, String message) {
+        for (int split = 0; split <= response.length; split++) {
+            int at = split;
+            IllegalStateException error = assertThrows(IllegalStateException.class, () -> decode(response, at));
+            assertTrue(error.getMessage().contains(message), error.getMessage());
+        }
+    }
+
+    private static void write(ByteArrayOutputStream out, ByteBuffer buffer) {
+        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static int indexOf(byte[] haystack, String needle) {
+        return new String(haystack, StandardCharsets.ISO_8859_1).indexOf(needle);
+    }
+}
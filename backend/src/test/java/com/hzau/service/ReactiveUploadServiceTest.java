@@ -0,0 +1,216 @@
+package com.hzau.service;
+
+import com.hzau.config.ObjectStorageConfig;
+import com.hzau.config.QiniuKodoConfig;
+import com.hzau.service.storage.LocalObjectStorageClient;
+import com.hzau.service.storage.ObjectStorageClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service
+ * @className: ReactiveUploadServiceTest
+ * @author: zhuyuchen
+ * @description: 以 provider=local 的本地对象存储测试 ReactiveUploadService 的上传、重试判定与分片阈值选择
+ * @date: 2026/10/20 上午9:00
+ */
+class ReactiveUploadServiceTest {
+
+    private static final String BASE_URL = "http://localhost:8080/files/oss";
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private ObjectStorageConfig config;
+    private QiniuKodoConfig kodoConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private LocalObjectStorageClient local;
+    private ReactiveUploadService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new ObjectStorageConfig();
+        config.setProvider("local");
+        config.setLocalDir(tempDir.resolve("oss").toString());
+        config.setLocalBaseUrl(BASE_URL + "/");
+        config.setChunkedThresholdMb(1);
+        config.setMaxRetries(2);
+        config.setRetryBackoffMs(1);
+        kodoConfig = new QiniuKodoConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        local = new LocalObjectStorageClient(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void uploadsBytesAndFileToLocalDir() throws IOException {
+        service = newService(local);
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+
+        String bytesUrl = service.uploadBytes(data, "a.mp3", "audio/mpeg").block();
+        assertArrayEquals(data, Files.readAllBytes(objectPath(bytesUrl)));
+        assertTrue(bytesUrl.startsWith(BASE_URL + "/audio/") && bytesUrl.endsWith(".mp3"), bytesUrl);
+
+        Path file = Files.write(tempDir.resolve("b.wav"), data);
+        String fileUrl = service.uploadFile(file, null, "audio/wav").block();
+        assertArrayEquals(data, Files.readAllBytes(objectPath(fileUrl)));
+        assertTrue(fileUrl.endsWith(".wav"), fileUrl);
+
+        // 两个对象各不相同，目录中不残留临时文件
+        try (var files = Files.walk(tempDir.resolve("oss"))) {
+            assertEquals(2, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void rejectsEmptyDataAndKeysOutsideRoot() {
+        service = newService(local);
+        assertThrows(IllegalArgumentException.class, () -> service.uploadBytes(new byte[0], "a.mp3", null).block());
+        assertThrows(IllegalArgumentException.class, () -> local.putBytes("../escape.mp3", new byte[1], null));
+        assertFalse(Files.exists(tempDir.resolve("escape.mp3")));
+    }
+
+    @Test
+    void retriesOnlyWhatClientReportsRetryable() {
+        // 与七牛云客户端一致：IO错误可重试
+        FlakyClient retryable = new FlakyClient(local, 2, error -> error instanceof IOException);
+        service = newService(retryable);
+        String url = service.uploadBytes(new byte[16], "a.mp3", null).block();
+        assertTrue(Files.exists(objectPath(url)));
+        assertEquals(3, retryable.attempts.get());
+        assertEquals(2.0, meterRegistry.get("roleplay.oss.upload.retries").counter().count());
+        assertEquals(2, meterRegistry.get("roleplay.oss.upload").tag("outcome", "error").timer().count());
+        service.shutdown();
+
+        // 本地存储的错误不可重试，只尝试一次
+        FlakyClient notRetryable = new FlakyClient(local, 1, local::isRetryable);
+        service = newService(notRetryable);
+        assertThrows(IOException.class, () -> blockUnwrapped(service.uploadBytes(new byte[16], "a.mp3", null).toFuture()));
+        assertEquals(1, notRetryable.attempts.get());
+        service.shutdown();
+
+        // 重试次数耗尽后抛出最后一次的原始错误
+        FlakyClient exhausted = new FlakyClient(local, 5, error -> true);
+        service = newService(exhausted);
+        assertThrows(IOException.class, () -> blockUnwrapped(service.uploadBytes(new byte[16], "a.mp3", null).toFuture()));
+        assertEquals(1 + config.getMaxRetries(), exhausted.attempts.get());
+    }
+
+    @Test
+    void chunkedThresholdSelectsUploadMode() throws IOException {
+        service = newService(local);
+        service.uploadBytes(new byte[MB - 1], "a.mp3", null).block();
+        service.uploadBytes(new byte[MB], "b.mp3", null).block();
+        service.uploadFile(Files.write(tempDir.resolve("small.mp3"), new byte[MB - 1]), null, null).block();
+        service.uploadFile(Files.write(tempDir.resolve("large.mp3"), new byte[MB + 1]), null, null).block();
+
+        assertEquals(2, uploads("form"));
+        assertEquals(2, uploads("chunked"));
+    }
+
+    private ReactiveUploadService newService(ObjectStorageClient client) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new ReactiveUploadService(client, config, kodoConfig, meterRegistry);
+    }
+
+    private long uploads(String mode) {
+        return meterRegistry.get("roleplay.oss.upload").tag("mode", mode).tag("outcome", "success").timer().count();
+    }
+
+    private Path objectPath(String url) {
+        assertTrue(url.startsWith(BASE_URL + "/"), url);
+        return tempDir.resolve("oss").resolve(url.substring(BASE_URL.length() + 1));
+    }
+
+    /**
+     * block() 会把受检异常包装为 RuntimeException，这里还原出原始错误
+     */
+    private static void blockUnwrapped(CompletableFuture<?> future) throws Throwable {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 前 failures 次上传抛出 IOException，之后交给本地存储；是否可重试由 retryable 决定
+     */
+    private static class FlakyClient implements ObjectStorageClient {
+
+        private final ObjectStorageClient delegate;
+        private final int failures;
+        private final Predicate<Throwable> retryable;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        FlakyClient(ObjectStorageClient delegate, int failures, Predicate<Throwable> retryable) {
+            this.delegate = delegate;
+            this.failures = failures;
+            this.retryable = retryable;
+        }
+
+        private void maybeFail() throws IOException {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new IOException("模拟网络错误 #" + attempts.get());
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "flaky";
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void putBytes(String key, byte[] data, String mimeType) throws IOException {
+            maybeFail();
+            delegate.putBytes(key, data, mimeType);
+        }
+
+        @Override
+        public void putFile(String key, Path file, String mimeType) throws IOException {
+            maybeFail();
+            delegate.putFile(key, file, mimeType);
+        }
+
+        @Override
+        public String getPublicUrl(String key) {
+            return delegate.getPublicUrl(key);
+        }
+
+        @Override
+        public boolean isRetryable(Throwable error) {
+            return retryable.test(error);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.hzau.service.storage;
+
+import com.hzau.config.ObjectStorageConfig;
+import com.hzau.config.QiniuKodoConfig;
+import com.qiniu.common.QiniuException;
+import com.qiniu.http.Response;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @projectName: AI-roleplay
+ * @package: com.hzau.service.storage
+ * @className: QiniuObjectStorageClientTest
+ * @author: zhuyuchen
+ * @description: 七牛云客户端中不访问网络的部分：上传凭证缓存与刷新、可重试错误的判定。
+ *               上传流程本身见 ReactiveUploadServiceTest（provider=local）
+ * @date: 2026/10/20 上午9:00
+ */
+class QiniuObjectStorageClientTest {
+
+    private static final long NOW = 1_800_000_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private ObjectStorageConfig storageConfig;
+    private QiniuKodoConfig kodoConfig;
+    private QiniuObjectStorageClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageConfig = new ObjectStorageConfig();
+        storageConfig.setResumeRecordDir(tempDir.resolve("oss-resume").toString());
+        storageConfig.setTokenExpireSeconds(3600);
+        storageConfig.setTokenRefreshMarginSeconds(300);
+        kodoConfig = new QiniuKodoConfig();
+        kodoConfig.setAccessKey("test-access-key");
+        kodoConfig.setSecretKey("test-secret-key");
+        kodoConfig.setBucket("test-bucket");
+        kodoConfig.setDomain("cdn.example.com");
+        client = new QiniuObjectStorageClient(kodoConfig, storageConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    void reusesTokenUntilRefreshMargin() {
+        String token = client.uploadToken(NOW);
+        assertSame(token, client.uploadToken(NOW + 1000));
+        // 有效期3600秒，提前300秒刷新
+        assertSame(token, client.uploadToken(NOW + 3299_999));
+
+        String refreshed = client.uploadToken(NOW + 3300_000);
+        assertNotEquals(token, refreshed);
+        assertSame(refreshed, client.uploadToken(NOW + 3301_000));
+    }
+
+    @Test
+    void refreshMarginCappedAtHalfOfExpiry() throws IOException {
+        client.shutdown();
+        storageConfig.setTokenExpireSeconds(60);
+        client = new QiniuObjectStorageClient(kodoConfig, storageConfig);
+
+        // 余量300秒超过有效期，按有效期的一半（30秒）刷新，而不是每次都重新生成
+        String token = client.uploadToken(NOW);
+        assertSame(token, client.uploadToken(NOW + 29_999));
+        assertNotEquals(token, client.uploadToken(NOW + 30_000));
+    }
+
+    @Test
+    void unavailableWithoutCredentials() throws IOException {
+        client.shutdown();
+        kodoConfig.setSecretKey(" ");
+        client = new QiniuObjectStorageClient(kodoConfig, storageConfig);
+
+        assertFalse(client.isAvailable());
+        assertThrows(IllegalStateException.class, () -> client.uploadToken(NOW));
+    }
+
+    @Test
+    void retriesOnlyNetworkAndServerErrors() throws IOException {
+        assertTrue(client.isRetryable(new IOException("connection reset")));
+        assertTrue(client.isRetryable(new QiniuException(new IOException("timeout"))));
+        assertTrue(client.isRetryable(new QiniuException(response(503))));
+        // 凭证或参数错误重试也不会成功
+        assertFalse(client.isRetryable(new QiniuException(response(401))));
+        assertFalse(client.isRetryable(new QiniuException(response(400))));
+        assertFalse(client.isRetryable(new IllegalArgumentException("bad key")));
+    }
+
+    private static Response response(int code) throws IOException {
+        okhttp3.Response raw = new okhttp3.Response.Builder()
+                .request(new Request.Builder().url("http://upload.qiniup.com").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("error")
+                .body(ResponseBody.create(null, "{\"error\":\"error\"}"))
+                .build();
+        return Response.create(raw, "upload.qiniup.com", 0.1);
+    }
+}